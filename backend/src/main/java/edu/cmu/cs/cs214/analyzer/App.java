@@ -1,24 +1,70 @@
 package edu.cmu.cs.cs214.analyzer;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
 
+import edu.cmu.cs.cs214.analyzer.framework.CompressingInputStream;
+import edu.cmu.cs.cs214.analyzer.framework.Util;
+import edu.cmu.cs.cs214.analyzer.framework.core.AggregateReport;
+import edu.cmu.cs.cs214.analyzer.framework.core.AnalysisJob;
 import edu.cmu.cs.cs214.analyzer.framework.core.AppFrameworkImpl;
 import edu.cmu.cs.cs214.analyzer.framework.core.CourseFilter;
+import edu.cmu.cs.cs214.analyzer.framework.core.Cursor;
 import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.ExpiredCursorException;
+import edu.cmu.cs.cs214.analyzer.framework.core.GroupStats;
 import edu.cmu.cs.cs214.analyzer.framework.core.InstructorFilter;
+import edu.cmu.cs.cs214.analyzer.framework.core.MemoryReport;
+import edu.cmu.cs.cs214.analyzer.framework.core.QueryCacheStats;
 import edu.cmu.cs.cs214.analyzer.framework.gui.AnalysisResult;
 import fi.iki.elonen.NanoHTTPD;
 
 public class App extends NanoHTTPD {
     private static final int PORT_NUMBER = 8080;
+    private static final String MIME_JSON = "application/json";
+    // The analyzed data of the last run, next to the cache of plugin HTTP responses
+    private static final Path SNAPSHOT_FILE = Paths.get("cache", "analysis.snapshot");
+    // The segment files of the analyzed courses, with --mapped-segments
+    private static final Path SEGMENT_DIRECTORY = Paths.get("cache", "segments");
+    // The endpoints without side effects, whose results only change with the analyzed data
+    private static final Set<String> READ_ONLY_URIS = Set.of("/", "/courses", "/instructors", "/aggregate", "/memory");
+    // NanoHTTPD has no constant for 410 Gone
+    private static final Response.IStatus GONE = new Response.IStatus() {
+        @Override
+        public String getDescription() {
+            return "410 Gone";
+        }
+
+        @Override
+        public int getRequestStatus() {
+            return 410;
+        }
+    };
 
     public static void main(String[] args) {
         try {
-            new App();
+            List<String> options = Arrays.asList(args);
+            App app = new App(options.contains("--mapped-segments"));
+            if (options.contains("--warm-up")) {
+                // Analyze all plugins up front so the first visualizer request is served quickly
+                long start = System.currentTimeMillis();
+                app.analyzer.startAllAnalyses();
+                System.out.println("Warmed up all plugins in " + (System.currentTimeMillis() - start) + " ms");
+                app.saveSnapshot();
+            }
         } catch (IOException ioe) {
             System.err.println("Couldn't start server:\n" + ioe);
         }
@@ -26,67 +72,297 @@ public class App extends NanoHTTPD {
 
     private AppFrameworkImpl analyzer;
     private List<DataPlugin> plugins;
+    // The version of the snapshot last saved or restored
+    private long savedVersion;
 
     /**
      * Start the server at :8080 port.
+     * @param mappedSegments Whether to keep the analyzed courses in memory-mapped segment files
+     *        instead of on the heap
      * @throws IOException
      */
-    public App() throws IOException {
+    public App(boolean mappedSegments) throws IOException {
         super(PORT_NUMBER);
 
-        this.analyzer = new AppFrameworkImpl();
+        this.analyzer = mappedSegments ? new AppFrameworkImpl(SEGMENT_DIRECTORY) : new AppFrameworkImpl();
         plugins = loadPlugins();
         for (DataPlugin p: plugins) {
             analyzer.registerPlugin(p);
         }
-
+        restoreSnapshot();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::saveSnapshot, "snapshot-saver"));
 
         start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
         System.out.println("\nRunning! Point your browsers to http://localhost:8080/ \n");
     }
 
+    /**
+     * Restore the analyzed data saved by the last run, if there is any, so it can be queried
+     * right away. Only plugins whose data changed since are refreshed, in the background.
+     */
+    private void restoreSnapshot() {
+        if (!Files.exists(SNAPSHOT_FILE))
+            return;
+        long start = System.currentTimeMillis();
+        try {
+            List<AnalysisJob> refreshes = analyzer.loadSnapshot(SNAPSHOT_FILE);
+            savedVersion = analyzer.getSnapshot().getVersion();
+            System.out.println("Restored " + analyzer.getAnalyzedCourses().size() + " courses from " + SNAPSHOT_FILE
+                               + " in " + (System.currentTimeMillis() - start) + " ms, refreshing "
+                               + refreshes.size() + " changed plugins");
+        } catch (IOException e) {
+            System.out.println("Error: Couldn't restore " + SNAPSHOT_FILE + " - " + e);
+        }
+    }
+
+    /**
+     * Save the analyzed data for the next run, unless it hasn't changed since it was last saved
+     * or restored.
+     */
+    private synchronized void saveSnapshot() {
+        if (analyzer.getSnapshot().getVersion() == savedVersion)
+            return;
+        long start = System.currentTimeMillis();
+        try {
+            savedVersion = analyzer.saveSnapshot(SNAPSHOT_FILE);
+            System.out.println("Saved " + SNAPSHOT_FILE + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            System.out.println("Error: Couldn't save " + SNAPSHOT_FILE + " - " + e);
+        }
+    }
+
     @Override
     public Response serve(IHTTPSession session) {
+        try {
+            // Tag the result before serving it, so a result is never tagged as newer than it is
+            String etag = getETag(session);
+            if (etag != null && matchesETag(session.getHeaders().get("if-none-match"), etag)) {
+                Response notModified = newFixedLengthResponse(Response.Status.NOT_MODIFIED, MIME_JSON, "");
+                notModified.addHeader("ETag", etag);
+                return notModified;
+            }
+
+            Response response = serveQuery(session);
+            if (etag != null) {
+                response.addHeader("ETag", etag);
+                response.addHeader("Cache-Control", "no-cache");  // Revalidate before each reuse
+            }
+            return compress(session, response);
+        } catch (BadRequestException e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, NanoHTTPD.MIME_PLAINTEXT,
+                                          "Error: " + e.getMessage());
+        } catch (ExpiredCursorException e) {
+            return newFixedLengthResponse(GONE, NanoHTTPD.MIME_PLAINTEXT,
+                                          "Error: " + e.getMessage());
+        } catch (RuntimeException e) {  // Query parameters are validated, so this is a bug
+            System.out.println("Error: Failed to serve " + session.getUri() + " - " + e);
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, NanoHTTPD.MIME_PLAINTEXT,
+                                          "Error: Failed to serve " + session.getUri());
+        }
+    }
+
+    /**
+     * Compresses a JSON response while it is sent, with the encoding the client prefers.
+     */
+    private static Response compress(IHTTPSession session, Response response) {
+        String encoding = CompressingInputStream.negotiate(session.getHeaders().get("accept-encoding"));
+        response.addHeader("Vary", "Accept-Encoding");
+        if (encoding == null || !MIME_JSON.equals(response.getMimeType()))
+            return response;
+        response.setData(new CompressingInputStream(response.getData(), encoding));
+        response.setChunkedTransfer(true);  // The compressed length is unknown until the end
+        response.addHeader("Content-Encoding", encoding);
+        return response;
+    }
+
+    @Override
+    protected boolean useGzipWhenAccepted(Response response) {
+        return false;  // Responses are compressed by compress(), with negotiated encodings
+    }
+
+    /**
+     * Derives an ETag from the version of the analyzed data and the query, or returns null for
+     * requests that change the data or whose result changes without a new version. The tag is
+     * weak because the same result is sent with different encodings.
+     */
+    private String getETag(IHTTPSession session) {
+        String uri = session.getUri();
+        if (!READ_ONLY_URIS.contains(uri))
+            return null;
+        StringBuilder query = new StringBuilder(uri);
+        for (Map.Entry<String, String> param : new TreeMap<String, String>(session.getParms()).entrySet())
+            query.append('\n').append(param.getKey()).append('=').append(param.getValue());
+        // The name and footer are part of every result, and can change without a new version
+        query.append('\n').append(analyzer.getAnalysisName()).append('\n').append(analyzer.getFooter());
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(query.toString().getBytes(StandardCharsets.UTF_8));
+            String hash = Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 12));
+            return "W/\"" + analyzer.getSnapshot().getVersion() + "-" + hash + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            return null;  // Every Java platform supports SHA-256
+        }
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null)
+            return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    private static String getCursor(Map<String, String> params) {
+        String cursor = params.get("cursor");
+        if (cursor == null || cursor.isEmpty())
+            return null;
+        try {
+            Cursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+        return cursor;
+    }
+
+    private static String getRequired(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null)
+            throw new BadRequestException("Missing parameter " + name);
+        return value;
+    }
+
+    private static int parseInt(Map<String, String> params, String name, int defaultValue) {
+        if (!params.containsKey(name))
+            return defaultValue;
+        try {
+            return Integer.parseInt(params.get(name));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Malformed number " + name + "=" + params.get(name));
+        }
+    }
+
+    private static long parseLong(Map<String, String> params, String name) {
+        try {
+            return Long.parseLong(getRequired(params, name));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Malformed number " + name + "=" + params.get(name));
+        }
+    }
+
+    private static String parseOneOf(Map<String, String> params, String name, List<String> values) {
+        String value = params.get(name);
+        if (value != null && !values.contains(value))
+            throw new BadRequestException("Unknown " + name + " " + value);
+        return value;
+    }
+
+    private Response serveQuery(IHTTPSession session) {
         String uri = session.getUri();
         Map<String, String> params = session.getParms();
 
         // Extract the view-specific data from the analyzer
         AnalysisResult result = null;
         final int maxSize = 2147483647;
-        if (uri.equals("/plugin")) {  // e.g., /plugin?i=0
-            analyzer.startNewAnalysis(plugins.get(Integer.parseInt(params.get("i"))));
+        if (uri.equals("/plugin")) {  // e.g., /plugin?i=0, /plugin?i=all, /plugin?i=0&async=true or /plugin?i=0&refresh=true
+            boolean all = "all".equals(getRequired(params, "i"));
+            boolean refresh = "true".equals(params.get("refresh"));
+            int index = all ? -1 : parseInt(params, "i", -1);
+            if (!all && (index < 0 || index >= plugins.size()))
+                throw new BadRequestException("Unknown plugin " + index);
+            List<DataPlugin> selected = all ? plugins : List.of(plugins.get(index));
+            if ("true".equals(params.get("async"))) {
+                // Answer right away with the jobs, whose progress is reported by /jobs
+                List<AnalysisJob> jobs = new ArrayList<AnalysisJob>();
+                if (refresh) {
+                    for (DataPlugin plugin : selected)
+                        jobs.add(analyzer.submitRefresh(plugin));
+                } else if (all) {
+                    jobs.addAll(analyzer.submitAllAnalyses());
+                } else {
+                    jobs.add(analyzer.submitAnalysis(selected.get(0)));
+                }
+                return newFixedLengthResponse(Response.Status.OK, MIME_JSON,
+                                              "{\"jobs\": " + Util.arrayListToString(jobs) + "}");
+            }
+            if (refresh) {
+                for (DataPlugin plugin : selected)
+                    analyzer.refreshAnalysis(plugin);
+            } else if (all) {
+                analyzer.startAllAnalyses();
+            } else {
+                analyzer.startNewAnalysis(selected.get(0));
+            }
             result = AnalysisResult.getAllResult(this.analyzer);
-        } else if (uri.equals("/courses")) {   // e.g., /courses?name=Java&instructor=Claire&size=100
+        } else if (uri.equals("/courses")) {   // e.g., /courses?name=Java&instructor=Claire&size=100&sort=rate&order=desc
             // Parse course filter parameters
             String nameKeyword = params.containsKey("name") ? params.get("name") : "";
             String categoryKeyword = params.containsKey("category") ? params.get("category") : "";
             String levelKeyword = params.containsKey("level") ? params.get("level") : "";
             String instructorNameKeyword = params.containsKey("instructor") ? params.get("instructor") : "";
             String organizationNameKeyword = params.containsKey("organization") ? params.get("organization") : "";
-            int year = params.containsKey("year") ? Integer.parseInt(params.get("year")) : -1;
-            int size = params.containsKey("size") ? Integer.parseInt(params.get("size")) : maxSize;
+            int year = parseInt(params, "year", -1);
+            int size = parseInt(params, "size", maxSize);
+            String sortField = parseOneOf(params, "sort", CourseFilter.SORT_FIELDS);
+            boolean descending = "desc".equals(params.get("order"));
 
             // Filter the courses and get the result
             CourseFilter filter = new CourseFilter(nameKeyword, categoryKeyword, levelKeyword,
-                                                   instructorNameKeyword, organizationNameKeyword, year, size);
-            analyzer.filterCourses(filter);
-            result = AnalysisResult.getCoursesResult(this.analyzer);
-        } else if (uri.equals("/instructors")) {   // e.g., /instructors?name=Vincent&organization=CMU&size=100
+                                                   instructorNameKeyword, organizationNameKeyword, year, size,
+                                                   sortField, descending);
+            if (params.containsKey("cursor"))   // Paginated, starting with an empty cursor
+                result = AnalysisResult.getCoursesPage(this.analyzer, analyzer.pageCourses(filter, getCursor(params)));
+            else
+                result = AnalysisResult.getCoursesResult(this.analyzer, analyzer.filterCourses(filter));
+        } else if (uri.equals("/instructors")) {   // e.g., /instructors?name=Vincent&organization=CMU&size=100&sort=rate
             // Parse parameters to the instructor filter
             String nameKeyword = params.containsKey("name") ? params.get("name") : "";
             String courseKeyword = params.containsKey("course") ? params.get("course") : "";
             String organizationNameKeyword = params.containsKey("organization") ? params.get("organization") : "";
-            int size = params.containsKey("size") ? Integer.parseInt(params.get("size")) : maxSize;
+            int size = parseInt(params, "size", maxSize);
+            String sortField = parseOneOf(params, "sort", InstructorFilter.SORT_FIELDS);
+            boolean descending = "desc".equals(params.get("order"));
 
             // Filter the instructors and get the result
-            InstructorFilter filter = new InstructorFilter(nameKeyword, courseKeyword, organizationNameKeyword, size);
-            analyzer.filterInstructors(filter);
-            result = AnalysisResult.getInstructorsResult(this.analyzer);
+            InstructorFilter filter = new InstructorFilter(nameKeyword, courseKeyword, organizationNameKeyword, size,
+                                                           sortField, descending);
+            if (params.containsKey("cursor"))   // Paginated, starting with an empty cursor
+                result = AnalysisResult.getInstructorsPage(this.analyzer,
+                                                           analyzer.pageInstructors(filter, getCursor(params)));
+            else
+                result = AnalysisResult.getInstructorsResult(this.analyzer, analyzer.filterInstructors(filter));
+        } else if (uri.equals("/memory")) {   // e.g., /memory
+            // Report the memory saved by dictionary-encoding repeated course strings
+            MemoryReport report = analyzer.getSnapshot().getMemoryReport();
+            return newFixedLengthResponse(Response.Status.OK, MIME_JSON, report.toString());
+        } else if (uri.equals("/jobs")) {   // e.g., /jobs or /jobs?id=1
+            // Report the status and progress of analyses
+            if (!params.containsKey("id"))
+                return newFixedLengthResponse(Response.Status.OK, MIME_JSON,
+                                              "{\"jobs\": " + Util.arrayListToString(analyzer.getJobs()) + "}");
+            AnalysisJob job = analyzer.getJob(parseLong(params, "id"));
+            if (job == null)
+                return newFixedLengthResponse(Response.Status.NOT_FOUND, NanoHTTPD.MIME_PLAINTEXT,
+                                              "Error: Unknown job " + params.get("id"));
+            return newFixedLengthResponse(Response.Status.OK, MIME_JSON, job.toString());
+        } else if (uri.equals("/cache")) {   // e.g., /cache
+            // Report the counters of the cache of /courses and /instructors results
+            QueryCacheStats stats = analyzer.getQueryCacheStats();
+            return newFixedLengthResponse(Response.Status.OK, MIME_JSON, stats.toString());
+        } else if (uri.equals("/aggregate")) {   // e.g., /aggregate?groupBy=category
+            // Report the statistics of the analyzed courses grouped by a field
+            String groupBy = parseOneOf(params, "groupBy", GroupStats.GROUP_BY_FIELDS);
+            if (groupBy == null)
+                throw new BadRequestException("Missing parameter groupBy");
+            AggregateReport report = analyzer.getSnapshot().getAggregateReport(groupBy);
+            return newFixedLengthResponse(Response.Status.OK, MIME_JSON, report.toString());
         } else {
             result = AnalysisResult.getConfigurations(this.analyzer);
         }
 
-        return newFixedLengthResponse(result.toString());
+        // Stream the JSON so that large results are never built in memory as a whole
+        return newChunkedResponse(Response.Status.OK, MIME_JSON, result.toJsonStream());
     }
 
 
@@ -0,0 +1,13 @@
+package edu.cmu.cs.cs214.analyzer;
+
+/**
+ * Thrown when a query parameter of a request is missing or malformed, which is answered with
+ * 400 Bad Request.
+ */
+public class BadRequestException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,168 @@
+package edu.cmu.cs.cs214.analyzer.framework;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An {@link InputStream} that compresses another stream with gzip or deflate while it is read,
+ * so a large response can be compressed without holding it in memory as a whole. Compression
+ * uses a fast level, since repetitive JSON compresses well even so.
+ */
+public class CompressingInputStream extends InputStream {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final InputStream source;
+    private final boolean gzip;
+    private final Deflater deflater;
+    private final CRC32 crc;
+    private final byte[] input;
+    private byte[] output;
+    private int position;
+    private int limit;
+    private boolean finished;
+
+    /**
+     * Compress a stream.
+     *
+     * @param source The stream to compress, which is closed with this stream
+     * @param encoding {@link #GZIP} or {@link #DEFLATE}
+     * @throws IllegalArgumentException If the encoding is unknown
+     */
+    public CompressingInputStream(InputStream source, String encoding) {
+        if (!GZIP.equals(encoding) && !DEFLATE.equals(encoding))
+            throw new IllegalArgumentException("Unknown encoding " + encoding);
+        this.source = source;
+        this.gzip = GZIP.equals(encoding);
+        // gzip wraps raw deflate data in its own header and trailer, deflate is the zlib format
+        this.deflater = new Deflater(Deflater.BEST_SPEED, this.gzip);
+        this.crc = new CRC32();
+        this.input = new byte[BUFFER_SIZE];
+        this.output = new byte[BUFFER_SIZE];
+        this.position = 0;
+        this.limit = 0;
+        this.finished = false;
+        if (this.gzip) {
+            System.arraycopy(GZIP_HEADER, 0, this.output, 0, GZIP_HEADER.length);
+            this.limit = GZIP_HEADER.length;
+        }
+    }
+
+    /**
+     * Choose the encoding to respond with from an Accept-Encoding request header, preferring
+     * gzip over deflate when both are equally acceptable. Encodings with a q-value of 0 are
+     * refused.
+     *
+     * @param acceptEncoding The value of the header, or null if there is none
+     * @return {@link #GZIP}, {@link #DEFLATE}, or null if the response should not be compressed
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return null;
+        double gzipQuality = -1;
+        double deflateQuality = -1;
+        double anyQuality = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < tokens.length; i++) {
+                String parameter = tokens[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip"))
+                gzipQuality = quality;
+            else if (coding.equals(DEFLATE))
+                deflateQuality = quality;
+            else if (coding.equals("*"))
+                anyQuality = quality;
+        }
+        if (gzipQuality < 0)
+            gzipQuality = anyQuality;
+        if (deflateQuality < 0)
+            deflateQuality = anyQuality;
+        if (gzipQuality <= 0 && deflateQuality <= 0)
+            return null;
+        return gzipQuality >= deflateQuality ? GZIP : DEFLATE;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return this.output[this.position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int n = Math.min(len, this.limit - this.position);
+        System.arraycopy(this.output, this.position, b, off, n);
+        this.position += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.deflater.end();
+        this.source.close();
+    }
+
+    /**
+     * Compress more of the source until there are unread compressed bytes.
+     *
+     * @return Whether there are unread bytes, false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        while (this.position == this.limit) {
+            if (this.finished)
+                return false;
+            this.position = 0;
+            this.limit = 0;
+            if (this.deflater.needsInput() && !this.deflater.finished()) {
+                int n = this.source.read(this.input);
+                if (n < 0) {
+                    this.deflater.finish();
+                } else if (n > 0) {
+                    this.crc.update(this.input, 0, n);
+                    this.deflater.setInput(this.input, 0, n);
+                }
+            }
+            if (!this.deflater.finished()) {
+                this.limit = this.deflater.deflate(this.output);
+            } else {
+                this.finished = true;
+                if (this.gzip)
+                    writeTrailer();
+            }
+        }
+        return true;
+    }
+
+    private void writeTrailer() {
+        writeInt((int) this.crc.getValue());
+        writeInt((int) this.deflater.getBytesRead());
+    }
+
+    private void writeInt(int value) {
+        for (int i = 0; i < 4; i++)
+            this.output[this.limit++] = (byte) (value >>> (8 * i));
+    }
+}
@@ -0,0 +1,115 @@
+package edu.cmu.cs.cs214.analyzer.framework;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An {@link InputStream} that renders JSON lazily. The JSON is described as a sequence of
+ * steps, each writing a small part of the document (e.g., a single course), and a step only
+ * runs once the reader has consumed everything written by the previous ones. Memory use is
+ * therefore bounded by the largest step rather than by the whole document.
+ */
+public class JsonInputStream extends InputStream {
+    /**
+     * A step writing a part of the JSON document.
+     */
+    public interface Step {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    private final Iterator<? extends Step> steps;
+    private final PendingBytes pending;
+    private final JsonWriter writer;
+    private int position;
+
+    public JsonInputStream(Iterator<? extends Step> steps) {
+        this.steps = steps;
+        this.pending = new PendingBytes();
+        this.writer = new JsonWriter(pending);
+    }
+
+    /**
+     * Chains sequences of steps into one, without looking ahead into any of them.
+     *
+     * @param parts The sequences of steps, in order
+     * @return The chained steps
+     */
+    public static Iterator<Step> concat(List<? extends Iterator<? extends Step>> parts) {
+        Iterator<? extends Iterator<? extends Step>> remaining = parts.iterator();
+        return new Iterator<Step>() {
+            private Iterator<? extends Step> current = remaining.next();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && remaining.hasNext())
+                    current = remaining.next();
+                return current.hasNext();
+            }
+
+            @Override
+            public Step next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return pending.byteAt(position++) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int n = Math.min(len, pending.size() - position);
+        pending.copyTo(position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return pending.size() - position;
+    }
+
+    /**
+     * Runs steps until there are unread bytes or all steps are done.
+     *
+     * @return Whether there are unread bytes
+     */
+    private boolean fill() throws IOException {
+        while (position == pending.size()) {
+            if (!steps.hasNext())
+                return false;
+            pending.reset();
+            position = 0;
+            steps.next().write(writer);
+            writer.flush();
+        }
+        return true;
+    }
+
+    /**
+     * A byte buffer whose content can be read without copying it into a new array.
+     */
+    private static class PendingBytes extends ByteArrayOutputStream {
+        byte byteAt(int i) {
+            return buf[i];
+        }
+
+        void copyTo(int from, byte[] dest, int off, int len) {
+            System.arraycopy(buf, from, dest, off, len);
+        }
+    }
+}
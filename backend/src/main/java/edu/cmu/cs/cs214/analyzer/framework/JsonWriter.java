@@ -0,0 +1,235 @@
+package edu.cmu.cs.cs214.analyzer.framework;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A minimal streaming JSON writer. Values are written to the underlying stream as soon as they
+ * are given, so arbitrarily large responses can be produced without building them in memory.
+ * Separators between object members and array elements are inserted automatically.
+ */
+public class JsonWriter {
+    private static final int MAX_DEPTH = 64;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    // The byte stream under out, if any, for writing pre-rendered JSON without decoding it
+    private final OutputStream rawOut;
+    // Whether the object/array at each nesting level already has an element
+    private final boolean[] hasElement = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter(Writer out) {
+        this.out = out;
+        this.rawOut = null;
+    }
+
+    public JsonWriter(OutputStream out) {
+        // Draining the encoder before a raw value must not flush the stream itself
+        this.out = new OutputStreamWriter(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+            }
+        }, StandardCharsets.UTF_8);
+        this.rawOut = out;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     *
+     * @param name The member name
+     * @return This writer
+     * @throws IOException If the underlying stream fails
+     */
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        separate();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separate();
+        out.write("null");
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separate();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        separate();
+        out.write(Double.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a value that already is valid UTF-8 encoded JSON, e.g., a cached rendering of an
+     * object, as is.
+     *
+     * @param json The encoded JSON value
+     * @return This writer
+     * @throws IOException If the underlying stream fails
+     */
+    public JsonWriter rawValue(byte[] json) throws IOException {
+        separate();
+        if (rawOut == null) {
+            out.write(new String(json, StandardCharsets.UTF_8));
+        } else {
+            out.flush();
+            rawOut.write(json);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a list of strings as a JSON array.
+     *
+     * @param values The strings to write
+     * @return This writer
+     * @throws IOException If the underlying stream fails
+     */
+    public JsonWriter stringArray(List<String> values) throws IOException {
+        beginArray();
+        if (values != null)
+            for (String value : values)
+                value(value);
+        return endArray();
+    }
+
+    /**
+     * Writes a list of numbers as a JSON array.
+     *
+     * @param values The numbers to write
+     * @return This writer
+     * @throws IOException If the underlying stream fails
+     */
+    public JsonWriter doubleArray(double[] values) throws IOException {
+        beginArray();
+        if (values != null)
+            for (double value : values)
+                value(value);
+        return endArray();
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+        if (rawOut != null)
+            rawOut.flush();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        if (depth == MAX_DEPTH)
+            throw new IllegalStateException("JSON nested too deeply");
+        separate();
+        out.write(bracket);
+        hasElement[depth++] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0)
+            throw new IllegalStateException("No JSON object or array to close");
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    /**
+     * Writes a comma if the current value is not the first one of its object or array.
+     */
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasElement[depth - 1])
+                out.write(',');
+            hasElement[depth - 1] = true;
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        out.write('"');
+        if (s != null)
+            writeEscaped(out, s);
+        out.write('"');
+    }
+
+    /**
+     * Writes a string with all characters that JSON does not allow in strings escaped. The
+     * string itself is left untouched.
+     *
+     * @param out The writer to write to
+     * @param s The string to escape
+     * @throws IOException If the underlying stream fails
+     */
+    public static void writeEscaped(Writer out, String s) throws IOException {
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\')
+                continue;
+            out.write(s, start, i - start);
+            start = i + 1;
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\t': out.write("\\t"); break;
+                case '\b': out.write("\\b"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\f': out.write("\\f"); break;
+                default:
+                    out.write("\\u00");
+                    out.write(HEX_DIGITS[c >> 4]);
+                    out.write(HEX_DIGITS[c & 0xF]);
+            }
+        }
+        out.write(s, start, s.length() - start);
+    }
+}
@@ -1,9 +1,10 @@
 package edu.cmu.cs.cs214.analyzer.framework;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class Util {
-    public static <T> String arrayListToString(ArrayList<T> list, boolean withQuotes) {
+    public static <T> String arrayListToString(List<T> list, boolean withQuotes) {
         if (list == null) {
             return "[]";
         }
@@ -18,7 +19,7 @@ public class Util {
         return "[" + String.join(", ", inner) + "]";
     }
 
-    public static <T> String arrayListToString(ArrayList<T> list) {
+    public static <T> String arrayListToString(List<T> list) {
         return arrayListToString(list, false);
     }
 }
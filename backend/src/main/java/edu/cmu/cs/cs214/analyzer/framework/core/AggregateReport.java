@@ -0,0 +1,52 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
+
+/**
+ * A report of the analyzed courses grouped by one field, with the {@link GroupStats} of every
+ * group.
+ */
+public final class AggregateReport {
+    private final String groupBy;
+    private final List<GroupStats> groups;
+
+    AggregateReport(String groupBy, List<GroupStats> groups) {
+        this.groupBy = groupBy;
+        this.groups = groups;
+    }
+
+    public String getGroupBy() {
+        return this.groupBy;
+    }
+
+    public List<GroupStats> getGroups() {
+        return this.groups;
+    }
+
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject()
+            .name("groupBy").value(this.groupBy)
+            .name("groups").beginArray();
+        for (GroupStats group : this.groups)
+            group.writeJson(writer);
+        writer.endArray().endObject();
+    }
+
+    @Override
+    public String toString() {
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(out);
+            writeJson(writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+}
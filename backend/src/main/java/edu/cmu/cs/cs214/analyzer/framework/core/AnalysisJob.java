@@ -0,0 +1,211 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
+
+/**
+ * The analysis of one {@link DataPlugin}, which may run in the background. Its counters are
+ * updated while the analysis runs, and the courses analyzed so far can already be queried.
+ */
+public final class AnalysisJob {
+    /**
+     * The states of a job.
+     */
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED, SKIPPED
+    }
+
+    private final long id;
+    private final String pluginName;
+    private final boolean refresh;
+    private final AtomicLong coursesFetched;
+    private final AtomicLong coursesParsed;
+    private final AtomicLong coursesAnalyzed;
+    // The courses pulled from a StreamingDataPlugin, which have been fetched and parsed at least
+    private final AtomicLong coursesPulled;
+    private final CountDownLatch finished;
+    private volatile Status status;
+    private volatile String error;
+    private volatile long startTime;
+    private volatile long endTime;
+    // Whether the job fetches all courses of its plugin, which replace the analyzed ones, and
+    // whether it has replaced them yet
+    private volatile boolean fetchingAll;
+    private volatile boolean replaced;
+
+    AnalysisJob(long id, String pluginName, boolean refresh) {
+        this.id = id;
+        this.pluginName = pluginName;
+        this.refresh = refresh;
+        this.coursesFetched = new AtomicLong();
+        this.coursesParsed = new AtomicLong();
+        this.coursesAnalyzed = new AtomicLong();
+        this.coursesPulled = new AtomicLong();
+        this.finished = new CountDownLatch(1);
+        this.status = Status.QUEUED;
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    public String getPluginName() {
+        return this.pluginName;
+    }
+
+    /**
+     * Returns whether the job refreshes the courses of a plugin that has been analyzed, rather
+     * than analyzing it for the first time.
+     *
+     * @return Whether the job is a refresh
+     */
+    public boolean isRefresh() {
+        return this.refresh;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Returns why the job failed.
+     *
+     * @return The error, or null unless the job failed
+     */
+    public String getError() {
+        return this.error;
+    }
+
+    public long getCoursesFetched() {
+        return Math.max(this.coursesFetched.get(), this.coursesPulled.get());
+    }
+
+    public long getCoursesParsed() {
+        return Math.max(this.coursesParsed.get(), this.coursesPulled.get());
+    }
+
+    public long getCoursesAnalyzed() {
+        return this.coursesAnalyzed.get();
+    }
+
+    /**
+     * Returns how long the job has been running, or ran.
+     *
+     * @return The time in milliseconds, or 0 if it hasn't started
+     */
+    public long getElapsedMillis() {
+        long start = this.startTime;
+        if (start == 0)
+            return 0;
+        long end = this.endTime;
+        return (end == 0 ? System.currentTimeMillis() : end) - start;
+    }
+
+    public boolean isFinished() {
+        return this.finished.getCount() == 0;
+    }
+
+    /**
+     * Waits until the job has finished, failed or been skipped.
+     *
+     * @throws InterruptedException If the waiting thread is interrupted
+     */
+    public void awaitCompletion() throws InterruptedException {
+        this.finished.await();
+    }
+
+    void start() {
+        this.startTime = System.currentTimeMillis();
+        this.status = Status.RUNNING;
+    }
+
+    void fetchAll() {
+        this.fetchingAll = true;
+    }
+
+    boolean isFetchingAll() {
+        return this.fetchingAll;
+    }
+
+    void markReplaced() {
+        this.replaced = true;
+    }
+
+    boolean hasReplaced() {
+        return this.replaced;
+    }
+
+    void addFetched(long numCourses) {
+        this.coursesFetched.addAndGet(numCourses);
+    }
+
+    void addParsed(long numCourses) {
+        this.coursesParsed.addAndGet(numCourses);
+    }
+
+    void addPulled(long numCourses) {
+        this.coursesPulled.addAndGet(numCourses);
+    }
+
+    void addAnalyzed(long numCourses) {
+        this.coursesAnalyzed.addAndGet(numCourses);
+    }
+
+    void finish() {
+        // Plugins that don't report progress have fetched and parsed everything they returned
+        this.coursesFetched.accumulateAndGet(this.coursesAnalyzed.get(), Math::max);
+        this.coursesParsed.accumulateAndGet(this.coursesAnalyzed.get(), Math::max);
+        end(Status.DONE);
+    }
+
+    void fail(String error) {
+        this.error = error;
+        end(Status.FAILED);
+    }
+
+    void skip() {
+        end(Status.SKIPPED);
+    }
+
+    private void end(Status status) {
+        this.endTime = System.currentTimeMillis();
+        this.status = status;
+        this.finished.countDown();
+    }
+
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject()
+            .name("id").value(this.id)
+            .name("plugin").value(this.pluginName)
+            .name("refresh").value(this.refresh)
+            .name("status").value(this.status.name())
+            .name("coursesFetched").value(getCoursesFetched())
+            .name("coursesParsed").value(getCoursesParsed())
+            .name("coursesAnalyzed").value(getCoursesAnalyzed())
+            .name("elapsedMs").value(getElapsedMillis())
+            .name("error");
+        if (this.error == null)
+            writer.nullValue();
+        else
+            writer.value(this.error);
+        writer.endObject();
+    }
+
+    @Override
+    public String toString() {
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(out);
+            writeJson(writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+}
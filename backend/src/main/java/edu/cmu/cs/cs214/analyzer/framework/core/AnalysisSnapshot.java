@@ -0,0 +1,501 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cmu.cs.cs214.analyzer.framework.JsonInputStream;
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
+
+/**
+ * An immutable view of the analyzed courses and instructors. The framework publishes a new
+ * snapshot after every merge, so queries can read a snapshot without locking and never observe
+ * a half-merged plugin.
+ *
+ * Courses are stored in {@link CourseSegment}s, and every segment holds the courses of one
+ * plugin, so the courses of a plugin are replaced without touching those of other plugins.
+ * Courses are listed plugin by plugin, in the order the plugins were first analyzed, and in the
+ * order they were analyzed within a plugin. The lists of courses a snapshot returns are
+ * read-only views of the stored rows, which materialize a fresh {@link Course} copy each time
+ * a course is read, and whose JSON is served from the rows by {@link #getJsonSteps(List)}
+ * without materializing them at all.
+ */
+public final class AnalysisSnapshot {
+    static final AnalysisSnapshot EMPTY = new AnalysisSnapshot(
+        0, new LinkedHashMap<String, List<CourseSegment>>(), VersionedRegistry.<Instructor>empty(), CourseAggregates.EMPTY);
+
+    private final long version;
+    // The segments of each plugin by name
+    private final Map<String, List<CourseSegment>> pluginSegments;
+    // The segments of all plugins, in the order courses are listed
+    private final List<CourseSegment> segments;
+    // The position of the first course of each segment, followed by the total number of courses,
+    // counting only the courses that are not deleted
+    private final int[] segmentStarts;
+    private final List<Course> courses;
+    // The instructors by name, which are referred to by their slots
+    private final VersionedRegistry<Instructor> instructorRegistry;
+    private final CourseAggregates aggregates;
+
+    AnalysisSnapshot(
+        long version,
+        LinkedHashMap<String, List<CourseSegment>> pluginSegments,
+        VersionedRegistry<Instructor> instructorRegistry,
+        CourseAggregates aggregates
+    ) {
+        this.version = version;
+        this.pluginSegments = Collections.unmodifiableMap(pluginSegments);
+        this.segments = Collections.unmodifiableList(flatten(pluginSegments));
+        this.segmentStarts = new int[segments.size() + 1];
+        for (int i = 0; i < segments.size(); i++)
+            this.segmentStarts[i + 1] = this.segmentStarts[i] + segments.get(i).getLiveSize();
+        this.courses = new CourseList();
+        this.instructorRegistry = instructorRegistry;
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * Returns the version of this snapshot, which increases every time the framework publishes
+     * new data.
+     *
+     * @return The version of this snapshot
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    public List<Course> getCourses() {
+        return this.courses;
+    }
+
+    public List<Instructor> getInstructors() {
+        return this.instructorRegistry.values();
+    }
+
+    /**
+     * Looks up an analyzed instructor by name.
+     *
+     * @param name The name of the instructor
+     * @return The instructor, or null if no analyzed course has this instructor
+     */
+    public Instructor getInstructor(String name) {
+        return this.instructorRegistry.get(name);
+    }
+
+    /**
+     * Gets the statistics of the courses of this snapshot grouped by a field. A course with
+     * several instructors counts towards the group of each of them.
+     *
+     * @param groupBy One of {@link GroupStats#GROUP_BY_FIELDS}
+     * @return The groups, in the order their first course was analyzed
+     * @throws IllegalArgumentException If the field is unknown
+     */
+    public List<GroupStats> getGroups(String groupBy) {
+        return this.aggregates.getGroups(groupBy);
+    }
+
+    /**
+     * Reports the statistics of the courses of this snapshot grouped by a field.
+     *
+     * @param groupBy One of {@link GroupStats#GROUP_BY_FIELDS}
+     * @return The report
+     * @throws IllegalArgumentException If the field is unknown
+     */
+    public AggregateReport getAggregateReport(String groupBy) {
+        return new AggregateReport(groupBy, getGroups(groupBy));
+    }
+
+    CourseAggregates getAggregates() {
+        return this.aggregates;
+    }
+
+    VersionedRegistry<Instructor> getInstructorRegistry() {
+        return this.instructorRegistry;
+    }
+
+    /**
+     * Filters the courses of this snapshot based on the provided {@link CourseFilter}.
+     *
+     * @param filter The {@link CourseFilter} to apply
+     * @return The matched courses, sorted as the filter asks or else in the order they were analyzed
+     */
+    public List<Course> filterCourses(CourseFilter filter) {
+        return toCourses(selectCourses(filter));
+    }
+
+    /**
+     * Selects the references of the courses matched by the provided {@link CourseFilter}, in
+     * the order {@link #filterCourses(CourseFilter)} returns them.
+     */
+    long[] selectCourses(CourseFilter filter) {
+        if (filter.getSortField() != null)
+            return selectSortedCourses(filter, null);
+        return selectCourses(filter, 0);
+    }
+
+    /**
+     * Gets a page of the courses matched by the provided {@link CourseFilter}, each page holding
+     * up to {@link CourseFilter#getSize()} courses. Without a sort field, a page only checks the
+     * courses after the previous page.
+     *
+     * @param filter The {@link CourseFilter} to apply, the same for all pages
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @return The page
+     * @throws IllegalArgumentException If the cursor is of another snapshot
+     */
+    public ResultPage<Course> pageCourses(CourseFilter filter, Cursor after) {
+        checkCursor(after);
+        long total = after == null ? countCourses(filter) : after.getTotal();
+        long[] refs = filter.getSortField() != null
+            ? selectSortedCourses(filter, after)
+            : selectCourses(filter, after == null ? 0 : after.getLastRef() + 1);
+
+        long returned = (after == null ? 0 : after.getReturned()) + refs.length;
+        Cursor next = null;
+        if (refs.length > 0 && returned < total) {
+            long lastRef = refs[refs.length - 1];
+            double lastKey = filter.getSortField() == null
+                ? 0 : filter.getSortKey(this.segments.get((int) (lastRef >>> 32)), (int) lastRef);
+            next = new Cursor(this.version, total, returned, lastRef, lastKey);
+        }
+        return new ResultPage<Course>(toCourses(refs), total, next);
+    }
+
+    /**
+     * Selects the first matched courses in the order of analysis, starting from a reference.
+     */
+    private long[] selectCourses(CourseFilter filter, long fromRef) {
+        ReferenceList result = new ReferenceList();
+        scanCourses(filter, fromRef, (segment, row, ref) -> {
+            if (result.size() >= filter.getSize())
+                return false;
+            result.add(ref);
+            return true;
+        });
+        return result.toArray();
+    }
+
+    /**
+     * Selects the best matched courses by the sort field of the filter, after the last course
+     * of the cursor if there is one. Only the sort keys of the matched courses are compared.
+     */
+    private long[] selectSortedCourses(CourseFilter filter, Cursor after) {
+        TopKSelector selector = new TopKSelector(filter.getSize(), filter.isDescending());
+        scanCourses(filter, 0, (segment, row, ref) -> {
+            double key = filter.getSortKey(segment, row);
+            if (after == null || selector.isBetter(after.getLastKey(), after.getLastRef(), key, ref))
+                selector.offer(key, ref);
+            return true;
+        });
+        return selector.drainSorted();
+    }
+
+    private long countCourses(CourseFilter filter) {
+        long[] count = new long[1];
+        scanCourses(filter, 0, (segment, row, ref) -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    /**
+     * Visits the courses matching the filter in the order of analysis, starting from the given
+     * reference. A reference combines the index of a segment (high 32 bits) and a row in it.
+     */
+    private void scanCourses(CourseFilter filter, long fromRef, RowVisitor visitor) {
+        String[] keywords = filter.getKeywords();
+        CourseFilter.RowMatcher matcher = null;
+        int fromSegment = (int) (fromRef >>> 32);
+        for (int i = fromSegment; i < this.segments.size(); i++) {
+            CourseSegment segment = this.segments.get(i);
+            if (matcher == null)  // All segments share one dictionary
+                matcher = filter.newRowMatcher(segment.getDictionary());
+            int fromRow = i == fromSegment ? (int) fromRef : 0;
+            int[] candidates = segment.getIndex().candidates(keywords);
+            if (candidates == null) {  // No keyword to look up, so check every course
+                for (int row = fromRow; row < segment.size(); row++)
+                    if (!segment.isDeleted(row) && matcher.isMatched(segment, row)
+                        && !visitor.visit(segment, row, ((long) i << 32) | row))
+                        return;
+            } else {
+                int start = Arrays.binarySearch(candidates, fromRow);
+                for (int j = start >= 0 ? start : -start - 1; j < candidates.length; j++) {
+                    int row = candidates[j];
+                    if (!segment.isDeleted(row) && matcher.isMatched(segment, row)
+                        && !visitor.visit(segment, row, ((long) i << 32) | row))
+                        return;
+                }
+            }
+        }
+    }
+
+    List<Course> toCourses(long[] refs) {
+        return new SelectedCourses(refs);
+    }
+
+    /**
+     * Describes the JSON of a list of courses as one step per course. The courses of a list
+     * returned by a snapshot are written from the cached JSON of their stored rows, and other
+     * courses are rendered from their fields.
+     *
+     * @param courses The courses
+     * @return The steps, in the order of the courses
+     */
+    public static Iterator<JsonInputStream.Step> getJsonSteps(List<Course> courses) {
+        if (!(courses instanceof StoredCourses))
+            return courses.stream().map(course -> (JsonInputStream.Step) course::writeJson).iterator();
+        StoredCourses stored = (StoredCourses) courses;
+        return new Iterator<JsonInputStream.Step>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < stored.size();
+            }
+
+            @Override
+            public JsonInputStream.Step next() {
+                int current = index++;
+                return writer -> stored.writeJson(current, writer);
+            }
+        };
+    }
+
+    private void checkCursor(Cursor cursor) {
+        if (cursor != null && cursor.getVersion() != this.version)
+            throw new IllegalArgumentException("Cursor of snapshot " + cursor.getVersion()
+                                               + " used with snapshot " + this.version);
+    }
+
+    /**
+     * Reports how much memory dictionary encoding saves on the courses of this snapshot.
+     *
+     * @return The {@link MemoryReport}
+     */
+    public MemoryReport getMemoryReport() {
+        return MemoryReport.of(this.segments);
+    }
+
+    List<CourseSegment> getSegments() {
+        return this.segments;
+    }
+
+    /**
+     * Returns the segments of each plugin by name, in the order the plugins were first analyzed.
+     */
+    Map<String, List<CourseSegment>> getPluginSegments() {
+        return this.pluginSegments;
+    }
+
+    /**
+     * Lists the segments of all plugins one plugin after another.
+     *
+     * @param pluginSegments The segments of each plugin
+     * @return The segments
+     */
+    static ArrayList<CourseSegment> flatten(Map<String, List<CourseSegment>> pluginSegments) {
+        ArrayList<CourseSegment> segments = new ArrayList<CourseSegment>();
+        for (List<CourseSegment> segmentsOfPlugin : pluginSegments.values())
+            segments.addAll(segmentsOfPlugin);
+        return segments;
+    }
+
+    /**
+     * Filters the instructors of this snapshot based on the provided {@link InstructorFilter}.
+     *
+     * @param filter The {@link InstructorFilter} to apply
+     * @return The matched instructors, sorted as the filter asks or else in the order they were
+     *         first analyzed
+     */
+    public List<Instructor> filterInstructors(InstructorFilter filter) {
+        return toInstructors(selectInstructors(filter, null));
+    }
+
+    /**
+     * Selects the slots of the instructors matched by the provided {@link InstructorFilter},
+     * in the order {@link #filterInstructors(InstructorFilter)} returns them.
+     */
+    long[] selectInstructors(InstructorFilter filter) {
+        return selectInstructors(filter, null);
+    }
+
+    /**
+     * Gets a page of the instructors matched by the provided {@link InstructorFilter}, each page
+     * holding up to {@link InstructorFilter#getSize()} instructors.
+     *
+     * @param filter The {@link InstructorFilter} to apply, the same for all pages
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @return The page
+     * @throws IllegalArgumentException If the cursor is of another snapshot
+     */
+    public ResultPage<Instructor> pageInstructors(InstructorFilter filter, Cursor after) {
+        checkCursor(after);
+        long total = after == null ? countInstructors(filter) : after.getTotal();
+        long[] refs = selectInstructors(filter, after);
+
+        long returned = (after == null ? 0 : after.getReturned()) + refs.length;
+        Cursor next = null;
+        if (refs.length > 0 && returned < total) {
+            long lastRef = refs[refs.length - 1];
+            double lastKey = filter.getSortField() == null
+                ? 0 : filter.getSortKey(this.instructorRegistry.getSlot((int) lastRef));
+            next = new Cursor(this.version, total, returned, lastRef, lastKey);
+        }
+        return new ResultPage<Instructor>(toInstructors(refs), total, next);
+    }
+
+    /**
+     * Selects the slots of the first matched instructors after the last instructor of the
+     * cursor, if there is one.
+     */
+    private long[] selectInstructors(InstructorFilter filter, Cursor after) {
+        if (filter.getSortField() != null) {
+            TopKSelector selector = new TopKSelector(filter.getSize(), filter.isDescending());
+            for (int i = 0; i < this.instructorRegistry.getEnd(); i++) {
+                Instructor instructor = this.instructorRegistry.getSlot(i);
+                if (instructor == null || !filter.isMatched(instructor))
+                    continue;
+                double key = filter.getSortKey(instructor);
+                if (after == null || selector.isBetter(after.getLastKey(), after.getLastRef(), key, i))
+                    selector.offer(key, i);
+            }
+            return selector.drainSorted();
+        }
+
+        ReferenceList result = new ReferenceList();
+        int from = after == null ? 0 : (int) after.getLastRef() + 1;
+        for (int i = from; i < this.instructorRegistry.getEnd() && result.size() < filter.getSize(); i++) {
+            Instructor instructor = this.instructorRegistry.getSlot(i);
+            if (instructor != null && filter.isMatched(instructor))
+                result.add(i);
+        }
+        return result.toArray();
+    }
+
+    private long countInstructors(InstructorFilter filter) {
+        long count = 0;
+        for (Instructor instructor : getInstructors())
+            if (filter.isMatched(instructor))
+                count++;
+        return count;
+    }
+
+    List<Instructor> toInstructors(long[] refs) {
+        ArrayList<Instructor> result = new ArrayList<Instructor>(refs.length);
+        for (long ref : refs)
+            result.add(this.instructorRegistry.getSlot((int) ref));
+        return result;
+    }
+
+    /**
+     * Visits a matched course.
+     */
+    private interface RowVisitor {
+        /**
+         * @return Whether to continue visiting
+         */
+        boolean visit(CourseSegment segment, int row, long ref);
+    }
+
+    /**
+     * A growable list of references.
+     */
+    private static final class ReferenceList {
+        private long[] refs = new long[16];
+        private int size;
+
+        void add(long ref) {
+            if (size == refs.length)
+                refs = Arrays.copyOf(refs, size * 2);
+            refs[size++] = ref;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(refs, size);
+        }
+    }
+
+    /**
+     * A read-only list of stored courses, materializing each course when it is read.
+     */
+    private abstract class StoredCourses extends AbstractList<Course> {
+        /**
+         * Returns the reference of a course, i.e., the index of its segment in the upper and
+         * its row in the lower 32 bits, so both are looked up together.
+         */
+        abstract long getRef(int index);
+
+        @Override
+        public Course get(int index) {
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException(index);
+            long ref = getRef(index);
+            return segments.get((int) (ref >>> 32)).getCourse((int) ref);
+        }
+
+        void writeJson(int index, JsonWriter writer) throws IOException {
+            long ref = getRef(index);
+            writer.rawValue(segments.get((int) (ref >>> 32)).getJson((int) ref));
+        }
+    }
+
+    /**
+     * All courses, in the order they were analyzed.
+     */
+    private final class CourseList extends StoredCourses {
+        private int findSegment(int index) {
+            int segment = Arrays.binarySearch(segmentStarts, index);
+            // Skip empty segments starting at the same position
+            if (segment >= 0) {
+                while (segmentStarts[segment + 1] == index)
+                    segment++;
+            } else {
+                segment = -segment - 2;
+            }
+            return segment;
+        }
+
+        @Override
+        long getRef(int index) {
+            int segment = findSegment(index);
+            return ((long) segment << 32) | segments.get(segment).getLiveRow(index - segmentStarts[segment]);
+        }
+
+        @Override
+        public int size() {
+            return segmentStarts[segmentStarts.length - 1];
+        }
+    }
+
+    /**
+     * The courses of selected references.
+     */
+    private final class SelectedCourses extends StoredCourses {
+        private final long[] refs;
+
+        SelectedCourses(long[] refs) {
+            this.refs = refs;
+        }
+
+        @Override
+        long getRef(int index) {
+            return this.refs[index];
+        }
+
+        @Override
+        public int size() {
+            return this.refs.length;
+        }
+    }
+}
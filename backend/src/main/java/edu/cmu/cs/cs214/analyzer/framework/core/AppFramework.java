@@ -11,4 +11,25 @@ public interface AppFramework {
      * @param text The text to display.
      */
     void setFooterText(String text);
+
+    /**
+     * Reports that a plugin being analyzed has fetched more course records from its source.
+     * Reports of a plugin that is not being analyzed, and reports to frameworks that don't
+     * track progress, are ignored.
+     *
+     * @param plugin The reporting plugin.
+     * @param numCourses The number of newly fetched courses.
+     */
+    default void reportFetched(DataPlugin plugin, int numCourses) {
+    }
+
+    /**
+     * Reports that a plugin being analyzed has parsed more fetched courses. Frameworks that
+     * don't track progress ignore it.
+     *
+     * @param plugin The reporting plugin.
+     * @param numCourses The number of newly parsed courses.
+     */
+    default void reportParsed(DataPlugin plugin, int numCourses) {
+    }
 }
@@ -1,6 +1,24 @@
 package edu.cmu.cs.cs214.analyzer.framework.core;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The framework core implementation.
@@ -8,21 +26,101 @@ import java.util.ArrayList;
 public class AppFrameworkImpl implements AppFramework {
     private final String defaultName = "A course analysis framework";
     private final String defaultFooter = "Default footer";
-    private String footer;
-    private DataPlugin currentPlugin;
-    private ArrayList<DataPlugin> registeredPlugins;
-    private ArrayList<DataPlugin> analyzedPlugins;
-    private ArrayList<Course> analyzedCourses;
-    private ArrayList<Course> filteredCourses;
-    private ArrayList<Instructor> analyzedInstructors;
-    private ArrayList<Instructor> filteredInstructors;
+    private final int maxIngestionThreads = 4;
+    private final int maxPagedSnapshots = 8;
+    private final int maxJobs = 64;
+    private final int maxCachedQueries = 1024;
+    private final long maxCachedQueryBytes = 64L << 20;
+    private static final int defaultStreamBatchSize = 65536;
+    // The most courses merged into one mapped segment, so segment files stay well below the
+    // 2 GB that can be mapped at once
+    private final int maxMappedSegmentSize = 1 << 20;
+    // The number of courses pulled from a StreamingDataPlugin before they are analyzed
+    private final int streamBatchSize;
+    // The longest time courses pulled from a StreamingDataPlugin wait before they are analyzed
+    private final long maxStreamBatchNanos = TimeUnit.SECONDS.toNanos(1);
+    private volatile String footer;
+    private volatile DataPlugin currentPlugin;
+    private CopyOnWriteArrayList<DataPlugin> registeredPlugins;
+    // The names of the plugins that have been analyzed, in the order they were first analyzed
+    private final LinkedHashSet<String> analyzedPlugins;
+    private volatile AnalysisSnapshot snapshot;
+    private final StringDictionary dictionary;
+    // The store of the segment files, or null to keep segments on the heap
+    private final SegmentStore segmentStore;
+    // Snapshots that issued cursors, most recently used last, so later pages see the same data
+    private final LinkedHashMap<Long, AnalysisSnapshot> pagedSnapshots;
+    // Results of repeated filter queries on the current snapshot
+    private final QueryCache queryCache;
+    // Analyses running in the background, on daemon threads so they never keep the server alive
+    private final ExecutorService jobExecutor;
+    private final LinkedHashMap<Long, AnalysisJob> jobs;
+    // The queued or running job of each plugin, by plugin name
+    private final Map<String, AnalysisJob> runningJobs;
+    // The analyzed data version of each IncrementalDataPlugin, by plugin name
+    private final Map<String, String> dataVersions;
+    private long lastJobId;
 
     public AppFrameworkImpl() {
+        this(defaultStreamBatchSize);
+    }
+
+    /**
+     * Creates a framework that keeps the analyzed courses in memory-mapped segment files, see
+     * {@link #AppFrameworkImpl(int, Path)}.
+     *
+     * @param segmentDirectory The directory for the segment files
+     */
+    public AppFrameworkImpl(Path segmentDirectory) {
+        this(defaultStreamBatchSize, segmentDirectory);
+    }
+
+    /**
+     * Creates a framework that analyzes the courses of {@link StreamingDataPlugin}s in batches
+     * of the given size. Larger batches are merged faster, smaller ones take less memory while
+     * ingesting and become queryable sooner.
+     *
+     * @param streamBatchSize The number of courses per batch
+     */
+    public AppFrameworkImpl(int streamBatchSize) {
+        this(streamBatchSize, null);
+    }
+
+    /**
+     * Creates a framework that keeps the analyzed courses and their reviews in immutable,
+     * memory-mapped segment files in the given directory instead of on the heap, so the data
+     * that can be analyzed is bounded by the disk rather than the maximum heap size. Courses
+     * are read from the mapped files when they are filtered or returned, and the operating
+     * system keeps the files that are read often in memory.
+     *
+     * The directory is only used by this framework, which deletes the segment files in it
+     * when it writes its first segment, and whenever a segment file is no longer needed.
+     *
+     * @param streamBatchSize The number of courses per batch of a {@link StreamingDataPlugin}
+     * @param segmentDirectory The directory for the segment files, or null to keep the
+     *        courses on the heap
+     */
+    public AppFrameworkImpl(int streamBatchSize, Path segmentDirectory) {
+        if (streamBatchSize <= 0)
+            throw new IllegalArgumentException("Invalid batch size " + streamBatchSize);
+        this.streamBatchSize = streamBatchSize;
         footer = defaultFooter;
-        registeredPlugins = new ArrayList<DataPlugin>();
-        analyzedPlugins = new ArrayList<DataPlugin>();
-        analyzedCourses = new ArrayList<Course>();
-        analyzedInstructors = new ArrayList<Instructor>();
+        registeredPlugins = new CopyOnWriteArrayList<DataPlugin>();
+        analyzedPlugins = new LinkedHashSet<String>();
+        snapshot = AnalysisSnapshot.EMPTY;
+        dictionary = StringDictionary.getShared();
+        segmentStore = segmentDirectory == null ? null : new SegmentStore(segmentDirectory, dictionary);
+        pagedSnapshots = new LinkedHashMap<Long, AnalysisSnapshot>(16, 0.75f, true);
+        queryCache = new QueryCache(maxCachedQueries, maxCachedQueryBytes);
+        jobExecutor = Executors.newFixedThreadPool(maxIngestionThreads, runnable -> {
+            Thread thread = new Thread(runnable, "analysis-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+        jobs = new LinkedHashMap<Long, AnalysisJob>();
+        runningJobs = new ConcurrentHashMap<String, AnalysisJob>();
+        dataVersions = new ConcurrentHashMap<String, String>();
+        lastJobId = 0;
     }
 
     /**
@@ -32,95 +130,660 @@ public class AppFrameworkImpl implements AppFramework {
      */
     public void registerPlugin(DataPlugin plugin) {
         registeredPlugins.add(plugin);
+        plugin.onRegister(this);
     }
 
     /**
-     * Starts a new analysis for the provided {@link DataPlugin}
+     * Starts a new analysis for the provided {@link DataPlugin} and waits until it is done
      * 
      * @param plugin The {@link DataPlugin} to analyze
      */
     public void startNewAnalysis(DataPlugin plugin) {
-        // Check if we have analyzed courses from this plugin
-        for(DataPlugin analyzedPlugin : this.analyzedPlugins)
-            if(analyzedPlugin.getName().equals(plugin.getName()))
-                return;
-        this.analyzedPlugins.add(plugin);
+        runJob(newJob(plugin, false), plugin);
+    }
 
-        if (currentPlugin != plugin)  // Switching to a new plugin's analysis
-            currentPlugin = plugin;
+    /**
+     * Refreshes the analysis of the provided {@link DataPlugin} and waits until it is done. A
+     * plugin that hasn't been analyzed is analyzed in full. The courses of an
+     * {@link IncrementalDataPlugin} that changed since the analyzed version replace the analyzed
+     * courses of the plugin with the same ids, and the instructors and groups of the replaced
+     * courses are updated by the difference. All courses of any other plugin replace all of its
+     * analyzed courses. Courses of other plugins are never replaced, even if their ids are the same.
+     * 
+     * @param plugin The {@link DataPlugin} to refresh
+     */
+    public void refreshAnalysis(DataPlugin plugin) {
+        runJob(newJob(plugin, true), plugin);
+    }
+
+    /**
+     * Starts analyses for all registered {@link DataPlugin}s at once and waits until they are
+     * done. Plugins fetch and analyze their courses concurrently on the bounded job pool, and
+     * their courses are merged into the analyzed courses and instructors as soon as they are
+     * ready, so this returns after the slowest plugin.
+     */
+    public void startAllAnalyses() {
+        try {
+            for (AnalysisJob job : submitAllAnalyses())
+                job.awaitCompletion();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts a new analysis for the provided {@link DataPlugin} in the background. Courses
+     * a {@link StreamingDataPlugin} hands over can be queried while the analysis goes on.
+     * 
+     * @param plugin The {@link DataPlugin} to analyze
+     * @return The {@link AnalysisJob}, which is skipped if the plugin has been analyzed
+     */
+    public AnalysisJob submitAnalysis(DataPlugin plugin) {
+        return submitJob(newJob(plugin, false), plugin);
+    }
+
+    /**
+     * Starts refreshing the analysis of the provided {@link DataPlugin} in the background, as
+     * {@link #refreshAnalysis(DataPlugin)} does.
+     * 
+     * @param plugin The {@link DataPlugin} to refresh
+     * @return The {@link AnalysisJob}, which is skipped if the plugin is being analyzed already
+     */
+    public AnalysisJob submitRefresh(DataPlugin plugin) {
+        return submitJob(newJob(plugin, true), plugin);
+    }
+
+    private AnalysisJob submitJob(AnalysisJob job, DataPlugin plugin) {
+        if (!job.isFinished())
+            jobExecutor.execute(() -> runJob(job, plugin));
+        return job;
+    }
+
+    /**
+     * Starts analyses for all registered {@link DataPlugin}s that haven't been analyzed in the
+     * background.
+     * 
+     * @return The {@link AnalysisJob}s of the plugins
+     */
+    public List<AnalysisJob> submitAllAnalyses() {
+        ArrayList<AnalysisJob> jobs = new ArrayList<AnalysisJob>();
+        for (DataPlugin plugin : getRegisteredPlugins()) {
+            AnalysisJob job = submitAnalysis(plugin);
+            if (job.getStatus() != AnalysisJob.Status.SKIPPED)
+                jobs.add(job);
+        }
+        return jobs;
+    }
+
+    /**
+     * Looks up an analysis job.
+     * 
+     * @param id The id of the job
+     * @return The {@link AnalysisJob}, or null if there is no such job, or it is long finished
+     */
+    public AnalysisJob getJob(long id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    /**
+     * Returns the recent analysis jobs, oldest first.
+     * 
+     * @return The {@link AnalysisJob}s
+     */
+    public List<AnalysisJob> getJobs() {
+        synchronized (jobs) {
+            return new ArrayList<AnalysisJob>(jobs.values());
+        }
+    }
+
+    /**
+     * Creates and records the job of analyzing a plugin. A job that is not a refresh is skipped
+     * right away if the plugin has been analyzed, and a refresh is skipped if another job of
+     * the plugin is queued or running.
+     */
+    private AnalysisJob newJob(DataPlugin plugin, boolean refresh) {
+        boolean first = claimPlugin(plugin);
+        AnalysisJob job;
+        synchronized (jobs) {
+            job = new AnalysisJob(++lastJobId, plugin.getName(), refresh && !first);
+            jobs.put(job.getId(), job);
+            // Forget the oldest finished jobs, so jobs don't pile up over time
+            Iterator<AnalysisJob> iterator = jobs.values().iterator();
+            while (jobs.size() > maxJobs && iterator.hasNext())
+                if (iterator.next().isFinished())
+                    iterator.remove();
+        }
+        if (!first && !refresh)
+            job.skip();
+        else if (runningJobs.putIfAbsent(plugin.getName(), job) != null)
+            job.skip();
+        return job;
+    }
+
+    /**
+     * Fetches the courses of a plugin and analyzes them. The courses of a {@link StreamingDataPlugin} are pulled
+     * and analyzed batch by batch; the list of any other plugin is already in memory as a whole,
+     * so it is analyzed as one batch. A refresh of an {@link IncrementalDataPlugin} only fetches
+     * the courses changed since the analyzed version; otherwise all courses are fetched, and the
+     * first batch replaces the analyzed courses of the plugin.
+     */
+    private void runJob(AnalysisJob job, DataPlugin plugin) {
+        if (job.isFinished())
+            return;
+        job.start();
+        Throwable failure = null;
+        try {
+            // Read the version first, so courses changed while fetching are fetched again
+            String version = plugin instanceof IncrementalDataPlugin
+                ? ((IncrementalDataPlugin) plugin).getDataVersion() : null;
+            String analyzedVersion = job.isRefresh() ? dataVersions.get(plugin.getName()) : null;
+            if (analyzedVersion != null && version != null) {
+                if (!analyzedVersion.equals(version))
+                    analyzeCourses(job, plugin, ((IncrementalDataPlugin) plugin).getCoursesChangedSince(analyzedVersion));
+            } else {
+                job.fetchAll();
+                if (plugin instanceof StreamingDataPlugin)
+                    analyzeStream(job, plugin, ((StreamingDataPlugin) plugin).streamCourses());
+                else
+                    analyzeCourses(job, plugin, plugin.getCourses());
+                // A plugin that has no courses any more has none analyzed either
+                if (!job.hasReplaced())
+                    mergeCourses(job, plugin, new ArrayList<Course>());
+            }
+            if (version != null)
+                dataVersions.put(plugin.getName(), version);
+            else
+                dataVersions.remove(plugin.getName());
+            job.finish();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            System.out.println("Error: Failed to analyze plugin " + plugin.getName() + " - " + e);
+            // Errors such as running out of memory still reach the thread
+            if (e instanceof Error)
+                throw (Error) e;
+        } finally {
+            try {
+                // A plugin whose first analysis failed keeps none of its courses and can be
+                // analyzed again
+                if (failure != null && !job.isRefresh()) {
+                    removeCourses(plugin);
+                    releasePlugin(plugin);
+                }
+            } finally {
+                // The job ends however it failed, so nobody waits for it forever
+                if (failure != null)
+                    job.fail(failure.toString());
+                runningJobs.remove(plugin.getName(), job);
+            }
+        }
+    }
+
+    /**
+     * Pulls courses in batches and analyzes each batch before pulling the next one, so at most
+     * one batch of courses is held besides the analyzed data. A batch is analyzed before it is
+     * full at the end of a group of courses, and once its first course has waited too long.
+     */
+    private void analyzeStream(AnalysisJob job, DataPlugin plugin, Iterator<Course> iterator) {
+        ArrayList<Course> batch = new ArrayList<Course>();
+        long batchStart = 0;
+        while (iterator.hasNext()) {
+            Course course = iterator.next();
+            if (course != null) {
+                if (batch.isEmpty())
+                    batchStart = System.nanoTime();
+                batch.add(course);
+                job.addPulled(1);
+            }
+            if (!batch.isEmpty() && (course == null || batch.size() >= streamBatchSize
+                                     || System.nanoTime() - batchStart >= maxStreamBatchNanos)) {
+                analyzeCourses(job, plugin, batch);
+                batch = new ArrayList<Course>();
+            }
+        }
+        if (!batch.isEmpty())
+            analyzeCourses(job, plugin, batch);
+    }
+
+    /**
+     * Prepares courses and merges them into the analyzed data, which publishes them to queries.
+     */
+    private void analyzeCourses(AnalysisJob job, DataPlugin plugin, ArrayList<Course> courses) {
+        if (courses == null)
+            return;
+        prepareCourses(courses);
+        mergeCourses(job, plugin, courses);
+        job.addAnalyzed(courses.size());
+    }
+
+    /**
+     * Marks the plugin as analyzed unless a plugin with the same name already has been.
+     *
+     * @param plugin The {@link DataPlugin} about to be analyzed
+     * @return Whether the caller should go on analyzing the plugin
+     */
+    private boolean claimPlugin(DataPlugin plugin) {
+        synchronized (this.analyzedPlugins) {
+            return this.analyzedPlugins.add(plugin.getName());
+        }
+    }
+
+    /**
+     * Marks a claimed plugin as not analyzed again.
+     *
+     * @param plugin The {@link DataPlugin} whose analysis failed
+     */
+    private void releasePlugin(DataPlugin plugin) {
+        synchronized (this.analyzedPlugins) {
+            this.analyzedPlugins.remove(plugin.getName());
+        }
+    }
+
+    /**
+     * Saves the analyzed data, with the analyzed plugins and their data versions, to a binary
+     * file that {@link #loadSnapshot(Path)} restores much faster than analyzing the plugins
+     * again. Analyses may go on while saving; the file holds the latest published snapshot.
+     *
+     * @param file The file to write, which is replaced at once when it is complete
+     * @return The version of the saved snapshot
+     * @throws IOException If the file cannot be written
+     */
+    public long saveSnapshot(Path file) throws IOException {
+        // Read the versions before the snapshot, so a saved version is never newer than the
+        // saved courses, and the plugins under the merge lock, so every plugin with courses in
+        // the snapshot is saved as analyzed
+        Map<String, String> versions = new HashMap<String, String>(dataVersions);
+        AnalysisSnapshot saved;
+        LinkedHashMap<String, String> pluginVersions = new LinkedHashMap<String, String>();
+        synchronized (this) {
+            saved = this.snapshot;
+            synchronized (this.analyzedPlugins) {
+                for (String name : this.analyzedPlugins)
+                    pluginVersions.put(name, versions.get(name));
+            }
+        }
+        new SnapshotFile(saved, pluginVersions).write(file, dictionary);
+        return saved.getVersion();
+    }
 
-        // Get courses from plugin and analyze them
-        ArrayList<Course> courses = currentPlugin.getCourses();
+    /**
+     * Restores the analyzed data saved by {@link #saveSnapshot(Path)}, which is published with
+     * the version it was saved with and served as it was saved. The analysis of the plugins of
+     * the snapshot is skipped from now on, and they are only refreshed when asked to, except
+     * for registered {@link IncrementalDataPlugin}s whose data version is no longer the saved
+     * one, which start refreshing in the background. Refreshes of such a plugin only fetch the
+     * courses changed since the saved data version.
+     *
+     * @param file The file to read
+     * @return The refresh {@link AnalysisJob}s of the registered plugins whose saved data is stale
+     * @throws IOException If the file cannot be read, is corrupt, or has another format version
+     * @throws IllegalStateException If a plugin has been analyzed already
+     */
+    public List<AnalysisJob> loadSnapshot(Path file) throws IOException {
+        SnapshotFile loaded = SnapshotFile.read(file, dictionary, segmentStore);
+        synchronized (this) {
+            synchronized (this.analyzedPlugins) {
+                if (!this.analyzedPlugins.isEmpty() || this.snapshot.getVersion() != 0)
+                    throw new IllegalStateException("Cannot load a snapshot after analyzing plugins");
+                this.analyzedPlugins.addAll(loaded.getPluginVersions().keySet());
+            }
+            for (Map.Entry<String, String> plugin : loaded.getPluginVersions().entrySet())
+                if (plugin.getValue() != null)
+                    dataVersions.put(plugin.getKey(), plugin.getValue());
+            queryCache.invalidate(loaded.getSnapshot().getVersion());
+            this.snapshot = loaded.getSnapshot();
+        }
+
+        ArrayList<AnalysisJob> refreshes = new ArrayList<AnalysisJob>();
+        for (DataPlugin plugin : getRegisteredPlugins()) {
+            String savedVersion = loaded.getPluginVersions().get(plugin.getName());
+            if (savedVersion != null && plugin instanceof IncrementalDataPlugin
+                && !savedVersion.equals(((IncrementalDataPlugin) plugin).getDataVersion()))
+                refreshes.add(submitRefresh(plugin));
+        }
+        return refreshes;
+    }
+
+    /**
+     * Computes the rate and workload distributions of the courses, and their estimatedWorkload
+     * and rate if they are not specified. It only touches the given courses, so plugins can be
+     * prepared concurrently.
+     *
+     * @param courses The courses to prepare
+     */
+    private void prepareCourses(ArrayList<Course> courses) {
+        if (courses == null)
+            return;
         for (Course course : courses) {
-            // Compute estimatedWorkload and rate if they are not specified
+            course.computeDistributions();
             if (course.estimatedWorkload < 0)
-                course.computeWorkload();
+                course.applyWorkload();
             if (course.rate < 0)
-                course.computeCourseRate();
+                course.applyCourseRate();
+        }
+    }
+
+    /**
+     * Merges prepared courses into the analyzed courses and instructors and publishes the result
+     * as a new {@link AnalysisSnapshot}. Merges are serialized, so concurrent analyses never
+     * interleave their updates. Only the instructors of the merged courses are copied before
+     * they are updated, into a new version of the instructor registry that shares the rest with
+     * the current snapshot, so readers of the current snapshot are never affected and a merge
+     * costs no more than the courses it merges.
+     *
+     * The courses are merged into the segments of their plugin only. The first merge of a job
+     * that fetches all courses of the plugin replaces all of its analyzed courses, and later
+     * merges of the job add to them. The courses of a job that only fetches the changed courses
+     * replace the analyzed courses of the plugin with the same ids, which are deleted first, and
+     * their contributions to their instructors and groups are removed, so the work depends on
+     * the number of new courses rather than on the number of analyzed ones. Several new courses
+     * with the same id are all kept.
+     *
+     * @param job The {@link AnalysisJob} of the courses
+     * @param plugin The {@link DataPlugin} the courses come from
+     * @param courses The prepared courses
+     */
+    private synchronized void mergeCourses(AnalysisJob job, DataPlugin plugin, ArrayList<Course> courses) {
+        boolean replace = job.isFetchingAll() && !job.hasReplaced();
+        if (replace)
+            job.markReplaced();
+        mergeCourses(plugin, courses, replace, !job.isFetchingAll());
+    }
+
+    /**
+     * Takes back all analyzed courses of a plugin, which a failed first analysis may have merged.
+     *
+     * @param plugin The {@link DataPlugin} whose courses are removed
+     */
+    private void removeCourses(DataPlugin plugin) {
+        mergeCourses(plugin, new ArrayList<Course>(), true, false);
+    }
+
+    /**
+     * Merges prepared courses into the segments of their plugin, as
+     * {@link #mergeCourses(AnalysisJob, DataPlugin, ArrayList)} describes.
+     *
+     * @param plugin The {@link DataPlugin} the courses come from
+     * @param courses The prepared courses
+     * @param replace Whether the courses replace all analyzed courses of the plugin
+     * @param replaceIds Whether the courses replace the analyzed courses with the same ids
+     */
+    private synchronized void mergeCourses(DataPlugin plugin, ArrayList<Course> courses, boolean replace, boolean replaceIds) {
+        if (currentPlugin != plugin)  // Switching to a new plugin's analysis
+            currentPlugin = plugin;
+        AnalysisSnapshot current = this.snapshot;
+        List<CourseSegment> publishedSegments = current.getPluginSegments().getOrDefault(
+            plugin.getName(), Collections.<CourseSegment>emptyList());
+        if (courses.isEmpty() && !(replace && !publishedSegments.isEmpty()))  // Nothing changes, so cached results stay valid
+            return;
+
+        VersionedRegistry<Instructor>.Editor instructorRegistry = current.getInstructorRegistry().edit();
+        Map<String, Instructor> updatedInstructors = new HashMap<String, Instructor>();
+        ArrayList<CourseSegment> segments = new ArrayList<CourseSegment>();
+        List<Course> replaced = Collections.emptyList();
+        if (replace) {
+            replaced = getLiveCourses(publishedSegments);
+        } else {
+            segments.addAll(publishedSegments);
+            if (replaceIds) {
+                Set<Integer> ids = new HashSet<Integer>();
+                for (Course course : courses)
+                    ids.add(course.id);
+                replaced = deleteCourses(segments, ids);
+            }
+        }
 
-            this.analyzedCourses.add(course);
+        for (Course course : replaced) {
+            // Take back what the replaced course added to its instructors
+            for (String instructorName : course.instructorNames) {
+                Instructor instructor = getUpdatedInstructor(instructorName, instructorRegistry, updatedInstructors);
+                instructor.removeCourse(course.name);
+                instructor.removeOrganization(course.organizationName);
+                instructor.removeStudents(course.totalStudents);
+                course.removeInstructorRate(instructor);
+            }
+        }
 
+        for (Course course : courses) {
             // Update info of all instructors in this course
             for (String instructorName : course.instructorNames) {
-                boolean isNewInstructor = true;
-                for (Instructor instructor : this.analyzedInstructors) {
-                    if (instructor.getName().equals(instructorName)) {  // An old instructor
-                        isNewInstructor = false;
-                        instructor.addCourse(course.name);
-                        instructor.addOrganization(course.organizationName);
-                        instructor.addStudents(course.totalStudents);
-                        course.computeInstructorRate(instructor);
-                        break;
-                    }
-                }
+                Instructor instructor = getUpdatedInstructor(instructorName, instructorRegistry, updatedInstructors);
+                instructor.addCourse(course.name);
+                instructor.addOrganization(course.organizationName);
+                instructor.addStudents(course.totalStudents);
+                course.computeInstructorRate(instructor);
+            }
+        }
 
-                if (isNewInstructor) {  // A new instructor
-                    Instructor instructor = new Instructor(instructorName);
-                    instructor.addCourse(course.name);
-                    instructor.addOrganization(course.organizationName);
-                    instructor.addStudents(course.totalStudents);
-                    course.computeInstructorRate(instructor);
-                    this.analyzedInstructors.add(instructor);
-                }
+        // Instructors left without courses are no longer analyzed
+        for (Instructor instructor : updatedInstructors.values())
+            if (instructor.getCourseNum() <= 0)
+                instructorRegistry.remove(instructor.getName());
+
+        // Store the new courses in their own segment, then merge the newest segments while they
+        // are at least as large as their predecessor, so segment sizes stay roughly doubling and
+        // every course is copied only a logarithmic number of times
+        if (!courses.isEmpty())
+            segments.add(storeSegments(List.of(new CourseSegment(courses, dictionary))));
+        while (segments.size() >= 2
+               && segments.get(segments.size() - 1).getLiveSize() >= segments.get(segments.size() - 2).getLiveSize()
+               && (segmentStore == null || segments.get(segments.size() - 1).getLiveSize()
+                   + segments.get(segments.size() - 2).getLiveSize() <= maxMappedSegmentSize)) {
+            CourseSegment last = segments.remove(segments.size() - 1);
+            CourseSegment previous = segments.remove(segments.size() - 1);
+            segments.add(storeSegments(List.of(previous, last)));
+        }
+
+        // Only the plugin's own segments change; a plugin analyzed for the first time comes last
+        LinkedHashMap<String, List<CourseSegment>> pluginSegments
+            = new LinkedHashMap<String, List<CourseSegment>>(current.getPluginSegments());
+        if (segments.isEmpty())
+            pluginSegments.remove(plugin.getName());
+        else
+            pluginSegments.put(plugin.getName(), segments);
+
+        // Group statistics are updated with the changed courses only, instead of being recomputed
+        CourseAggregates aggregates = current.getAggregates().update(replaced, courses,
+                                                                     AnalysisSnapshot.flatten(pluginSegments));
+        AnalysisSnapshot published = new AnalysisSnapshot(current.getVersion() + 1, pluginSegments, instructorRegistry.build(), aggregates);
+        // Invalidate cached results before publishing, so no result of the old snapshot is cached
+        // once the new one is visible
+        queryCache.invalidate(published.getVersion());
+        this.snapshot = published;
+    }
+
+    /**
+     * Gets an instructor that can be updated by the current merge, copying the published one
+     * the first time.
+     */
+    private static Instructor getUpdatedInstructor(
+        String instructorName,
+        VersionedRegistry<Instructor>.Editor instructorRegistry,
+        Map<String, Instructor> updatedInstructors
+    ) {
+        Instructor instructor = updatedInstructors.get(instructorName);
+        if (instructor == null) {
+            Instructor published = instructorRegistry.get(instructorName);
+            instructor = published == null ? new Instructor(instructorName) : new Instructor(published);
+            instructorRegistry.put(instructorName, instructor);
+            updatedInstructors.put(instructorName, instructor);
+        }
+        return instructor;
+    }
+
+    /**
+     * Reads the courses of segments that are not deleted.
+     */
+    private static List<Course> getLiveCourses(List<CourseSegment> segments) {
+        ArrayList<Course> courses = new ArrayList<Course>();
+        for (CourseSegment segment : segments)
+            for (int row = 0; row < segment.size(); row++)
+                if (!segment.isDeleted(row))
+                    courses.add(segment.getCourse(row));
+        return courses;
+    }
+
+    /**
+     * Deletes the analyzed courses with the given ids by replacing their segments with copies
+     * in which they are deleted. Segments without courses left are dropped, and segments with
+     * more deleted than other rows are compacted.
+     *
+     * @param segments The segments of one plugin, which are updated in place
+     * @param ids The ids of the courses to delete
+     * @return The deleted courses
+     */
+    private List<Course> deleteCourses(ArrayList<CourseSegment> segments, Set<Integer> ids) {
+        ArrayList<Course> deleted = new ArrayList<Course>();
+        ListIterator<CourseSegment> segmentIterator = segments.listIterator();
+        while (segmentIterator.hasNext()) {
+            CourseSegment segment = segmentIterator.next();
+            ArrayList<Integer> rows = new ArrayList<Integer>();
+            for (int id : ids)
+                for (int row : segment.findRows(id))
+                    rows.add(row);
+            if (rows.isEmpty())
+                continue;
+            int[] deletedRows = new int[rows.size()];
+            for (int i = 0; i < deletedRows.length; i++) {
+                deletedRows[i] = rows.get(i);
+                deleted.add(segment.getCourse(deletedRows[i]));
+            }
+            CourseSegment updated = segment.delete(deletedRows);
+            if (updated.getLiveSize() == 0)
+                segmentIterator.remove();
+            else if (updated.getLiveSize() < updated.size() / 2)
+                segmentIterator.set(storeSegments(List.of(updated)));
+            else
+                segmentIterator.set(updated);
+        }
+        return deleted;
+    }
+
+    /**
+     * Concatenates segments into one without their deleted rows. With a segment store, the rows
+     * are written from the segments to a new mapped segment file, so they are never copied onto
+     * the heap; otherwise they are copied into a new segment on the heap.
+     *
+     * @param parts The segments, in order
+     * @return The concatenated segment, which is the only part itself if nothing changes
+     * @throws UncheckedIOException If the segment file cannot be written
+     */
+    private CourseSegment storeSegments(List<CourseSegment> parts) {
+        if (segmentStore != null) {
+            try {
+                return segmentStore.write(parts, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
+        ArrayList<CourseSegment> compacted = new ArrayList<CourseSegment>(parts.size());
+        for (CourseSegment part : parts)
+            compacted.add(part.compact());
+        return compacted.size() == 1 ? compacted.get(0) : new CourseSegment(compacted);
     }
 
     /**
-     * Filter the analyzed courses based on the provided {@link CourseFilter}
+     * Filter the analyzed courses based on the provided {@link CourseFilter}. The matches of
+     * repeated filters are cached until new courses are analyzed.
      * 
      * @param filter The {@link CourseFilter} to apply
+     * @return The matched courses
      */
-    public void filterCourses(CourseFilter filter) {
-        this.filteredCourses = new ArrayList<Course>();
-        int currSize = 0;
-        for (Course course : this.analyzedCourses) {
-            if (currSize >= filter.getSize())
-                return;
-            
-            if (filter.isMatched(course)) {
-                this.filteredCourses.add(course);
-                currSize++;
-            }
+    public List<Course> filterCourses(CourseFilter filter) {
+        AnalysisSnapshot current = this.snapshot;
+        String key = filter.getCacheKey();
+        long[] refs = queryCache.get(key, current.getVersion());
+        if (refs == null) {
+            refs = current.selectCourses(filter);
+            queryCache.put(key, current.getVersion(), refs);
         }
+        return current.toCourses(refs);
     }
 
     /**
-     * Filter the analyzed instructors based on the provided {@link InstructorFilter}
+     * Filter the analyzed instructors based on the provided {@link InstructorFilter}. The
+     * matches of repeated filters are cached until new courses are analyzed.
      * 
      * @param filter The {@link InstructorFilter} to apply
+     * @return The matched instructors
      */
-    public void filterInstructors(InstructorFilter filter) {
-        this.filteredInstructors = new ArrayList<Instructor>();
-        int currSize = 0;
-        for (Instructor instructor : this.analyzedInstructors) {
-            if (currSize >= filter.getSize())
-                return;
-            
-            if (filter.isMatched(instructor)) {
-                this.filteredInstructors.add(instructor);
-                currSize++;
-            }
+    public List<Instructor> filterInstructors(InstructorFilter filter) {
+        AnalysisSnapshot current = this.snapshot;
+        String key = filter.getCacheKey();
+        long[] refs = queryCache.get(key, current.getVersion());
+        if (refs == null) {
+            refs = current.selectInstructors(filter);
+            queryCache.put(key, current.getVersion(), refs);
+        }
+        return current.toInstructors(refs);
+    }
+
+    /**
+     * Returns the hit and miss counters of the cache of filter query results.
+     * 
+     * @return The {@link QueryCacheStats}
+     */
+    public QueryCacheStats getQueryCacheStats() {
+        return queryCache.getStats();
+    }
+
+    /**
+     * Get a page of the analyzed courses matched by the provided {@link CourseFilter}. All
+     * pages of one cursor are served from the snapshot the first page was served from.
+     * 
+     * @param filter The {@link CourseFilter} to apply
+     * @param cursor The encoded cursor returned with the previous page, or null for the first page
+     * @return The page
+     * @throws IllegalArgumentException If the cursor is malformed
+     * @throws ExpiredCursorException If the snapshot of the cursor is no longer retained
+     */
+    public ResultPage<Course> pageCourses(CourseFilter filter, String cursor) {
+        Cursor after = cursor == null ? null : Cursor.decode(cursor);
+        AnalysisSnapshot pinned = getPagedSnapshot(after);
+        ResultPage<Course> page = pinned.pageCourses(filter, after);
+        if (page.getNext() != null)
+            retainPagedSnapshot(pinned);
+        return page;
+    }
+
+    /**
+     * Get a page of the analyzed instructors matched by the provided {@link InstructorFilter}.
+     * All pages of one cursor are served from the snapshot the first page was served from.
+     * 
+     * @param filter The {@link InstructorFilter} to apply
+     * @param cursor The encoded cursor returned with the previous page, or null for the first page
+     * @return The page
+     * @throws IllegalArgumentException If the cursor is malformed
+     * @throws ExpiredCursorException If the snapshot of the cursor is no longer retained
+     */
+    public ResultPage<Instructor> pageInstructors(InstructorFilter filter, String cursor) {
+        Cursor after = cursor == null ? null : Cursor.decode(cursor);
+        AnalysisSnapshot pinned = getPagedSnapshot(after);
+        ResultPage<Instructor> page = pinned.pageInstructors(filter, after);
+        if (page.getNext() != null)
+            retainPagedSnapshot(pinned);
+        return page;
+    }
+
+    private AnalysisSnapshot getPagedSnapshot(Cursor cursor) {
+        AnalysisSnapshot current = this.snapshot;
+        if (cursor == null || cursor.getVersion() == current.getVersion())
+            return current;
+        synchronized (pagedSnapshots) {
+            AnalysisSnapshot pinned = pagedSnapshots.get(cursor.getVersion());
+            if (pinned == null)
+                throw new ExpiredCursorException(cursor.getVersion());
+            return pinned;
+        }
+    }
+
+    private void retainPagedSnapshot(AnalysisSnapshot pinned) {
+        synchronized (pagedSnapshots) {
+            pagedSnapshots.put(pinned.getVersion(), pinned);
+            // Forget the least recently paged snapshots, so old data doesn't stay in memory
+            while (pagedSnapshots.size() > maxPagedSnapshots)
+                pagedSnapshots.remove(pagedSnapshots.keySet().iterator().next());
         }
     }
 
@@ -130,6 +793,20 @@ public class AppFrameworkImpl implements AppFramework {
         footer = text;
     }
 
+    @Override
+    public void reportFetched(DataPlugin plugin, int numCourses) {
+        AnalysisJob job = runningJobs.get(plugin.getName());
+        if (job != null)
+            job.addFetched(numCourses);
+    }
+
+    @Override
+    public void reportParsed(DataPlugin plugin, int numCourses) {
+        AnalysisJob job = runningJobs.get(plugin.getName());
+        if (job != null)
+            job.addParsed(numCourses);
+    }
+
     /* getter for Gui purposes*/
     public String getAnalysisName() {
         if (currentPlugin == null) {
@@ -144,26 +821,28 @@ public class AppFrameworkImpl implements AppFramework {
     }
 
     public ArrayList<DataPlugin> getRegisteredPlugins() {
-        return registeredPlugins;
+        return new ArrayList<DataPlugin>(registeredPlugins);
     }
 
     public boolean hasStarted() {
         return currentPlugin != null;
     }
 
-    public ArrayList<Course> getAnalyzedCourses() {
-        return this.analyzedCourses;
-    }
-
-    public ArrayList<Course> getFilteredCourses() {
-        return this.filteredCourses;
+    /**
+     * Returns the latest published snapshot of the analyzed data. Callers that read the data
+     * more than once should hold on to one snapshot so that they see consistent results.
+     *
+     * @return The latest {@link AnalysisSnapshot}
+     */
+    public AnalysisSnapshot getSnapshot() {
+        return this.snapshot;
     }
 
-    public ArrayList<Instructor> getAnalyzedInstructors() {
-        return this.analyzedInstructors;
+    public List<Course> getAnalyzedCourses() {
+        return this.snapshot.getCourses();
     }
 
-    public ArrayList<Instructor> getFilteredInstructors() {
-        return this.filteredInstructors;
+    public List<Instructor> getAnalyzedInstructors() {
+        return this.snapshot.getInstructors();
     }
 }
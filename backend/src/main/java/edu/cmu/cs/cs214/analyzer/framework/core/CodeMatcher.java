@@ -0,0 +1,47 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.util.Arrays;
+
+/**
+ * Matches dictionary codes against a substring keyword. Each distinct string is checked at most
+ * once and its verdict remembered by code, so matching a stored course compares ints instead of
+ * searching the same string again for every course that repeats it.
+ *
+ * A matcher belongs to a single query and is not thread-safe.
+ */
+final class CodeMatcher {
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCHED = 1;
+    private static final byte UNMATCHED = 2;
+
+    private final StringDictionary dictionary;
+    private final String keyword;
+    private byte[] verdicts;
+
+    CodeMatcher(StringDictionary dictionary, String keyword) {
+        this.dictionary = dictionary;
+        this.keyword = keyword;
+        this.verdicts = new byte[16];
+    }
+
+    /**
+     * Check whether the string of a code contains the keyword.
+     *
+     * @param code The code of the string
+     * @return Whether the string contains the keyword; false for null
+     */
+    boolean matches(int code) {
+        if (code == StringDictionary.NULL_CODE)
+            return false;
+        if (this.keyword.isEmpty())
+            return true;
+        if (code >= this.verdicts.length)
+            this.verdicts = Arrays.copyOf(this.verdicts, Math.max(code + 1, this.verdicts.length * 2));
+        byte verdict = this.verdicts[code];
+        if (verdict == UNKNOWN) {
+            verdict = this.dictionary.decode(code).contains(this.keyword) ? MATCHED : UNMATCHED;
+            this.verdicts[code] = verdict;
+        }
+        return verdict == MATCHED;
+    }
+}
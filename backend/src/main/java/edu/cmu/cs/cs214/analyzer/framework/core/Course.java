@@ -1,9 +1,26 @@
 package edu.cmu.cs.cs214.analyzer.framework.core;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 
-import edu.cmu.cs.cs214.analyzer.framework.Util;
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
 
+/**
+ * A course provided by a {@link DataPlugin}. Its fields are public and may be changed at any
+ * time, so its JSON is rendered from them whenever it is serialized. The courses the framework
+ * returns are copies of stored rows, whose JSON the framework caches itself (see
+ * {@link AnalysisSnapshot#getJsonSteps(java.util.List)}).
+ *
+ * The rate and workload distributions, and the rate distribution of each instructor, are kept as
+ * running summaries of the reviews. Reviews appended to {@link #reviews}, preferably through
+ * {@link #addReview(CourseReview)}, are added to the summaries on the next computation, so
+ * recomputing after each new review costs constant time. Code that changes or removes existing
+ * reviews must call {@link #computeDistributions()} to summarize all reviews again.
+ */
 public class Course {
     public int id;
     public int year;
@@ -20,55 +37,126 @@ public class Course {
     public double rate;
     public double price;
     public ArrayList<CourseReview> reviews;
+    private DistributionSketch rateDistribution;
+    private DistributionSketch workloadDistribution;
+    // The review list the distributions summarize, and how many of its reviews they include
+    private ArrayList<CourseReview> summarizedReviews;
+    private int numSummarized;
+    // The rate distribution of each instructor by position, and how many reviews each includes
+    private DistributionSketch[] instructorRateDistributions;
+    private int[] numInstructorSummarized;
 
     /**
-     * Compute the course's workload based on its reviews
+     * Add a review to the course and to its rate and workload distributions, in constant time
+     *
+     * @param review The review to add
      */
-    public void computeWorkload() {
-        this.estimatedWorkload = -1;
+    public void addReview(CourseReview review) {
+        if (this.reviews == null)
+            this.reviews = new ArrayList<CourseReview>();
+        this.reviews.add(review);
+        summarizeNewReviews();
+    }
 
-        // Return if there is no info of total weeks
-        if (this.totalWeeks <= 0)
+    /**
+     * Summarize the course rates and weekly workloads of all of the course's reviews in
+     * {@link DistributionSketch}es, in a single pass over the reviews
+     */
+    public void computeDistributions() {
+        this.rateDistribution = DistributionSketch.forRates();
+        this.workloadDistribution = DistributionSketch.forWorkloads();
+        this.summarizedReviews = this.reviews;
+        this.numSummarized = 0;
+        this.instructorRateDistributions = null;
+        this.numInstructorSummarized = null;
+        summarizeNewReviews();
+    }
+
+    /**
+     * Add the reviews appended since the last summary to the distributions, or summarize all
+     * reviews again if the review list has been replaced or shortened
+     */
+    private void summarizeNewReviews() {
+        if (this.rateDistribution == null || this.reviews != this.summarizedReviews
+            || (this.reviews != null && this.reviews.size() < this.numSummarized)) {
+            computeDistributions();
             return;
-        
-        // Sum up all valid workloads mentioned in reviews
-        double sumWorkloadPerWeek = 0;
-        int countValidEntries = 0;
-        for (CourseReview review: this.reviews) {
-            if (review.workloadPerWeek > 0) {
-                sumWorkloadPerWeek += review.workloadPerWeek;
-                countValidEntries++;
-            }
         }
-
-        // Return if no review records workload per week
-        if (countValidEntries == 0)
+        if (this.reviews == null || this.reviews.size() == this.numSummarized)
             return;
-        
-        this.estimatedWorkload = (sumWorkloadPerWeek / countValidEntries) * this.totalWeeks;
+        for (int i = this.numSummarized; i < this.reviews.size(); i++) {
+            CourseReview review = this.reviews.get(i);
+            if (review.courseRate >= 0 && review.courseRate <= 5)
+                this.rateDistribution.add(review.courseRate);
+            if (review.workloadPerWeek > 0)
+                this.workloadDistribution.add(review.workloadPerWeek);
+        }
+        this.numSummarized = this.reviews.size();
+    }
+
+    /**
+     * Compute the course's workload based on its reviews
+     */
+    public void computeWorkload() {
+        summarizeNewReviews();
+        applyWorkload();
     }
 
-    
     /**
      * Compute the course's rate based on its reviews
      */
     public void computeCourseRate() {
-        this.rate = -1;
+        summarizeNewReviews();
+        applyCourseRate();
+    }
 
-        // Sum up all valid course rates mentioned in reviews
-        double sumRate = 0;
-        int countValidRates = 0;
-        for (CourseReview review: this.reviews) {
-            if (review.courseRate >= 0 && review.courseRate <= 5) {
-                sumRate += review.courseRate;
-                countValidRates++;
-            }
-        }
+    /**
+     * Set the course's workload to the mean weekly workload of its reviews times its total weeks
+     */
+    void applyWorkload() {
+        this.estimatedWorkload = -1;
+
+        // Return if there is no info of total weeks, or no review records workload per week
+        if (this.totalWeeks <= 0 || this.workloadDistribution.getCount() == 0)
+            return;
+        this.estimatedWorkload = this.workloadDistribution.getMean() * this.totalWeeks;
+    }
+
+    /**
+     * Set the course's rate to the mean course rate of its reviews
+     */
+    void applyCourseRate() {
+        this.rate = -1;
 
         // Return if no review records course rate
-        if (countValidRates == 0)
-            return;       
-        this.rate = sumRate / countValidRates;
+        if (this.rateDistribution.getCount() == 0)
+            return;
+        this.rate = this.rateDistribution.getMean();
+    }
+
+    /**
+     * Returns the distribution of the course rates of the reviews, summarizing the reviews
+     * first if they haven't been, so courses whose distributions are never read never build
+     * them. It is updated in place when reviews are added.
+     *
+     * @return The distribution, or null if the course has no reviews and it hasn't been computed
+     */
+    public DistributionSketch getRateDistribution() {
+        if (this.reviews != null)
+            summarizeNewReviews();
+        return this.rateDistribution;
+    }
+
+    /**
+     * Returns the distribution of the weekly workloads of the reviews, summarizing the reviews
+     * first if they haven't been. It is updated in place when reviews are added.
+     *
+     * @return The distribution, or null if the course has no reviews and it hasn't been computed
+     */
+    public DistributionSketch getWorkloadDistribution() {
+        if (this.reviews != null)
+            summarizeNewReviews();
+        return this.workloadDistribution;
     }
 
     /**
@@ -89,62 +177,117 @@ public class Course {
         if(instrIdx == -1)  // This course doesn't have the given instructor
             return;
 
-        // Sum up all valid instructor rates mentioned in reviews
-        double sumRate = 0;
-        int countValidRates = 0;
-        for (CourseReview review: this.reviews) {
-            double rate = review.instructorRates.get(instrIdx);
-            if (rate >= 0 && rate <= 5) {
-                sumRate += rate;
-                countValidRates++;
-            }
-        }
+        instructor.updateRate(getInstructorRateDistribution(instrIdx));
+    }
 
-        // Return if no review records this instructor's rate
-        if (countValidRates == 0)
+    /**
+     * Remove the rates {@link #computeInstructorRate(Instructor)} added to an instructor, when
+     * this course is replaced
+     * 
+     * @param instructor The {@link Instructor} to update
+     */
+    public void removeInstructorRate(Instructor instructor) {
+        int instrIdx = this.instructorNames.indexOf(instructor.getName());
+        if (instrIdx == -1)  // This course doesn't have the given instructor
             return;
-        
-        double avgRate = sumRate / countValidRates;
-        instructor.updateRate(avgRate, countValidRates);
+
+        instructor.removeRate(getInstructorRateDistribution(instrIdx));
+    }
+
+    /**
+     * Returns the running distribution of the rates of the instructor at a position, adding the
+     * reviews appended since the last call. It is only built when it is first needed, since
+     * many instructors' rates are never computed.
+     */
+    private DistributionSketch getInstructorRateDistribution(int instrIdx) {
+        summarizeNewReviews();
+        if (this.instructorRateDistributions == null) {
+            this.instructorRateDistributions = new DistributionSketch[this.instructorNames.size()];
+            this.numInstructorSummarized = new int[this.instructorNames.size()];
+        } else if (instrIdx >= this.instructorRateDistributions.length) {
+            int length = Math.max(instrIdx + 1, this.instructorNames.size());
+            this.instructorRateDistributions = Arrays.copyOf(this.instructorRateDistributions, length);
+            this.numInstructorSummarized = Arrays.copyOf(this.numInstructorSummarized, length);
+        }
+        DistributionSketch rates = this.instructorRateDistributions[instrIdx];
+        if (rates == null) {
+            rates = DistributionSketch.forRates();
+            this.instructorRateDistributions[instrIdx] = rates;
+        }
+
+        // Summarize the valid instructor rates mentioned in the new reviews
+        for (int i = this.numInstructorSummarized[instrIdx]; i < this.numSummarized; i++) {
+            double rate = this.reviews.get(i).instructorRates[instrIdx];
+            if (rate >= 0 && rate <= 5)
+                rates.add(rate);
+        }
+        this.numInstructorSummarized[instrIdx] = this.numSummarized;
+        return rates;
+    }
+
+    /**
+     * Write this course as a JSON object
+     * 
+     * @param writer The {@link JsonWriter} to write to
+     * @throws IOException If the writer fails
+     */
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.rawValue(toJsonBytes());
+    }
+
+    /**
+     * Get the UTF-8 encoded JSON of this course, rendered from its current fields
+     * 
+     * @return The JSON of this course
+     */
+    public byte[] toJsonBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            JsonWriter writer = new JsonWriter(out);
+            renderJson(writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // Never thrown by a ByteArrayOutputStream
+        }
+        return out.toByteArray();
+    }
+
+    private void renderJson(JsonWriter writer) throws IOException {
+        writer.beginObject()
+            .name("id").value(this.id)
+            .name("year").value(this.year)
+            .name("name").value(this.name)
+            .name("description").value(this.description)
+            .name("instructorNames").stringArray(this.instructorNames)
+            .name("organizationName").value(this.organizationName)
+            .name("category").value(this.category)
+            .name("level").value(this.level)
+            .name("totalStudents").value(this.totalStudents)
+            .name("totalHours").value(this.totalHours)
+            .name("totalWeeks").value(this.totalWeeks)
+            .name("estimatedWorkload").value(this.estimatedWorkload)
+            .name("rate").value(this.rate)
+            .name("price").value(this.price)
+            .name("rateDistribution");
+        writeDistribution(writer, getRateDistribution());
+        writer.name("workloadDistribution");
+        writeDistribution(writer, getWorkloadDistribution());
+        writer.name("reviews").beginArray();
+        if (this.reviews != null)
+            for (CourseReview review : this.reviews)
+                review.writeJson(writer);
+        writer.endArray().endObject();
+    }
+
+    private static void writeDistribution(JsonWriter writer, DistributionSketch distribution) throws IOException {
+        if (distribution == null)
+            writer.nullValue();
+        else
+            distribution.writeJson(writer);
     }
 
     @Override
     public String toString() {
-        // Escape strings
-        this.name = escapeString(this.name);
-        this.description = escapeString(this.description);
-        for (int i = 0; i < this.instructorNames.size(); i++)
-			this.instructorNames.set(i, escapeString(this.instructorNames.get(i)));
-        this.organizationName = escapeString(this.organizationName);
-        this.category = escapeString(this.category);
-        this.level = escapeString(this.level);
-
-        return "{ " +
-            "\"id\": " + this.id + ", " +
-            "\"year\": " + this.year + ", " +
-            "\"name\": \"" + this.name + "\", " +
-            "\"description\": \"" + this.description + "\", " +
-            "\"instructorNames\": " + Util.arrayListToString(this.instructorNames, true) + ", " +
-            "\"organizationName\": \"" + this.organizationName + "\", " +
-            "\"category\": \"" + this.category + "\", " +
-            "\"level\": \"" + this.level + "\", " +
-            "\"totalStudents\": " + this.totalStudents + ", " +
-            "\"totalHours\": " + this.totalHours + ", " +
-            "\"totalWeeks\": " + this.totalWeeks + ", " +
-            "\"estimatedWorkload\": " + this.estimatedWorkload + ", " +
-            "\"rate\": " + this.rate + ", " +
-            "\"price\": " + this.price + ", " +
-            "\"reviews\": " + Util.arrayListToString(this.reviews) +
-            " }";
-    }
-
-    public static String escapeString(String s) {
-        return s.replace("\\", "\\\\")
-                .replace("\t", "\\t")
-                .replace("\b", "\\b")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\f", "\\f")
-                .replace("\"", "\\\"");
+        return new String(toJsonBytes(), StandardCharsets.UTF_8);
     }
 }
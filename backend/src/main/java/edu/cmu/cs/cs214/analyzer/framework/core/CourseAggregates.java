@@ -0,0 +1,209 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@link GroupStats} of the analyzed courses for every field in
+ * {@link GroupStats#GROUP_BY_FIELDS}. Aggregates are immutable once published; adding or
+ * replacing courses returns new aggregates that only copy the groups the courses fall into.
+ */
+final class CourseAggregates {
+    static final CourseAggregates EMPTY = new CourseAggregates(new HashMap<String, VersionedRegistry<GroupStats>>());
+
+    // The groups of each field by key, in the order they were first seen
+    private final Map<String, VersionedRegistry<GroupStats>> groups;
+
+    private CourseAggregates(Map<String, VersionedRegistry<GroupStats>> groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * Read aggregates written by {@link #writeTo(SnapshotFile.Output)}.
+     *
+     * @param in The input to read from
+     */
+    CourseAggregates(SnapshotFile.Input in) {
+        this.groups = new HashMap<String, VersionedRegistry<GroupStats>>();
+        for (String field : GroupStats.GROUP_BY_FIELDS) {
+            VersionedRegistry<GroupStats>.Editor fieldGroups = VersionedRegistry.<GroupStats>empty().edit();
+            int numGroups = in.getInt();
+            for (int i = 0; i < numGroups; i++) {
+                GroupStats group = new GroupStats(in);
+                fieldGroups.put(group.getKey(), group);
+            }
+            this.groups.put(field, fieldGroups.build());
+        }
+    }
+
+    /**
+     * Aggregate more courses on top of these aggregates.
+     *
+     * @param courses The courses to add
+     * @return The new aggregates
+     */
+    CourseAggregates add(List<Course> courses) {
+        return update(Collections.<Course>emptyList(), courses, Collections.<CourseSegment>emptyList());
+    }
+
+    /**
+     * Replace aggregated courses with others. Only the groups the courses fall into are copied
+     * and updated, in new versions of the registries of groups that share all other groups
+     * with these aggregates, and groups left without courses are dropped. Groups count the
+     * courses holding the minimum and maximum of each metric, and only when a removed course
+     * was the last of them are the extremes of its group recomputed from the stored courses,
+     * which are looked up in the trigram index of the segments where the group key is long
+     * enough.
+     *
+     * @param removed The courses to remove, with the values they had when they were added
+     * @param added The courses to add
+     * @param segments The segments of the new snapshot, holding the added courses but not the
+     *        removed ones
+     * @return The new aggregates
+     */
+    CourseAggregates update(List<Course> removed, List<Course> added, List<CourseSegment> segments) {
+        Map<String, VersionedRegistry<GroupStats>> updated = new HashMap<String, VersionedRegistry<GroupStats>>();
+        for (String field : GroupStats.GROUP_BY_FIELDS) {
+            VersionedRegistry<GroupStats> published = this.groups.get(field);
+            VersionedRegistry<GroupStats>.Editor fieldGroups = published == null
+                ? VersionedRegistry.<GroupStats>empty().edit() : published.edit();
+            // Groups copied in this call, which can be updated in place
+            Map<String, GroupStats> copied = new HashMap<String, GroupStats>();
+            Set<String> staleKeys = new HashSet<String>();
+            for (Course course : removed)
+                for (String key : getKeys(course, field))
+                    if (getGroup(fieldGroups, copied, key).remove(course))
+                        staleKeys.add(key);
+            for (Course course : added)
+                for (String key : getKeys(course, field))
+                    getGroup(fieldGroups, copied, key).add(course);
+            for (GroupStats group : copied.values()) {
+                if (group.getCount() <= 0)
+                    fieldGroups.remove(group.getKey());
+                else if (staleKeys.contains(group.getKey()))
+                    recomputeExtremes(group, field, segments);
+            }
+            updated.put(field, fieldGroups.build());
+        }
+        return new CourseAggregates(updated);
+    }
+
+    /**
+     * Get the groups of a field, in the order they were first seen.
+     *
+     * @param field One of {@link GroupStats#GROUP_BY_FIELDS}
+     * @return The groups
+     * @throws IllegalArgumentException If the field is unknown
+     */
+    List<GroupStats> getGroups(String field) {
+        if (!GroupStats.GROUP_BY_FIELDS.contains(field))
+            throw new IllegalArgumentException("Unknown group by field " + field);
+        VersionedRegistry<GroupStats> fieldGroups = this.groups.get(field);
+        if (fieldGroups == null)
+            return Collections.emptyList();
+        return fieldGroups.values();
+    }
+
+    /**
+     * Write these aggregates to a snapshot file, the groups of each field in order.
+     *
+     * @param out The output to write to
+     * @throws IOException If the output fails
+     */
+    void writeTo(SnapshotFile.Output out) throws IOException {
+        for (String field : GroupStats.GROUP_BY_FIELDS) {
+            VersionedRegistry<GroupStats> fieldGroups = this.groups.get(field);
+            out.putInt(fieldGroups == null ? 0 : fieldGroups.size());
+            if (fieldGroups != null)
+                for (GroupStats group : fieldGroups.values())
+                    group.writeTo(out);
+        }
+    }
+
+    private static GroupStats getGroup(
+        VersionedRegistry<GroupStats>.Editor fieldGroups,
+        Map<String, GroupStats> copied,
+        String key
+    ) {
+        GroupStats group = copied.get(key);
+        if (group == null) {
+            GroupStats published = fieldGroups.get(key);
+            group = published == null ? new GroupStats(key) : new GroupStats(published);
+            fieldGroups.put(key, group);
+            copied.put(key, group);
+        }
+        return group;
+    }
+
+    private static List<String> getKeys(Course course, String field) {
+        if (field.equals("instructor"))
+            return course.instructorNames == null ? Collections.<String>emptyList() : course.instructorNames;
+        String key = getKey(course, field);
+        return key == null ? Collections.<String>emptyList() : Collections.singletonList(key);
+    }
+
+    private static void recomputeExtremes(GroupStats group, String field, List<CourseSegment> segments) {
+        group.resetExtremes();
+        String[] keywords = new String[TrigramIndex.NUM_FIELDS];
+        int indexedField = getIndexedField(field);
+        if (indexedField >= 0)
+            keywords[indexedField] = group.getKey();
+        for (CourseSegment segment : segments) {
+            int[] candidates = segment.getIndex().candidates(keywords);
+            int numRows = candidates == null ? segment.size() : candidates.length;
+            for (int i = 0; i < numRows; i++) {
+                int row = candidates == null ? i : candidates[i];
+                if (!segment.isDeleted(row) && isInGroup(segment, row, field, group.getKey()))
+                    group.includeExtremes(segment, row);
+            }
+        }
+    }
+
+    private static int getIndexedField(String field) {
+        switch (field) {
+            case "organizationName":
+                return TrigramIndex.ORGANIZATION;
+            case "category":
+                return TrigramIndex.CATEGORY;
+            case "level":
+                return TrigramIndex.LEVEL;
+            case "instructor":
+                return TrigramIndex.INSTRUCTOR;
+            default:
+                return -1;
+        }
+    }
+
+    private static boolean isInGroup(CourseSegment segment, int row, String field, String key) {
+        switch (field) {
+            case "organizationName":
+                return key.equals(segment.getOrganizationName(row));
+            case "category":
+                return key.equals(segment.getCategory(row));
+            case "level":
+                return key.equals(segment.getLevel(row));
+            case "instructor":
+                return segment.getInstructorNames(row).contains(key);
+            default:
+                return key.equals(String.valueOf(segment.getYear(row)));
+        }
+    }
+
+    private static String getKey(Course course, String field) {
+        switch (field) {
+            case "organizationName":
+                return course.organizationName;
+            case "category":
+                return course.category;
+            case "level":
+                return course.level;
+            default:
+                return String.valueOf(course.year);
+        }
+    }
+}
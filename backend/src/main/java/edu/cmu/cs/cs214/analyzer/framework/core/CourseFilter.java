@@ -1,6 +1,14 @@
 package edu.cmu.cs.cs214.analyzer.framework.core;
 
+import java.util.List;
+
 public class CourseFilter {
+    /**
+     * The fields that courses can be sorted by.
+     */
+    public static final List<String> SORT_FIELDS = List.of(
+        "rate", "price", "totalStudents", "estimatedWorkload", "year");
+
     private final String nameKeyword;
     private final String categoryKeyword;
     private final String levelKeyword;
@@ -8,6 +16,8 @@ public class CourseFilter {
     private final String organizationNameKeyword;
     private final int year;
     private final int size;
+    private final String sortField;
+    private final boolean descending;
 
     public CourseFilter(
         String nameKeyword,
@@ -18,6 +28,30 @@ public class CourseFilter {
         int year,
         int size
     ) {
+        this(nameKeyword, categoryKeyword, levelKeyword, instructorNameKeyword, organizationNameKeyword,
+             year, size, null, false);
+    }
+
+    /**
+     * Create a filter that returns the first matched courses after sorting them by a field.
+     *
+     * @param sortField One of {@link #SORT_FIELDS}, or null to keep the order of analysis
+     * @param descending Whether to sort from the largest value to the smallest
+     * @throws IllegalArgumentException If the sort field is unknown
+     */
+    public CourseFilter(
+        String nameKeyword,
+        String categoryKeyword,
+        String levelKeyword,
+        String instructorNameKeyword,
+        String organizationNameKeyword,
+        int year,
+        int size,
+        String sortField,
+        boolean descending
+    ) {
+        if (sortField != null && !SORT_FIELDS.contains(sortField))
+            throw new IllegalArgumentException("Unknown sort field " + sortField);
         this.nameKeyword = nameKeyword;
         this.categoryKeyword = categoryKeyword;
         this.levelKeyword = levelKeyword;
@@ -25,6 +59,8 @@ public class CourseFilter {
         this.organizationNameKeyword = organizationNameKeyword;
         this.year = year;
         this.size = size;
+        this.sortField = sortField;
+        this.descending = descending;
     }
 
     public boolean isMatched(Course course) {
@@ -53,7 +89,124 @@ public class CourseFilter {
         return true;
     }
 
+    /**
+     * Create a matcher that checks stored courses against this filter without materializing
+     * them. Keywords of dictionary-encoded fields are matched by code, so each distinct string
+     * is only searched once per query.
+     * 
+     * @param dictionary The dictionary the stored courses are encoded with
+     * @return The matcher, to be used by a single query
+     */
+    RowMatcher newRowMatcher(StringDictionary dictionary) {
+        return new RowMatcher(dictionary);
+    }
+
+    /**
+     * Matches rows of {@link CourseSegment}s against the filter.
+     */
+    final class RowMatcher {
+        private final CodeMatcher category;
+        private final CodeMatcher level;
+        private final CodeMatcher instructor;
+        private final CodeMatcher organization;
+
+        private RowMatcher(StringDictionary dictionary) {
+            this.category = new CodeMatcher(dictionary, categoryKeyword);
+            this.level = new CodeMatcher(dictionary, levelKeyword);
+            this.instructor = new CodeMatcher(dictionary, instructorNameKeyword);
+            this.organization = new CodeMatcher(dictionary, organizationNameKeyword);
+        }
+
+        /**
+         * Check whether a stored course matches the filter. The cheap int comparisons are done
+         * before the course name is searched.
+         * 
+         * @param segment The segment storing the course
+         * @param row The row of the course
+         * @return Whether the course matches
+         */
+        boolean isMatched(CourseSegment segment, int row) {
+            if (year > 0 && segment.getYear(row) != year)
+                return false;
+            if (!this.category.matches(segment.getCategoryCode(row)))
+                return false;
+            if (!this.level.matches(segment.getLevelCode(row)))
+                return false;
+            if (!this.organization.matches(segment.getOrganizationCode(row)))
+                return false;
+
+            boolean hasInstructor = false;
+            for (int i = segment.getInstructorStart(row); i < segment.getInstructorStart(row + 1); i++) {
+                if (this.instructor.matches(segment.getInstructorCode(i))) {
+                    hasInstructor = true;
+                    break;
+                }
+            }
+            if (!hasInstructor)
+                return false;
+
+            return segment.getName(row).contains(nameKeyword);
+        }
+    }
+
+    /**
+     * Get the substring keywords of this filter, indexed by the field constants of
+     * {@link TrigramIndex}
+     * 
+     * @return The keywords
+     */
+    String[] getKeywords() {
+        String[] keywords = new String[TrigramIndex.NUM_FIELDS];
+        keywords[TrigramIndex.NAME] = this.nameKeyword;
+        keywords[TrigramIndex.CATEGORY] = this.categoryKeyword;
+        keywords[TrigramIndex.LEVEL] = this.levelKeyword;
+        keywords[TrigramIndex.INSTRUCTOR] = this.instructorNameKeyword;
+        keywords[TrigramIndex.ORGANIZATION] = this.organizationNameKeyword;
+        return keywords;
+    }
+
+    /**
+     * Get a key that is equal for filters that always match the same courses in the same order
+     * 
+     * @return The key
+     */
+    String getCacheKey() {
+        return QueryCache.key("courses", this.nameKeyword, this.categoryKeyword, this.levelKeyword,
+                              this.instructorNameKeyword, this.organizationNameKeyword, Math.max(this.year, 0),
+                              this.size, this.sortField, this.sortField != null && this.descending);
+    }
+
     public int getSize() {
         return this.size;
     }
+
+    public String getSortField() {
+        return this.sortField;
+    }
+
+    public boolean isDescending() {
+        return this.descending;
+    }
+
+    /**
+     * Get the value of the sort field of a stored course.
+     *
+     * @param segment The segment storing the course
+     * @param row The row of the course
+     * @return The value to sort by
+     */
+    double getSortKey(CourseSegment segment, int row) {
+        switch (this.sortField) {
+            case "rate":
+                return segment.getRate(row);
+            case "price":
+                return segment.getPrice(row);
+            case "totalStudents":
+                return segment.getTotalStudents(row);
+            case "estimatedWorkload":
+                return segment.getEstimatedWorkload(row);
+            default:
+                return segment.getYear(row);
+        }
+    }
 }
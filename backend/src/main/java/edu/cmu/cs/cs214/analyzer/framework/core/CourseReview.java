@@ -1,19 +1,34 @@
 package edu.cmu.cs.cs214.analyzer.framework.core;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
 
-import edu.cmu.cs.cs214.analyzer.framework.Util;
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
 
 public class CourseReview {
     public double courseRate; // [0, 5]
-    public ArrayList<Double> instructorRates; // [0, 5]
+    public double[] instructorRates; // [0, 5], one per instructor of the course
     public double workloadPerWeek;
 
+    /**
+     * Write this review as a JSON object
+     * 
+     * @param writer The {@link JsonWriter} to write to
+     * @throws IOException If the writer fails
+     */
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject()
+            .name("courseRate").value(this.courseRate)
+            .name("instructorRates").doubleArray(this.instructorRates)
+            .name("workloadPerWeek").value(this.workloadPerWeek)
+            .endObject();
+    }
+
     @Override
     public String toString() {
         return "{ " +
             "\"courseRate\": " + this.courseRate + ", " +
-            "\"instructorRates\": " + Util.arrayListToString(this.instructorRates) + ", " +
+            "\"instructorRates\": " + (this.instructorRates == null ? "[]" : Arrays.toString(this.instructorRates)) + ", " +
             "\"workloadPerWeek\": " + this.workloadPerWeek +
             "}";
     }
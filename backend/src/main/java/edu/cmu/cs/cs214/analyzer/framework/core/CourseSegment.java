@@ -0,0 +1,788 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.lang.ref.SoftReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An immutable, column-oriented store of analyzed courses. Every field is kept in its own array
+ * indexed by row, numbers in primitive arrays and repeated strings as codes of a shared
+ * {@link StringDictionary}, so a segment holds a few large arrays instead of many small objects.
+ * {@link Course} objects are only materialized when a row is returned to a caller.
+ *
+ * Courses replaced by a newer version are not removed from a segment, but marked as deleted in
+ * a copy of it that shares all columns. Deleted rows are dropped when the segment is merged.
+ *
+ * Columns are read through buffers, which either wrap arrays on the heap or are views of a
+ * segment file mapped by a {@link SegmentStore}. A mapped segment keeps its rows, reviews, id
+ * index and posting lists in the file, off the heap, and decodes a name or description only
+ * when it is read.
+ */
+final class CourseSegment {
+    private final StringDictionary dictionary;
+    private final int size;
+
+    private final IntBuffer ids;
+    private final IntBuffer years;
+    private final TextColumn names;
+    private final TextColumn descriptions;
+    private final IntBuffer organizations;
+    private final IntBuffer categories;
+    private final IntBuffer levels;
+    private final IntBuffer totalStudents;
+    private final DoubleBuffer totalHours;
+    private final IntBuffer totalWeeks;
+    private final DoubleBuffer estimatedWorkloads;
+    private final DoubleBuffer rates;
+    private final DoubleBuffer prices;
+    // The instructors of row i are instructorCodes[instructorStarts[i]..instructorStarts[i + 1])
+    private final IntBuffer instructorStarts;
+    private final IntBuffer instructorCodes;
+    // The reviews of row i are reviews reviewStarts[i]..reviewStarts[i + 1]
+    private final IntBuffer reviewStarts;
+    private final DoubleBuffer reviewCourseRates;
+    private final DoubleBuffer reviewWorkloads;
+    // The instructor rates of review j are instructorRates[rateStarts[j]..rateStarts[j] + rateLengths[j]),
+    // where a length of -1 stands for null. Reviews of a course that share one array of rates,
+    // as FCE reviews do, share one range.
+    private final IntBuffer rateStarts;
+    private final IntBuffer rateLengths;
+    private final DoubleBuffer instructorRates;
+
+    private final TrigramIndex index;
+    // The deleted rows, or null if there are none
+    private final BitSet deleted;
+    private final int numDeleted;
+    // The rows that are not deleted, built when a course is first read by position
+    private volatile int[] liveRows;
+    // Ids combined with their rows (low 32 bits) in increasing order, built when a course is
+    // first looked up by id, or read from the file of a mapped segment
+    private volatile LongBuffer idIndex;
+    // Rendered JSON of the rows, dropped by the garbage collector when memory runs low
+    private volatile SoftReference<AtomicReferenceArray<byte[]>> fragments;
+
+    /**
+     * Store the given courses, in order.
+     *
+     * @param courses The courses to store
+     * @param dictionary The dictionary to encode repeated strings with
+     */
+    CourseSegment(List<Course> courses, StringDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.size = courses.size();
+        int[] ids = new int[size];
+        int[] years = new int[size];
+        String[] names = new String[size];
+        String[] descriptions = new String[size];
+        int[] organizations = new int[size];
+        int[] categories = new int[size];
+        int[] levels = new int[size];
+        int[] totalStudents = new int[size];
+        double[] totalHours = new double[size];
+        int[] totalWeeks = new int[size];
+        double[] estimatedWorkloads = new double[size];
+        double[] rates = new double[size];
+        double[] prices = new double[size];
+        int[] instructorStarts = new int[size + 1];
+        int[] reviewStarts = new int[size + 1];
+
+        int totalInstructors = 0;
+        int totalReviews = 0;
+        int totalRates = 0;
+        for (Course course : courses) {
+            if (course.instructorNames != null)
+                totalInstructors += course.instructorNames.size();
+            if (course.reviews == null)
+                continue;
+            double[] previous = null;
+            for (CourseReview review : course.reviews) {
+                if (review.instructorRates != null && review.instructorRates != previous)
+                    totalRates += review.instructorRates.length;
+                previous = review.instructorRates;
+            }
+            totalReviews += course.reviews.size();
+        }
+        int[] instructorCodes = new int[totalInstructors];
+        double[] reviewCourseRates = new double[totalReviews];
+        double[] reviewWorkloads = new double[totalReviews];
+        int[] rateStarts = new int[totalReviews];
+        int[] rateLengths = new int[totalReviews];
+        double[] instructorRates = new double[totalRates];
+
+        int instructor = 0;
+        int review = 0;
+        int rate = 0;
+        for (int row = 0; row < size; row++) {
+            Course course = courses.get(row);
+            ids[row] = course.id;
+            years[row] = course.year;
+            names[row] = course.name;
+            descriptions[row] = course.description;
+            organizations[row] = dictionary.encode(course.organizationName);
+            categories[row] = dictionary.encode(course.category);
+            levels[row] = dictionary.encode(course.level);
+            totalStudents[row] = course.totalStudents;
+            totalHours[row] = course.totalHours;
+            totalWeeks[row] = course.totalWeeks;
+            estimatedWorkloads[row] = course.estimatedWorkload;
+            rates[row] = course.rate;
+            prices[row] = course.price;
+            if (course.instructorNames != null)
+                for (String instructorName : course.instructorNames)
+                    instructorCodes[instructor++] = dictionary.encode(instructorName);
+            instructorStarts[row + 1] = instructor;
+            if (course.reviews != null) {
+                double[] previous = null;
+                for (CourseReview courseReview : course.reviews) {
+                    reviewCourseRates[review] = courseReview.courseRate;
+                    reviewWorkloads[review] = courseReview.workloadPerWeek;
+                    double[] reviewRates = courseReview.instructorRates;
+                    if (reviewRates == null) {
+                        rateLengths[review] = -1;
+                    } else if (reviewRates == previous) {
+                        rateStarts[review] = rateStarts[review - 1];
+                        rateLengths[review] = reviewRates.length;
+                    } else {
+                        System.arraycopy(reviewRates, 0, instructorRates, rate, reviewRates.length);
+                        rateStarts[review] = rate;
+                        rateLengths[review] = reviewRates.length;
+                        rate += reviewRates.length;
+                    }
+                    previous = reviewRates;
+                    review++;
+                }
+            }
+            reviewStarts[row + 1] = review;
+        }
+        this.ids = IntBuffer.wrap(ids);
+        this.years = IntBuffer.wrap(years);
+        this.names = new TextColumn(names);
+        this.descriptions = new TextColumn(descriptions);
+        this.organizations = IntBuffer.wrap(organizations);
+        this.categories = IntBuffer.wrap(categories);
+        this.levels = IntBuffer.wrap(levels);
+        this.totalStudents = IntBuffer.wrap(totalStudents);
+        this.totalHours = DoubleBuffer.wrap(totalHours);
+        this.totalWeeks = IntBuffer.wrap(totalWeeks);
+        this.estimatedWorkloads = DoubleBuffer.wrap(estimatedWorkloads);
+        this.rates = DoubleBuffer.wrap(rates);
+        this.prices = DoubleBuffer.wrap(prices);
+        this.instructorStarts = IntBuffer.wrap(instructorStarts);
+        this.instructorCodes = IntBuffer.wrap(instructorCodes);
+        this.reviewStarts = IntBuffer.wrap(reviewStarts);
+        this.reviewCourseRates = DoubleBuffer.wrap(reviewCourseRates);
+        this.reviewWorkloads = DoubleBuffer.wrap(reviewWorkloads);
+        this.rateStarts = IntBuffer.wrap(rateStarts);
+        this.rateLengths = IntBuffer.wrap(rateLengths);
+        this.instructorRates = DoubleBuffer.wrap(instructorRates);
+        this.index = new TrigramIndex(this);
+        this.deleted = null;
+        this.numDeleted = 0;
+    }
+
+    /**
+     * Concatenate segments sharing the same dictionary into one on the heap.
+     *
+     * @param parts The segments to concatenate, in order, which must be compacted
+     * @throws IllegalArgumentException If a part has deleted rows
+     */
+    CourseSegment(List<CourseSegment> parts) {
+        this(parts, null);
+    }
+
+    /**
+     * Concatenate segments into one on the heap, translating their codes, such as the segments
+     * of a snapshot file, which are encoded with the dictionary of the file.
+     *
+     * @param parts The segments to concatenate, in order, which must be compacted
+     * @param codes The code in the dictionary of the first part of each code of the parts, or
+     *        null if the parts are encoded with the same dictionary
+     * @throws IllegalArgumentException If a part has deleted rows
+     */
+    CourseSegment(List<CourseSegment> parts, int[] codes) {
+        this.dictionary = parts.get(0).dictionary;
+        int total = 0;
+        int totalInstructors = 0;
+        int totalReviews = 0;
+        int totalRates = 0;
+        for (CourseSegment part : parts) {
+            if (part.numDeleted > 0)
+                throw new IllegalArgumentException("Cannot concatenate a segment with deleted rows");
+            total += part.size;
+            totalInstructors += part.instructorCodes.limit();
+            totalReviews += part.reviewCourseRates.limit();
+            totalRates += part.instructorRates.limit();
+        }
+        this.size = total;
+        int[] ids = new int[size];
+        int[] years = new int[size];
+        String[] names = new String[size];
+        String[] descriptions = new String[size];
+        int[] organizations = new int[size];
+        int[] categories = new int[size];
+        int[] levels = new int[size];
+        int[] totalStudents = new int[size];
+        double[] totalHours = new double[size];
+        int[] totalWeeks = new int[size];
+        double[] estimatedWorkloads = new double[size];
+        double[] rates = new double[size];
+        double[] prices = new double[size];
+        int[] instructorStarts = new int[size + 1];
+        int[] instructorCodes = new int[totalInstructors];
+        int[] reviewStarts = new int[size + 1];
+        double[] reviewCourseRates = new double[totalReviews];
+        double[] reviewWorkloads = new double[totalReviews];
+        int[] rateStarts = new int[totalReviews];
+        int[] rateLengths = new int[totalReviews];
+        double[] instructorRates = new double[totalRates];
+
+        int row = 0;
+        int instructor = 0;
+        int review = 0;
+        int rate = 0;
+        for (CourseSegment part : parts) {
+            part.ids.get(0, ids, row, part.size);
+            part.years.get(0, years, row, part.size);
+            for (int i = 0; i < part.size; i++) {
+                names[row + i] = part.names.get(i);
+                descriptions[row + i] = part.descriptions.get(i);
+            }
+            part.organizations.get(0, organizations, row, part.size);
+            part.categories.get(0, categories, row, part.size);
+            part.levels.get(0, levels, row, part.size);
+            part.totalStudents.get(0, totalStudents, row, part.size);
+            part.totalHours.get(0, totalHours, row, part.size);
+            part.totalWeeks.get(0, totalWeeks, row, part.size);
+            part.estimatedWorkloads.get(0, estimatedWorkloads, row, part.size);
+            part.rates.get(0, rates, row, part.size);
+            part.prices.get(0, prices, row, part.size);
+            int numInstructors = part.instructorCodes.limit();
+            part.instructorCodes.get(0, instructorCodes, instructor, numInstructors);
+            for (int i = 0; i < part.size; i++)
+                instructorStarts[row + i + 1] = instructor + part.instructorStarts.get(i + 1);
+            int numReviews = part.reviewCourseRates.limit();
+            part.reviewCourseRates.get(0, reviewCourseRates, review, numReviews);
+            part.reviewWorkloads.get(0, reviewWorkloads, review, numReviews);
+            part.rateLengths.get(0, rateLengths, review, numReviews);
+            part.instructorRates.get(0, instructorRates, rate, part.instructorRates.limit());
+            for (int i = 0; i < numReviews; i++)
+                rateStarts[review + i] = rate + part.rateStarts.get(i);
+            for (int i = 0; i < part.size; i++)
+                reviewStarts[row + i + 1] = review + part.reviewStarts.get(i + 1);
+            row += part.size;
+            instructor += numInstructors;
+            review += numReviews;
+            rate += part.instructorRates.limit();
+        }
+        if (codes != null) {
+            translate(organizations, codes);
+            translate(categories, codes);
+            translate(levels, codes);
+            translate(instructorCodes, codes);
+        }
+        this.ids = IntBuffer.wrap(ids);
+        this.years = IntBuffer.wrap(years);
+        this.names = new TextColumn(names);
+        this.descriptions = new TextColumn(descriptions);
+        this.organizations = IntBuffer.wrap(organizations);
+        this.categories = IntBuffer.wrap(categories);
+        this.levels = IntBuffer.wrap(levels);
+        this.totalStudents = IntBuffer.wrap(totalStudents);
+        this.totalHours = DoubleBuffer.wrap(totalHours);
+        this.totalWeeks = IntBuffer.wrap(totalWeeks);
+        this.estimatedWorkloads = DoubleBuffer.wrap(estimatedWorkloads);
+        this.rates = DoubleBuffer.wrap(rates);
+        this.prices = DoubleBuffer.wrap(prices);
+        this.instructorStarts = IntBuffer.wrap(instructorStarts);
+        this.instructorCodes = IntBuffer.wrap(instructorCodes);
+        this.reviewStarts = IntBuffer.wrap(reviewStarts);
+        this.reviewCourseRates = DoubleBuffer.wrap(reviewCourseRates);
+        this.reviewWorkloads = DoubleBuffer.wrap(reviewWorkloads);
+        this.rateStarts = IntBuffer.wrap(rateStarts);
+        this.rateLengths = IntBuffer.wrap(rateLengths);
+        this.instructorRates = DoubleBuffer.wrap(instructorRates);
+        this.index = new TrigramIndex(parts);
+        this.deleted = null;
+        this.numDeleted = 0;
+    }
+
+    /**
+     * Wrap the columns of a segment file read by {@link SegmentFile}, which stay where they are.
+     *
+     * @param columns The little-endian columns, by their {@link SegmentFile} constant
+     * @param index The index of the segment
+     * @param dictionary The dictionary the segment is encoded with
+     * @throws IllegalArgumentException If the columns are inconsistent
+     */
+    CourseSegment(ByteBuffer[] columns, TrigramIndex index, StringDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.ids = columns[SegmentFile.IDS].asIntBuffer();
+        this.size = this.ids.limit();
+        this.years = columns[SegmentFile.YEARS].asIntBuffer();
+        this.names = new TextColumn(columns[SegmentFile.NAME_STARTS].asIntBuffer(), columns[SegmentFile.NAME_TEXT]);
+        this.descriptions = new TextColumn(
+            columns[SegmentFile.DESCRIPTION_STARTS].asIntBuffer(), columns[SegmentFile.DESCRIPTION_TEXT]);
+        this.organizations = columns[SegmentFile.ORGANIZATIONS].asIntBuffer();
+        this.categories = columns[SegmentFile.CATEGORIES].asIntBuffer();
+        this.levels = columns[SegmentFile.LEVELS].asIntBuffer();
+        this.totalStudents = columns[SegmentFile.TOTAL_STUDENTS].asIntBuffer();
+        this.totalHours = columns[SegmentFile.TOTAL_HOURS].asDoubleBuffer();
+        this.totalWeeks = columns[SegmentFile.TOTAL_WEEKS].asIntBuffer();
+        this.estimatedWorkloads = columns[SegmentFile.ESTIMATED_WORKLOADS].asDoubleBuffer();
+        this.rates = columns[SegmentFile.RATES].asDoubleBuffer();
+        this.prices = columns[SegmentFile.PRICES].asDoubleBuffer();
+        this.instructorStarts = columns[SegmentFile.INSTRUCTOR_STARTS].asIntBuffer();
+        this.instructorCodes = columns[SegmentFile.INSTRUCTOR_CODES].asIntBuffer();
+        this.reviewStarts = columns[SegmentFile.REVIEW_STARTS].asIntBuffer();
+        this.reviewCourseRates = columns[SegmentFile.REVIEW_COURSE_RATES].asDoubleBuffer();
+        this.reviewWorkloads = columns[SegmentFile.REVIEW_WORKLOADS].asDoubleBuffer();
+        this.rateStarts = columns[SegmentFile.RATE_STARTS].asIntBuffer();
+        this.rateLengths = columns[SegmentFile.RATE_LENGTHS].asIntBuffer();
+        this.instructorRates = columns[SegmentFile.INSTRUCTOR_RATES].asDoubleBuffer();
+        this.idIndex = columns[SegmentFile.ID_INDEX].asLongBuffer();
+        this.index = index;
+        this.deleted = null;
+        this.numDeleted = 0;
+
+        int numReviews = this.reviewCourseRates.limit();
+        for (Buffer column : List.of(this.years, this.names.starts, this.descriptions.starts,
+                                              this.organizations, this.categories, this.levels, this.totalStudents,
+                                              this.totalHours, this.totalWeeks, this.estimatedWorkloads, this.rates,
+                                              this.prices, this.idIndex))
+            if (column.limit() != this.size)
+                throw new IllegalArgumentException("Inconsistent segment columns");
+        if (this.instructorStarts.limit() != this.size + 1 || this.reviewStarts.limit() != this.size + 1
+            || this.instructorStarts.get(this.size) != this.instructorCodes.limit()
+            || this.reviewStarts.get(this.size) != numReviews || this.reviewWorkloads.limit() != numReviews
+            || this.rateStarts.limit() != numReviews || this.rateLengths.limit() != numReviews)
+            throw new IllegalArgumentException("Inconsistent segment columns");
+    }
+
+    private static void translate(int[] fileCodes, int[] codes) {
+        for (int i = 0; i < fileCodes.length; i++)
+            if (fileCodes[i] != StringDictionary.NULL_CODE)
+                fileCodes[i] = codes[fileCodes[i]];
+    }
+
+    /**
+     * Copy a segment with more rows marked as deleted. The copy shares the columns, index and
+     * cached JSON of the segment, which stays unchanged.
+     *
+     * @param other The segment to copy
+     * @param rows The rows to delete
+     */
+    private CourseSegment(CourseSegment other, int[] rows) {
+        this.dictionary = other.dictionary;
+        this.size = other.size;
+        this.ids = other.ids;
+        this.years = other.years;
+        this.names = other.names;
+        this.descriptions = other.descriptions;
+        this.organizations = other.organizations;
+        this.categories = other.categories;
+        this.levels = other.levels;
+        this.totalStudents = other.totalStudents;
+        this.totalHours = other.totalHours;
+        this.totalWeeks = other.totalWeeks;
+        this.estimatedWorkloads = other.estimatedWorkloads;
+        this.rates = other.rates;
+        this.prices = other.prices;
+        this.instructorStarts = other.instructorStarts;
+        this.instructorCodes = other.instructorCodes;
+        this.reviewStarts = other.reviewStarts;
+        this.reviewCourseRates = other.reviewCourseRates;
+        this.reviewWorkloads = other.reviewWorkloads;
+        this.rateStarts = other.rateStarts;
+        this.rateLengths = other.rateLengths;
+        this.instructorRates = other.instructorRates;
+        this.index = other.index;
+        this.idIndex = other.idIndex;
+        this.fragments = other.fragments;
+        this.deleted = other.deleted == null ? new BitSet(this.size) : (BitSet) other.deleted.clone();
+        for (int row : rows)
+            this.deleted.set(row);
+        this.numDeleted = this.deleted.cardinality();
+    }
+
+    /**
+     * Mark rows as deleted.
+     *
+     * @param rows The rows to delete
+     * @return A copy of this segment without the rows
+     */
+    CourseSegment delete(int[] rows) {
+        return new CourseSegment(this, rows);
+    }
+
+    /**
+     * Drop the deleted rows.
+     *
+     * @return This segment if no row is deleted, or else a new segment of the other rows
+     */
+    CourseSegment compact() {
+        if (this.numDeleted == 0)
+            return this;
+        ArrayList<Course> courses = new ArrayList<Course>(getLiveSize());
+        for (int row = 0; row < this.size; row++)
+            if (!this.deleted.get(row))
+                courses.add(materialize(row));
+        return new CourseSegment(courses, this.dictionary);
+    }
+
+    /**
+     * Find the rows of the courses with an id that are not deleted.
+     *
+     * @param id The id
+     * @return The rows, in increasing order
+     */
+    int[] findRows(int id) {
+        LongBuffer index = this.idIndex;
+        if (index == null) {
+            long[] sorted = new long[this.size];
+            for (int row = 0; row < this.size; row++)
+                sorted[row] = ((long) this.ids.get(row) << 32) | row;
+            Arrays.sort(sorted);
+            index = LongBuffer.wrap(sorted);
+            this.idIndex = index;
+        }
+        // Find the first entry of the id
+        long key = (long) id << 32;
+        int low = 0;
+        int high = index.limit();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (index.get(middle) < key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        int start = low;
+        int i = start;
+        while (i < index.limit() && (int) (index.get(i) >> 32) == id)
+            i++;
+        int[] rows = new int[i - start];
+        int n = 0;
+        for (int j = start; j < i; j++)
+            if (!isDeleted((int) index.get(j)))
+                rows[n++] = (int) index.get(j);
+        return n == rows.length ? rows : Arrays.copyOf(rows, n);
+    }
+
+    /**
+     * Returns the number of rows, including the deleted ones.
+     *
+     * @return The number of rows
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of rows that are not deleted.
+     *
+     * @return The number of courses
+     */
+    int getLiveSize() {
+        return this.size - this.numDeleted;
+    }
+
+    boolean isDeleted(int row) {
+        return this.deleted != null && this.deleted.get(row);
+    }
+
+    /**
+     * Find the row of the course at a position among the rows that are not deleted.
+     *
+     * @param position The position, below {@link #getLiveSize()}
+     * @return The row
+     */
+    int getLiveRow(int position) {
+        if (this.numDeleted == 0)
+            return position;
+        int[] rows = this.liveRows;
+        if (rows == null) {
+            rows = new int[getLiveSize()];
+            int n = 0;
+            for (int row = this.deleted.nextClearBit(0); row < this.size; row = this.deleted.nextClearBit(row + 1))
+                rows[n++] = row;
+            this.liveRows = rows;
+        }
+        return rows[position];
+    }
+
+    TrigramIndex getIndex() {
+        return this.index;
+    }
+
+    StringDictionary getDictionary() {
+        return this.dictionary;
+    }
+
+    int getId(int row) {
+        return this.ids.get(row);
+    }
+
+    int getYear(int row) {
+        return this.years.get(row);
+    }
+
+    String getName(int row) {
+        return this.names.get(row);
+    }
+
+    String getDescription(int row) {
+        return this.descriptions.get(row);
+    }
+
+    String getOrganizationName(int row) {
+        return this.dictionary.decode(this.organizations.get(row));
+    }
+
+    int getOrganizationCode(int row) {
+        return this.organizations.get(row);
+    }
+
+    String getCategory(int row) {
+        return this.dictionary.decode(this.categories.get(row));
+    }
+
+    int getCategoryCode(int row) {
+        return this.categories.get(row);
+    }
+
+    String getLevel(int row) {
+        return this.dictionary.decode(this.levels.get(row));
+    }
+
+    int getLevelCode(int row) {
+        return this.levels.get(row);
+    }
+
+    int getTotalStudents(int row) {
+        return this.totalStudents.get(row);
+    }
+
+    double getTotalHours(int row) {
+        return this.totalHours.get(row);
+    }
+
+    int getTotalWeeks(int row) {
+        return this.totalWeeks.get(row);
+    }
+
+    double getEstimatedWorkload(int row) {
+        return this.estimatedWorkloads.get(row);
+    }
+
+    double getRate(int row) {
+        return this.rates.get(row);
+    }
+
+    double getPrice(int row) {
+        return this.prices.get(row);
+    }
+
+    /**
+     * Get a read-only view of the instructor names of a row.
+     *
+     * @param row The row
+     * @return The instructor names
+     */
+    List<String> getInstructorNames(int row) {
+        int start = this.instructorStarts.get(row);
+        int end = this.instructorStarts.get(row + 1);
+        return new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                if (i < 0 || i >= end - start)
+                    throw new IndexOutOfBoundsException(i);
+                return dictionary.decode(instructorCodes.get(start + i));
+            }
+
+            @Override
+            public int size() {
+                return end - start;
+            }
+        };
+    }
+
+    /**
+     * Get the instructor codes of a row, which are instructorCodes[getInstructorStart(row)] up
+     * to, but excluding, instructorCodes[getInstructorStart(row + 1)].
+     *
+     * @param row The row, or {@link #size()} for the end of the last row
+     * @return The position of the first instructor code of the row
+     */
+    int getInstructorStart(int row) {
+        return this.instructorStarts.get(row);
+    }
+
+    int getInstructorCode(int position) {
+        return this.instructorCodes.get(position);
+    }
+
+    /**
+     * Get the reviews of a row, which are the reviews getReviewStart(row) up to, but excluding,
+     * getReviewStart(row + 1).
+     *
+     * @param row The row, or {@link #size()} for the end of the last row
+     * @return The position of the first review of the row
+     */
+    int getReviewStart(int row) {
+        return this.reviewStarts.get(row);
+    }
+
+    double getReviewCourseRate(int review) {
+        return this.reviewCourseRates.get(review);
+    }
+
+    double getReviewWorkload(int review) {
+        return this.reviewWorkloads.get(review);
+    }
+
+    /**
+     * Get the instructor rates of a review, which are getInstructorRate(getRateStart(review))
+     * up to, but excluding, getInstructorRate(getRateStart(review) + getRateLength(review)).
+     * Reviews that share their rates have the same range.
+     *
+     * @param review The review
+     * @return The position of the first instructor rate of the review
+     */
+    int getRateStart(int review) {
+        return this.rateStarts.get(review);
+    }
+
+    /**
+     * @param review The review
+     * @return The number of instructor rates of the review, or -1 if they are null
+     */
+    int getRateLength(int review) {
+        return this.rateLengths.get(review);
+    }
+
+    double getInstructorRate(int position) {
+        return this.instructorRates.get(position);
+    }
+
+    /**
+     * Materialize a row as a new {@link Course}. The course is a copy, so changing it does not
+     * affect this segment.
+     *
+     * @param row The row to materialize
+     * @return The course
+     */
+    Course getCourse(int row) {
+        return materialize(row);
+    }
+
+    /**
+     * Get the rendered JSON of a row, rendering and caching it if needed. Rows never change,
+     * so the cached JSON never has to be dropped.
+     *
+     * @param row The row
+     * @return The UTF-8 encoded JSON of the row
+     */
+    byte[] getJson(int row) {
+        SoftReference<AtomicReferenceArray<byte[]>> reference = this.fragments;
+        AtomicReferenceArray<byte[]> cache = reference == null ? null : reference.get();
+        if (cache == null) {
+            cache = new AtomicReferenceArray<byte[]>(this.size);
+            this.fragments = new SoftReference<AtomicReferenceArray<byte[]>>(cache);
+        }
+        byte[] json = cache.get(row);
+        if (json == null) {
+            json = materialize(row).toJsonBytes();
+            cache.set(row, json);
+        }
+        return json;
+    }
+
+    private Course materialize(int row) {
+        Course course = new Course();
+        course.id = this.ids.get(row);
+        course.year = this.years.get(row);
+        course.name = this.names.get(row);
+        course.description = this.descriptions.get(row);
+        course.instructorNames = new ArrayList<String>(getInstructorNames(row));
+        course.organizationName = getOrganizationName(row);
+        course.category = getCategory(row);
+        course.level = getLevel(row);
+        course.totalStudents = this.totalStudents.get(row);
+        course.totalHours = this.totalHours.get(row);
+        course.totalWeeks = this.totalWeeks.get(row);
+        course.estimatedWorkload = this.estimatedWorkloads.get(row);
+        course.rate = this.rates.get(row);
+        course.price = this.prices.get(row);
+        int firstReview = this.reviewStarts.get(row);
+        int endReview = this.reviewStarts.get(row + 1);
+        course.reviews = new ArrayList<CourseReview>(endReview - firstReview);
+        double[] previous = null;
+        for (int review = firstReview; review < endReview; review++) {
+            CourseReview courseReview = new CourseReview();
+            courseReview.courseRate = this.reviewCourseRates.get(review);
+            courseReview.workloadPerWeek = this.reviewWorkloads.get(review);
+            int start = this.rateStarts.get(review);
+            int length = this.rateLengths.get(review);
+            if (length >= 0) {
+                // Reviews that shared their rates when stored share them again
+                boolean shared = review > firstReview && previous != null
+                    && this.rateStarts.get(review - 1) == start && this.rateLengths.get(review - 1) == length;
+                if (shared) {
+                    courseReview.instructorRates = previous;
+                } else {
+                    courseReview.instructorRates = new double[length];
+                    this.instructorRates.get(start, courseReview.instructorRates);
+                }
+            }
+            previous = courseReview.instructorRates;
+            course.reviews.add(courseReview);
+        }
+        // The distributions are summaries of the reviews, so they are not stored; the course
+        // only rebuilds them from its reviews if they are read
+        return course;
+    }
+
+    /**
+     * A column of strings, held as strings, or in a mapped segment as UTF-8 records that start
+     * with their length in bytes, or -1 for null, at the position of their row in starts.
+     */
+    private static final class TextColumn {
+        private final String[] values;
+        private final IntBuffer starts;
+        private final ByteBuffer records;
+
+        TextColumn(String[] values) {
+            this.values = values;
+            this.starts = IntBuffer.wrap(new int[0]);
+            this.records = null;
+        }
+
+        TextColumn(IntBuffer starts, ByteBuffer records) {
+            this.values = null;
+            this.starts = starts;
+            this.records = records;
+        }
+
+        String get(int row) {
+            if (this.values != null)
+                return this.values[row];
+            int start = this.starts.get(row);
+            int length = this.records.getInt(start);
+            if (length < 0)
+                return null;
+            byte[] bytes = new byte[length];
+            this.records.get(start + Integer.BYTES, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * A continuation token for paging through filtered courses or instructors. It remembers the
+ * snapshot the first page was served from and the position of the last returned result, so the
+ * next page continues right after it (keyset pagination) instead of skipping an offset.
+ *
+ * Clients only see the {@link #encode() encoded} form, which they must treat as opaque and send
+ * back together with the same filter.
+ */
+public final class Cursor {
+    private static final byte FORMAT = 1;
+    private static final int ENCODED_BYTES = 1 + 4 * Long.BYTES + Double.BYTES;
+
+    private final long version;
+    private final long total;
+    private final long returned;
+    private final long lastRef;
+    private final double lastKey;
+
+    Cursor(long version, long total, long returned, long lastRef, double lastKey) {
+        this.version = version;
+        this.total = total;
+        this.returned = returned;
+        this.lastRef = lastRef;
+        this.lastKey = lastKey;
+    }
+
+    /**
+     * Decodes a token produced by {@link #encode()}.
+     *
+     * @param token The token
+     * @return The cursor
+     * @throws IllegalArgumentException If the token is malformed
+     */
+    public static Cursor decode(String token) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor " + token);
+        }
+        if (bytes.length != ENCODED_BYTES || bytes[0] != FORMAT)
+            throw new IllegalArgumentException("Malformed cursor " + token);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, ENCODED_BYTES - 1);
+        return new Cursor(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getDouble());
+    }
+
+    /**
+     * Encodes this cursor as a URL-safe token.
+     *
+     * @return The token
+     */
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_BYTES);
+        buffer.put(FORMAT)
+            .putLong(this.version)
+            .putLong(this.total)
+            .putLong(this.returned)
+            .putLong(this.lastRef)
+            .putDouble(this.lastKey);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * Returns the version of the snapshot the pages are served from.
+     *
+     * @return The snapshot version
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    long getTotal() {
+        return this.total;
+    }
+
+    long getReturned() {
+        return this.returned;
+    }
+
+    long getLastRef() {
+        return this.lastRef;
+    }
+
+    double getLastKey() {
+        return this.lastKey;
+    }
+}
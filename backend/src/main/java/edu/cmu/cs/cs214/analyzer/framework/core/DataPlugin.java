@@ -20,4 +20,14 @@ public interface DataPlugin {
      * @return A list of courses.
      */
     ArrayList<Course> getCourses();
+
+    /**
+     * Called when the plugin is registered with the framework. Plugins that take long to fetch
+     * their courses can keep the {@link AppFramework} to report their progress while the
+     * framework analyzes them.
+     *
+     * @param framework The framework the plugin is registered with
+     */
+    default void onRegister(AppFramework framework) {
+    }
 }
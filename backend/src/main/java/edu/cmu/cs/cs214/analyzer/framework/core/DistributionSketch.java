@@ -0,0 +1,305 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
+
+/**
+ * A mergeable fixed-bin histogram that summarizes a stream of values, such as review ratings,
+ * so that quantiles like the median can be estimated without keeping every value. The range of
+ * the sketch is split into bins of equal width; values outside the range are counted in the
+ * first or last bin. A quantile is interpolated within its bin, so it is off by at most one bin
+ * width, and clamped to the exact minimum and maximum seen. The count, sum and mean are exact.
+ *
+ * Only the non-empty bins are stored, so a sketch of a few values stays small. Sketches are
+ * updated in place; a published sketch must be copied before it is updated.
+ */
+public final class DistributionSketch {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final double lower;
+    private final double upper;
+    private final int numBins;
+    // The non-empty bins in increasing order, and the number of values in each
+    private int[] bins;
+    private long[] counts;
+    private int used;
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+
+    /**
+     * Create an empty sketch.
+     *
+     * @param lower The lower bound of the range
+     * @param upper The upper bound of the range
+     * @param numBins The number of bins the range is split into
+     */
+    public DistributionSketch(double lower, double upper, int numBins) {
+        if (!(lower < upper) || numBins <= 0)
+            throw new IllegalArgumentException("Invalid sketch range [" + lower + ", " + upper + "] with " + numBins + " bins");
+        this.lower = lower;
+        this.upper = upper;
+        this.numBins = numBins;
+        this.bins = new int[0];
+        this.counts = new long[0];
+        this.used = 0;
+        this.count = 0;
+        this.sum = 0;
+        this.min = Double.NaN;
+        this.max = Double.NaN;
+    }
+
+    /**
+     * Create a copy of a sketch, which can be updated without affecting the original.
+     *
+     * @param other The sketch to copy
+     */
+    public DistributionSketch(DistributionSketch other) {
+        this.lower = other.lower;
+        this.upper = other.upper;
+        this.numBins = other.numBins;
+        this.bins = Arrays.copyOf(other.bins, other.used);
+        this.counts = Arrays.copyOf(other.counts, other.used);
+        this.used = other.used;
+        this.count = other.count;
+        this.sum = other.sum;
+        this.min = other.min;
+        this.max = other.max;
+    }
+
+    /**
+     * Read a sketch written by {@link #writeTo(SnapshotFile.Output)}.
+     *
+     * @param in The input to read from
+     * @throws IllegalArgumentException If the range or bins are invalid
+     */
+    DistributionSketch(SnapshotFile.Input in) {
+        this(in.getDouble(), in.getDouble(), in.getInt());
+        this.used = in.getInt();
+        this.bins = in.getInts(this.used);
+        this.counts = in.getLongs(this.used);
+        this.count = in.getLong();
+        this.sum = in.getDouble();
+        this.min = in.getDouble();
+        this.max = in.getDouble();
+    }
+
+    /**
+     * Create an empty sketch of ratings in [0, 5], with bins of width 0.05.
+     *
+     * @return The sketch
+     */
+    public static DistributionSketch forRates() {
+        return new DistributionSketch(0, 5, 100);
+    }
+
+    /**
+     * Create an empty sketch of weekly workloads in [0, 100] hours, with bins of width 0.5.
+     *
+     * @return The sketch
+     */
+    public static DistributionSketch forWorkloads() {
+        return new DistributionSketch(0, 100, 200);
+    }
+
+    /**
+     * Add a value to this sketch.
+     *
+     * @param value The value to add
+     */
+    public void add(double value) {
+        if (Double.isNaN(value))
+            return;
+        int bin = (int) ((value - this.lower) / (this.upper - this.lower) * this.numBins);
+        addToBin(Math.max(0, Math.min(this.numBins - 1, bin)), 1);
+        if (this.count == 0) {
+            this.min = value;
+            this.max = value;
+        } else {
+            this.min = Math.min(this.min, value);
+            this.max = Math.max(this.max, value);
+        }
+        this.count++;
+        this.sum += value;
+    }
+
+    /**
+     * Add all values summarized by another sketch of the same range to this sketch.
+     *
+     * @param other The sketch to merge
+     * @throws IllegalArgumentException If the other sketch has a different range or bins
+     */
+    public void merge(DistributionSketch other) {
+        if (other.lower != this.lower || other.upper != this.upper || other.numBins != this.numBins)
+            throw new IllegalArgumentException("Cannot merge sketches of different bins");
+        if (other.count == 0)
+            return;
+        for (int i = 0; i < other.used; i++)
+            addToBin(other.bins[i], other.counts[i]);
+        if (this.count == 0) {
+            this.min = other.min;
+            this.max = other.max;
+        } else {
+            this.min = Math.min(this.min, other.min);
+            this.max = Math.max(this.max, other.max);
+        }
+        this.count += other.count;
+        this.sum += other.sum;
+    }
+
+    /**
+     * Remove all values summarized by another sketch of the same range, which must have been
+     * merged into this sketch before. The count, sum and mean stay exact. The minimum and
+     * maximum of the remaining values are not known exactly, so they are narrowed down to the
+     * bins that still hold values, which keeps quantiles within one bin width.
+     *
+     * @param other The sketch to subtract
+     * @throws IllegalStateException If the other sketch has a different range or bins, or
+     *         holds values this sketch doesn't, i.e., it has not been merged before
+     */
+    public void subtract(DistributionSketch other) {
+        if (other.lower != this.lower || other.upper != this.upper || other.numBins != this.numBins)
+            throw new IllegalStateException("Cannot subtract sketches of different bins");
+        if (other.count == 0)
+            return;
+        for (int i = 0; i < other.used; i++)
+            removeFromBin(other.bins[i], other.counts[i]);
+        this.count -= other.count;
+        this.sum -= other.sum;
+        if (this.used == 0) {
+            this.count = 0;
+            this.sum = 0;
+            this.min = Double.NaN;
+            this.max = Double.NaN;
+            return;
+        }
+        // Values outside the range are counted in the first or last bin, which don't bound them
+        double width = (this.upper - this.lower) / this.numBins;
+        if (this.bins[0] > 0)
+            this.min = Math.max(this.min, this.lower + this.bins[0] * width);
+        if (this.bins[this.used - 1] < this.numBins - 1)
+            this.max = Math.min(this.max, this.lower + (this.bins[this.used - 1] + 1) * width);
+    }
+
+    private void removeFromBin(int bin, long n) {
+        int i = Arrays.binarySearch(this.bins, 0, this.used, bin);
+        if (i < 0 || this.counts[i] < n)
+            throw new IllegalStateException("Cannot subtract values that have not been added");
+        this.counts[i] -= n;
+        if (this.counts[i] > 0)
+            return;
+        System.arraycopy(this.bins, i + 1, this.bins, i, this.used - i - 1);
+        System.arraycopy(this.counts, i + 1, this.counts, i, this.used - i - 1);
+        this.used--;
+    }
+
+    private void addToBin(int bin, long n) {
+        int i = Arrays.binarySearch(this.bins, 0, this.used, bin);
+        if (i >= 0) {
+            this.counts[i] += n;
+            return;
+        }
+        i = -i - 1;
+        if (this.used == this.bins.length) {
+            int capacity = Math.min(this.numBins, Math.max(INITIAL_CAPACITY, this.used * 2));
+            this.bins = Arrays.copyOf(this.bins, capacity);
+            this.counts = Arrays.copyOf(this.counts, capacity);
+        }
+        System.arraycopy(this.bins, i, this.bins, i + 1, this.used - i);
+        System.arraycopy(this.counts, i, this.counts, i + 1, this.used - i);
+        this.bins[i] = bin;
+        this.counts[i] = n;
+        this.used++;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public double getSum() {
+        return this.sum;
+    }
+
+    /**
+     * Returns the exact mean of the values.
+     *
+     * @return The mean, or NaN if there is no value
+     */
+    public double getMean() {
+        return this.count == 0 ? Double.NaN : this.sum / this.count;
+    }
+
+    /**
+     * Estimate a quantile of the values.
+     *
+     * @param q The quantile, in [0, 1], e.g., 0.5 for the median
+     * @return The estimated quantile, or NaN if there is no value
+     * @throws IllegalArgumentException If the quantile is out of [0, 1]
+     */
+    public double getQuantile(double q) {
+        if (!(q >= 0 && q <= 1))
+            throw new IllegalArgumentException("Invalid quantile " + q);
+        if (this.count == 0)
+            return Double.NaN;
+
+        // Find the bin holding the value of the given rank, then interpolate within the bin
+        double rank = q * this.count;
+        double width = (this.upper - this.lower) / this.numBins;
+        long seen = 0;
+        for (int i = 0; i < this.used; i++) {
+            if (seen + this.counts[i] >= rank) {
+                double fraction = (rank - seen) / this.counts[i];
+                double estimate = this.lower + (this.bins[i] + fraction) * width;
+                return Math.max(this.min, Math.min(this.max, estimate));
+            }
+            seen += this.counts[i];
+        }
+        return this.max;
+    }
+
+    public double getMedian() {
+        return getQuantile(0.5);
+    }
+
+    public double getP90() {
+        return getQuantile(0.9);
+    }
+
+    /**
+     * Write this sketch to a snapshot file.
+     *
+     * @param out The output to write to
+     * @throws IOException If the output fails
+     */
+    void writeTo(SnapshotFile.Output out) throws IOException {
+        out.putDouble(this.lower);
+        out.putDouble(this.upper);
+        out.putInt(this.numBins);
+        out.putInt(this.used);
+        out.putInts(this.bins, this.used);
+        out.putLongs(this.counts, this.used);
+        out.putLong(this.count);
+        out.putDouble(this.sum);
+        out.putDouble(this.min);
+        out.putDouble(this.max);
+    }
+
+    /**
+     * Write the count, median and 90th percentile of this sketch as a JSON object. The
+     * quantiles of an empty sketch are written as null.
+     *
+     * @param writer The {@link JsonWriter} to write to
+     * @throws IOException If the writer fails
+     */
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject().name("count").value(this.count);
+        if (this.count == 0)
+            writer.name("median").nullValue().name("p90").nullValue();
+        else
+            writer.name("median").value(getMedian()).name("p90").value(getP90());
+        writer.endObject();
+    }
+}
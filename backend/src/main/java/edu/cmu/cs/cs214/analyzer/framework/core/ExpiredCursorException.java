@@ -0,0 +1,12 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+/**
+ * Thrown when a {@link Cursor} refers to a snapshot that is no longer retained.
+ */
+public class ExpiredCursorException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ExpiredCursorException(long version) {
+        super("Cursor of snapshot " + version + " has expired");
+    }
+}
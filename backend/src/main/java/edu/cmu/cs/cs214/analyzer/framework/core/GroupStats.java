@@ -0,0 +1,221 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+import java.util.List;
+
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
+
+/**
+ * Aggregated statistics of a group of analyzed courses sharing the value of a field, e.g., all
+ * courses of one category.
+ */
+public final class GroupStats {
+    /**
+     * The fields that courses can be grouped by.
+     */
+    public static final List<String> GROUP_BY_FIELDS = List.of(
+        "organizationName", "category", "level", "year", "instructor");
+    /**
+     * The course fields that are aggregated in each group.
+     */
+    public static final List<String> METRICS = List.of("rate", "price", "workload", "students");
+
+    private final String key;
+    private long count;
+    private final MetricStats rate;
+    private final MetricStats price;
+    private final MetricStats workload;
+    private final MetricStats students;
+    private final DistributionSketch rateDistribution;
+    private final DistributionSketch workloadDistribution;
+
+    GroupStats(String key) {
+        this.key = key;
+        this.count = 0;
+        this.rate = new MetricStats();
+        this.price = new MetricStats();
+        this.workload = new MetricStats();
+        this.students = new MetricStats();
+        this.rateDistribution = DistributionSketch.forRates();
+        this.workloadDistribution = DistributionSketch.forWorkloads();
+    }
+
+    /**
+     * Create a copy of a group, which can be updated without affecting the original.
+     *
+     * @param other The group to copy
+     */
+    GroupStats(GroupStats other) {
+        this.key = other.key;
+        this.count = other.count;
+        this.rate = new MetricStats(other.rate);
+        this.price = new MetricStats(other.price);
+        this.workload = new MetricStats(other.workload);
+        this.students = new MetricStats(other.students);
+        this.rateDistribution = new DistributionSketch(other.rateDistribution);
+        this.workloadDistribution = new DistributionSketch(other.workloadDistribution);
+    }
+
+    /**
+     * Read a group written by {@link #writeTo(SnapshotFile.Output)}.
+     *
+     * @param in The input to read from
+     */
+    GroupStats(SnapshotFile.Input in) {
+        this.key = in.getSharedString();
+        this.count = in.getLong();
+        this.rate = new MetricStats(in);
+        this.price = new MetricStats(in);
+        this.workload = new MetricStats(in);
+        this.students = new MetricStats(in);
+        this.rateDistribution = new DistributionSketch(in);
+        this.workloadDistribution = new DistributionSketch(in);
+    }
+
+    void add(Course course) {
+        this.count++;
+        this.rate.add(course.rate);
+        this.price.add(course.price);
+        this.workload.add(course.estimatedWorkload);
+        this.students.add(course.totalStudents);
+        if (course.getRateDistribution() != null)
+            this.rateDistribution.merge(course.getRateDistribution());
+        if (course.getWorkloadDistribution() != null)
+            this.workloadDistribution.merge(course.getWorkloadDistribution());
+    }
+
+    /**
+     * Remove a course that has been added to this group.
+     *
+     * @param course The course, with the values it had when it was added
+     * @return Whether the minimum or maximum of a metric has lost its last course, which then have to be
+     *         recomputed with {@link #resetExtremes()} and {@link #includeExtremes(CourseSegment, int)}
+     */
+    boolean remove(Course course) {
+        this.count--;
+        boolean stale = this.rate.remove(course.rate);
+        stale |= this.price.remove(course.price);
+        stale |= this.workload.remove(course.estimatedWorkload);
+        stale |= this.students.remove(course.totalStudents);
+        if (course.getRateDistribution() != null)
+            this.rateDistribution.subtract(course.getRateDistribution());
+        if (course.getWorkloadDistribution() != null)
+            this.workloadDistribution.subtract(course.getWorkloadDistribution());
+        return stale;
+    }
+
+    void resetExtremes() {
+        this.rate.resetExtremes();
+        this.price.resetExtremes();
+        this.workload.resetExtremes();
+        this.students.resetExtremes();
+    }
+
+    /**
+     * Widen the minimum and maximum of the metrics to a stored course of this group.
+     *
+     * @param segment The segment of the course
+     * @param row The row of the course
+     */
+    void includeExtremes(CourseSegment segment, int row) {
+        this.rate.includeExtreme(segment.getRate(row));
+        this.price.includeExtreme(segment.getPrice(row));
+        this.workload.includeExtreme(segment.getEstimatedWorkload(row));
+        this.students.includeExtreme(segment.getTotalStudents(row));
+    }
+
+    /**
+     * Returns the value of the grouped field shared by the courses of this group.
+     *
+     * @return The group key
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    /**
+     * Returns the number of courses in this group.
+     *
+     * @return The number of courses
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Returns the statistics of one of the {@link #METRICS}.
+     *
+     * @param metric The name of the metric
+     * @return The statistics
+     * @throws IllegalArgumentException If the metric is unknown
+     */
+    public MetricStats getMetric(String metric) {
+        switch (metric) {
+            case "rate":
+                return this.rate;
+            case "price":
+                return this.price;
+            case "workload":
+                return this.workload;
+            case "students":
+                return this.students;
+            default:
+                throw new IllegalArgumentException("Unknown metric " + metric);
+        }
+    }
+
+    /**
+     * Returns the distribution of the course rates of all reviews of the courses in this group.
+     *
+     * @return The distribution, which must not be modified
+     */
+    public DistributionSketch getRateDistribution() {
+        return this.rateDistribution;
+    }
+
+    /**
+     * Returns the distribution of the weekly workloads of all reviews of the courses in this
+     * group.
+     *
+     * @return The distribution, which must not be modified
+     */
+    public DistributionSketch getWorkloadDistribution() {
+        return this.workloadDistribution;
+    }
+
+    /**
+     * Write this group to a snapshot file.
+     *
+     * @param out The output to write to
+     * @throws IOException If the output fails
+     */
+    void writeTo(SnapshotFile.Output out) throws IOException {
+        out.putSharedString(this.key);
+        out.putLong(this.count);
+        this.rate.writeTo(out);
+        this.price.writeTo(out);
+        this.workload.writeTo(out);
+        this.students.writeTo(out);
+        this.rateDistribution.writeTo(out);
+        this.workloadDistribution.writeTo(out);
+    }
+
+    /**
+     * Write this group as a JSON object
+     * 
+     * @param writer The {@link JsonWriter} to write to
+     * @throws IOException If the writer fails
+     */
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject().name("key").value(this.key).name("count").value(this.count);
+        for (String metric : METRICS) {
+            writer.name(metric);
+            getMetric(metric).writeJson(writer);
+        }
+        writer.name("rateDistribution");
+        this.rateDistribution.writeJson(writer);
+        writer.name("workloadDistribution");
+        this.workloadDistribution.writeJson(writer);
+        writer.endObject();
+    }
+}
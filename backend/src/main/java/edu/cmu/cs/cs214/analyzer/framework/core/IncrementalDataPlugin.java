@@ -0,0 +1,30 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.util.ArrayList;
+
+/**
+ * A data plugin that can tell which version of its data it has, and hand over only the courses
+ * that changed since an earlier version. The framework refreshes the analysis of such a plugin
+ * by replacing the analyzed courses with the same ids as the changed courses, instead of
+ * reloading all of them. Versions are opaque to the framework, which only compares them and
+ * passes them back to the plugin.
+ */
+public interface IncrementalDataPlugin extends DataPlugin {
+    /**
+     * Returns the current version of the plugin's data, e.g., a timestamp or an ETag of its
+     * source. The version must change whenever a course is added or changed.
+     *
+     * @return The version, or null if it is unknown, in which case every refresh reloads all
+     *         courses.
+     */
+    String getDataVersion();
+
+    /**
+     * Retrieves the courses that have been added or changed since a version. A changed course
+     * keeps its id, which identifies the course it replaces.
+     *
+     * @param version A version returned by {@link #getDataVersion()} before.
+     * @return A list of the added and changed courses.
+     */
+    ArrayList<Course> getCoursesChangedSince(String version);
+}
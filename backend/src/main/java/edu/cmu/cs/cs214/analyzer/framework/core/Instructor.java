@@ -1,28 +1,84 @@
 package edu.cmu.cs.cs214.analyzer.framework.core;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import edu.cmu.cs.cs214.analyzer.framework.Util;
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
 
 public class Instructor {
     private String name;
     private int courseNum;
-    private ArrayList<String> courseNames;
+    // The number of added courses of each name, in the order the names were first added
+    private Map<String, Integer> courseCounts;
     private int organizationNum;
-    private ArrayList<String> organizationNames;
+    // The number of added courses of each organization, in the order it was first added
+    private Map<String, Integer> organizationCounts;
     private int totalStudents;
     private double rate;
     private int rateEntries;
+    private DistributionSketch rateDistribution;
+    // The names listed from the counts, built when they are first read after a change
+    private volatile ArrayList<String> courseNames;
+    private volatile ArrayList<String> organizationNames;
+    private volatile byte[] json;
 
     public Instructor(String name) {
         this.name = name;
         this.courseNum = 0;
-        this.courseNames = new ArrayList<String>();
+        this.courseCounts = new LinkedHashMap<String, Integer>();
         this.organizationNum = 0;
-        this.organizationNames = new ArrayList<String>();
+        this.organizationCounts = new LinkedHashMap<String, Integer>();
         this.totalStudents = 0;
         this.rate = 0;
         this.rateEntries = 0;
+        this.rateDistribution = DistributionSketch.forRates();
+    }
+
+    /**
+     * Create a copy of an instructor, which can be updated without affecting the original
+     * 
+     * @param other The instructor to copy
+     */
+    public Instructor(Instructor other) {
+        this.name = other.name;
+        this.courseNum = other.courseNum;
+        this.courseCounts = new LinkedHashMap<String, Integer>(other.courseCounts);
+        this.organizationNum = other.organizationNum;
+        this.organizationCounts = new LinkedHashMap<String, Integer>(other.organizationCounts);
+        this.totalStudents = other.totalStudents;
+        this.rate = other.rate;
+        this.rateEntries = other.rateEntries;
+        this.rateDistribution = new DistributionSketch(other.rateDistribution);
+    }
+
+    /**
+     * Read an instructor written by {@link #writeTo(SnapshotFile.Output)}
+     * 
+     * @param in The input to read from
+     */
+    Instructor(SnapshotFile.Input in) {
+        this.name = in.getSharedString();
+        this.courseNum = in.getInt();
+        int numCourseNames = in.getInt();
+        this.courseCounts = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < numCourseNames; i++)
+            this.courseCounts.merge(in.getSharedString(), 1, Integer::sum);
+        this.organizationNum = in.getInt();
+        int numOrganizations = in.getInt();
+        this.organizationCounts = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < numOrganizations; i++) {
+            String organizationName = in.getSharedString();
+            this.organizationCounts.put(organizationName, in.getInt());
+        }
+        this.totalStudents = in.getInt();
+        this.rate = in.getDouble();
+        this.rateEntries = in.getInt();
+        this.rateDistribution = new DistributionSketch(in);
     }
 
     /**
@@ -31,8 +87,10 @@ public class Instructor {
      * @param courseName The name of the course to add
      */
     public void addCourse(String courseName) {
+        this.json = null;
+        this.courseNames = null;
         (this.courseNum)++;
-        this.courseNames.add(courseName);
+        this.courseCounts.merge(courseName, 1, Integer::sum);
     }
 
     /**
@@ -41,13 +99,12 @@ public class Instructor {
      * @param organizationName The name of the organization to add
      */
     public void addOrganization(String organizationName) {
-        // Do nothing if the organization has been added
-        for (String name: this.organizationNames)
-            if (name.equals(organizationName))
-                return;
-
+        // Only count the course if the organization has been added
+        if (this.organizationCounts.merge(organizationName, 1, Integer::sum) > 1)
+            return;
+        this.json = null;
+        this.organizationNames = null;
         (this.organizationNum)++;
-        this.organizationNames.add(organizationName);
     }
 
     /**
@@ -56,6 +113,7 @@ public class Instructor {
      * @param numStudents The number of new students
      */
     public void addStudents(int numStudents) {
+        this.json = null;
         if (numStudents > 0)
             this.totalStudents += numStudents;
     }
@@ -67,6 +125,7 @@ public class Instructor {
      * @param rateEntries The number of entries of the new rate
      */
     public void updateRate(double rate, int rateEntries) {
+        this.json = null;
         if (rateEntries > 0) {
             final double rateSum = this.rate * this.rateEntries + rate * rateEntries;
             this.rateEntries += rateEntries;
@@ -74,16 +133,120 @@ public class Instructor {
         }
     }
 
+    /**
+     * Update the rate of this instructor with new rates, which are also added to the
+     * distribution of the instructor's rates
+     * 
+     * @param rates The distribution of the new rates
+     */
+    public void updateRate(DistributionSketch rates) {
+        this.json = null;
+        this.rateDistribution.merge(rates);
+        updateRate(rates.getMean(), (int) rates.getCount());
+    }
+
+    /**
+     * Remove a course that has been added to this instructor
+     * 
+     * @param courseName The name of the course to remove
+     */
+    public void removeCourse(String courseName) {
+        Integer count = this.courseCounts.get(courseName);
+        if (count == null)
+            return;
+        if (count > 1)
+            this.courseCounts.put(courseName, count - 1);
+        else
+            this.courseCounts.remove(courseName);
+        this.json = null;
+        this.courseNames = null;
+        (this.courseNum)--;
+    }
+
+    /**
+     * Remove the organization of a course that has been removed from this instructor. The
+     * organization is only removed with the instructor's last course of it.
+     * 
+     * @param organizationName The name of the organization of the removed course
+     */
+    public void removeOrganization(String organizationName) {
+        Integer count = this.organizationCounts.get(organizationName);
+        if (count == null)
+            return;
+        if (count > 1) {
+            this.organizationCounts.put(organizationName, count - 1);
+            return;
+        }
+        this.json = null;
+        this.organizationNames = null;
+        this.organizationCounts.remove(organizationName);
+        (this.organizationNum)--;
+    }
+
+    /**
+     * Remove students that have been added to this instructor
+     * 
+     * @param numStudents The number of removed students
+     */
+    public void removeStudents(int numStudents) {
+        this.json = null;
+        if (numStudents > 0)
+            this.totalStudents -= numStudents;
+    }
+
+    /**
+     * Remove rates that have been added with {@link #updateRate(DistributionSketch)}
+     * 
+     * @param rates The distribution of the removed rates
+     */
+    public void removeRate(DistributionSketch rates) {
+        this.json = null;
+        this.rateDistribution.subtract(rates);
+        int rateEntries = (int) rates.getCount();
+        if (rateEntries <= 0)
+            return;
+        final double rateSum = this.rate * this.rateEntries - rates.getSum();
+        this.rateEntries -= rateEntries;
+        this.rate = this.rateEntries > 0 ? rateSum / this.rateEntries : 0;
+    }
+
+    public int getCourseNum() {
+        return this.courseNum;
+    }
+
     public String getName() {
         return this.name;
     }
 
+    /**
+     * Returns the names of the added courses, once for every course added with the name.
+     * 
+     * @return The course names, which must not be modified
+     */
     public ArrayList<String> getCourseNames() {
-        return this.courseNames;
+        ArrayList<String> names = this.courseNames;
+        if (names == null) {
+            names = new ArrayList<String>(this.courseNum);
+            for (Map.Entry<String, Integer> entry : this.courseCounts.entrySet())
+                for (int i = 0; i < entry.getValue(); i++)
+                    names.add(entry.getKey());
+            this.courseNames = names;
+        }
+        return names;
     }
 
+    /**
+     * Returns the names of the organizations of the added courses, once each.
+     * 
+     * @return The organization names, which must not be modified
+     */
     public ArrayList<String> getOrganizationNames() {
-        return this.organizationNames;
+        ArrayList<String> names = this.organizationNames;
+        if (names == null) {
+            names = new ArrayList<String>(this.organizationCounts.keySet());
+            this.organizationNames = names;
+        }
+        return names;
     }
 
     public int getTotalStudents() {
@@ -94,33 +257,85 @@ public class Instructor {
         return this.rate;
     }
 
+    /**
+     * Returns the distribution of the rates added by {@link #updateRate(DistributionSketch)}.
+     * 
+     * @return The distribution, which must not be modified
+     */
+    public DistributionSketch getRateDistribution() {
+        return this.rateDistribution;
+    }
+
+    /**
+     * Write this instructor to a snapshot file
+     * 
+     * @param out The output to write to
+     * @throws IOException If the output fails
+     */
+    void writeTo(SnapshotFile.Output out) throws IOException {
+        out.putSharedString(this.name);
+        out.putInt(this.courseNum);
+        ArrayList<String> courseNames = getCourseNames();
+        out.putInt(courseNames.size());
+        for (String courseName : courseNames)
+            out.putSharedString(courseName);
+        out.putInt(this.organizationNum);
+        out.putInt(this.organizationCounts.size());
+        for (Map.Entry<String, Integer> entry : this.organizationCounts.entrySet()) {
+            out.putSharedString(entry.getKey());
+            out.putInt(entry.getValue());
+        }
+        out.putInt(this.totalStudents);
+        out.putDouble(this.rate);
+        out.putInt(this.rateEntries);
+        this.rateDistribution.writeTo(out);
+    }
+
+    /**
+     * Write this instructor as a JSON object
+     * 
+     * @param writer The {@link JsonWriter} to write to
+     * @throws IOException If the writer fails
+     */
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.rawValue(toJsonBytes());
+    }
+
+    /**
+     * Get the UTF-8 encoded JSON of this instructor, rendering it only if the instructor has
+     * changed since the last time
+     * 
+     * @return The JSON of this instructor
+     */
+    public byte[] toJsonBytes() {
+        byte[] bytes = this.json;
+        if (bytes == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                JsonWriter writer = new JsonWriter(out);
+                writer.beginObject()
+                    .name("name").value(this.name)
+                    .name("courseNum").value(this.courseNum)
+                    .name("courseNames").stringArray(getCourseNames())
+                    .name("organizationNum").value(this.organizationNum)
+                    .name("organizationNames").stringArray(getOrganizationNames())
+                    .name("totalStudents").value(this.totalStudents)
+                    .name("rate").value(this.rate)
+                    .name("rateDistribution");
+                this.rateDistribution.writeJson(writer);
+                writer.endObject();
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);  // Never thrown by a ByteArrayOutputStream
+            }
+            bytes = out.toByteArray();
+            this.json = bytes;
+        }
+        return bytes;
+    }
+
     @Override
     public String toString() {
-        // Escape strings
-        this.name = escapeString(this.name);
-        for (int i = 0; i < this.courseNames.size(); i++)
-			this.courseNames.set(i, escapeString(this.courseNames.get(i)));
-        for (int i = 0; i < this.organizationNames.size(); i++)
-			this.organizationNames.set(i, escapeString(this.organizationNames.get(i)));
-
-        return "{ " +
-            "\"name\": \"" + this.name + "\", " +
-            "\"courseNum\": " + this.courseNum + ", " +
-            "\"courseNames\": " + Util.arrayListToString(this.courseNames, true) + ", " +
-            "\"organizationNum\": " + this.organizationNum + ", " +
-            "\"organizationNames\": " + Util.arrayListToString(this.organizationNames, true) + ", " +
-            "\"totalStudents\": " + this.totalStudents + ", " +
-            "\"rate\": " + this.rate +
-            " }";
-    }
-
-    public static String escapeString(String s) {
-        return s.replace("\\", "\\\\")
-                .replace("\t", "\\t")
-                .replace("\b", "\\b")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\f", "\\f")
-                .replace("\"", "\\\"");
+        return new String(toJsonBytes(), StandardCharsets.UTF_8);
     }
 }
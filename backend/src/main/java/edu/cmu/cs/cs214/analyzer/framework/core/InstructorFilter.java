@@ -1,10 +1,19 @@
 package edu.cmu.cs.cs214.analyzer.framework.core;
 
+import java.util.List;
+
 public class InstructorFilter {
+    /**
+     * The fields that instructors can be sorted by.
+     */
+    public static final List<String> SORT_FIELDS = List.of("rate", "totalStudents", "courseNum");
+
     private final String nameKeyword;
     private final String courseNameKeyword;
     private final String organizationNameKeyword;
     private final int size;
+    private final String sortField;
+    private final boolean descending;
 
     public InstructorFilter(
         String nameKeyword,
@@ -12,10 +21,32 @@ public class InstructorFilter {
         String organizationNameKeyword,
         int size
     ) {
+        this(nameKeyword, courseNameKeyword, organizationNameKeyword, size, null, false);
+    }
+
+    /**
+     * Create a filter that returns the first matched instructors after sorting them by a field.
+     *
+     * @param sortField One of {@link #SORT_FIELDS}, or null to keep the order of analysis
+     * @param descending Whether to sort from the largest value to the smallest
+     * @throws IllegalArgumentException If the sort field is unknown
+     */
+    public InstructorFilter(
+        String nameKeyword,
+        String courseNameKeyword,
+        String organizationNameKeyword,
+        int size,
+        String sortField,
+        boolean descending
+    ) {
+        if (sortField != null && !SORT_FIELDS.contains(sortField))
+            throw new IllegalArgumentException("Unknown sort field " + sortField);
         this.nameKeyword = nameKeyword;
         this.courseNameKeyword = courseNameKeyword;
         this.organizationNameKeyword = organizationNameKeyword;
         this.size = size;
+        this.sortField = sortField;
+        this.descending = descending;
     }
 
     public boolean isMatched(Instructor instructor) {
@@ -45,7 +76,43 @@ public class InstructorFilter {
         return true;
     }
 
+    /**
+     * Get a key that is equal for filters that always match the same instructors in the same
+     * order
+     * 
+     * @return The key
+     */
+    String getCacheKey() {
+        return QueryCache.key("instructors", this.nameKeyword, this.courseNameKeyword, this.organizationNameKeyword,
+                              this.size, this.sortField, this.sortField != null && this.descending);
+    }
+
     public int getSize() {
         return this.size;
     }
+
+    public String getSortField() {
+        return this.sortField;
+    }
+
+    public boolean isDescending() {
+        return this.descending;
+    }
+
+    /**
+     * Get the value of the sort field of an instructor.
+     *
+     * @param instructor The instructor
+     * @return The value to sort by
+     */
+    double getSortKey(Instructor instructor) {
+        switch (this.sortField) {
+            case "rate":
+                return instructor.getRate();
+            case "totalStudents":
+                return instructor.getTotalStudents();
+            default:
+                return instructor.getCourseNum();
+        }
+    }
 }
@@ -0,0 +1,188 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
+
+/**
+ * A report of the memory saved by storing repeated course strings as dictionary codes. For each
+ * encoded field it compares the estimated size of keeping a separate string per course, as the
+ * data plugins originally produce them, with the size of the codes plus one copy of each
+ * distinct string.
+ */
+public final class MemoryReport {
+    private static final int REFERENCE_BYTES = 4;
+    private static final int CODE_BYTES = 4;
+    private static final int STRING_HEADER_BYTES = 24;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private final long numCourses;
+    private final List<FieldUsage> fields;
+
+    private MemoryReport(long numCourses, List<FieldUsage> fields) {
+        this.numCourses = numCourses;
+        this.fields = Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * Measure the dictionary-encoded fields of the given segments.
+     *
+     * @param segments The segments to measure
+     * @return The report
+     */
+    static MemoryReport of(List<CourseSegment> segments) {
+        FieldUsage organization = new FieldUsage("organizationName");
+        FieldUsage category = new FieldUsage("category");
+        FieldUsage level = new FieldUsage("level");
+        FieldUsage instructor = new FieldUsage("instructorNames");
+        long numCourses = 0;
+        for (CourseSegment segment : segments) {
+            StringDictionary dictionary = segment.getDictionary();
+            for (int row = 0; row < segment.size(); row++) {
+                organization.add(dictionary, segment.getOrganizationCode(row));
+                category.add(dictionary, segment.getCategoryCode(row));
+                level.add(dictionary, segment.getLevelCode(row));
+            }
+            for (int i = segment.getInstructorStart(0); i < segment.getInstructorStart(segment.size()); i++)
+                instructor.add(dictionary, segment.getInstructorCode(i));
+            numCourses += segment.size();
+        }
+
+        ArrayList<FieldUsage> fields = new ArrayList<FieldUsage>();
+        fields.add(organization);
+        fields.add(category);
+        fields.add(level);
+        fields.add(instructor);
+        return new MemoryReport(numCourses, fields);
+    }
+
+    public long getNumCourses() {
+        return this.numCourses;
+    }
+
+    public List<FieldUsage> getFields() {
+        return this.fields;
+    }
+
+    /**
+     * Estimate the heap size of a string, including its backing array.
+     *
+     * @param value The string
+     * @return The estimated size in bytes
+     */
+    static long stringBytes(String value) {
+        boolean latin1 = true;
+        for (int i = 0; i < value.length() && latin1; i++)
+            latin1 = value.charAt(i) <= 0xFF;
+        long arrayBytes = ARRAY_HEADER_BYTES + (latin1 ? value.length() : 2L * value.length());
+        return STRING_HEADER_BYTES + (arrayBytes + 7) / 8 * 8;
+    }
+
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject()
+            .name("numCourses").value(this.numCourses)
+            .name("fields").beginArray();
+        for (FieldUsage field : this.fields) {
+            writer.beginObject()
+                .name("name").value(field.getName())
+                .name("numValues").value(field.getNumValues())
+                .name("numDistinct").value(field.getNumDistinct())
+                .name("stringBytes").value(field.getStringBytes())
+                .name("encodedBytes").value(field.getEncodedBytes())
+                .name("savedBytes").value(field.getSavedBytes())
+                .endObject();
+        }
+        writer.endArray().endObject();
+    }
+
+    @Override
+    public String toString() {
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(out);
+            writeJson(writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * The memory usage of one dictionary-encoded field.
+     */
+    public static final class FieldUsage {
+        private final String name;
+        private long numValues;
+        private long stringBytes;
+        private long distinctBytes;
+        // Whether each dictionary code has been counted as distinct already
+        private boolean[] seen = new boolean[16];
+        private int numDistinct;
+
+        private FieldUsage(String name) {
+            this.name = name;
+        }
+
+        private void add(StringDictionary dictionary, int code) {
+            if (code == StringDictionary.NULL_CODE)
+                return;
+            long bytes = stringBytes(dictionary.decode(code));
+            this.numValues++;
+            this.stringBytes += REFERENCE_BYTES + bytes;
+            if (code >= this.seen.length)
+                this.seen = Arrays.copyOf(this.seen, Math.max(code + 1, this.seen.length * 2));
+            if (!this.seen[code]) {
+                this.seen[code] = true;
+                this.numDistinct++;
+                this.distinctBytes += bytes;
+            }
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Returns the number of non-null values of this field over all courses.
+         *
+         * @return The number of values
+         */
+        public long getNumValues() {
+            return this.numValues;
+        }
+
+        public int getNumDistinct() {
+            return this.numDistinct;
+        }
+
+        /**
+         * Returns the estimated size of storing a reference to a separate string for every value.
+         *
+         * @return The size in bytes
+         */
+        public long getStringBytes() {
+            return this.stringBytes;
+        }
+
+        /**
+         * Returns the estimated size of storing a code for every value plus each distinct string
+         * once.
+         *
+         * @return The size in bytes
+         */
+        public long getEncodedBytes() {
+            return CODE_BYTES * this.numValues + this.distinctBytes;
+        }
+
+        public long getSavedBytes() {
+            return getStringBytes() - getEncodedBytes();
+        }
+    }
+}
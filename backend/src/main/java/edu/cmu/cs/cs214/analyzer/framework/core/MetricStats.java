@@ -0,0 +1,184 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
+
+/**
+ * Running statistics of one numeric course field over a group of courses. Values are added
+ * one at a time, so the statistics never need the courses again. Negative values stand for
+ * unknown values (e.g., a rate of -1) and are left out.
+ */
+public final class MetricStats {
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+    // The number of values equal to the minimum and to the maximum, so removing one of several
+    // equal extremes leaves them known
+    private long minCount;
+    private long maxCount;
+
+    MetricStats() {
+        this.count = 0;
+        this.sum = 0;
+        this.min = Double.NaN;
+        this.max = Double.NaN;
+        this.minCount = 0;
+        this.maxCount = 0;
+    }
+
+    MetricStats(MetricStats other) {
+        this.count = other.count;
+        this.sum = other.sum;
+        this.min = other.min;
+        this.max = other.max;
+        this.minCount = other.minCount;
+        this.maxCount = other.maxCount;
+    }
+
+    /**
+     * Read statistics written by {@link #writeTo(SnapshotFile.Output)}.
+     *
+     * @param in The input to read from
+     */
+    MetricStats(SnapshotFile.Input in) {
+        this.count = in.getLong();
+        this.sum = in.getDouble();
+        this.min = in.getDouble();
+        this.max = in.getDouble();
+        this.minCount = in.getLong();
+        this.maxCount = in.getLong();
+    }
+
+    void add(double value) {
+        if (value < 0 || Double.isNaN(value))
+            return;
+        if (this.count == 0)
+            resetExtremes();
+        includeExtreme(value);
+        this.count++;
+        this.sum += value;
+    }
+
+    /**
+     * Remove a value that has been added. The count and sum stay exact, and so do the minimum
+     * and maximum while other values equal to them are left, but once the last of them is
+     * removed they cannot be restored from the statistics.
+     *
+     * @param value The value to remove
+     * @return Whether the value was the last one equal to the minimum or maximum, which then
+     *         have to be recomputed with {@link #resetExtremes()} and {@link #includeExtreme(double)}
+     */
+    boolean remove(double value) {
+        if (value < 0 || Double.isNaN(value))
+            return false;
+        this.count--;
+        this.sum -= value;
+        if (this.count == 0) {
+            this.sum = 0;
+            resetExtremes();
+            return false;
+        }
+        boolean stale = false;
+        if (value <= this.min)
+            stale |= --this.minCount <= 0;
+        if (value >= this.max)
+            stale |= --this.maxCount <= 0;
+        return stale;
+    }
+
+    /**
+     * Forget the minimum and maximum, but keep the count and sum.
+     */
+    void resetExtremes() {
+        this.min = Double.NaN;
+        this.max = Double.NaN;
+        this.minCount = 0;
+        this.maxCount = 0;
+    }
+
+    /**
+     * Widen the minimum and maximum to a value that is already counted, or count one more
+     * value equal to them.
+     *
+     * @param value The value
+     */
+    void includeExtreme(double value) {
+        if (value < 0 || Double.isNaN(value))
+            return;
+        if (Double.isNaN(this.min) || value < this.min) {
+            this.min = value;
+            this.minCount = 1;
+        } else if (value == this.min) {
+            this.minCount++;
+        }
+        if (Double.isNaN(this.max) || value > this.max) {
+            this.max = value;
+            this.maxCount = 1;
+        } else if (value == this.max) {
+            this.maxCount++;
+        }
+    }
+
+    /**
+     * Returns the number of known values.
+     *
+     * @return The number of values
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    public double getSum() {
+        return this.sum;
+    }
+
+    /**
+     * Returns the mean of the known values.
+     *
+     * @return The mean, or NaN if there is no known value
+     */
+    public double getMean() {
+        return this.count == 0 ? Double.NaN : this.sum / this.count;
+    }
+
+    public double getMin() {
+        return this.min;
+    }
+
+    public double getMax() {
+        return this.max;
+    }
+
+    /**
+     * Write these statistics to a snapshot file.
+     *
+     * @param out The output to write to
+     * @throws IOException If the output fails
+     */
+    void writeTo(SnapshotFile.Output out) throws IOException {
+        out.putLong(this.count);
+        out.putDouble(this.sum);
+        out.putDouble(this.min);
+        out.putDouble(this.max);
+        out.putLong(this.minCount);
+        out.putLong(this.maxCount);
+    }
+
+    /**
+     * Write these statistics as a JSON object. Statistics of no value are written as null.
+     *
+     * @param writer The {@link JsonWriter} to write to
+     * @throws IOException If the writer fails
+     */
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject().name("count").value(this.count).name("sum").value(this.sum);
+        if (this.count == 0) {
+            writer.name("mean").nullValue().name("min").nullValue().name("max").nullValue();
+        } else {
+            writer.name("mean").value(getMean()).name("min").value(this.min).name("max").value(this.max);
+        }
+        writer.endObject();
+    }
+}
@@ -0,0 +1,126 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of query results. A result is kept as the references of the matched
+ * courses or instructors, not the materialized objects, and is tagged with the version of the
+ * snapshot it was computed from, so it can never be served for other data. The least recently
+ * used results are evicted when either the number of results or their estimated size exceeds
+ * its limit.
+ *
+ * All methods are thread-safe.
+ */
+final class QueryCache {
+    // Estimated bytes of an entry besides its key and references
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries;
+    // The version of the published snapshot; results of other versions are never stored
+    private long version;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    QueryCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
+
+    /**
+     * Build a key out of query parameters. Every part is prefixed by its length, so different
+     * parameters never build the same key.
+     *
+     * @param parts The parameters
+     * @return The key
+     */
+    static String key(Object... parts) {
+        StringBuilder key = new StringBuilder();
+        for (Object part : parts) {
+            String value = String.valueOf(part);
+            key.append(value.length()).append(':').append(value);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Look up the result of a query on a snapshot.
+     *
+     * @param key The key of the query
+     * @param version The version of the snapshot
+     * @return The references of the result, or null if the result is not cached
+     */
+    synchronized long[] get(String key, long version) {
+        Entry entry = this.entries.get(key);
+        if (entry == null || entry.version != version) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return entry.refs;
+    }
+
+    /**
+     * Store the result of a query on a snapshot, unless the snapshot is outdated or the result
+     * alone exceeds the size limit.
+     *
+     * @param key The key of the query
+     * @param version The version of the snapshot
+     * @param refs The references of the result, which must not be modified afterwards
+     */
+    synchronized void put(String key, long version, long[] refs) {
+        long entryBytes = ENTRY_OVERHEAD_BYTES + 2L * key.length() + 8L * refs.length;
+        if (version != this.version || entryBytes > this.maxBytes)
+            return;
+        Entry previous = this.entries.put(key, new Entry(version, refs, entryBytes));
+        if (previous != null)
+            this.bytes -= previous.bytes;
+        this.bytes += entryBytes;
+
+        // Evict the least recently used results until both limits are met again
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while (this.entries.size() > this.maxEntries || this.bytes > this.maxBytes) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            this.bytes -= eldest.bytes;
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Drop all results, because a snapshot of a new version has been published.
+     *
+     * @param version The version of the new snapshot
+     */
+    synchronized void invalidate(long version) {
+        this.version = version;
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    synchronized QueryCacheStats getStats() {
+        return new QueryCacheStats(this.hits, this.misses, this.evictions, this.entries.size(), this.bytes,
+                                   this.maxEntries, this.maxBytes);
+    }
+
+    /**
+     * A cached result.
+     */
+    private static final class Entry {
+        private final long version;
+        private final long[] refs;
+        private final long bytes;
+
+        private Entry(long version, long[] refs, long bytes) {
+            this.version = version;
+            this.refs = refs;
+            this.bytes = bytes;
+        }
+    }
+}
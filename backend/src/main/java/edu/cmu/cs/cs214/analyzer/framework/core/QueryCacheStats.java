@@ -0,0 +1,94 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
+
+/**
+ * The counters of the cache of filter query results, as of one point in time.
+ */
+public final class QueryCacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int entries;
+    private final long bytes;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    QueryCacheStats(long hits, long misses, long evictions, int entries, long bytes, int maxEntries, long maxBytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.entries = entries;
+        this.bytes = bytes;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Returns the number of results evicted to stay within the limits. Results dropped because
+     * new data was analyzed are not counted.
+     *
+     * @return The number of evicted results
+     */
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    public int getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Returns the estimated size of the cached results.
+     *
+     * @return The size in bytes
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject()
+            .name("hits").value(this.hits)
+            .name("misses").value(this.misses)
+            .name("evictions").value(this.evictions)
+            .name("entries").value(this.entries)
+            .name("bytes").value(this.bytes)
+            .name("maxEntries").value(this.maxEntries)
+            .name("maxBytes").value(this.maxBytes)
+            .endObject();
+    }
+
+    @Override
+    public String toString() {
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(out);
+            writeJson(writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.util.List;
+
+/**
+ * One page of filtered courses or instructors.
+ *
+ * @param <T> The type of the results
+ */
+public final class ResultPage<T> {
+    private final List<T> items;
+    private final long total;
+    private final Cursor next;
+
+    ResultPage(List<T> items, long total, Cursor next) {
+        this.items = items;
+        this.total = total;
+        this.next = next;
+    }
+
+    public List<T> getItems() {
+        return this.items;
+    }
+
+    /**
+     * Returns the number of results matching the filter over all pages.
+     *
+     * @return The total number of matches
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * Returns the cursor of the next page.
+     *
+     * @return The cursor, or null if this is the last page
+     */
+    public Cursor getNext() {
+        return this.next;
+    }
+}
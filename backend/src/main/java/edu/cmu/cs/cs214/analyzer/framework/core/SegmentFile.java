@@ -0,0 +1,362 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The file format of a {@link CourseSegment}, which keeps every column of the segment, its id
+ * index and its {@link TrigramIndex} in a form that can be used where it is mapped, without
+ * copying or decoding it first. {@link SegmentStore} keeps segments in files of this format, and
+ * {@link SnapshotFile} writes each segment of a snapshot in it.
+ *
+ * The file starts with a magic number, the format version and the number of columns, followed
+ * by the position and length in bytes of each column, relative to the start of the file, and
+ * the columns themselves, each starting at a multiple of 8 bytes. Numbers are little-endian.
+ * Names and descriptions are UTF-8 records that start with their length in bytes, or -1 for
+ * null, and are found through the position of each row's record. The trigrams of each field
+ * and the positions of their posting lists are read onto the heap; all other columns are used
+ * in place.
+ *
+ * Segments are written without their deleted rows, so the rows of a written segment are
+ * numbered anew, and codes are written as they are, so a file can only be read with the
+ * dictionary it was written with, or by translating its codes.
+ */
+final class SegmentFile {
+    private static final byte[] MAGIC = "CASEGMNT".getBytes(StandardCharsets.US_ASCII);
+    static final int FORMAT_VERSION = 1;
+    private static final int ALIGNMENT = 8;
+
+    /**
+     * The columns, in the order they are written.
+     */
+    static final int IDS = 0;
+    static final int YEARS = 1;
+    static final int NAME_STARTS = 2;
+    static final int NAME_TEXT = 3;
+    static final int DESCRIPTION_STARTS = 4;
+    static final int DESCRIPTION_TEXT = 5;
+    static final int ORGANIZATIONS = 6;
+    static final int CATEGORIES = 7;
+    static final int LEVELS = 8;
+    static final int TOTAL_STUDENTS = 9;
+    static final int TOTAL_HOURS = 10;
+    static final int TOTAL_WEEKS = 11;
+    static final int ESTIMATED_WORKLOADS = 12;
+    static final int RATES = 13;
+    static final int PRICES = 14;
+    static final int INSTRUCTOR_STARTS = 15;
+    static final int INSTRUCTOR_CODES = 16;
+    static final int REVIEW_STARTS = 17;
+    static final int REVIEW_COURSE_RATES = 18;
+    static final int REVIEW_WORKLOADS = 19;
+    static final int RATE_STARTS = 20;
+    static final int RATE_LENGTHS = 21;
+    static final int INSTRUCTOR_RATES = 22;
+    static final int ID_INDEX = 23;
+    // The trigrams, posting list positions and posting lists of each field of the index
+    private static final int INDEX = 24;
+    private static final int GRAMS = 0;
+    private static final int POSTING_STARTS = 1;
+    private static final int POSTINGS = 2;
+    private static final int NUM_COLUMNS = INDEX + 3 * TrigramIndex.NUM_FIELDS;
+
+    private SegmentFile() {
+    }
+
+    /**
+     * Write the rows of segments that are not deleted as one segment.
+     *
+     * @param out The output to write to
+     * @param parts The segments to write, in order, which share their dictionary
+     * @param codes The code to write for each code of the parts, or null to write them as
+     *        they are
+     * @throws IOException If the output fails, or a text column is too large to be mapped
+     */
+    static void write(SnapshotFile.Output out, List<CourseSegment> parts, int[] codes) throws IOException {
+        new Writer(out, parts, codes).write();
+    }
+
+    /**
+     * Read a segment from a buffer holding a segment file. Its columns and posting lists stay
+     * in the buffer, so a segment read from a mapped file is used without loading it.
+     *
+     * @param encoded The segment file, from its position to its limit
+     * @param dictionary The dictionary the segment was written with
+     * @return The segment
+     * @throws IllegalArgumentException If the buffer is not a segment file of this format
+     *         version, or is corrupt
+     */
+    static CourseSegment read(ByteBuffer encoded, StringDictionary dictionary) {
+        ByteBuffer buffer = encoded.slice().order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[MAGIC.length];
+        if (buffer.remaining() >= magic.length)
+            buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new IllegalArgumentException("Not a segment file");
+        int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION)
+            throw new IllegalArgumentException("Unsupported segment format version " + formatVersion);
+        if (buffer.getInt() != NUM_COLUMNS)
+            throw new IllegalArgumentException("Unexpected number of segment columns");
+
+        ByteBuffer[] columns = new ByteBuffer[NUM_COLUMNS];
+        for (int column = 0; column < NUM_COLUMNS; column++) {
+            long offset = buffer.getLong();
+            long length = buffer.getLong();
+            if (offset < 0 || length < 0 || offset + length > buffer.limit())
+                throw new IllegalArgumentException("Truncated segment file");
+            columns[column] = buffer.slice((int) offset, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        long[][] grams = new long[TrigramIndex.NUM_FIELDS][];
+        int[][] starts = new int[TrigramIndex.NUM_FIELDS][];
+        IntBuffer[] postings = new IntBuffer[TrigramIndex.NUM_FIELDS];
+        for (int field = 0; field < TrigramIndex.NUM_FIELDS; field++) {
+            int column = INDEX + 3 * field;
+            grams[field] = new long[columns[column + GRAMS].remaining() / Long.BYTES];
+            columns[column + GRAMS].asLongBuffer().get(grams[field]);
+            starts[field] = new int[columns[column + POSTING_STARTS].remaining() / Integer.BYTES];
+            columns[column + POSTING_STARTS].asIntBuffer().get(starts[field]);
+            postings[field] = columns[column + POSTINGS].asIntBuffer();
+            if (starts[field].length != grams[field].length + 1
+                || starts[field][grams[field].length] != postings[field].limit())
+                throw new IllegalArgumentException("Inconsistent segment index");
+        }
+        return new CourseSegment(columns, new TrigramIndex(grams, starts, postings), dictionary);
+    }
+
+    /**
+     * Writes the columns of segments one after the other, each by going over the rows that
+     * are not deleted, so the segments are never copied onto the heap as a whole.
+     */
+    private static final class Writer {
+        private final SnapshotFile.Output out;
+        private final List<CourseSegment> parts;
+        private final int[] codes;
+        private final long origin;
+        // The position and length of each column
+        private final long[] columns;
+
+        Writer(SnapshotFile.Output out, List<CourseSegment> parts, int[] codes) throws IOException {
+            this.out = out;
+            this.parts = parts;
+            this.codes = codes;
+            this.origin = out.position();
+            this.columns = new long[2 * NUM_COLUMNS];
+        }
+
+        void write() throws IOException {
+            out.putBytes(MAGIC);
+            out.putInt(FORMAT_VERSION);
+            out.putInt(NUM_COLUMNS);
+            long table = out.position();
+            for (int i = 0; i < this.columns.length; i++)
+                out.putLong(0);  // Known once the columns are written
+
+            putRows(IDS, (part, row) -> out.putInt(part.getId(row)));
+            putRows(YEARS, (part, row) -> out.putInt(part.getYear(row)));
+            putText(NAME_STARTS, NAME_TEXT, CourseSegment::getName);
+            putText(DESCRIPTION_STARTS, DESCRIPTION_TEXT, CourseSegment::getDescription);
+            putRows(ORGANIZATIONS, (part, row) -> out.putInt(translate(part.getOrganizationCode(row))));
+            putRows(CATEGORIES, (part, row) -> out.putInt(translate(part.getCategoryCode(row))));
+            putRows(LEVELS, (part, row) -> out.putInt(translate(part.getLevelCode(row))));
+            putRows(TOTAL_STUDENTS, (part, row) -> out.putInt(part.getTotalStudents(row)));
+            putRows(TOTAL_HOURS, (part, row) -> out.putDouble(part.getTotalHours(row)));
+            putRows(TOTAL_WEEKS, (part, row) -> out.putInt(part.getTotalWeeks(row)));
+            putRows(ESTIMATED_WORKLOADS, (part, row) -> out.putDouble(part.getEstimatedWorkload(row)));
+            putRows(RATES, (part, row) -> out.putDouble(part.getRate(row)));
+            putRows(PRICES, (part, row) -> out.putDouble(part.getPrice(row)));
+
+            int[] instructors = new int[1];
+            beginColumn(INSTRUCTOR_STARTS);
+            out.putInt(0);
+            forEachRow((part, row) -> {
+                instructors[0] += part.getInstructorStart(row + 1) - part.getInstructorStart(row);
+                out.putInt(instructors[0]);
+            });
+            endColumn(INSTRUCTOR_STARTS);
+            putRows(INSTRUCTOR_CODES, (part, row) -> {
+                for (int i = part.getInstructorStart(row); i < part.getInstructorStart(row + 1); i++)
+                    out.putInt(translate(part.getInstructorCode(i)));
+            });
+
+            int[] reviews = new int[1];
+            beginColumn(REVIEW_STARTS);
+            out.putInt(0);
+            forEachRow((part, row) -> {
+                reviews[0] += part.getReviewStart(row + 1) - part.getReviewStart(row);
+                out.putInt(reviews[0]);
+            });
+            endColumn(REVIEW_STARTS);
+            putReviews(REVIEW_COURSE_RATES, (part, review, shared) -> out.putDouble(part.getReviewCourseRate(review)));
+            putReviews(REVIEW_WORKLOADS, (part, review, shared) -> out.putDouble(part.getReviewWorkload(review)));
+            // Rates shared by consecutive reviews of a row are written once, as they are stored
+            int[] rates = new int[2];
+            putReviews(RATE_STARTS, (part, review, shared) -> {
+                int length = part.getRateLength(review);
+                if (length >= 0 && !shared) {
+                    rates[1] = rates[0];
+                    rates[0] += length;
+                }
+                out.putInt(length < 0 ? 0 : rates[1]);
+            });
+            putReviews(RATE_LENGTHS, (part, review, shared) -> out.putInt(part.getRateLength(review)));
+            putReviews(INSTRUCTOR_RATES, (part, review, shared) -> {
+                if (shared)
+                    return;
+                int start = part.getRateStart(review);
+                for (int i = 0; i < part.getRateLength(review); i++)
+                    out.putDouble(part.getInstructorRate(start + i));
+            });
+
+            // The new row of each row of the parts, or -1 if it is deleted
+            int[][] rowMaps = new int[this.parts.size()][];
+            int numRows = 0;
+            for (int p = 0; p < this.parts.size(); p++) {
+                CourseSegment part = this.parts.get(p);
+                rowMaps[p] = new int[part.size()];
+                for (int row = 0; row < part.size(); row++)
+                    rowMaps[p][row] = part.isDeleted(row) ? -1 : numRows++;
+            }
+            long[] idIndex = new long[numRows];
+            for (int p = 0; p < this.parts.size(); p++)
+                for (int row = 0; row < rowMaps[p].length; row++)
+                    if (rowMaps[p][row] >= 0)
+                        idIndex[rowMaps[p][row]] = ((long) this.parts.get(p).getId(row) << 32) | rowMaps[p][row];
+            Arrays.sort(idIndex);
+            beginColumn(ID_INDEX);
+            out.putLongs(idIndex, idIndex.length);
+            endColumn(ID_INDEX);
+
+            for (int field = 0; field < TrigramIndex.NUM_FIELDS; field++)
+                putIndex(field, rowMaps);
+
+            for (int i = 0; i < this.columns.length; i++)
+                this.columns[i] -= i % 2 == 0 ? this.origin : 0;
+            out.patchLongs(table, this.columns);
+        }
+
+        /**
+         * Write the posting lists of a field, which are those of the parts with their rows
+         * renumbered, then the trigrams that still have rows and the positions of their lists.
+         */
+        private void putIndex(int field, int[][] rowMaps) throws IOException {
+            long[][] partGrams = new long[this.parts.size()][];
+            for (int p = 0; p < this.parts.size(); p++)
+                partGrams[p] = this.parts.get(p).getIndex().getGrams(field);
+            long[] grams = TrigramIndex.union(partGrams);
+            int[] starts = new int[grams.length + 1];
+            int[] cursors = new int[this.parts.size()];
+            int numGrams = 0;
+            int numRows = 0;
+
+            beginColumn(INDEX + 3 * field + POSTINGS);
+            for (long gram : grams) {
+                int start = numRows;
+                for (int p = 0; p < this.parts.size(); p++) {
+                    int g = cursors[p];
+                    if (g >= partGrams[p].length || partGrams[p][g] != gram)
+                        continue;
+                    TrigramIndex index = this.parts.get(p).getIndex();
+                    IntBuffer postings = index.getPostings(field);
+                    for (int i = index.getPostingStart(field, g); i < index.getPostingStart(field, g + 1); i++) {
+                        int row = rowMaps[p][postings.get(i)];
+                        if (row >= 0) {
+                            out.putInt(row);
+                            numRows++;
+                        }
+                    }
+                    cursors[p]++;
+                }
+                if (numRows > start) {
+                    grams[numGrams++] = gram;
+                    starts[numGrams] = numRows;
+                }
+            }
+            endColumn(INDEX + 3 * field + POSTINGS);
+
+            beginColumn(INDEX + 3 * field + GRAMS);
+            out.putLongs(grams, numGrams);
+            endColumn(INDEX + 3 * field + GRAMS);
+            beginColumn(INDEX + 3 * field + POSTING_STARTS);
+            out.putInts(starts, numGrams + 1);
+            endColumn(INDEX + 3 * field + POSTING_STARTS);
+        }
+
+        /**
+         * Write a text column as the position of each row's record, then the records.
+         */
+        private void putText(int startsColumn, int textColumn, TextGetter getter) throws IOException {
+            long[] position = new long[1];
+            putRows(startsColumn, (part, row) -> {
+                if (position[0] > Integer.MAX_VALUE)
+                    throw new IOException("Segment text of " + position[0] + " bytes is too large to map");
+                out.putInt((int) position[0]);
+                String text = getter.get(part, row);
+                position[0] += Integer.BYTES + (text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length);
+            });
+            putRows(textColumn, (part, row) -> out.putString(getter.get(part, row)));
+        }
+
+        private void putRows(int column, RowWriter writer) throws IOException {
+            beginColumn(column);
+            forEachRow(writer);
+            endColumn(column);
+        }
+
+        /**
+         * Write a column with a value per review of the rows. A review shares the instructor
+         * rates of the review before it in its row if both have the same range of rates.
+         */
+        private void putReviews(int column, ReviewWriter writer) throws IOException {
+            beginColumn(column);
+            forEachRow((part, row) -> {
+                int first = part.getReviewStart(row);
+                for (int review = first; review < part.getReviewStart(row + 1); review++) {
+                    int length = part.getRateLength(review);
+                    boolean shared = review > first && length >= 0 && part.getRateLength(review - 1) == length
+                        && part.getRateStart(review - 1) == part.getRateStart(review);
+                    writer.write(part, review, shared);
+                }
+            });
+            endColumn(column);
+        }
+
+        private void forEachRow(RowWriter writer) throws IOException {
+            for (CourseSegment part : this.parts)
+                for (int row = 0; row < part.size(); row++)
+                    if (!part.isDeleted(row))
+                        writer.write(part, row);
+        }
+
+        private void beginColumn(int column) throws IOException {
+            out.align(ALIGNMENT);
+            this.columns[2 * column] = out.position();
+        }
+
+        private void endColumn(int column) throws IOException {
+            this.columns[2 * column + 1] = out.position() - this.columns[2 * column];
+        }
+
+        private int translate(int code) {
+            return this.codes == null || code == StringDictionary.NULL_CODE ? code : this.codes[code];
+        }
+    }
+
+    private interface RowWriter {
+        void write(CourseSegment part, int row) throws IOException;
+    }
+
+    private interface ReviewWriter {
+        void write(CourseSegment part, int review, boolean shared) throws IOException;
+    }
+
+    private interface TextGetter {
+        String get(CourseSegment part, int row);
+    }
+}
@@ -0,0 +1,98 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A directory of immutable {@link SegmentFile}s, which keeps the rows, reviews and posting lists
+ * of {@link CourseSegment}s off the Java heap. Every segment is written to a new file and mapped
+ * read-only, so its columns are paged in from disk when they are read and can be dropped from
+ * memory by the operating system, and the analyzed data is bounded by the disk rather than the
+ * heap. Only the trigrams of the segment indexes and the deleted rows stay on the heap.
+ *
+ * A file is deleted once no segment maps it any more, after the segment was merged into a new
+ * one and the snapshots holding it are gone. The files are only valid while the dictionary they
+ * were written with is, so files left behind by an earlier run are deleted before the first
+ * segment is written.
+ */
+final class SegmentStore {
+    private static final String FILE_SUFFIX = ".segment";
+    // Deletes the file of a mapping once the mapping is unreachable
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Path directory;
+    private final StringDictionary dictionary;
+    private final AtomicLong lastFile;
+    private boolean prepared;
+
+    /**
+     * @param directory The directory to keep the segment files in, which is created if needed
+     * @param dictionary The dictionary the segments are encoded with
+     */
+    SegmentStore(Path directory, StringDictionary dictionary) {
+        this.directory = directory;
+        this.dictionary = dictionary;
+        this.lastFile = new AtomicLong();
+    }
+
+    /**
+     * Write the rows of segments that are not deleted to a new segment file and map it.
+     *
+     * @param parts The segments to write, in order, which share their dictionary
+     * @param codes The code in the dictionary of the store of each code of the parts, or null
+     *        if the parts are encoded with it
+     * @return The segment of the mapped file
+     * @throws IOException If the file cannot be written, or is too large to be mapped
+     */
+    CourseSegment write(List<CourseSegment> parts, int[] codes) throws IOException {
+        prepare();
+        Path file = this.directory.resolve("segment-" + this.lastFile.incrementAndGet() + FILE_SUFFIX);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            SnapshotFile.Output out = new SnapshotFile.Output(channel);
+            SegmentFile.write(out, parts, codes);
+            out.flush();
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Segment file of " + channel.size() + " bytes is too large to map");
+            // The mapping stays valid once the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CourseSegment segment = SegmentFile.read(mapped, this.dictionary);
+            CLEANER.register(mapped, () -> delete(file));
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            delete(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Creates the directory and deletes the files of an earlier run the first time a segment
+     * is written.
+     */
+    private synchronized void prepare() throws IOException {
+        if (this.prepared)
+            return;
+        Files.createDirectories(this.directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + FILE_SUFFIX)) {
+            for (Path file : files)
+                Files.deleteIfExists(file);
+        }
+        this.prepared = true;
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Left for the next run to delete, e.g. on systems that can't delete mapped files
+        }
+    }
+}
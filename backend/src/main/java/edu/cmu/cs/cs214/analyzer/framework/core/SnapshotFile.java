@@ -0,0 +1,502 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AnalysisSnapshot} saved to a file together with the analyzed plugins and their
+ * data versions, so a restarted server can answer queries right away instead of analyzing all
+ * plugins again.
+ *
+ * The file stores the analyzed data as it is held in memory rather than the courses plugins
+ * returned: every {@link CourseSegment} as a {@link SegmentFile}, the instructors and the group
+ * aggregates. Loading it never analyzes or indexes a course. The segments are served from the
+ * mapped file as they are when the codes of the file are those of the dictionary it is loaded
+ * into, which is the case when nothing else has been encoded yet; otherwise their columns are
+ * copied with translated codes onto the heap, or into a {@link SegmentStore}. Numbers are
+ * little-endian and strings are UTF-8, prefixed with their length in bytes, or -1 for null.
+ *
+ * The file starts with a magic number and the format version, followed by sections that each
+ * start with their length in bytes: the header, which names the plugin of every segment, the
+ * dictionary, every segment, the instructors, the aggregates and the shared strings. Each
+ * section is mapped on its own, so the file can grow beyond 2 GB. Codes of the dictionary are only valid within the file, and are translated to the
+ * codes of the dictionary the file is loaded into.
+ *
+ * Strings that recur across sections, such as the course names of instructors and the keys of
+ * groups, are written once to the shared strings and referred to by their position. The shared
+ * strings are only known once everything else is written, so they come last, but are read
+ * first; a loaded snapshot thus shares these strings between its objects as the analyzed one did.
+ */
+final class SnapshotFile {
+    private static final byte[] MAGIC = "CASNAPSH".getBytes(StandardCharsets.US_ASCII);
+    static final int FORMAT_VERSION = 4;
+
+    private final AnalysisSnapshot snapshot;
+    private final Map<String, String> pluginVersions;
+
+    /**
+     * @param snapshot The snapshot to save
+     * @param pluginVersions The data version of each analyzed plugin by name, in the order the
+     *        plugins were analyzed, with null for plugins without a known version
+     */
+    SnapshotFile(AnalysisSnapshot snapshot, Map<String, String> pluginVersions) {
+        this.snapshot = snapshot;
+        this.pluginVersions = Collections.unmodifiableMap(new LinkedHashMap<String, String>(pluginVersions));
+    }
+
+    AnalysisSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    Map<String, String> getPluginVersions() {
+        return this.pluginVersions;
+    }
+
+    /**
+     * Write this snapshot to a file. It is written to a temporary file first, which then
+     * replaces the file, so readers never see a half-written file.
+     *
+     * @param file The file to write
+     * @param dictionary The dictionary the segments of the snapshot are encoded with
+     * @throws IOException If the file cannot be written
+     */
+    void write(Path file, StringDictionary dictionary) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                Output out = new Output(channel);
+                out.putBytes(MAGIC);
+                out.putInt(FORMAT_VERSION);
+
+                out.beginSection();
+                out.putLong(this.snapshot.getVersion());
+                out.putInt(this.pluginVersions.size());
+                for (Map.Entry<String, String> plugin : this.pluginVersions.entrySet()) {
+                    out.putString(plugin.getKey());
+                    out.putString(plugin.getValue());
+                }
+                out.putInt(this.snapshot.getSegments().size());
+                for (Map.Entry<String, List<CourseSegment>> plugin : this.snapshot.getPluginSegments().entrySet())
+                    for (int i = 0; i < plugin.getValue().size(); i++)
+                        out.putString(plugin.getKey());
+                out.endSection();
+
+                // The dictionary only grows, so it holds every code of the segments
+                String[] values = dictionary.getValues();
+                out.beginSection();
+                out.putInt(values.length);
+                for (String value : values)
+                    out.putString(value);
+                out.endSection();
+
+                for (CourseSegment segment : this.snapshot.getSegments()) {
+                    out.beginSection();
+                    SegmentFile.write(out, List.of(segment), null);
+                    out.endSection();
+                }
+
+                out.beginSection();
+                out.putInt(this.snapshot.getInstructors().size());
+                for (Instructor instructor : this.snapshot.getInstructors())
+                    instructor.writeTo(out);
+                out.endSection();
+
+                out.beginSection();
+                this.snapshot.getAggregates().writeTo(out);
+                out.endSection();
+
+                out.beginSection();
+                out.putInt(out.sharedStrings.size());
+                for (String value : out.sharedStrings.keySet())
+                    out.putString(value);
+                out.endSection();
+                out.flush();
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Read a snapshot from a file written by {@link #write(Path, StringDictionary)}.
+     *
+     * @param file The file to read
+     * @param dictionary The dictionary to encode the strings of the segments with
+     * @param store The store to copy the segments into if their codes have to be translated, or
+     *        null to copy them onto the heap
+     * @return The snapshot
+     * @throws IOException If the file cannot be read, is corrupt, or has another format version
+     */
+    static SnapshotFile read(Path file, StringDictionary dictionary, SegmentStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer prefix = readFully(channel, 0, MAGIC.length + Integer.BYTES);
+            byte[] magic = new byte[MAGIC.length];
+            if (prefix.remaining() == prefix.capacity())
+                prefix.get(magic);
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IOException(file + " is not a snapshot file");
+            int formatVersion = prefix.getInt();
+            if (formatVersion != FORMAT_VERSION)
+                throw new IOException("Unsupported snapshot format version " + formatVersion + " of " + file);
+
+            Sections sections = new Sections(channel, prefix.capacity());
+            Input in = sections.get(0);
+            long version = in.getLong();
+            LinkedHashMap<String, String> pluginVersions = new LinkedHashMap<String, String>();
+            int numPlugins = in.getInt();
+            for (int i = 0; i < numPlugins; i++)
+                pluginVersions.put(in.getString(), in.getString());
+            int numSegments = in.getInt();
+            String[] segmentPlugins = new String[numSegments];
+            for (int i = 0; i < numSegments; i++)
+                segmentPlugins[i] = in.getString();
+            if (sections.size() != numSegments + 5)
+                throw new IOException("Expected " + (numSegments + 5) + " sections but found " + sections.size());
+
+            in = sections.get(sections.size() - 1);
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++)
+                strings[i] = in.getString();
+            sections.setSharedStrings(strings);
+
+            // Translate the codes of the file to codes of the dictionary
+            in = sections.get(1);
+            int[] codes = new int[in.getInt()];
+            boolean sameCodes = true;
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = dictionary.encode(in.getString());
+                sameCodes &= codes[i] == i;
+            }
+
+            LinkedHashMap<String, List<CourseSegment>> segments = new LinkedHashMap<String, List<CourseSegment>>();
+            for (int i = 0; i < numSegments; i++) {
+                // The mapping stays valid once the channel is closed, and while the file is replaced
+                CourseSegment saved = SegmentFile.read(sections.map(2 + i), dictionary);
+                if (!sameCodes)
+                    saved = store == null ? new CourseSegment(List.of(saved), codes) : store.write(List.of(saved), codes);
+                segments.computeIfAbsent(segmentPlugins[i], plugin -> new ArrayList<CourseSegment>()).add(saved);
+            }
+
+            in = sections.get(2 + numSegments);
+            VersionedRegistry<Instructor>.Editor instructors = VersionedRegistry.<Instructor>empty().edit();
+            int numInstructors = in.getInt();
+            for (int i = 0; i < numInstructors; i++) {
+                Instructor instructor = new Instructor(in);
+                instructors.put(instructor.getName(), instructor);
+            }
+
+            CourseAggregates aggregates = new CourseAggregates(sections.get(3 + numSegments));
+            AnalysisSnapshot snapshot = new AnalysisSnapshot(version, segments, instructors.build(), aggregates);
+            return new SnapshotFile(snapshot, pluginVersions);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException
+                 | IllegalArgumentException e) {
+            throw new IOException("Corrupt snapshot file " + file, e);
+        }
+    }
+
+    /**
+     * Read bytes at a position of a file, fewer if the file ends before.
+     *
+     * @return The bytes, ready to be read
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0)
+            continue;
+        return buffer.flip();
+    }
+
+    /**
+     * Finds the sections of a file, and maps them when they are read.
+     */
+    private static final class Sections {
+        private final FileChannel channel;
+        // The start and length of each section, after the length prefix
+        private final ArrayList<long[]> sections;
+        private String[] sharedStrings;
+
+        Sections(FileChannel channel, long position) throws IOException {
+            this.channel = channel;
+            this.sections = new ArrayList<long[]>();
+            long size = channel.size();
+            while (position < size) {
+                ByteBuffer length = readFully(channel, position, Long.BYTES);
+                if (length.remaining() < Long.BYTES)
+                    throw new IOException("Truncated snapshot file");
+                long sectionLength = length.getLong();
+                long start = position + Long.BYTES;
+                if (sectionLength < 0 || sectionLength > Integer.MAX_VALUE || start + sectionLength > size)
+                    throw new IOException("Truncated snapshot file");
+                this.sections.add(new long[] { start, sectionLength });
+                position = start + sectionLength;
+            }
+            this.sharedStrings = new String[0];
+        }
+
+        int size() {
+            return this.sections.size();
+        }
+
+        void setSharedStrings(String[] sharedStrings) {
+            this.sharedStrings = sharedStrings;
+        }
+
+        Input get(int i) throws IOException {
+            return new Input(map(i), this.sharedStrings);
+        }
+
+        ByteBuffer map(int i) throws IOException {
+            long[] section = this.sections.get(i);
+            return this.channel.map(FileChannel.MapMode.READ_ONLY, section[0], section[1]);
+        }
+    }
+
+    /**
+     * Writes numbers, strings and arrays to a file through a buffer.
+     */
+    static final class Output {
+        private static final int BUFFER_BYTES = 1 << 20;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        // The position of the length of the open section in the file
+        private long sectionStart;
+        // The position of each shared string written so far
+        private final LinkedHashMap<String, Integer> sharedStrings;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            this.sectionStart = -1;
+            this.sharedStrings = new LinkedHashMap<String, Integer>();
+        }
+
+        private void beginSection() throws IOException {
+            flush();
+            this.sectionStart = this.channel.position();
+            putLong(0);  // The length, which is known when the section ends
+        }
+
+        private void endSection() throws IOException {
+            flush();
+            long end = this.channel.position();
+            if (end - this.sectionStart - Long.BYTES > Integer.MAX_VALUE)
+                throw new IOException("Snapshot section of " + (end - this.sectionStart) + " bytes is too large to map");
+            ByteBuffer length = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            length.putLong(end - this.sectionStart - Long.BYTES).flip();
+            while (length.hasRemaining())
+                this.channel.write(length, this.sectionStart + length.position());
+            this.sectionStart = -1;
+        }
+
+        void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining())
+                this.channel.write(this.buffer);
+            this.buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (this.buffer.remaining() < bytes)
+                flush();
+        }
+
+        /**
+         * Returns the position in the file the next value is written at.
+         */
+        long position() throws IOException {
+            return this.channel.position() + this.buffer.position();
+        }
+
+        /**
+         * Pad the file with zeros up to a position that is a multiple of a number of bytes.
+         */
+        void align(int bytes) throws IOException {
+            for (long padding = (bytes - position() % bytes) % bytes; padding > 0; padding--) {
+                ensure(1);
+                this.buffer.put((byte) 0);
+            }
+        }
+
+        /**
+         * Overwrite values that were written before, such as lengths only known afterwards.
+         */
+        void patchLongs(long position, long[] values) throws IOException {
+            flush();
+            ByteBuffer patch = ByteBuffer.allocate(values.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            patch.asLongBuffer().put(values);
+            while (patch.hasRemaining())
+                this.channel.write(patch, position + patch.position());
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            this.buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            this.buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            this.buffer.putDouble(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            for (int i = 0; i < bytes.length; ) {
+                ensure(1);
+                int n = Math.min(bytes.length - i, this.buffer.remaining());
+                this.buffer.put(bytes, i, n);
+                i += n;
+            }
+        }
+
+        void putString(String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes);
+        }
+
+        /**
+         * Write a string that recurs in the file, which is only written in full once.
+         */
+        void putSharedString(String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            Integer position = this.sharedStrings.get(value);
+            if (position == null) {
+                position = this.sharedStrings.size();
+                this.sharedStrings.put(value, position);
+            }
+            putInt(position);
+        }
+
+        /**
+         * Write the first values of an array, without their number.
+         */
+        void putInts(int[] values, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                ensure(Integer.BYTES);
+                int n = Math.min(length - i, this.buffer.remaining() / Integer.BYTES);
+                this.buffer.asIntBuffer().put(values, i, n);
+                this.buffer.position(this.buffer.position() + n * Integer.BYTES);
+                i += n;
+            }
+        }
+
+        void putLongs(long[] values, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                ensure(Long.BYTES);
+                int n = Math.min(length - i, this.buffer.remaining() / Long.BYTES);
+                this.buffer.asLongBuffer().put(values, i, n);
+                this.buffer.position(this.buffer.position() + n * Long.BYTES);
+                i += n;
+            }
+        }
+
+        void putDoubles(double[] values, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                ensure(Double.BYTES);
+                int n = Math.min(length - i, this.buffer.remaining() / Double.BYTES);
+                this.buffer.asDoubleBuffer().put(values, i, n);
+                this.buffer.position(this.buffer.position() + n * Double.BYTES);
+                i += n;
+            }
+        }
+    }
+
+    /**
+     * Reads numbers, strings and arrays from a mapped section of a file. Reading past the end
+     * of the section throws a {@link BufferUnderflowException}.
+     */
+    static final class Input {
+        private final ByteBuffer buffer;
+        private final String[] sharedStrings;
+        private byte[] bytes = new byte[64];
+
+        private Input(ByteBuffer buffer, String[] sharedStrings) {
+            this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+            this.sharedStrings = sharedStrings;
+        }
+
+        int getInt() {
+            return this.buffer.getInt();
+        }
+
+        long getLong() {
+            return this.buffer.getLong();
+        }
+
+        double getDouble() {
+            return this.buffer.getDouble();
+        }
+
+        String getString() {
+            int length = this.buffer.getInt();
+            if (length < 0)
+                return null;
+            if (length > this.bytes.length)
+                this.bytes = new byte[Math.max(length, this.bytes.length * 2)];
+            this.buffer.get(this.bytes, 0, length);
+            return new String(this.bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        String getSharedString() {
+            int position = this.buffer.getInt();
+            return position < 0 ? null : this.sharedStrings[position];
+        }
+
+        int[] getInts(int length) {
+            int[] values = new int[length];
+            this.buffer.asIntBuffer().get(values);
+            this.buffer.position(this.buffer.position() + length * Integer.BYTES);
+            return values;
+        }
+
+        long[] getLongs(int length) {
+            long[] values = new long[length];
+            this.buffer.asLongBuffer().get(values);
+            this.buffer.position(this.buffer.position() + length * Long.BYTES);
+            return values;
+        }
+
+        double[] getDoubles(int length) {
+            double[] values = new double[length];
+            this.buffer.asDoubleBuffer().get(values);
+            this.buffer.position(this.buffer.position() + length * Double.BYTES);
+            return values;
+        }
+    }
+}
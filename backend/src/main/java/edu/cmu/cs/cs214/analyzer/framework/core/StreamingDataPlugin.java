@@ -0,0 +1,46 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * A data plugin that produces its courses one at a time instead of as one list. The framework
+ * pulls courses from {@link #streamCourses()} and analyzes them in batches of a fixed size, so
+ * they are queryable as they arrive and the plugin never has to hold its whole dataset.
+ *
+ * A plugin marks the end of a group of courses that arrived together, e.g., a file or a page of
+ * its source, by producing null. The framework then analyzes the courses pulled so far without
+ * waiting for a full batch, as it does when a batch has been filling for a while, so courses
+ * are queryable soon after they arrive even if the whole dataset fits into one batch.
+ *
+ * The framework only asks for the next course after it has analyzed the batch before, which
+ * slows a fast plugin down to the speed of the analysis. Courses pulled from the iterator count
+ * as fetched and parsed, unless the plugin reports more through {@link AppFramework}.
+ */
+public interface StreamingDataPlugin extends DataPlugin {
+    /**
+     * Returns a new iterator over the courses of the plugin. Courses are produced lazily as the
+     * framework asks for them; null marks the end of a group of courses, and is not a course.
+     *
+     * @return An iterator over the courses.
+     */
+    Iterator<Course> streamCourses();
+
+    /**
+     * Collects all courses of {@link #streamCourses()} into a list, for callers that need them
+     * at once.
+     *
+     * @return A list of courses.
+     */
+    @Override
+    default ArrayList<Course> getCourses() {
+        ArrayList<Course> courses = new ArrayList<Course>();
+        Iterator<Course> iterator = streamCourses();
+        while (iterator.hasNext()) {
+            Course course = iterator.next();
+            if (course != null)
+                courses.add(course);
+        }
+        return courses;
+    }
+}
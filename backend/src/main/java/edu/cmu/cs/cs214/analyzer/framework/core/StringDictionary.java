@@ -0,0 +1,104 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An append-only dictionary that maps strings repeated across many courses (e.g., organization
+ * names) to compact int codes, so each distinct string is stored only once. Codes are assigned
+ * in the order strings are first seen and never change; null is encoded as -1.
+ *
+ * The framework stores courses with the {@link #getShared() shared dictionary}, and data plugins
+ * can {@link #intern(String) intern} repeated values while parsing so that they never hold more
+ * than one copy of a string either. Looking up a known string takes no lock.
+ */
+public final class StringDictionary {
+    static final int NULL_CODE = -1;
+
+    private static final StringDictionary SHARED = new StringDictionary();
+
+    private final Map<String, Integer> codes;
+    // A code is put into codes only after its string is stored here
+    private volatile String[] values;
+    private int size;
+
+    StringDictionary() {
+        this.codes = new ConcurrentHashMap<String, Integer>();
+        this.values = new String[16];
+        this.size = 0;
+    }
+
+    /**
+     * Returns the dictionary shared by the whole application.
+     *
+     * @return The shared dictionary
+     */
+    public static StringDictionary getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the canonical instance of a string, so that equal strings parsed from different
+     * records share one object.
+     *
+     * @param value The string to intern
+     * @return The canonical instance, or null if the string is null
+     */
+    public String intern(String value) {
+        return decode(encode(value));
+    }
+
+    /**
+     * Get the code of a string, assigning a new code if the string hasn't been seen before.
+     *
+     * @param value The string to encode
+     * @return The code of the string
+     */
+    int encode(String value) {
+        if (value == null)
+            return NULL_CODE;
+        Integer code = this.codes.get(value);
+        if (code != null)
+            return code;
+        return add(value);
+    }
+
+    private synchronized int add(String value) {
+        Integer code = this.codes.get(value);
+        if (code != null)
+            return code;
+
+        String[] current = this.values;
+        if (this.size == current.length) {
+            current = Arrays.copyOf(current, this.size * 2);
+        }
+        current[this.size] = value;
+        this.values = current;
+        this.codes.put(value, this.size);
+        return this.size++;
+    }
+
+    /**
+     * Get the string of a code.
+     *
+     * @param code A code returned by {@link #encode(String)}
+     * @return The string
+     */
+    String decode(int code) {
+        return code == NULL_CODE ? null : this.values[code];
+    }
+
+    /**
+     * Get the strings of all codes assigned so far.
+     *
+     * @return The strings, indexed by their codes
+     */
+    synchronized String[] getValues() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    synchronized int size() {
+        return this.size;
+    }
+}
@@ -0,0 +1,116 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.util.Arrays;
+
+/**
+ * Selects the k best entries out of a stream of (key, reference) pairs with a bounded heap, in
+ * O(n log k) time and O(k) space. Entries are ordered by key, ascending or descending; entries
+ * with equal keys keep the order of their references, so the result is stable as long as the
+ * references increase in analysis order.
+ *
+ * A selector belongs to a single query and is not thread-safe.
+ */
+final class TopKSelector {
+    private final int k;
+    private final boolean descending;
+    // A heap whose root is the worst entry kept so far
+    private double[] keys;
+    private long[] refs;
+    private int size;
+
+    TopKSelector(int k, boolean descending) {
+        this.k = Math.max(k, 0);
+        this.descending = descending;
+        int capacity = Math.min(this.k, 64);
+        this.keys = new double[capacity];
+        this.refs = new long[capacity];
+    }
+
+    /**
+     * Offer an entry, which is kept if it is among the k best so far.
+     *
+     * @param key The sort key of the entry
+     * @param ref The reference of the entry, e.g., its position
+     */
+    void offer(double key, long ref) {
+        if (this.size < this.k) {
+            if (this.size == this.keys.length) {
+                int capacity = (int) Math.min(this.k, this.keys.length * 2L + 1);
+                this.keys = Arrays.copyOf(this.keys, capacity);
+                this.refs = Arrays.copyOf(this.refs, capacity);
+            }
+            this.keys[this.size] = key;
+            this.refs[this.size] = ref;
+            siftUp(this.size++);
+        } else if (this.k > 0 && isBetter(key, ref, this.keys[0], this.refs[0])) {
+            this.keys[0] = key;
+            this.refs[0] = ref;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Remove all kept entries and return their references, best first.
+     *
+     * @return The references
+     */
+    long[] drainSorted() {
+        // Pop the worst entry until the heap is empty, filling the result from the back
+        long[] result = new long[this.size];
+        while (this.size > 0) {
+            result[this.size - 1] = this.refs[0];
+            this.size--;
+            this.keys[0] = this.keys[this.size];
+            this.refs[0] = this.refs[this.size];
+            siftDown(0);
+        }
+        return result;
+    }
+
+    /**
+     * Check whether an entry comes before another one in the selection order.
+     *
+     * @return Whether the first entry is better
+     */
+    boolean isBetter(double key, long ref, double otherKey, long otherRef) {
+        int order = Double.compare(key, otherKey);
+        if (order != 0)
+            return this.descending ? order > 0 : order < 0;
+        return ref < otherRef;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!isBetter(this.keys[parent], this.refs[parent], this.keys[i], this.refs[i]))
+                break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < this.size && isBetter(this.keys[worst], this.refs[worst], this.keys[left], this.refs[left]))
+                worst = left;
+            if (right < this.size && isBetter(this.keys[worst], this.refs[worst], this.keys[right], this.refs[right]))
+                worst = right;
+            if (worst == i)
+                return;
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        double key = this.keys[i];
+        this.keys[i] = this.keys[j];
+        this.keys[j] = key;
+        long ref = this.refs[i];
+        this.refs[i] = this.refs[j];
+        this.refs[j] = ref;
+    }
+}
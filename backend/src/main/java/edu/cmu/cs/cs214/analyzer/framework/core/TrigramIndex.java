@@ -0,0 +1,276 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable trigram inverted index over the searchable text fields of a {@link CourseSegment}.
+ * For every field it maps each trigram (three consecutive characters) to the sorted rows of the
+ * courses containing it. A course can only contain a keyword if it contains all trigrams of
+ * the keyword, so intersecting their posting lists narrows a substring search down to a few
+ * candidates, which are then verified by {@link CourseFilter#isMatched(CourseSegment, int)}.
+ *
+ * The trigrams of a field are kept sorted in an array, next to the position of each posting
+ * list in one buffer of rows, so the posting lists of a mapped segment stay in its file and
+ * only the trigrams are held on the heap.
+ */
+final class TrigramIndex {
+    static final int GRAM_LENGTH = 3;
+
+    /**
+     * The indexed fields, in the order of {@link CourseFilter#getKeywords()}.
+     */
+    static final int NAME = 0;
+    static final int CATEGORY = 1;
+    static final int LEVEL = 2;
+    static final int INSTRUCTOR = 3;
+    static final int ORGANIZATION = 4;
+    static final int NUM_FIELDS = 5;
+
+    private static final int[] EMPTY = new int[0];
+
+    // The trigrams of each field in increasing order. The rows containing grams[field][i] are
+    // postings[field][starts[field][i]..starts[field][i + 1]), in increasing order
+    private final long[][] grams;
+    private final int[][] starts;
+    private final IntBuffer[] postings;
+
+    /**
+     * Build the index of all rows of a segment.
+     *
+     * @param segment The segment to index
+     */
+    TrigramIndex(CourseSegment segment) {
+        List<Map<Long, PostingBuilder>> builders = new ArrayList<Map<Long, PostingBuilder>>();
+        for (int field = 0; field < NUM_FIELDS; field++)
+            builders.add(new HashMap<Long, PostingBuilder>());
+        for (int row = 0; row < segment.size(); row++) {
+            addText(builders.get(NAME), segment.getName(row), row);
+            addText(builders.get(CATEGORY), segment.getCategory(row), row);
+            addText(builders.get(LEVEL), segment.getLevel(row), row);
+            for (String instructorName : segment.getInstructorNames(row))
+                addText(builders.get(INSTRUCTOR), instructorName, row);
+            addText(builders.get(ORGANIZATION), segment.getOrganizationName(row), row);
+        }
+
+        this.grams = new long[NUM_FIELDS][];
+        this.starts = new int[NUM_FIELDS][];
+        this.postings = new IntBuffer[NUM_FIELDS];
+        for (int field = 0; field < NUM_FIELDS; field++) {
+            long[] fieldGrams = new long[builders.get(field).size()];
+            int i = 0;
+            int total = 0;
+            for (Map.Entry<Long, PostingBuilder> entry : builders.get(field).entrySet()) {
+                fieldGrams[i++] = entry.getKey();
+                total += entry.getValue().size;
+            }
+            Arrays.sort(fieldGrams);
+            int[] fieldStarts = new int[fieldGrams.length + 1];
+            int[] rows = new int[total];
+            for (i = 0; i < fieldGrams.length; i++) {
+                PostingBuilder builder = builders.get(field).get(fieldGrams[i]);
+                System.arraycopy(builder.rows, 0, rows, fieldStarts[i], builder.size);
+                fieldStarts[i + 1] = fieldStarts[i] + builder.size;
+            }
+            this.grams[field] = fieldGrams;
+            this.starts[field] = fieldStarts;
+            this.postings[field] = IntBuffer.wrap(rows);
+        }
+    }
+
+    /**
+     * Build the index of segments concatenated by {@link CourseSegment#CourseSegment(List)}
+     * from the indexes of the parts. The rows of a part are shifted by the rows before it, so
+     * the posting lists stay sorted when they are concatenated in order, and no text has to be
+     * split into trigrams again.
+     *
+     * @param parts The concatenated segments, in order
+     */
+    TrigramIndex(List<CourseSegment> parts) {
+        this.grams = new long[NUM_FIELDS][];
+        this.starts = new int[NUM_FIELDS][];
+        this.postings = new IntBuffer[NUM_FIELDS];
+        for (int field = 0; field < NUM_FIELDS; field++) {
+            long[][] partGrams = new long[parts.size()][];
+            int total = 0;
+            for (int p = 0; p < parts.size(); p++) {
+                TrigramIndex partIndex = parts.get(p).getIndex();
+                partGrams[p] = partIndex.grams[field];
+                total += partIndex.postings[field].limit();
+            }
+            long[] fieldGrams = union(partGrams);
+            int[] fieldStarts = new int[fieldGrams.length + 1];
+            int[] rows = new int[total];
+            int[] cursors = new int[parts.size()];
+            int n = 0;
+            for (int i = 0; i < fieldGrams.length; i++) {
+                int offset = 0;
+                for (int p = 0; p < parts.size(); p++) {
+                    TrigramIndex partIndex = parts.get(p).getIndex();
+                    int g = cursors[p];
+                    if (g < partGrams[p].length && partGrams[p][g] == fieldGrams[i]) {
+                        for (int j = partIndex.starts[field][g]; j < partIndex.starts[field][g + 1]; j++)
+                            rows[n++] = partIndex.postings[field].get(j) + offset;
+                        cursors[p]++;
+                    }
+                    offset += parts.get(p).size();
+                }
+                fieldStarts[i + 1] = n;
+            }
+            this.grams[field] = fieldGrams;
+            this.starts[field] = fieldStarts;
+            this.postings[field] = IntBuffer.wrap(rows);
+        }
+    }
+
+    /**
+     * Wrap an index read from a segment file by {@link SegmentFile}.
+     *
+     * @param grams The sorted trigrams of each field
+     * @param starts The position of the posting list of each trigram of each field, followed
+     *        by the number of rows in the posting lists of the field
+     * @param postings The posting lists of each field
+     */
+    TrigramIndex(long[][] grams, int[][] starts, IntBuffer[] postings) {
+        this.grams = grams;
+        this.starts = starts;
+        this.postings = postings;
+    }
+
+    /**
+     * Returns the sorted trigrams of a field.
+     *
+     * @param field The field
+     * @return The trigrams, which must not be changed
+     */
+    long[] getGrams(int field) {
+        return this.grams[field];
+    }
+
+    /**
+     * Get the position of the posting list of a trigram in {@link #getPostings(int)}; the
+     * list ends where the one of the next trigram starts.
+     *
+     * @param field The field
+     * @param i The position of the trigram in {@link #getGrams(int)}, or the number of
+     *        trigrams for the end of the last posting list
+     * @return The position of the first row of the posting list
+     */
+    int getPostingStart(int field, int i) {
+        return this.starts[field][i];
+    }
+
+    IntBuffer getPostings(int field) {
+        return this.postings[field];
+    }
+
+    /**
+     * Merge sorted arrays of trigrams.
+     *
+     * @param grams The arrays, each in increasing order
+     * @return The trigrams of all arrays, in increasing order and without duplicates
+     */
+    static long[] union(long[][] grams) {
+        int total = 0;
+        for (long[] part : grams)
+            total += part.length;
+        long[] merged = new long[total];
+        int n = 0;
+        for (long[] part : grams) {
+            System.arraycopy(part, 0, merged, n, part.length);
+            n += part.length;
+        }
+        Arrays.sort(merged);
+        n = 0;
+        for (int i = 0; i < merged.length; i++)
+            if (n == 0 || merged[n - 1] != merged[i])
+                merged[n++] = merged[i];
+        return n == merged.length ? merged : Arrays.copyOf(merged, n);
+    }
+
+    /**
+     * Find the courses that may match all the keywords.
+     *
+     * @param keywords The keyword of each field, in the order of the field constants
+     * @return The sorted rows of the candidate courses, or null if no keyword is long
+     *         enough to narrow down the search
+     */
+    int[] candidates(String[] keywords) {
+        int[] result = null;
+        for (int field = 0; field < NUM_FIELDS; field++) {
+            String keyword = keywords[field];
+            if (keyword == null || keyword.length() < GRAM_LENGTH)
+                continue;
+            for (int i = 0; i + GRAM_LENGTH <= keyword.length(); i++) {
+                int g = Arrays.binarySearch(this.grams[field], gram(keyword, i));
+                if (g < 0)
+                    return EMPTY;
+                int start = this.starts[field][g];
+                int end = this.starts[field][g + 1];
+                if (result == null) {
+                    result = new int[end - start];
+                    this.postings[field].get(start, result);
+                } else {
+                    result = intersect(result, this.postings[field], start, end);
+                }
+                if (result.length == 0)
+                    return result;
+            }
+        }
+        return result;
+    }
+
+    private static void addText(Map<Long, PostingBuilder> builders, String text, int row) {
+        if (text == null)
+            return;
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++)
+            builders.computeIfAbsent(gram(text, i), gram -> new PostingBuilder()).add(row);
+    }
+
+    private static long gram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    /**
+     * Intersect sorted rows with the sorted rows b[start..end).
+     */
+    private static int[] intersect(int[] a, IntBuffer b, int start, int end) {
+        int[] result = new int[Math.min(a.length, end - start)];
+        int n = 0;
+        int i = 0;
+        int j = start;
+        while (i < a.length && j < end) {
+            int row = b.get(j);
+            if (a[i] < row) {
+                i++;
+            } else if (a[i] > row) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * A growable list of increasing rows, which ignores a row added twice in a row.
+     */
+    private static final class PostingBuilder {
+        private int[] rows = new int[4];
+        private int size;
+
+        void add(int row) {
+            if (size > 0 && rows[size - 1] == row)
+                return;
+            if (size == rows.length)
+                rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = row;
+        }
+    }
+}
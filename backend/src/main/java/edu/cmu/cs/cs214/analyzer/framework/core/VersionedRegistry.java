@@ -0,0 +1,271 @@
+package edu.cmu.cs.cs214.analyzer.framework.core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable map from names to values in the order the names were first added, which is
+ * updated by copying only what changes. Values are kept in fixed-size chunks of slots, and an
+ * {@link Editor} copies the array of chunks and only the chunks it changes, so updating a few
+ * values of a large registry costs the number of chunks plus the size of the changed chunks
+ * rather than the number of values.
+ *
+ * Every name gets a slot when it is first added, and keeps it in all later versions, even when
+ * it is removed and added again. The slots of all names are kept in one map shared by a
+ * registry and the versions derived from it, in which a version only reads the slots below its
+ * end, so looking up a name never copies anything either. A removed value leaves its slot
+ * empty.
+ *
+ * @param <V> The type of the values
+ */
+final class VersionedRegistry<V> {
+    private static final int CHUNK_BITS = 9;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final Slots slots;
+    private final Object[][] chunks;
+    // The number of values in each chunk
+    private final int[] chunkSizes;
+    // The number of slots, and the number of values in them
+    private final int end;
+    private final int size;
+
+    private VersionedRegistry(Slots slots, Object[][] chunks, int[] chunkSizes, int end, int size) {
+        this.slots = slots;
+        this.chunks = chunks;
+        this.chunkSizes = chunkSizes;
+        this.end = end;
+        this.size = size;
+    }
+
+    /**
+     * Creates an empty registry, whose versions share their slots with nothing else.
+     *
+     * @param <V> The type of the values
+     * @return The registry
+     */
+    static <V> VersionedRegistry<V> empty() {
+        return new VersionedRegistry<V>(new Slots(), new Object[0][], new int[0], 0, 0);
+    }
+
+    /**
+     * Looks up the value of a name.
+     *
+     * @param name The name
+     * @return The value, or null if the name has none
+     */
+    V get(String name) {
+        Integer slot = this.slots.get(name);
+        return slot == null || slot >= this.end ? null : getSlot(slot);
+    }
+
+    /**
+     * Gets the value in a slot.
+     *
+     * @param slot The slot, below {@link #getEnd()}
+     * @return The value, or null if the slot is empty
+     */
+    @SuppressWarnings("unchecked")
+    V getSlot(int slot) {
+        Object[] chunk = this.chunks[slot >>> CHUNK_BITS];
+        return chunk == null ? null : (V) chunk[slot & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Returns the number of slots, some of which may be empty.
+     *
+     * @return The end of the slots
+     */
+    int getEnd() {
+        return this.end;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns a read-only view of the values, in the order of their slots.
+     *
+     * @return The values
+     */
+    List<V> values() {
+        return new Values();
+    }
+
+    /**
+     * Starts a new version of this registry, which is left unchanged.
+     *
+     * @return The editor of the new version
+     */
+    Editor edit() {
+        return new Editor();
+    }
+
+    /**
+     * Builds a new version of a registry. An editor is used by a single thread, and several
+     * editors may derive versions of the same registry.
+     */
+    final class Editor {
+        // Versions derived from the empty registry get slots of their own
+        private final Slots editedSlots = end == 0 ? new Slots() : slots;
+        private Object[][] editedChunks = Arrays.copyOf(chunks, chunks.length);
+        private int[] editedChunkSizes = Arrays.copyOf(chunkSizes, chunkSizes.length);
+        // The chunks copied by this editor, which can be changed in place
+        private boolean[] copied = new boolean[chunks.length];
+        private int editedEnd = end;
+        private int editedSize = size;
+
+        @SuppressWarnings("unchecked")
+        V get(String name) {
+            Integer slot = this.editedSlots.get(name);
+            if (slot == null || slot >= this.editedEnd)
+                return null;
+            Object[] chunk = this.editedChunks[slot >>> CHUNK_BITS];
+            return chunk == null ? null : (V) chunk[slot & (CHUNK_SIZE - 1)];
+        }
+
+        /**
+         * Sets the value of a name, which keeps its slot if it had one.
+         *
+         * @param name The name
+         * @param value The value, not null
+         */
+        void put(String name, V value) {
+            int slot = this.editedSlots.allocate(name);
+            if (slot >= this.editedEnd)
+                grow(slot + 1);
+            Object[] chunk = getCopiedChunk(slot >>> CHUNK_BITS);
+            if (chunk[slot & (CHUNK_SIZE - 1)] == null) {
+                this.editedChunkSizes[slot >>> CHUNK_BITS]++;
+                this.editedSize++;
+            }
+            chunk[slot & (CHUNK_SIZE - 1)] = value;
+        }
+
+        /**
+         * Removes the value of a name, leaving its slot empty.
+         *
+         * @param name The name
+         */
+        void remove(String name) {
+            Integer slot = this.editedSlots.get(name);
+            if (get(name) == null)
+                return;
+            getCopiedChunk(slot >>> CHUNK_BITS)[slot & (CHUNK_SIZE - 1)] = null;
+            this.editedChunkSizes[slot >>> CHUNK_BITS]--;
+            this.editedSize--;
+        }
+
+        VersionedRegistry<V> build() {
+            // Chunks may be shared with later versions, so this editor must not change them any more
+            Arrays.fill(this.copied, false);
+            return new VersionedRegistry<V>(this.editedSlots, Arrays.copyOf(this.editedChunks, this.editedChunks.length),
+                                            Arrays.copyOf(this.editedChunkSizes, this.editedChunkSizes.length),
+                                            this.editedEnd, this.editedSize);
+        }
+
+        private void grow(int newEnd) {
+            int numChunks = (newEnd + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+            if (numChunks > this.editedChunks.length) {
+                int length = Math.max(numChunks, this.editedChunks.length * 2);
+                this.editedChunks = Arrays.copyOf(this.editedChunks, length);
+                this.editedChunkSizes = Arrays.copyOf(this.editedChunkSizes, length);
+                this.copied = Arrays.copyOf(this.copied, length);
+            }
+            this.editedEnd = newEnd;
+        }
+
+        private Object[] getCopiedChunk(int index) {
+            if (!this.copied[index]) {
+                Object[] chunk = this.editedChunks[index];
+                this.editedChunks[index] = chunk == null ? new Object[CHUNK_SIZE] : chunk.clone();
+                this.copied[index] = true;
+            }
+            return this.editedChunks[index];
+        }
+    }
+
+    /**
+     * The slots of the names added to a registry and its versions, which never change once
+     * they are allocated.
+     */
+    private static final class Slots {
+        private final Map<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+        private final AtomicInteger end = new AtomicInteger();
+
+        Integer get(String name) {
+            return this.slots.get(name);
+        }
+
+        int allocate(String name) {
+            return this.slots.computeIfAbsent(name, key -> this.end.getAndIncrement());
+        }
+    }
+
+    /**
+     * The values of a registry, skipping its empty slots.
+     */
+    private final class Values extends AbstractList<V> {
+        @Override
+        public V get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException(index);
+            int chunk = 0;
+            while (index >= chunkSizes[chunk])
+                index -= chunkSizes[chunk++];
+            for (Object value : chunks[chunk]) {
+                if (value != null && index-- == 0) {
+                    @SuppressWarnings("unchecked")
+                    V result = (V) value;
+                    return result;
+                }
+            }
+            throw new IllegalStateException("Chunk " + chunk + " holds fewer values than counted");
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new Iterator<V>() {
+                private int slot = nextSlot(0);
+
+                @Override
+                public boolean hasNext() {
+                    return this.slot < end;
+                }
+
+                @Override
+                public V next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    V value = getSlot(this.slot);
+                    this.slot = nextSlot(this.slot + 1);
+                    return value;
+                }
+            };
+        }
+
+        private int nextSlot(int slot) {
+            while (slot < end) {
+                if (chunkSizes[slot >>> CHUNK_BITS] == 0)
+                    slot = ((slot >>> CHUNK_BITS) + 1) << CHUNK_BITS;
+                else if (getSlot(slot) == null)
+                    slot++;
+                else
+                    return slot;
+            }
+            return end;
+        }
+    }
+}
@@ -1,40 +1,63 @@
 package edu.cmu.cs.cs214.analyzer.framework.gui;
 
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.List;
 
+import edu.cmu.cs.cs214.analyzer.framework.JsonInputStream;
 import edu.cmu.cs.cs214.analyzer.framework.Util;
+import edu.cmu.cs.cs214.analyzer.framework.core.AnalysisSnapshot;
 import edu.cmu.cs.cs214.analyzer.framework.core.AppFrameworkImpl;
 import edu.cmu.cs.cs214.analyzer.framework.core.Course;
+import edu.cmu.cs.cs214.analyzer.framework.core.Cursor;
 import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
 import edu.cmu.cs.cs214.analyzer.framework.core.Instructor;
+import edu.cmu.cs.cs214.analyzer.framework.core.ResultPage;
 
 public final class AnalysisResult {
     private final String name;
     private final String footer;
     private final ArrayList<Plugin> plugins;
-    private final ArrayList<Course> courses;
-    private final ArrayList<Instructor> instructors;
+    private final List<Course> courses;
+    private final List<Instructor> instructors;
+    // The total number of matches and the cursor of the next page, or -1 if not paged
+    private final long total;
+    private final String nextCursor;
 
     private AnalysisResult(
         String name,
         String footer,
         ArrayList<Plugin> pluginNames,
-        ArrayList<Course> courses,
-        ArrayList<Instructor> instructors
+        List<Course> courses,
+        List<Instructor> instructors
+    ) {
+        this(name, footer, pluginNames, courses, instructors, -1, null);
+    }
+
+    private AnalysisResult(
+        String name,
+        String footer,
+        ArrayList<Plugin> pluginNames,
+        List<Course> courses,
+        List<Instructor> instructors,
+        long total,
+        String nextCursor
     ) {
         this.name = name;
         this.footer = footer;
         this.plugins = pluginNames;
         this.courses = courses;
         this.instructors = instructors;
+        this.total = total;
+        this.nextCursor = nextCursor;
     }
 
     public static AnalysisResult getConfigurations(AppFrameworkImpl analyzer) {
         String name = analyzer.getAnalysisName();
         String footer = analyzer.getFooter();
         ArrayList<Plugin> pluginNames = getPlugins(analyzer);
-        ArrayList<Course> courses = new ArrayList<Course>();
-        ArrayList<Instructor> instructors = new ArrayList<Instructor>();
+        List<Course> courses = new ArrayList<Course>();
+        List<Instructor> instructors = new ArrayList<Instructor>();
         return new AnalysisResult(name, footer, pluginNames, courses, instructors);
     }
 
@@ -42,29 +65,50 @@ public final class AnalysisResult {
         String name = analyzer.getAnalysisName();
         String footer = analyzer.getFooter();
         ArrayList<Plugin> pluginNames = getPlugins(analyzer);
-        ArrayList<Course> courses = getAnalyzedCourses(analyzer);
-        ArrayList<Instructor> instructors = getAnalyzedInstructors(analyzer);
+        AnalysisSnapshot snapshot = analyzer.getSnapshot();
+        List<Course> courses = snapshot.getCourses();
+        List<Instructor> instructors = snapshot.getInstructors();
         return new AnalysisResult(name, footer, pluginNames, courses, instructors);
     }
 
-    public static AnalysisResult getCoursesResult(AppFrameworkImpl analyzer) {
+    public static AnalysisResult getCoursesResult(AppFrameworkImpl analyzer, List<Course> courses) {
         String name = analyzer.getAnalysisName();
         String footer = analyzer.getFooter();
         ArrayList<Plugin> pluginNames = getPlugins(analyzer);
-        ArrayList<Course> courses = getFilteredCourses(analyzer);
-        ArrayList<Instructor> instructors = new ArrayList<Instructor>();
+        List<Instructor> instructors = new ArrayList<Instructor>();
         return new AnalysisResult(name, footer, pluginNames, courses, instructors);
     }
 
-    public static AnalysisResult getInstructorsResult(AppFrameworkImpl analyzer) {
+    public static AnalysisResult getInstructorsResult(AppFrameworkImpl analyzer, List<Instructor> instructors) {
         String name = analyzer.getAnalysisName();
         String footer = analyzer.getFooter();
         ArrayList<Plugin> pluginNames = getPlugins(analyzer);
-        ArrayList<Course> courses = new ArrayList<Course>();
-        ArrayList<Instructor> instructors = getFilteredInstructors(analyzer);
+        List<Course> courses = new ArrayList<Course>();
         return new AnalysisResult(name, footer, pluginNames, courses, instructors);
     }
 
+    public static AnalysisResult getCoursesPage(AppFrameworkImpl analyzer, ResultPage<Course> page) {
+        String name = analyzer.getAnalysisName();
+        String footer = analyzer.getFooter();
+        ArrayList<Plugin> pluginNames = getPlugins(analyzer);
+        List<Instructor> instructors = new ArrayList<Instructor>();
+        return new AnalysisResult(name, footer, pluginNames, page.getItems(), instructors,
+                                  page.getTotal(), encode(page.getNext()));
+    }
+
+    public static AnalysisResult getInstructorsPage(AppFrameworkImpl analyzer, ResultPage<Instructor> page) {
+        String name = analyzer.getAnalysisName();
+        String footer = analyzer.getFooter();
+        ArrayList<Plugin> pluginNames = getPlugins(analyzer);
+        List<Course> courses = new ArrayList<Course>();
+        return new AnalysisResult(name, footer, pluginNames, courses, page.getItems(),
+                                  page.getTotal(), encode(page.getNext()));
+    }
+
+    private static String encode(Cursor cursor) {
+        return cursor == null ? null : cursor.encode();
+    }
+
     private static ArrayList<Plugin> getPlugins(AppFrameworkImpl analyzer) {
         ArrayList<DataPlugin> plugins = analyzer.getRegisteredPlugins();
         ArrayList<Plugin> result = new ArrayList<Plugin>();
@@ -74,22 +118,6 @@ public final class AnalysisResult {
         return result;
     }
 
-    private static ArrayList<Course> getAnalyzedCourses(AppFrameworkImpl analyzer) {
-        return analyzer.getAnalyzedCourses();
-    }
-
-    private static ArrayList<Course> getFilteredCourses(AppFrameworkImpl analyzer) {
-        return analyzer.getFilteredCourses();
-    }
-
-    private static ArrayList<Instructor> getAnalyzedInstructors(AppFrameworkImpl analyzer) {
-        return analyzer.getAnalyzedInstructors();
-    }
-
-    private static ArrayList<Instructor> getFilteredInstructors(AppFrameworkImpl analyzer) {
-        return analyzer.getFilteredInstructors();
-    }
-
     public String getName() {
         return name;
     }
@@ -98,6 +126,44 @@ public final class AnalysisResult {
         return footer;
     }
 
+    /**
+     * Opens a stream of this result in JSON. Courses and instructors are serialized one at a
+     * time while the stream is read, so the whole JSON never has to be held in memory.
+     *
+     * @return An {@link InputStream} of the JSON result
+     */
+    public InputStream toJsonStream() {
+        JsonInputStream.Step header = writer -> {
+            writer.beginObject()
+                .name("name").value(this.name)
+                .name("footer").value(this.footer)
+                .name("plugins").beginArray();
+            for (Plugin plugin : this.plugins)
+                plugin.writeJson(writer);
+            writer.endArray().name("courses").beginArray();
+        };
+        JsonInputStream.Step middle = writer -> writer.endArray().name("instructors").beginArray();
+        JsonInputStream.Step footer = writer -> {
+            writer.endArray();
+            if (this.total >= 0) {
+                writer.name("total").value(this.total).name("nextCursor");
+                if (this.nextCursor == null)
+                    writer.nullValue();
+                else
+                    writer.value(this.nextCursor);
+            }
+            writer.endObject();
+        };
+
+        return new JsonInputStream(JsonInputStream.concat(List.of(
+            List.of(header).iterator(),
+            AnalysisSnapshot.getJsonSteps(this.courses),
+            List.of(middle).iterator(),
+            this.instructors.stream().map(instructor -> (JsonInputStream.Step) instructor::writeJson).iterator(),
+            List.of(footer).iterator()
+        )));
+    }
+
     @Override
     public String toString() {
         return ("{ \"name\": \"" + this.name + "\"," +
@@ -105,6 +171,8 @@ public final class AnalysisResult {
                 " \"plugins\": " + Util.arrayListToString(this.plugins) + "," +
                 " \"courses\": " + Util.arrayListToString(this.courses) + "," +
                 " \"instructors\": " + Util.arrayListToString(this.instructors) +
+                (this.total < 0 ? "" : ", \"total\": " + this.total + ", \"nextCursor\": "
+                    + (this.nextCursor == null ? "null" : "\"" + this.nextCursor + "\"")) +
                 " }"
         );
     }
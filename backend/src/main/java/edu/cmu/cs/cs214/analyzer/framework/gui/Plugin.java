@@ -1,5 +1,8 @@
 package edu.cmu.cs.cs214.analyzer.framework.gui;
 
+import java.io.IOException;
+
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
 import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
 
 public class Plugin {
@@ -13,6 +16,10 @@ public class Plugin {
         return plugin;
     }
 
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject().name("name").value(this.plugin.getName()).endObject();
+    }
+
     @Override
     public String toString() {
         return "{ \"name\": \"" + this.plugin.getName() + "\" }";
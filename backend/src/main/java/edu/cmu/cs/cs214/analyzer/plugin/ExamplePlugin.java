@@ -54,9 +54,7 @@ public class ExamplePlugin implements DataPlugin {
 
         CourseReview r = new CourseReview();
         r.courseRate = 4.9;
-        r.instructorRates = new ArrayList<>();
-        r.instructorRates.add(1.0);
-        r.instructorRates.add(5.0);
+        r.instructorRates = new double[] { 1.0, 5.0 };
         r.workloadPerWeek = 19;
         c.reviews.add(r);
         return c;
@@ -1,18 +1,30 @@
 package edu.cmu.cs.cs214.analyzer.plugin;
 
+import edu.cmu.cs.cs214.analyzer.framework.core.AppFramework;
 import edu.cmu.cs.cs214.analyzer.framework.core.Course;
 import edu.cmu.cs.cs214.analyzer.framework.core.CourseReview;
-import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.StreamingDataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.StringDictionary;
 
-import java.io.StringReader;
-import java.net.http.HttpClient;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.opencsv.CSVReader;
 
@@ -44,9 +56,9 @@ import com.opencsv.CSVReader;
  * 21: Overall course rate
  */
 
-public class FCEPlugin implements DataPlugin {
-    private final String baseURI = "https://gist.githubusercontent.com";
-    private final String basePath = "/shihhunw/2c260c9490cb4fcf7ec87a83c9068dac/raw/b4580df22360a616e86ca17396e8945f0041b01e";
+public class FCEPlugin implements StreamingDataPlugin {
+    private final String baseURI;
+    private final String basePath;
     private final int maxRetry = 3;
     private final int timeoutSeconds = 10;
     private final String organizationName = "CMU";
@@ -59,37 +71,126 @@ public class FCEPlugin implements DataPlugin {
     private final double miniCourseUnits = 6;
     private final double regularCourseUnits = 12;
     private final double totalUnitsPerYear = 72;
-    private final int startYear = 2018;
-    private final int endYear = 2022;
+    private final int startYear;
+    private final int endYear;
+    private final HttpFetcher fetcher;
     private final int numOfFields = 22;
+    // Colleges, levels and instructors repeat across thousands of records, so keep one copy each
+    private final StringDictionary dictionary = StringDictionary.getShared();
+    // The framework the plugin is registered with, which is told about the years parsed so far
+    private volatile AppFramework framework;
     
+    public FCEPlugin() {
+        this("https://gist.githubusercontent.com",
+             "/shihhunw/2c260c9490cb4fcf7ec87a83c9068dac/raw/b4580df22360a616e86ca17396e8945f0041b01e",
+             2018, 2022, HttpFetcher.getShared());
+    }
+
+    /**
+     * Create a plugin that fetches the yearly CSV files from another server, e.g., a local copy.
+     * The file of each year is fetched from baseURI + basePath + "/" + year + ".csv".
+     *
+     * @param baseURI The base URI of the server, e.g., "http://localhost:8080"
+     * @param basePath The path of the directory holding the files
+     * @param startYear The first year to fetch
+     * @param endYear The last year to fetch
+     * @param fetcher The {@link HttpFetcher} to fetch and cache the files with
+     */
+    public FCEPlugin(String baseURI, String basePath, int startYear, int endYear, HttpFetcher fetcher) {
+        this.baseURI = baseURI;
+        this.basePath = basePath;
+        this.startYear = startYear;
+        this.endYear = endYear;
+        this.fetcher = fetcher;
+    }
+
     @Override
     public String getName() {
         return "FCE";
     }
 
     @Override
-    public ArrayList<Course> getCourses() {
-        ArrayList<Course> courses = new ArrayList<>();
+    public void onRegister(AppFramework framework) {
+        this.framework = framework;
+    }
+
+    @Override
+    public Iterator<Course> streamCourses() {
+        // Fetch all years at once; each year is parsed while it downloads, so its CSV text is
+        // never held in memory as a whole
+        ExecutorService executor = Executors.newFixedThreadPool(endYear - startYear + 1);
+        ArrayList<Future<ArrayList<Course>>> years = new ArrayList<>();
         for (int i = startYear; i < endYear + 1; i++) {
-            courses.addAll(getCoursesByYear(i));
+            int year = i;
+            years.add(executor.submit(() -> getCoursesByYear(year)));
         }
-        return courses;
+        executor.shutdown();
+
+        // Hand the years over in order, each as soon as it is parsed and followed by null to mark
+        // its end, so a year can be analyzed while later years download
+        return new Iterator<Course>() {
+            private int nextYear = 0;
+            private Iterator<Course> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && nextYear < years.size()) {
+                    ArrayList<Course> yearCourses = getYear(years.get(nextYear++));
+                    if (yearCourses != null) {
+                        yearCourses.add(null);
+                        current = yearCourses.iterator();
+                    }
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Course next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            private ArrayList<Course> getYear(Future<ArrayList<Course>> year) {
+                try {
+                    return year.get();
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    nextYear = years.size();
+                } catch (ExecutionException e) {
+                    System.out.println("Error: Failed " + e.getCause().toString());
+                }
+                return null;
+            }
+        };
     }
 
     private ArrayList<Course> getCoursesByYear(int year) {
         String uri = baseURI + basePath + "/" + String.valueOf(year) + ".csv";
-        String csvString = httpGet(uri);
-        if (csvString == null) {
+        try (InputStream csvStream = httpGet(uri)) {
+            if (csvStream == null) {
+                return null;
+            }
+            ArrayList<Course> courses = parseCourses(new BufferedReader(new InputStreamReader(csvStream, StandardCharsets.UTF_8)));
+            // The file is parsed while it downloads, so its courses are fetched and parsed at once
+            AppFramework registered = framework;
+            if (registered != null) {
+                registered.reportFetched(this, courses.size());
+                registered.reportParsed(this, courses.size());
+            }
+            return courses;
+        } catch (IOException e) {
+            System.out.println("Error: Failed " + e.toString());
             return null;
         }
-        return parseCourses(csvString);
     }
 
-    private ArrayList<Course> parseCourses(String csvString) {
+    private ArrayList<Course> parseCourses(Reader csvText) {
         Map<Integer, Course> map = new HashMap<Integer, Course>();
         try {
-            CSVReader csvReader = new CSVReader(new StringReader(csvString));
+            CSVReader csvReader = new CSVReader(csvText);
             String[] record;
 
             // read the csv header first
@@ -129,8 +230,8 @@ public class FCEPlugin implements DataPlugin {
             course.description = "N/A";
             course.instructorNames = new ArrayList<>();
             course.organizationName = organizationName;
-            course.category = record[2].strip();
-            course.level = record[8];
+            course.category = dictionary.intern(record[2].strip());
+            course.level = dictionary.intern(record[8]);
             course.totalStudents = 0;
             course.totalHours = -1; // unable to calculate
             course.totalWeeks = getTotalWeeks(record);
@@ -143,24 +244,24 @@ public class FCEPlugin implements DataPlugin {
     }
 
     private void updateCourse(Course course, String[] record) {
-        course.instructorNames.add(record[6]);
+        course.instructorNames.add(dictionary.intern(record[6]));
         course.totalStudents += Integer.parseInt(record[9]);
     }
 
     private CourseReview createCourseReview(String[] record) {
         CourseReview review = new CourseReview();
         review.courseRate = Double.parseDouble(record[21]);
-        review.instructorRates = new ArrayList<>();
-        review.instructorRates.add(Double.parseDouble(record[20]));
+        review.instructorRates = new double[] { Double.parseDouble(record[20]) };
         review.workloadPerWeek = Double.parseDouble(record[12]);
         return review;
     }
 
     private void updateInstructorRates(ArrayList<Course> courses) {
         for (Course course : courses) {
-            ArrayList<Double> rates = new ArrayList<>();
-            for (CourseReview review : course.reviews) {
-                rates.add(review.instructorRates.get(0));
+            // All reviews of a course share one array of rates
+            double[] rates = new double[course.reviews.size()];
+            for (int i = 0; i < rates.length; i++) {
+                rates[i] = course.reviews.get(i).instructorRates[0];
             }
             for (CourseReview review : course.reviews) {
                 review.instructorRates = rates;
@@ -203,10 +304,13 @@ public class FCEPlugin implements DataPlugin {
         return tuition * (isMini ? miniCourseUnits : regularCourseUnits) / totalUnitsPerYear;
     }
 
-    private String httpGet(String uri) {
-        // Create a http client and construct the URI
-        HttpClient httpClient = HttpClient.newHttpClient();
-
+    /**
+     * Send a GET request and return the body as a stream, which is read while it downloads, or
+     * read from the cache if the file has not changed since it was cached.
+     *
+     * @return The body, which the caller has to close, or null if the request failed
+     */
+    private InputStream httpGet(String uri) {
         // Send a GET request for fetching the course details
         try {
             int countRetry = 0;
@@ -218,15 +322,16 @@ public class FCEPlugin implements DataPlugin {
                                              .header("accept-language", "en-US,en;q=0.5")
                                              .timeout(Duration.ofSeconds(timeoutSeconds))
                                              .build();
-                HttpResponse<String> resp = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
+                HttpFetcher.Response resp = fetcher.send(req);
 
                 // Print error and retry if status code is not 200 OK
-                if (resp.statusCode() != 200) {
-                    System.out.println("Error: Got " + resp.statusCode() + " when fetching " + uri);
+                if (resp.getStatusCode() != 200) {
+                    System.out.println("Error: Got " + resp.getStatusCode() + " when fetching " + uri);
+                    resp.getBody().close();
                     countRetry++;
                     continue;
                 }
-                return resp.body();
+                return resp.getBody();
             }
         } catch (Exception e) {
             System.out.println("Error: Failed " + e.toString());
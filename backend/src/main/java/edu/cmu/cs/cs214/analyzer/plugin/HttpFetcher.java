@@ -0,0 +1,383 @@
+package edu.cmu.cs.cs214.analyzer.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fetches remote data for the data plugins over one shared HTTP/2 client, whose connections are
+ * reused across requests and plugins, and keeps the successful responses in a cache on disk.
+ *
+ * Responses are cached by URI when the server sends an ETag or Last-Modified validator. A later
+ * request for the same URI, also after a restart, is sent as a conditional GET, and a
+ * "304 Not Modified" answer is served from disk without downloading the body again. Request
+ * headers other than the URI are not part of the cache key.
+ */
+public class HttpFetcher {
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".properties";
+    private static HttpFetcher shared;
+
+    private final HttpClient httpClient;
+    private final Path cacheDir;
+    private final AtomicLong numDownloads;
+    private final AtomicLong numNotModified;
+
+    /**
+     * Create a fetcher with its own client and cache.
+     *
+     * @param cacheDir The directory of the cache, which is created if it does not exist
+     */
+    public HttpFetcher(Path cacheDir) {
+        this.httpClient = HttpClient.newBuilder()
+                                    .version(HttpClient.Version.HTTP_2)
+                                    .followRedirects(HttpClient.Redirect.NORMAL)
+                                    .connectTimeout(Duration.ofSeconds(10))
+                                    .build();
+        this.cacheDir = cacheDir;
+        this.numDownloads = new AtomicLong();
+        this.numNotModified = new AtomicLong();
+    }
+
+    /**
+     * Returns the fetcher shared by all plugins, which caches in the "cache/http" directory
+     * under the working directory.
+     *
+     * @return The shared fetcher
+     */
+    public static synchronized HttpFetcher getShared() {
+        if (shared == null)
+            shared = new HttpFetcher(Paths.get("cache", "http"));
+        return shared;
+    }
+
+    /**
+     * Returns the number of responses whose body was downloaded.
+     *
+     * @return The number of downloads
+     */
+    public long getNumDownloads() {
+        return this.numDownloads.get();
+    }
+
+    /**
+     * Returns the number of responses served from the cache after the server answered that
+     * they were not modified.
+     *
+     * @return The number of revalidated responses
+     */
+    public long getNumNotModified() {
+        return this.numNotModified.get();
+    }
+
+    /**
+     * Send a GET request and wait for the response headers. The body is streamed while it is
+     * read, and written to the cache at the same time; it is only cached if it is read to the
+     * end.
+     *
+     * @param request The request, which must be a GET request
+     * @return The response, whose body the caller has to close
+     * @throws IOException If the request fails
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public Response send(HttpRequest request) throws IOException, InterruptedException {
+        CacheEntry entry = readEntry(request);
+        HttpResponse<InputStream> resp = this.httpClient.send(conditional(request, entry),
+                                                              HttpResponse.BodyHandlers.ofInputStream());
+        if (resp.statusCode() == 304 && entry != null) {
+            resp.body().close();
+            this.numNotModified.incrementAndGet();
+            return new Response(200, Files.newInputStream(entry.body), true);
+        }
+        if (resp.statusCode() != 304)
+            this.numDownloads.incrementAndGet();
+        if (resp.statusCode() != 200 || !hasValidator(resp))
+            return new Response(resp.statusCode(), resp.body(), false);
+        return new Response(200, new CachingInputStream(resp.body(), request, resp), false);
+    }
+
+    /**
+     * Send a GET request without blocking. The body is read completely before the returned
+     * future completes, and cached if it can be.
+     *
+     * @param request The request, which must be a GET request
+     * @return The future response
+     */
+    public CompletableFuture<Response> sendAsync(HttpRequest request) {
+        CacheEntry entry;
+        try {
+            entry = readEntry(request);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return this.httpClient.sendAsync(conditional(request, entry), HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(resp -> {
+                if (resp.statusCode() == 304 && entry != null) {
+                    this.numNotModified.incrementAndGet();
+                    try {
+                        return new Response(200, new ByteArrayInputStream(Files.readAllBytes(entry.body)), true);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                if (resp.statusCode() != 304)
+                    this.numDownloads.incrementAndGet();
+                if (resp.statusCode() == 200 && hasValidator(resp))
+                    writeEntry(request, resp, resp.body());
+                return new Response(resp.statusCode(), new ByteArrayInputStream(resp.body()), false);
+            });
+    }
+
+    /**
+     * Add the validators of a cached response to a request.
+     */
+    private static HttpRequest conditional(HttpRequest request, CacheEntry entry) {
+        if (entry == null)
+            return request;
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request, (name, value) -> true);
+        if (entry.etag != null)
+            builder.header("If-None-Match", entry.etag);
+        if (entry.lastModified != null)
+            builder.header("If-Modified-Since", entry.lastModified);
+        return builder.build();
+    }
+
+    private static boolean hasValidator(HttpResponse<?> resp) {
+        return resp.headers().firstValue("ETag").isPresent()
+            || resp.headers().firstValue("Last-Modified").isPresent();
+    }
+
+    private CacheEntry readEntry(HttpRequest request) throws IOException {
+        String key = key(request);
+        Path meta = this.cacheDir.resolve(key + META_SUFFIX);
+        Path body = this.cacheDir.resolve(key + BODY_SUFFIX);
+        if (!Files.exists(meta) || !Files.exists(body))
+            return null;
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(meta, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        // Two URIs could only share a key if SHA-256 collided, but check anyway
+        if (!request.uri().toString().equals(properties.getProperty("uri")))
+            return null;
+        return new CacheEntry(body, properties.getProperty("etag"), properties.getProperty("lastModified"));
+    }
+
+    private void writeEntry(HttpRequest request, HttpResponse<?> resp, byte[] body) {
+        try {
+            Path temp = createTempFile();
+            Files.write(temp, body);
+            commitEntry(request, resp, temp);
+        } catch (IOException e) {
+            System.out.println("Error: Failed to cache " + request.uri() + " - " + e.toString());
+        }
+    }
+
+    private Path createTempFile() throws IOException {
+        Files.createDirectories(this.cacheDir);
+        return Files.createTempFile(this.cacheDir, "fetch", ".tmp");
+    }
+
+    /**
+     * Move a downloaded body into the cache and record its validators. The body is moved before
+     * the validators are written, so a reader never sees validators without their body.
+     */
+    private void commitEntry(HttpRequest request, HttpResponse<?> resp, Path temp) throws IOException {
+        String key = key(request);
+        Properties properties = new Properties();
+        properties.setProperty("uri", request.uri().toString());
+        Optional<String> etag = resp.headers().firstValue("ETag");
+        Optional<String> lastModified = resp.headers().firstValue("Last-Modified");
+        etag.ifPresent(value -> properties.setProperty("etag", value));
+        lastModified.ifPresent(value -> properties.setProperty("lastModified", value));
+
+        Path meta = this.cacheDir.resolve(key + META_SUFFIX);
+        Files.deleteIfExists(meta);
+        Files.move(temp, this.cacheDir.resolve(key + BODY_SUFFIX),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path tempMeta = createTempFile();
+        try (Writer writer = Files.newBufferedWriter(tempMeta, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(tempMeta, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String key(HttpRequest request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                                         .digest(request.uri().toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest)
+                key.append(String.format("%02x", b));
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A response, either downloaded or served from the cache.
+     */
+    public static final class Response {
+        private final int statusCode;
+        private final InputStream body;
+        private final boolean fromCache;
+
+        private Response(int statusCode, InputStream body, boolean fromCache) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.fromCache = fromCache;
+        }
+
+        public int getStatusCode() {
+            return this.statusCode;
+        }
+
+        /**
+         * Returns the body of the response, which has to be closed.
+         *
+         * @return The body
+         */
+        public InputStream getBody() {
+            return this.body;
+        }
+
+        /**
+         * Read the whole body as UTF-8 text and close it.
+         *
+         * @return The body
+         * @throws IOException If reading fails
+         */
+        public String getBodyAsString() throws IOException {
+            try (InputStream in = this.body) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * Returns whether the body is served from the cache instead of being downloaded.
+         *
+         * @return Whether the response comes from the cache
+         */
+        public boolean isFromCache() {
+            return this.fromCache;
+        }
+    }
+
+    private static final class CacheEntry {
+        private final Path body;
+        private final String etag;
+        private final String lastModified;
+
+        private CacheEntry(Path body, String etag, String lastModified) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * A body that copies everything read from it into a temporary file, which becomes the cached
+     * body once the end is reached.
+     */
+    private final class CachingInputStream extends FilterInputStream {
+        private final HttpRequest request;
+        private final HttpResponse<?> resp;
+        private Path temp;
+        private OutputStream out;
+        private boolean complete;
+
+        private CachingInputStream(InputStream in, HttpRequest request, HttpResponse<?> resp) {
+            super(in);
+            this.request = request;
+            this.resp = resp;
+            try {
+                this.temp = createTempFile();
+                this.out = Files.newOutputStream(this.temp);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0)
+                this.complete = true;
+            else if (this.out != null)
+                write(new byte[] { (byte) b }, 0, 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0)
+                this.complete = true;
+            else if (this.out != null)
+                write(b, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (this.out == null)
+                return;
+            try {
+                this.out.close();
+                this.out = null;
+                if (this.complete)
+                    commitEntry(this.request, this.resp, this.temp);
+                else
+                    Files.deleteIfExists(this.temp);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void write(byte[] b, int off, int len) {
+            try {
+                this.out.write(b, off, len);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Give up caching, but keep serving the body.
+         */
+        private void fail(IOException e) {
+            System.out.println("Error: Failed to cache " + this.request.uri() + " - " + e.toString());
+            try {
+                if (this.out != null)
+                    this.out.close();
+                if (this.temp != null)
+                    Files.deleteIfExists(this.temp);
+            } catch (IOException ignored) {
+                // The temporary file is left behind, which does no harm
+            }
+            this.out = null;
+        }
+    }
+}
@@ -1,20 +1,17 @@
 package edu.cmu.cs.cs214.analyzer.plugin.csv;
 
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.csv.CSVFormat.Builder;
+import java.util.Map;
 
 import edu.cmu.cs.cs214.analyzer.framework.core.Course;
 import edu.cmu.cs.cs214.analyzer.framework.core.CourseReview;
 import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.StringDictionary;
 
 public class CSVPlugin implements DataPlugin {
 
@@ -28,6 +25,31 @@ public class CSVPlugin implements DataPlugin {
     private static final String[] REVIEW_HEADERS = { "Name", "Course Rating", 
                                                      "Instructor Rating 1", "Instructor Rating 2", 
                                                      "Instructor Rating 3", "Workload" };
+    private static final Map<String, Integer> COURSE_COLUMNS = getColumns(COURSE_HEADERS);
+    private static final Map<String, Integer> REVIEW_COLUMNS = getColumns(REVIEW_HEADERS);
+    // Organizations, categories, levels and instructors repeat across courses, so keep one copy each
+    private static final StringDictionary dictionary = StringDictionary.getShared();
+
+    private final Path coursesFile;
+    private final Path ratingsFile;
+    private final ParallelCsvParser parser;
+
+    public CSVPlugin() {
+        this(Paths.get(BASE, "courses.csv"), Paths.get(BASE, "ratings.csv"), new ParallelCsvParser());
+    }
+
+    /**
+     * Create a plugin that reads other files of the same layout.
+     *
+     * @param coursesFile The CSV file of the courses
+     * @param ratingsFile The CSV file of the reviews
+     * @param parser The parser to read the files with
+     */
+    public CSVPlugin(Path coursesFile, Path ratingsFile, ParallelCsvParser parser) {
+        this.coursesFile = coursesFile;
+        this.ratingsFile = ratingsFile;
+        this.parser = parser;
+    }
 
     /**
      * Returns the name of the plugin.
@@ -49,144 +71,136 @@ public class CSVPlugin implements DataPlugin {
         // initialize result
         ArrayList<Course> courses = new ArrayList<Course>();
         HashMap<String, Course> courseMap = new HashMap<String, Course>();
-        // parse the course csv
-        parseCourses(courses, courseMap);
-        // parse the course csv
-        parseReviews(courses, courseMap);
+        try {
+            // parse the course csv
+            parseCourses(courses, courseMap);
+            // parse the ratings csv
+            parseReviews(courses, courseMap);
+        } catch (IOException e) {
+            System.out.println("Error: Failed " + e.toString());
+            e.printStackTrace();
+        }
         
         return courses;
     }
 
-    private void parseCourses(ArrayList<Course> courses, HashMap<String, Course> courseMap)  {
-
-        boolean firstLine = true;
-        // parse the course csv
-        CSVParser courseparser = parse("courses.csv", COURSE_HEADERS);
-        for (CSVRecord csvRecord : courseparser) {
-            // skip the first line because it is just the header names
-            if (!firstLine) {
-                Course course = getCourse(csvRecord);
-                // add to map to be used later
-                courseMap.put(course.name, course);
-                courses.add(course);
-            }
-            firstLine = false;
+    private void parseCourses(ArrayList<Course> courses, HashMap<String, Course> courseMap) throws IOException {
+
+        // parse the course csv in parallel, the header line is skipped by the parser
+        for (Course course : parser.parse(coursesFile, this::getCourse)) {
+            // add to map to be used later
+            courseMap.put(course.name, course);
+            courses.add(course);
         }
 
     }
 
-    private void parseReviews(ArrayList<Course> courses, HashMap<String, Course> courseMap)  {
-
-        boolean firstLine = true;
-        // parse the ratings csv
-        CSVParser reviewparser = parse("ratings.csv", REVIEW_HEADERS);
-        for (CSVRecord csvRecord : reviewparser) {
-            // skip the first line because it is just the header names
-            if (!firstLine) {
-                // get the course name of the review
-                String courseName = getCourseName(csvRecord);
-                // get the corresponding course
-                Course course = courseMap.get(courseName);
-                // process the reviews for that course
-                course.reviews.add(getCourseReview(csvRecord, course));
-                // if we added reviews, we want to recompute workload / rating
-                course.computeCourseRate();
-                course.computeWorkload();
+    private void parseReviews(ArrayList<Course> courses, HashMap<String, Course> courseMap) throws IOException {
+
+        // parse the ratings csv in parallel, then add the reviews in file order
+        for (String[] record : parser.parse(ratingsFile, record -> record)) {
+            // get the course name of the review
+            String courseName = getCourseName(record);
+            // get the corresponding course
+            Course course = courseMap.get(courseName);
+            if (course == null) {
+                System.out.println("Error: Review of unknown course " + courseName);
+                continue;
             }
-            firstLine = false;
+            // process the reviews for that course
+            course.addReview(getCourseReview(record, course));
+            // if we added reviews, we want to recompute workload / rating, which only reads
+            // the running sums of the reviews
+            course.computeCourseRate();
+            course.computeWorkload();
         }
         
     }
 
-    private Course getCourse(CSVRecord record)   {
+    private Course getCourse(String[] record)   {
 
         // create the new course
         Course course = new Course();
         // now parse the record into course attributes
-        course.id = Integer.parseInt(record.get("ID"));
-        course.year = Integer.parseInt(record.get("Year"));
-        course.name = record.get("Name");
-        course.description = record.get("Description");
+        course.id = Integer.parseInt(get(record, COURSE_COLUMNS, "ID"));
+        course.year = Integer.parseInt(get(record, COURSE_COLUMNS, "Year"));
+        course.name = get(record, COURSE_COLUMNS, "Name");
+        course.description = get(record, COURSE_COLUMNS, "Description");
         course.instructorNames = getInstructorNames(record);
-        course.category = record.get("Category");
-        course.organizationName = record.get("Organization");
-        course.level = record.get("Level");
-        course.totalStudents = Integer.parseInt(record.get("Students"));
-        course.totalHours = Double.parseDouble(record.get("Hours"));
-        course.totalWeeks = Integer.parseInt(record.get("Weeks"));
-        course.estimatedWorkload = Double.parseDouble(record.get("Workload"));
-        course.rate = Double.parseDouble(record.get("Rate"));
-        course.price = Double.parseDouble(record.get("Price"));
+        course.category = dictionary.intern(get(record, COURSE_COLUMNS, "Category"));
+        course.organizationName = dictionary.intern(get(record, COURSE_COLUMNS, "Organization"));
+        course.level = dictionary.intern(get(record, COURSE_COLUMNS, "Level"));
+        course.totalStudents = Integer.parseInt(get(record, COURSE_COLUMNS, "Students"));
+        course.totalHours = Double.parseDouble(get(record, COURSE_COLUMNS, "Hours"));
+        course.totalWeeks = Integer.parseInt(get(record, COURSE_COLUMNS, "Weeks"));
+        course.estimatedWorkload = Double.parseDouble(get(record, COURSE_COLUMNS, "Workload"));
+        course.rate = Double.parseDouble(get(record, COURSE_COLUMNS, "Rate"));
+        course.price = Double.parseDouble(get(record, COURSE_COLUMNS, "Price"));
         course.reviews = new ArrayList<CourseReview>();
 
         return course;
 
     }
 
-    private CourseReview getCourseReview(CSVRecord record, Course course)    {
+    private CourseReview getCourseReview(String[] record, Course course)    {
 
         CourseReview review = new CourseReview();
 
-        review.courseRate = Double.parseDouble(record.get("Course Rating"));
-        review.workloadPerWeek = Double.parseDouble(record.get("Workload"));
+        review.courseRate = Double.parseDouble(get(record, REVIEW_COLUMNS, "Course Rating"));
+        review.workloadPerWeek = Double.parseDouble(get(record, REVIEW_COLUMNS, "Workload"));
 
-        ArrayList<Double> instructorRatings = new ArrayList<Double>();
+        double[] instructorRatings = new double[3];
+        int numRatings = 0;
 
-        String rating1 = record.get("Instructor Rating 1");
-        String rating2 = record.get("Instructor Rating 2");
-        String rating3 = record.get("Instructor Rating 3");
+        String rating1 = get(record, REVIEW_COLUMNS, "Instructor Rating 1");
+        String rating2 = get(record, REVIEW_COLUMNS, "Instructor Rating 2");
+        String rating3 = get(record, REVIEW_COLUMNS, "Instructor Rating 3");
 
         // only add the rating if it is not empty
-        if (!rating1.equals("")) instructorRatings.add(Double.parseDouble(rating1));
-        if (!rating2.equals("")) instructorRatings.add(Double.parseDouble(rating2));
-        if (!rating3.equals("")) instructorRatings.add(Double.parseDouble(rating3));
+        if (!rating1.equals("")) instructorRatings[numRatings++] = Double.parseDouble(rating1);
+        if (!rating2.equals("")) instructorRatings[numRatings++] = Double.parseDouble(rating2);
+        if (!rating3.equals("")) instructorRatings[numRatings++] = Double.parseDouble(rating3);
 
-        review.instructorRates = instructorRatings;
+        review.instructorRates = Arrays.copyOf(instructorRatings, numRatings);
 
         return review;
 
     }
 
-    private String getCourseName(CSVRecord record) {
+    private String getCourseName(String[] record) {
 
-        return record.get("Name");
+        return get(record, REVIEW_COLUMNS, "Name");
 
     }
 
-    private ArrayList<String> getInstructorNames(CSVRecord record)    {
+    private ArrayList<String> getInstructorNames(String[] record)    {
         
         ArrayList<String> instructorNames = new ArrayList<String>();
 
-        String instructor1 = record.get("Instructor 1");
-        String instructor2 = record.get("Instructor 2");
-        String instructor3 = record.get("Instructor 3");
+        String instructor1 = get(record, COURSE_COLUMNS, "Instructor 1");
+        String instructor2 = get(record, COURSE_COLUMNS, "Instructor 2");
+        String instructor3 = get(record, COURSE_COLUMNS, "Instructor 3");
 
         // only add an instructor if it is not empty
-        if (!instructor1.equals("")) instructorNames.add(instructor1);
-        if (!instructor2.equals("")) instructorNames.add(instructor2);
-        if (!instructor3.equals("")) instructorNames.add(instructor3);
+        if (!instructor1.equals("")) instructorNames.add(dictionary.intern(instructor1));
+        if (!instructor2.equals("")) instructorNames.add(dictionary.intern(instructor2));
+        if (!instructor3.equals("")) instructorNames.add(dictionary.intern(instructor3));
 
         return instructorNames;
     }
 
-    private CSVParser parse(String fileName, String[] headers) {
-        // init return
-        CSVParser parser = null;
-        try {
-            // read the csv file
-            File file = new File(BASE + fileName);
-            Reader csvData = new FileReader(file.getAbsolutePath());
-            // create the csv format builder
-            Builder builder = CSVFormat.Builder.create();
-            CSVFormat format = builder.setHeader(headers).build();
-            // parse with the specified format
-            parser = CSVParser.parse(csvData, format);
+    private static String get(String[] record, Map<String, Integer> columns, String header) {
+        // missing trailing fields are empty
+        int column = columns.get(header);
+        return column < record.length ? record[column] : "";
+    }
 
-        } catch (IOException e) {
-            System.out.println("Error: Failed " + e.toString());
-            e.printStackTrace();
+    private static Map<String, Integer> getColumns(String[] headers) {
+        HashMap<String, Integer> columns = new HashMap<String, Integer>();
+        for (int i = 0; i < headers.length; i++) {
+            columns.put(headers[i], i);
         }
-        return parser;
+        return columns;
     }
     
     
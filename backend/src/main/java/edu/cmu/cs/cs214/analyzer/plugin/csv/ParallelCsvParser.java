@@ -0,0 +1,359 @@
+package edu.cmu.cs.cs214.analyzer.plugin.csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Parses large CSV files (RFC 4180, UTF-8) in parallel. The file is memory-mapped and split into
+ * chunks of about the same size, which are parsed on a {@link ForkJoinPool}; the records are
+ * returned in file order, so the result does not depend on the number of threads.
+ *
+ * A chunk must start at a record boundary, i.e., after a line break ('\n' or '\r') outside
+ * quotes. Escaped quotes are written twice in CSV, so in a strictly quoted file a position is
+ * inside quotes exactly if an odd number of quote characters precedes it. A first parallel pass
+ * counts the quotes of each chunk; a prefix sum then gives the quote state at each nominal split
+ * point, from which the split is moved forward to the next line break outside quotes. Fields may
+ * thus contain quoted line breaks. Quotes and line breaks are ASCII, and never part of a
+ * multi-byte UTF-8 character, so the file is scanned as bytes.
+ *
+ * A quote inside an unquoted field (e.g., 5'10") throws off the count, which may move a split
+ * into a quoted field. The chunk before such a split then ends inside quotes, so the file is
+ * parsed again sequentially, as it is right away if it has an odd number of quotes.
+ */
+public final class ParallelCsvParser {
+    private static final int DEFAULT_CHUNK_BYTES = 8 << 20;
+    private static final int SCAN_BYTES = 64 << 10;
+    private static final byte QUOTE = '"';
+
+    private final ForkJoinPool pool;
+    private final int chunkBytes;
+
+    /**
+     * Create a parser that uses the common fork/join pool and 8 MB chunks.
+     */
+    public ParallelCsvParser() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * Create a parser.
+     *
+     * @param pool The pool to parse the chunks on
+     * @param chunkBytes The nominal size of a chunk in bytes
+     */
+    public ParallelCsvParser(ForkJoinPool pool, int chunkBytes) {
+        if (chunkBytes <= 0)
+            throw new IllegalArgumentException("Invalid chunk size " + chunkBytes);
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Parse a CSV file, skipping its header line and empty lines.
+     *
+     * @param file The file to parse
+     * @param mapper A function applied to the fields of each record, in parallel
+     * @return The mapped records in file order
+     * @throws IOException If the file cannot be read
+     */
+    public <T> List<T> parse(Path file, Function<String[], T> mapper) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int numChunks = (int) Math.max(1, (size + this.chunkBytes - 1) / this.chunkBytes);
+            long bodyStart = hasByteOrderMark(channel) ? 3 : 0;
+
+            // Count the quotes of each nominal chunk, then find where each chunk really starts
+            long[] nominalStarts = new long[numChunks + 1];
+            for (int i = 0; i <= numChunks; i++)
+                nominalStarts[i] = Math.max(bodyStart, Math.min(size, (long) i * this.chunkBytes));
+            ByteBuffer[] nominalChunks = map(channel, nominalStarts);
+            List<Long> quotes = inParallel(numChunks, i -> countQuotes(nominalChunks[i]));
+            long totalQuotes = 0;
+            for (long chunkQuotes : quotes)
+                totalQuotes += chunkQuotes;
+            if (totalQuotes % 2 == 1)  // Not strictly quoted, so quote counts don't tell the state
+                return parseSequentially(nominalChunks, mapper);
+            long[] starts = new long[numChunks + 1];
+            starts[0] = bodyStart;
+            long quotesBefore = 0;
+            for (int i = 1; i < numChunks; i++) {
+                quotesBefore += quotes.get(i - 1);
+                long start = Math.max(starts[i - 1], (long) i * this.chunkBytes);
+                // A previous chunk may have been extended beyond this one's nominal start
+                boolean inQuotes = start == (long) i * this.chunkBytes
+                    ? quotesBefore % 2 == 1
+                    : isInQuotesAt(channel, starts[i - 1], start, false);
+                starts[i] = findRecordStart(channel, start, size, inQuotes);
+            }
+            starts[numChunks] = size;
+
+            ByteBuffer[] chunkBuffers = map(channel, starts);
+            boolean[] endsInQuotes = new boolean[numChunks];
+            List<List<T>> chunks = inParallel(numChunks, i -> {
+                List<T> records = new ArrayList<T>();
+                if (starts[i] < starts[i + 1]) {
+                    ChunkParser parser = new ChunkParser(i == 0);
+                    parser.parse(chunkBuffers[i], mapper, records);
+                    endsInQuotes[i] = parser.isInQuotes();
+                    parser.finish(mapper, records);
+                }
+                return records;
+            });
+            // A chunk other than the last one ending inside quotes was split inside a field
+            for (int i = 0; i < numChunks - 1; i++)
+                if (endsInQuotes[i])
+                    return parseSequentially(nominalChunks, mapper);
+            ArrayList<T> records = new ArrayList<T>();
+            for (List<T> chunk : chunks)
+                records.addAll(chunk);
+            return records;
+        }
+    }
+
+    /**
+     * Parse consecutive chunks of a file in order with one parser, which carries its state
+     * from one chunk to the next, so the chunks may start anywhere.
+     */
+    private static <T> List<T> parseSequentially(ByteBuffer[] chunks, Function<String[], T> mapper) {
+        List<T> records = new ArrayList<T>();
+        ChunkParser parser = new ChunkParser(true);
+        for (ByteBuffer chunk : chunks)
+            parser.parse(chunk, mapper, records);
+        parser.finish(mapper, records);
+        return records;
+    }
+
+    private static boolean hasByteOrderMark(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0)
+            continue;
+        return buffer.position() == 3 && (buffer.get(0) & 0xFF) == 0xEF
+            && (buffer.get(1) & 0xFF) == 0xBB && (buffer.get(2) & 0xFF) == 0xBF;
+    }
+
+    /**
+     * Run one task per chunk on the pool and collect their results in chunk order.
+     */
+    private <T> List<T> inParallel(int numChunks, ChunkTask<T> task) throws IOException {
+        ArrayList<ForkJoinTask<T>> tasks = new ArrayList<ForkJoinTask<T>>();
+        for (int i = 0; i < numChunks; i++) {
+            int chunk = i;
+            tasks.add(this.pool.submit(() -> task.run(chunk)));
+        }
+        ArrayList<T> results = new ArrayList<T>();
+        try {
+            for (ForkJoinTask<T> chunkTask : tasks)
+                results.add(chunkTask.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        return results;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long start, long end) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    /**
+     * Map consecutive chunks of a file with as few mappings as possible. Every mapping takes one
+     * of the memory map areas of the process, of which there are only about 65k, and is only
+     * released once it is garbage collected, so mapping each chunk on its own runs out of them
+     * for files of many small chunks.
+     *
+     * @param starts The start of each chunk, followed by the end of the last one
+     * @return The contents of each chunk
+     */
+    private static ByteBuffer[] map(FileChannel channel, long[] starts) throws IOException {
+        ByteBuffer[] chunks = new ByteBuffer[starts.length - 1];
+        int first = 0;
+        while (first < chunks.length) {
+            // As many chunks as fit in one mapping, but at least one
+            int last = first + 1;
+            while (last < chunks.length && starts[last + 1] - starts[first] <= Integer.MAX_VALUE)
+                last++;
+            MappedByteBuffer mapped = map(channel, starts[first], starts[last]);
+            for (int i = first; i < last; i++)
+                chunks[i] = mapped.slice((int) (starts[i] - starts[first]), (int) (starts[i + 1] - starts[i]));
+            first = last;
+        }
+        return chunks;
+    }
+
+    private static long countQuotes(ByteBuffer buffer) {
+        long count = 0;
+        for (int i = 0; i < buffer.limit(); i++)
+            if (buffer.get(i) == QUOTE)
+                count++;
+        return count;
+    }
+
+    /**
+     * Find the quote state at a position from a known state at an earlier position.
+     */
+    private static boolean isInQuotesAt(FileChannel channel, long from, long to, boolean inQuotes) throws IOException {
+        for (long start = from; start < to; start += Integer.MAX_VALUE) {
+            long end = Math.min(to, start + Integer.MAX_VALUE);
+            if (countQuotes(map(channel, start, end)) % 2 == 1)
+                inQuotes = !inQuotes;
+        }
+        return inQuotes;
+    }
+
+    /**
+     * Find the first position after a line break outside quotes, at or after a given position.
+     * The next line break is usually close, so the bytes are read rather than mapped. A split
+     * between the '\r' and '\n' of a line break leaves an empty line, which is skipped.
+     *
+     * @return The position, or the size of the file if there is no more line break
+     */
+    private static long findRecordStart(FileChannel channel, long from, long size, boolean inQuotes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BYTES);
+        // A line break right before the position already ends a record
+        if (from > 0 && !inQuotes && channel.read(buffer, from - 1) > 0 && isLineBreak(buffer.get(0)))
+            return from;
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0)
+                break;
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                if (b == QUOTE)
+                    inQuotes = !inQuotes;
+                else if (isLineBreak(b) && !inQuotes)
+                    return position + i + 1;
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    private static boolean isLineBreak(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    @FunctionalInterface
+    private interface ChunkTask<T> {
+        T run(int chunk) throws IOException;
+    }
+
+    /**
+     * Parses the records of one chunk, which starts at a record boundary and ends at one or at
+     * the end of the file, or of consecutive chunks fed to it in order.
+     */
+    private static final class ChunkParser {
+        private boolean skipHeader;
+        private byte[] field = new byte[64];
+        private int fieldLength;
+        // Whether anything but a line break has been read since the last record ended
+        private boolean inRecord;
+        private boolean inQuotes;
+        private boolean atFieldStart = true;
+        // Whether the last byte was a quote inside quotes, which ends the quoted field unless
+        // the next byte is a quote too
+        private boolean quoteEnding;
+        private final ArrayList<String> fields = new ArrayList<String>();
+
+        private ChunkParser(boolean first) {
+            this.skipHeader = first;
+        }
+
+        private <T> void parse(ByteBuffer buffer, Function<String[], T> mapper, List<T> records) {
+            int limit = buffer.limit();
+            for (int position = 0; position < limit; position++) {
+                byte b = buffer.get(position);
+                if (this.quoteEnding) {
+                    this.quoteEnding = false;
+                    if (b == QUOTE) {  // An escaped quote
+                        append(QUOTE);
+                        continue;
+                    }
+                    this.inQuotes = false;
+                }
+                if (!isLineBreak(b))
+                    this.inRecord = true;
+                if (this.inQuotes) {
+                    if (b == QUOTE)
+                        this.quoteEnding = true;
+                    else
+                        append(b);
+                } else if (b == QUOTE && this.atFieldStart) {
+                    this.inQuotes = true;
+                    this.atFieldStart = false;
+                } else if (b == ',') {
+                    endField();
+                    this.atFieldStart = true;
+                } else if (isLineBreak(b)) {
+                    // The '\n' of "\r\n" ends an empty line, which is skipped
+                    endRecord(mapper, records);
+                    this.atFieldStart = true;
+                } else {
+                    append(b);
+                    this.atFieldStart = false;
+                }
+            }
+        }
+
+        /**
+         * Returns whether the parsed bytes end inside a quoted field.
+         */
+        private boolean isInQuotes() {
+            return this.inQuotes && !this.quoteEnding;
+        }
+
+        /**
+         * Ends the last record at the end of the file.
+         */
+        private <T> void finish(Function<String[], T> mapper, List<T> records) {
+            this.quoteEnding = false;
+            this.inQuotes = false;
+            endRecord(mapper, records);
+        }
+
+        private void append(byte b) {
+            if (this.fieldLength == this.field.length)
+                this.field = Arrays.copyOf(this.field, this.field.length * 2);
+            this.field[this.fieldLength++] = b;
+        }
+
+        private void endField() {
+            this.fields.add(new String(this.field, 0, this.fieldLength, StandardCharsets.UTF_8));
+            this.fieldLength = 0;
+        }
+
+        private <T> void endRecord(Function<String[], T> mapper, List<T> records) {
+            // Empty lines are skipped
+            if (!this.inRecord)
+                return;
+            this.inRecord = false;
+            endField();
+            String[] record = this.fields.toArray(new String[0]);
+            this.fields.clear();
+            if (this.skipHeader) {
+                this.skipHeader = false;
+                return;
+            }
+            records.add(mapper.apply(record));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package edu.cmu.cs.cs214.analyzer.plugin.udemy;
+
+/**
+ * A token bucket that limits how fast requests are sent. The bucket holds up to one second's
+ * worth of tokens and is refilled continuously; a request takes one token. Instead of blocking,
+ * {@link #reserve()} takes the token right away and returns how long the caller has to wait for
+ * it, so requests can be scheduled without tying up a thread.
+ */
+class RateLimiter {
+    private final double permitsPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Create a full bucket.
+     *
+     * @param permitsPerSecond The number of requests allowed per second
+     * @throws IllegalArgumentException If the rate is not positive
+     */
+    RateLimiter(double permitsPerSecond) {
+        if (!(permitsPerSecond > 0))
+            throw new IllegalArgumentException("Invalid rate " + permitsPerSecond);
+        this.permitsPerNano = permitsPerSecond / 1e9;
+        this.capacity = Math.max(1, permitsPerSecond);
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take a token, which may only become available in the future.
+     *
+     * @return The number of nanoseconds to wait before sending the request, 0 if it can be sent now
+     */
+    synchronized long reserve() {
+        long now = System.nanoTime();
+        this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.permitsPerNano);
+        this.lastRefill = now;
+        this.tokens--;
+        if (this.tokens >= 0)
+            return 0;
+        return (long) Math.ceil(-this.tokens / this.permitsPerNano);
+    }
+}
@@ -1,17 +1,29 @@
 package edu.cmu.cs.cs214.analyzer.plugin.udemy;
 
+import edu.cmu.cs.cs214.analyzer.framework.core.AppFramework;
 import edu.cmu.cs.cs214.analyzer.framework.core.Course;
 import edu.cmu.cs.cs214.analyzer.framework.core.CourseReview;
-import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.StreamingDataPlugin;
+import edu.cmu.cs.cs214.analyzer.plugin.HttpFetcher;
 
 import java.io.File;
-import java.net.http.HttpClient;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.net.URI;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -19,10 +31,39 @@ import org.json.JSONObject;
 /**
  * An example Memory game plug-in.
  */
-public class UdemyPlugin implements DataPlugin {
+public class UdemyPlugin implements StreamingDataPlugin {
     private String baseURI = "https://www.udemy.com";
     private String basePath = "/api-2.0/courses";
     private int maxRetry = 3;
+    // Course details and reviews are fetched concurrently, at most maxConcurrency at a time
+    private int maxConcurrency = 8;
+    private double requestsPerSecond = 20;
+    // Retries wait a random time up to initialBackoffMillis, doubled for each further retry
+    private long initialBackoffMillis = 500;
+    private long maxBackoffMillis = 8000;
+    private HttpFetcher fetcher = HttpFetcher.getShared();
+    // The framework the plugin is registered with, which is told about the courses fetched so far
+    private volatile AppFramework framework;
+
+    public UdemyPlugin() {
+    }
+
+    /**
+     * Create a plugin that fetches from another server, e.g., a local stub of the Udemy APIs.
+     *
+     * @param baseURI The base URI of the server, e.g., "http://localhost:8080"
+     * @param maxConcurrency The maximum number of requests in flight at a time
+     * @param requestsPerSecond The maximum number of requests sent per second
+     * @param fetcher The {@link HttpFetcher} to fetch and cache the responses with
+     */
+    public UdemyPlugin(String baseURI, int maxConcurrency, double requestsPerSecond, HttpFetcher fetcher) {
+        if(maxConcurrency <= 0)
+            throw new IllegalArgumentException("Invalid concurrency " + maxConcurrency);
+        this.baseURI = baseURI;
+        this.maxConcurrency = maxConcurrency;
+        this.requestsPerSecond = requestsPerSecond;
+        this.fetcher = fetcher;
+    }
     
     @Override
     public String getName() {
@@ -30,22 +71,71 @@ public class UdemyPlugin implements DataPlugin {
     }
 
     @Override
-    public ArrayList<Course> getCourses() {
+    public void onRegister(AppFramework framework) {
+        this.framework = framework;
+    }
+
+    @Override
+    public Iterator<Course> streamCourses() {
         // List all English courses from Udemy
         // Udemy API requires a search keyword, so the most common letter "e" is used here
-        HttpClient httpClient = HttpClient.newHttpClient();
-        ArrayList<Course> courses = listCourses(httpClient, "e", "en");
+        ArrayList<Course> courses = listCourses("e", "en");
+        // Listed courses are fetched, and parsed once their details and reviews are
+        AppFramework registered = framework;
+        if(registered != null)
+            registered.reportFetched(this, courses.size());
 
-        // Get all courses' details and reviews
-        for(Course course: courses) {
-            getCourseDetails(httpClient, course);
-            getCourseReviews(httpClient, course);
-        }
+        // Get the courses' details and reviews concurrently, handing each course over as soon as
+        // both are fetched. Requests are sent as courses are asked for, while a concurrency
+        // permit is free or until a course is complete, so at most maxConcurrency are in flight
+        Semaphore permits = new Semaphore(maxConcurrency);
+        RateLimiter rateLimiter = new RateLimiter(requestsPerSecond);
+        LinkedBlockingQueue<Course> completed = new LinkedBlockingQueue<Course>();
+        return new Iterator<Course>() {
+            private int requested = 0;
+            private int returned = 0;
+            // Whether the courses complete so far have been marked as a group with null
+            private boolean marked = false;
 
-        return courses;
+            @Override
+            public boolean hasNext() {
+                return returned < courses.size();
+            }
+
+            @Override
+            public Course next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                while(requested < courses.size() && (completed.isEmpty() || permits.availablePermits() > 0)) {
+                    Course course = courses.get(requested++);
+                    CompletableFuture<Void> details = getCourseDetails(permits, rateLimiter, course);
+                    CompletableFuture<Void> reviews = getCourseReviews(permits, rateLimiter, course);
+                    CompletableFuture.allOf(details, reviews).whenComplete((result, e) -> {
+                        if(registered != null)
+                            registered.reportParsed(UdemyPlugin.this, 1);
+                        completed.add(course);
+                    });
+                }
+                // Before waiting for more responses, mark the end of the courses handed over so far,
+                // so they are analyzed while the rest are fetched
+                if(completed.isEmpty() && returned > 0 && !marked) {
+                    marked = true;
+                    return null;
+                }
+                marked = false;
+                returned++;
+                try {
+                    return completed.take();
+                } catch(InterruptedException e) {
+                    // Null courses are skipped, and the remaining ones fail as fast while interrupted
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        };
     }
 
-    private ArrayList<Course> listCourses(HttpClient httpClient, String keyword, String lang) {
+    private ArrayList<Course> listCourses(String keyword, String lang) {
         ArrayList<Course> courses = new ArrayList<Course>();
 
         // Construct the URI
@@ -72,18 +162,19 @@ public class UdemyPlugin implements DataPlugin {
                                              .header("accept-language", "en-US,en;q=0.5")
                                              .timeout(Duration.ofSeconds(10))
                                              .build();
-                HttpResponse<String> resp = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
+                HttpFetcher.Response resp = fetcher.send(req);
+                String body = resp.getBodyAsString();
 
                 // Print error and retry if status code is not 200 OK
-                if(resp.statusCode() != 200) {
-                    System.out.println("Error: Got " + resp.statusCode() + " when fetching " + uri);
+                if(resp.getStatusCode() != 200) {
+                    System.out.println("Error: Got " + resp.getStatusCode() + " when fetching " + uri);
                     countRetry++;
                     continue;
                 }
                 countRetry = 0;
                 
                 // Parse all courses in this page
-                JSONObject respObj = new JSONObject(resp.body());
+                JSONObject respObj = new JSONObject(body);
                 JSONArray courseArr = respObj.getJSONArray("results");
                 for(int i = 0; i < courseArr.length(); i++) {
                     JSONObject courseObj = courseArr.getJSONObject(i);
@@ -125,45 +216,28 @@ public class UdemyPlugin implements DataPlugin {
         return courses;
     }
 
-    private void getCourseDetails(HttpClient httpClient, Course course) {
+    private CompletableFuture<Void> getCourseDetails(Semaphore permits, RateLimiter rateLimiter, Course course) {
         // Construct the URI
         String params = "/?fields[course]=primary_category,instructional_level,num_subscribers,estimated_content_length";
         String uri = baseURI + basePath + "/" + String.valueOf(course.id) + params;
 
         // Send a GET request for fetching the course details
-        try {
-            int countRetry = 0;
-            while(countRetry < maxRetry) {
-                // Create and send the request
-                HttpRequest req = HttpRequest.newBuilder(URI.create(uri))
-                                             .GET()
-                                             .header("accept", "application/json, text/plain")
-                                             .header("accept-language", "en-US,en;q=0.5")
-                                             .timeout(Duration.ofSeconds(10))
-                                             .build();
-                HttpResponse<String> resp = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-
-                // Print error and retry if status code is not 200 OK
-                if(resp.statusCode() != 200) {
-                    System.out.println("Error: Got " + resp.statusCode() + " when fetching " + uri);
-                    countRetry++;
-                    continue;
-                }
-
-                // Get the details of this course
-                JSONObject respObj = new JSONObject(resp.body());
-                course.category = respObj.getJSONObject("primary_category").getString("title");
-                course.level = respObj.getString("instructional_level");
-                course.totalStudents = respObj.getInt("num_subscribers");
-                course.totalHours = respObj.getInt("estimated_content_length") / 60.0;  // Convert minutes to hours
-                break;
-            }
-        } catch(Exception e) {
+        return fetch(permits, rateLimiter, uri).thenAccept(body -> {
+            if(body == null)
+                return;
+            // Get the details of this course
+            JSONObject respObj = new JSONObject(body);
+            course.category = respObj.getJSONObject("primary_category").getString("title");
+            course.level = respObj.getString("instructional_level");
+            course.totalStudents = respObj.getInt("num_subscribers");
+            course.totalHours = respObj.getInt("estimated_content_length") / 60.0;  // Convert minutes to hours
+        }).exceptionally(e -> {
             System.out.println("Error: Failed to fetch details of course" + course.name + " - " + e.toString());
-        }
+            return null;
+        });
     }
 
-    private void getCourseReviews(HttpClient httpClient, Course course) {
+    private CompletableFuture<Void> getCourseReviews(Semaphore permits, RateLimiter rateLimiter, Course course) {
         course.reviews = new ArrayList<CourseReview>();
 
         // Construct the URI
@@ -171,47 +245,77 @@ public class UdemyPlugin implements DataPlugin {
 
         // Send a GET request for fetching the first 10 course reviews
         // We do not fetch all reviews here since it will take too long
-        try {
-            int countRetry = 0;
-            while(countRetry < maxRetry) {
-                // Create and send the request
-                HttpRequest req = HttpRequest.newBuilder(URI.create(uri))
-                                             .GET()
-                                             .header("accept", "application/json, text/plain")
-                                             .header("accept-language", "en-US,en;q=0.5")
-                                             .timeout(Duration.ofSeconds(10))
-                                             .build();
-                HttpResponse<String> resp = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-
-                // Print error and retry if status code is not 200 OK
-                if(resp.statusCode() != 200) {
-                    System.out.println("Error: Got " + resp.statusCode() + " when fetching " + uri);
-                    countRetry++;
-                    continue;
-                }
+        return fetch(permits, rateLimiter, uri).thenAccept(body -> {
+            if(body == null)
+                return;
+            // Parse all reviews in this page
+            JSONObject respObj = new JSONObject(body);
+            JSONArray reviewArr = respObj.getJSONArray("results");
+            for(int i = 0; i < reviewArr.length(); i++) {
+                JSONObject reviewObj = reviewArr.getJSONObject(i);
+                CourseReview review = new CourseReview();
 
-                // Parse all reviews in this page
-                JSONObject respObj = new JSONObject(resp.body());
-                JSONArray reviewArr = respObj.getJSONArray("results");
-                for(int i = 0; i < reviewArr.length(); i++) {
-                    JSONObject reviewObj = reviewArr.getJSONObject(i);
-                    CourseReview review = new CourseReview();
-
-                    review.courseRate = reviewObj.getDouble("rating");
-                    review.instructorRates = new ArrayList<Double>();
-                    for(int j = 0; j < course.instructorNames.size(); j++) {
-                        // There is no instructor rate for reviews on Udemy, just use course rate
-                        review.instructorRates.add(review.courseRate);
-                    }
-
-                    review.workloadPerWeek = -1;  // There is no workload per week for online courses
-                    course.reviews.add(review);
-                }
+                review.courseRate = reviewObj.getDouble("rating");
+                review.instructorRates = new double[course.instructorNames.size()];
+                // There is no instructor rate for reviews on Udemy, just use course rate
+                Arrays.fill(review.instructorRates, review.courseRate);
 
-                break;
+                review.workloadPerWeek = -1;  // There is no workload per week for online courses
+                course.reviews.add(review);
             }
-        } catch(Exception e) {
+        }).exceptionally(e -> {
             System.out.println("Error: Failed to fetch details of course" + course.name + " - " + e.toString());
+            return null;
+        });
+    }
+
+    /**
+     * Send a GET request once a concurrency permit is free, retrying with backoff while the
+     * response is not 200 OK. Waiting for a permit blocks the caller, so the caller never gets
+     * more than maxConcurrency requests ahead of the responses.
+     *
+     * @return The body of the response, or null if every attempt got another status code
+     */
+    private CompletableFuture<String> fetch(Semaphore permits, RateLimiter rateLimiter, String uri) {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(uri))
+                                     .GET()
+                                     .header("accept", "application/json, text/plain")
+                                     .header("accept-language", "en-US,en;q=0.5")
+                                     .timeout(Duration.ofSeconds(10))
+                                     .build();
+        permits.acquireUninterruptibly();
+        return send(rateLimiter, req, 0).whenComplete((body, e) -> permits.release());
+    }
+
+    private CompletableFuture<String> send(RateLimiter rateLimiter, HttpRequest req, int attempt) {
+        return after(rateLimiter.reserve(), () -> fetcher.sendAsync(req))
+            .thenCompose(resp -> {
+                if(resp.getStatusCode() == 200)
+                    return CompletableFuture.completedFuture(readBody(resp));
+
+                // Print error and retry if status code is not 200 OK
+                System.out.println("Error: Got " + resp.getStatusCode() + " when fetching " + req.uri());
+                if(attempt + 1 >= maxRetry)
+                    return CompletableFuture.completedFuture(null);
+                // Full jitter keeps retries of many courses from hitting the server at once
+                long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << attempt);
+                long delay = TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextLong(backoff + 1));
+                return after(delay, () -> send(rateLimiter, req, attempt + 1));
+            });
+    }
+
+    private static String readBody(HttpFetcher.Response resp) {
+        try {
+            return resp.getBodyAsString();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
+
+    private static <T> CompletableFuture<T> after(long delayNanos, Supplier<CompletableFuture<T>> action) {
+        if(delayNanos <= 0)
+            return action.get();
+        Executor delayed = CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS);
+        return CompletableFuture.supplyAsync(action, delayed).thenCompose(future -> future);
+    }
 }
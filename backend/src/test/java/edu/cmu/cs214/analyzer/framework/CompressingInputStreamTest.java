@@ -0,0 +1,70 @@
+package edu.cmu.cs214.analyzer.framework;
+
+import edu.cmu.cs.cs214.analyzer.framework.CompressingInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompressingInputStreamTest {
+    @Test
+    public void testGzipRoundTrip() throws IOException {
+        byte[] json = getRepetitiveJson();
+        byte[] compressed = readAll(new CompressingInputStream(new ByteArrayInputStream(json), CompressingInputStream.GZIP));
+        assertTrue(compressed.length < json.length / 10);
+        assertArrayEquals(json, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testDeflateRoundTrip() throws IOException {
+        byte[] json = getRepetitiveJson();
+        byte[] compressed = readAll(new CompressingInputStream(new ByteArrayInputStream(json), CompressingInputStream.DEFLATE));
+        assertTrue(compressed.length < json.length / 10);
+        assertArrayEquals(json, readAll(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        byte[] compressed = readAll(new CompressingInputStream(new ByteArrayInputStream(new byte[0]), CompressingInputStream.GZIP));
+        assertEquals(0, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))).length);
+    }
+
+    @Test
+    public void testNegotiate() {
+        assertNull(CompressingInputStream.negotiate(null));
+        assertNull(CompressingInputStream.negotiate("br, identity"));
+        assertEquals("gzip", CompressingInputStream.negotiate("gzip, deflate, br"));
+        assertEquals("deflate", CompressingInputStream.negotiate("deflate"));
+        assertEquals("deflate", CompressingInputStream.negotiate("gzip;q=0.5, deflate;q=0.8"));
+        assertEquals("deflate", CompressingInputStream.negotiate("gzip;q=0, *"));
+        assertEquals("gzip", CompressingInputStream.negotiate("*"));
+        assertNull(CompressingInputStream.negotiate("gzip;q=0, deflate;q=0"));
+    }
+
+    private static byte[] getRepetitiveJson() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++)
+            json.append("{\"id\":").append(i).append(",\"organizationName\":\"CMU\",\"category\":\"SCS\"},");
+        return json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];  // Smaller than the buffers of the stream
+        int n;
+        while ((n = in.read(buffer)) >= 0)
+            out.write(buffer, 0, n);
+        in.close();
+        return out.toByteArray();
+    }
+}
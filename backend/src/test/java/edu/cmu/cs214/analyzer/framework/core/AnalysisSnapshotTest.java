@@ -0,0 +1,295 @@
+package edu.cmu.cs214.analyzer.framework.core;
+
+import edu.cmu.cs.cs214.analyzer.framework.core.AppFrameworkImpl;
+import edu.cmu.cs.cs214.analyzer.framework.core.Course;
+import edu.cmu.cs.cs214.analyzer.framework.core.CourseFilter;
+import edu.cmu.cs.cs214.analyzer.framework.core.CourseReview;
+import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.Instructor;
+import edu.cmu.cs.cs214.analyzer.framework.core.InstructorFilter;
+import edu.cmu.cs.cs214.analyzer.framework.core.MemoryReport;
+import edu.cmu.cs.cs214.analyzer.framework.core.ResultPage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AnalysisSnapshotTest {
+    private static final String[] WORDS = {
+        "Principles", "of", "Software", "Construction", "Applied", "Deep", "Learning",
+        "Java", "Design", "Concurrency", "Finance", "Time", "Continuous", "Discrete"
+    };
+    private static final String[] PEOPLE = {
+        "Claire Le Goues", "Vincent Hellendoorn", "Martin Larsson", "Gautam Iyer", "Eric Wang"
+    };
+
+    private Random rand;
+    private AppFrameworkImpl analyzer;
+
+    @Before
+    public void initialize() {
+        rand = new Random(17214);
+        analyzer = new AppFrameworkImpl();
+        // Enough plugins that segments are compacted in between
+        for (int i = 0; i < 20; i++) {
+            DataPlugin plugin = mock(DataPlugin.class);
+            when(plugin.getName()).thenReturn("Plugin " + i);
+            when(plugin.getCourses()).thenReturn(getRandomCourses(50));
+            analyzer.startNewAnalysis(plugin);
+        }
+    }
+
+    @Test
+    public void testFilterCoursesMatchesFullScan() {
+        for (int i = 0; i < 2000; i++) {
+            CourseFilter filter = new CourseFilter(randomKeyword(WORDS), randomKeyword(new String[] { "SCS", "CIT" }),
+                                                   randomKeyword(new String[] { "Undergraduate", "Graduate" }),
+                                                   randomKeyword(PEOPLE), randomKeyword(new String[] { "CMU", "Udemy" }),
+                                                   rand.nextInt(4) == 0 ? 2020 + rand.nextInt(3) : -1,
+                                                   rand.nextInt(3) == 0 ? rand.nextInt(20) : Integer.MAX_VALUE);
+            assertSameCourses(scan(filter), analyzer.filterCourses(filter));
+        }
+    }
+
+    @Test
+    public void testSortedFilterMatchesFullSort() {
+        for (int i = 0; i < 500; i++) {
+            String sortField = CourseFilter.SORT_FIELDS.get(rand.nextInt(CourseFilter.SORT_FIELDS.size()));
+            boolean descending = rand.nextBoolean();
+            int size = rand.nextInt(3) == 0 ? Integer.MAX_VALUE : rand.nextInt(30);
+            String nameKeyword = randomKeyword(WORDS);
+            String instructorKeyword = randomKeyword(PEOPLE);
+            CourseFilter filter = new CourseFilter(nameKeyword, "", "", instructorKeyword, "", -1,
+                                                   size, sortField, descending);
+
+            // A stable sort keeps the order of analysis among equal values
+            List<Course> expected = scan(new CourseFilter(nameKeyword, "", "", instructorKeyword, "", -1,
+                                                          Integer.MAX_VALUE));
+            Comparator<Course> order = Comparator.comparingDouble(course -> sortKey(course, sortField));
+            expected.sort(descending ? order.reversed() : order);
+            expected = expected.subList(0, Math.min(size, expected.size()));
+            assertSameCourses(expected, analyzer.filterCourses(filter));
+        }
+    }
+
+    @Test
+    public void testSortedInstructors() {
+        InstructorFilter filter = new InstructorFilter("", "", "", 3, "totalStudents", true);
+        List<Instructor> top = analyzer.filterInstructors(filter);
+        assertEquals(3, top.size());
+
+        List<Instructor> all = new ArrayList<>(analyzer.getAnalyzedInstructors());
+        all.sort(Comparator.comparingInt(Instructor::getTotalStudents).reversed());
+        for (int i = 0; i < 3; i++)
+            assertEquals(all.get(i).getName(), top.get(i).getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownSortField() {
+        new CourseFilter("", "", "", "", "", -1, 10, "name", false);
+    }
+
+    @Test
+    public void testPagesConcatenateToFullResult() {
+        for (int i = 0; i < 100; i++) {
+            String sortField = rand.nextBoolean()
+                ? null : CourseFilter.SORT_FIELDS.get(rand.nextInt(CourseFilter.SORT_FIELDS.size()));
+            boolean descending = rand.nextBoolean();
+            String nameKeyword = randomKeyword(WORDS);
+            String instructorKeyword = randomKeyword(PEOPLE);
+            int pageSize = 1 + rand.nextInt(100);
+            CourseFilter pageFilter = new CourseFilter(nameKeyword, "", "", instructorKeyword, "", -1,
+                                                       pageSize, sortField, descending);
+            List<Course> expected = analyzer.filterCourses(
+                new CourseFilter(nameKeyword, "", "", instructorKeyword, "", -1, Integer.MAX_VALUE,
+                                 sortField, descending));
+
+            List<Course> paged = new ArrayList<>();
+            String cursor = null;
+            do {
+                ResultPage<Course> page = analyzer.pageCourses(pageFilter, cursor);
+                assertEquals(expected.size(), page.getTotal());
+                assertTrue(page.getItems().size() <= pageSize);
+                paged.addAll(page.getItems());
+                cursor = page.getNext() == null ? null : page.getNext().encode();
+            } while (cursor != null);
+            assertSameCourses(expected, paged);
+        }
+    }
+
+    @Test
+    public void testInstructorPages() {
+        InstructorFilter all = new InstructorFilter("", "", "", Integer.MAX_VALUE, "rate", true);
+        List<Instructor> expected = analyzer.filterInstructors(all);
+
+        List<Instructor> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            ResultPage<Instructor> page = analyzer.pageInstructors(new InstructorFilter("", "", "", 2, "rate", true),
+                                                                   cursor);
+            assertEquals(expected.size(), page.getTotal());
+            paged.addAll(page.getItems());
+            cursor = page.getNext() == null ? null : page.getNext().encode();
+        } while (cursor != null);
+        assertEquals(expected, paged);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedCursor() {
+        analyzer.pageCourses(new CourseFilter("", "", "", "", "", -1, 10), "not a cursor");
+    }
+
+    @Test
+    public void testFilterCoursesWithShortAndMissingKeywords() {
+        CourseFilter everything = new CourseFilter("", "", "", "", "", -1, Integer.MAX_VALUE);
+        assertEquals(1000, analyzer.filterCourses(everything).size());
+
+        CourseFilter shortKeyword = new CourseFilter("J", "", "", "e", "U", -1, Integer.MAX_VALUE);
+        assertSameCourses(scan(shortKeyword), analyzer.filterCourses(shortKeyword));
+
+        CourseFilter missing = new CourseFilter("Quantum", "", "", "", "", -1, Integer.MAX_VALUE);
+        assertEquals(0, analyzer.filterCourses(missing).size());
+    }
+
+    @Test
+    public void testMemoryReport() {
+        MemoryReport report = analyzer.getSnapshot().getMemoryReport();
+        assertEquals(1000, report.getNumCourses());
+        assertEquals(4, report.getFields().size());
+
+        MemoryReport.FieldUsage organization = report.getFields().get(0);
+        assertEquals("organizationName", organization.getName());
+        assertEquals(1000, organization.getNumValues());
+        assertEquals(2, organization.getNumDistinct());
+        assertTrue(organization.getSavedBytes() > 0);
+        assertEquals(organization.getStringBytes() - organization.getEncodedBytes(), organization.getSavedBytes());
+
+        MemoryReport.FieldUsage instructor = report.getFields().get(3);
+        assertEquals("instructorNames", instructor.getName());
+        assertTrue(instructor.getNumValues() >= 1000);
+        assertEquals(PEOPLE.length, instructor.getNumDistinct());
+    }
+
+    @Test
+    public void testStoredReviewsKeepRatesAndSharing() {
+        ArrayList<Course> courses = getRandomCourses(3);
+        Course course = courses.get(1);
+        // Reviews sharing one array of rates, as the FCE plugin produces them
+        double[] shared = { 3.5, 4.5 };
+        course.reviews.clear();
+        for (int i = 0; i < 2; i++) {
+            CourseReview review = new CourseReview();
+            review.courseRate = 4;
+            review.instructorRates = shared;
+            review.workloadPerWeek = 12;
+            course.reviews.add(review);
+        }
+        CourseReview own = new CourseReview();
+        own.courseRate = 2;
+        own.instructorRates = new double[] { 3.5, 4.5 };
+        own.workloadPerWeek = -1;
+        course.reviews.add(own);
+        course.computeDistributions();  // As the framework does while analyzing
+        String expected = course.toString();
+
+        AppFrameworkImpl framework = new AppFrameworkImpl();
+        DataPlugin plugin = mock(DataPlugin.class);
+        when(plugin.getName()).thenReturn("Shared rates");
+        when(plugin.getCourses()).thenReturn(courses);
+        framework.startNewAnalysis(plugin);
+
+        Course stored = framework.getAnalyzedCourses().get(1);
+        assertEquals(expected, stored.toString());
+        assertEquals(3, stored.reviews.size());
+        assertSame(stored.reviews.get(0).instructorRates, stored.reviews.get(1).instructorRates);
+        assertEquals(4.5, stored.reviews.get(1).instructorRates[1], 0.0);
+        assertNotSame(stored.reviews.get(1).instructorRates, stored.reviews.get(2).instructorRates);
+    }
+
+    private List<Course> scan(CourseFilter filter) {
+        List<Course> result = new ArrayList<>();
+        for (Course course : analyzer.getAnalyzedCourses()) {
+            if (result.size() >= filter.getSize())
+                break;
+            if (filter.isMatched(course))
+                result.add(course);
+        }
+        return result;
+    }
+
+    private static double sortKey(Course course, String sortField) {
+        switch (sortField) {
+            case "rate":
+                return course.rate;
+            case "price":
+                return course.price;
+            case "totalStudents":
+                return course.totalStudents;
+            case "estimatedWorkload":
+                return course.estimatedWorkload;
+            default:
+                return course.year;
+        }
+    }
+
+    private static void assertSameCourses(List<Course> expected, List<Course> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+    }
+
+    private String randomKeyword(String[] values) {
+        if (rand.nextInt(3) == 0)
+            return "";
+        String value = values[rand.nextInt(values.length)];
+        int start = rand.nextInt(value.length());
+        int end = start + 1 + rand.nextInt(value.length() - start);
+        return value.substring(start, end);
+    }
+
+    private ArrayList<Course> getRandomCourses(int numCourses) {
+        ArrayList<Course> courses = new ArrayList<>();
+        for (int i = 0; i < numCourses; i++) {
+            Course course = new Course();
+            course.id = i;
+            course.year = 2020 + rand.nextInt(3);
+            course.name = WORDS[rand.nextInt(WORDS.length)] + " " + WORDS[rand.nextInt(WORDS.length)];
+            course.description = "A random course";
+            course.instructorNames = new ArrayList<>();
+            int numInstructors = 1 + rand.nextInt(2);
+            for (int j = 0; j < numInstructors; j++)
+                course.instructorNames.add(PEOPLE[rand.nextInt(PEOPLE.length)]);
+            course.organizationName = rand.nextBoolean() ? "CMU" : "Udemy";
+            course.category = rand.nextBoolean() ? "SCS" : "CIT";
+            course.level = rand.nextBoolean() ? "Undergraduate" : "Graduate";
+            course.totalStudents = rand.nextInt(100);
+            course.totalHours = 10;
+            course.totalWeeks = 14;
+            course.estimatedWorkload = 10;
+            course.rate = 4;
+            course.price = 100;
+            course.reviews = new ArrayList<>();
+
+            CourseReview review = new CourseReview();
+            review.courseRate = 4;
+            review.instructorRates = new double[numInstructors];
+            Arrays.fill(review.instructorRates, 4.0);
+            review.workloadPerWeek = 10;
+            course.reviews.add(review);
+            courses.add(course);
+        }
+        return courses;
+    }
+}
@@ -0,0 +1,141 @@
+package edu.cmu.cs214.analyzer.framework.core;
+
+import edu.cmu.cs.cs214.analyzer.framework.core.AppFrameworkImpl;
+import edu.cmu.cs.cs214.analyzer.framework.core.Course;
+import edu.cmu.cs.cs214.analyzer.framework.core.CourseFilter;
+import edu.cmu.cs.cs214.analyzer.framework.core.CourseReview;
+import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.Instructor;
+import edu.cmu.cs.cs214.analyzer.framework.core.InstructorFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AppFrameworkImplConcurrencyTest {
+    private static final int NUM_CLIENTS = 64;
+    private static final int NUM_QUERIES = 200;
+    private static final int NUM_BACKGROUND_PLUGINS = 20;
+
+    @Test
+    public void testParallelQueriesDoNotSeeEachOthersResults() throws Exception {
+        AppFrameworkImpl analyzer = new AppFrameworkImpl();
+        DataPlugin topicPlugin = getPlugin("Topics", "Topic", NUM_CLIENTS);
+        analyzer.registerPlugin(topicPlugin);
+        analyzer.startNewAnalysis(topicPlugin);
+
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_CLIENTS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> clients = new ArrayList<>();
+        try {
+            // Keep ingesting unrelated plugins while the clients are querying
+            Future<?> ingestion = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < NUM_BACKGROUND_PLUGINS; i++) {
+                    DataPlugin plugin = getPlugin("Other " + i, "Other", 50);
+                    analyzer.registerPlugin(plugin);
+                    analyzer.startNewAnalysis(plugin);
+                }
+                return null;
+            });
+
+            // Every client only asks for its own topic and its own instructor
+            for (int i = 0; i < NUM_CLIENTS; i++) {
+                final int client = i;
+                clients.add(executor.submit(() -> {
+                    start.await();
+                    String topic = "Topic " + client + ";";
+                    String instructorName = "Topic instructor " + client + ";";
+                    for (int q = 0; q < NUM_QUERIES; q++) {
+                        List<Course> courses = analyzer.filterCourses(
+                            new CourseFilter(topic, "", "", "", "", -1, Integer.MAX_VALUE));
+                        assertEquals(1, courses.size());
+                        assertEquals(topic, courses.get(0).name);
+
+                        List<Instructor> instructors = analyzer.filterInstructors(
+                            new InstructorFilter(instructorName, "", "", Integer.MAX_VALUE));
+                        assertEquals(1, instructors.size());
+                        assertEquals(instructorName, instructors.get(0).getName());
+                        assertEquals(1, instructors.get(0).getCourseNames().size());
+                    }
+                    return client;
+                }));
+            }
+
+            start.countDown();
+            ingestion.get(30, TimeUnit.SECONDS);
+            for (Future<Integer> client : clients)
+                client.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(NUM_CLIENTS + NUM_BACKGROUND_PLUGINS * 50, analyzer.getAnalyzedCourses().size());
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByLaterAnalyses() {
+        AppFrameworkImpl analyzer = new AppFrameworkImpl();
+        DataPlugin first = getPlugin("First", "Shared", 3);
+        DataPlugin second = getPlugin("Second", "Shared", 3);
+        analyzer.startNewAnalysis(first);
+
+        List<Course> courses = analyzer.getAnalyzedCourses();
+        List<Instructor> instructors = analyzer.getAnalyzedInstructors();
+        long version = analyzer.getSnapshot().getVersion();
+        analyzer.startNewAnalysis(second);
+
+        // The instructors are shared by both plugins, but the old snapshot still sees one course
+        assertEquals(3, courses.size());
+        assertEquals(1, instructors.get(0).getCourseNames().size());
+        assertEquals(6, analyzer.getAnalyzedCourses().size());
+        assertEquals(2, analyzer.getAnalyzedInstructors().get(0).getCourseNames().size());
+        assertTrue(analyzer.getSnapshot().getVersion() > version);
+    }
+
+    private static DataPlugin getPlugin(String name, String prefix, int numCourses) {
+        ArrayList<Course> courses = new ArrayList<>();
+        for (int i = 0; i < numCourses; i++) {
+            Course course = new Course();
+            course.id = i;
+            course.year = 2022;
+            course.name = prefix + " " + i + ";";
+            course.description = "A course of " + name;
+            course.instructorNames = new ArrayList<>();
+            course.instructorNames.add(prefix + " instructor " + i + ";");
+            course.organizationName = "CMU";
+            course.category = "SCS";
+            course.level = "Undergraduate";
+            course.totalStudents = 10;
+            course.totalHours = 3;
+            course.totalWeeks = 14;
+            course.estimatedWorkload = -1;
+            course.rate = -1;
+            course.price = 100;
+            course.reviews = new ArrayList<>();
+
+            CourseReview review = new CourseReview();
+            review.courseRate = 4;
+            review.instructorRates = new double[] { 4.5 };
+            review.workloadPerWeek = 10;
+            course.reviews.add(review);
+            courses.add(course);
+        }
+
+        DataPlugin plugin = mock(DataPlugin.class);
+        when(plugin.getName()).thenReturn(name);
+        when(plugin.getCourses()).thenReturn(courses);
+        return plugin;
+    }
+}
@@ -1,19 +1,40 @@
 package edu.cmu.cs214.analyzer.framework.core;
 
+import edu.cmu.cs.cs214.analyzer.framework.core.AnalysisJob;
+import edu.cmu.cs.cs214.analyzer.framework.core.AnalysisSnapshot;
+import edu.cmu.cs.cs214.analyzer.framework.core.AppFramework;
 import edu.cmu.cs.cs214.analyzer.framework.core.AppFrameworkImpl;
 import edu.cmu.cs.cs214.analyzer.framework.core.Course;
 import edu.cmu.cs.cs214.analyzer.framework.core.CourseFilter;
 import edu.cmu.cs.cs214.analyzer.framework.core.CourseReview;
 import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.ExpiredCursorException;
+import edu.cmu.cs.cs214.analyzer.framework.core.GroupStats;
+import edu.cmu.cs.cs214.analyzer.framework.core.IncrementalDataPlugin;
 import edu.cmu.cs.cs214.analyzer.framework.core.Instructor;
 import edu.cmu.cs.cs214.analyzer.framework.core.InstructorFilter;
+import edu.cmu.cs.cs214.analyzer.framework.core.MetricStats;
+import edu.cmu.cs.cs214.analyzer.framework.core.QueryCacheStats;
+import edu.cmu.cs.cs214.analyzer.framework.core.ResultPage;
+import edu.cmu.cs.cs214.analyzer.framework.core.StreamingDataPlugin;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -46,7 +67,7 @@ public class AppFrameworkImplTest {
     @Test
     public void testAnalyzedCourses() {
         // Get the analyzed courses
-        ArrayList<Course> analyzedCourses = analyzer.getAnalyzedCourses();
+        List<Course> analyzedCourses = analyzer.getAnalyzedCourses();
         assertEquals(2, analyzedCourses.size());
 
         Course course0 = analyzedCourses.get(0);
@@ -63,7 +84,7 @@ public class AppFrameworkImplTest {
     @Test
     public void testAnalyzedInstructors() {
         // Get the analyzed instructors
-        ArrayList<Instructor> analyzedInstructors = analyzer.getAnalyzedInstructors();
+        List<Instructor> analyzedInstructors = analyzer.getAnalyzedInstructors();
         assertEquals(2, analyzedInstructors.size());
 
         Instructor instructor0 = analyzedInstructors.get(0);
@@ -81,10 +102,9 @@ public class AppFrameworkImplTest {
         String instructorNameKeyword = "Hellendoorn";
         CourseFilter filter = new CourseFilter(nameKeyword, "", "",
                                                instructorNameKeyword, "", 2022, 10);
-        analyzer.filterCourses(filter);
         
         // Get the filtered courses
-        ArrayList<Course> filteredCourses = analyzer.getFilteredCourses();
+        List<Course> filteredCourses = analyzer.filterCourses(filter);
         assertEquals(1, filteredCourses.size());
 
         Course course = filteredCourses.get(0);
@@ -103,10 +123,9 @@ public class AppFrameworkImplTest {
         String nameKeyword = "Vincent";
         String courseNameKeyword = "Software";
         InstructorFilter filter = new InstructorFilter(nameKeyword, courseNameKeyword, "", 10);
-        analyzer.filterInstructors(filter);
         
         // Get the filtered instructors
-        ArrayList<Instructor> filteredInstructors = analyzer.getFilteredInstructors();
+        List<Instructor> filteredInstructors = analyzer.filterInstructors(filter);
         assertEquals(1, filteredInstructors.size());
 
         Instructor instructor = filteredInstructors.get(0);
@@ -118,6 +137,764 @@ public class AppFrameworkImplTest {
         assertEquals(4.5, instructor.getRate(), 0.01);
     }
 
+    @Test
+    public void testRepeatedFiltersAreCachedUntilNewAnalysis() {
+        CourseFilter filter = new CourseFilter("Deep", "", "", "", "CMU", -1, 10);
+        assertEquals(1, analyzer.filterCourses(filter).size());
+        // An equal filter hits the cache, and changing a returned course doesn't change the cache
+        List<Course> cached = analyzer.filterCourses(new CourseFilter("Deep", "", "", "", "CMU", 0, 10));
+        assertEquals(1, cached.size());
+        cached.get(0).name = "Changed";
+        assertEquals("Applied Deep Learning", analyzer.filterCourses(filter).get(0).name);
+        InstructorFilter instructorFilter = new InstructorFilter("Vincent", "", "", 10);
+        analyzer.filterInstructors(instructorFilter);
+        analyzer.filterInstructors(instructorFilter);
+
+        QueryCacheStats stats = analyzer.getQueryCacheStats();
+        assertEquals(3, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(2, stats.getEntries());
+        assertTrue(stats.getBytes() > 0);
+
+        // Analyzing new courses drops the cached results
+        DataPlugin otherPlugin = mock(DataPlugin.class);
+        when(otherPlugin.getName()).thenReturn("Other");
+        when(otherPlugin.getCourses()).thenReturn(getTestCourses());
+        analyzer.startNewAnalysis(otherPlugin);
+        assertEquals(0, analyzer.getQueryCacheStats().getEntries());
+        assertEquals(2, analyzer.filterCourses(filter).size());
+        assertEquals(3, analyzer.getQueryCacheStats().getMisses());
+
+        // Analyzing a plugin without courses changes nothing, so the results stay cached
+        DataPlugin emptyPlugin = mock(DataPlugin.class);
+        when(emptyPlugin.getName()).thenReturn("Empty");
+        when(emptyPlugin.getCourses()).thenReturn(new ArrayList<Course>());
+        analyzer.startNewAnalysis(emptyPlugin);
+        assertEquals(2, analyzer.filterCourses(filter).size());
+        assertEquals(4, analyzer.getQueryCacheStats().getHits());
+    }
+
+    @Test
+    public void testStartAllAnalysesRunsPluginsConcurrently() {
+        String[] names = new String[] { "Slow 1", "Slow 2", "Slow 3" };
+        // Every plugin waits until all plugins are fetching, which fails unless they run at once
+        CountDownLatch fetching = new CountDownLatch(names.length);
+        AppFrameworkImpl parallelAnalyzer = new AppFrameworkImpl();
+        for (String name : names) {
+            DataPlugin slowPlugin = mock(DataPlugin.class);
+            when(slowPlugin.getName()).thenReturn(name);
+            when(slowPlugin.getCourses()).thenAnswer(invocation -> {
+                fetching.countDown();
+                if (!fetching.await(10, TimeUnit.SECONDS))
+                    throw new IllegalStateException("Plugins are not fetched concurrently");
+                return getTestCourses();
+            });
+            parallelAnalyzer.registerPlugin(slowPlugin);
+        }
+
+        parallelAnalyzer.startAllAnalyses();
+
+        // All plugins are merged, and the instructors are shared across plugins
+        for (AnalysisJob job : parallelAnalyzer.getJobs())
+            assertEquals(AnalysisJob.Status.DONE, job.getStatus());
+        assertEquals(6, parallelAnalyzer.getAnalyzedCourses().size());
+        assertEquals(2, parallelAnalyzer.getAnalyzedInstructors().size());
+        for (Instructor instructor : parallelAnalyzer.getAnalyzedInstructors()) {
+            if (instructor.getName().equals("Vincent Hellendoorn")) {
+                assertEquals(6, instructor.getCourseNames().size());
+                assertEquals(450, instructor.getTotalStudents());
+            }
+        }
+
+        // Plugins that have been analyzed are skipped
+        parallelAnalyzer.startAllAnalyses();
+        assertEquals(6, parallelAnalyzer.getAnalyzedCourses().size());
+    }
+
+    @Test
+    public void testPagesStayOnTheirSnapshot() {
+        CourseFilter filter = new CourseFilter("", "", "", "", "", -1, 1);
+        ResultPage<Course> first = analyzer.pageCourses(filter, null);
+        assertEquals(2, first.getTotal());
+        assertEquals(1, first.getItems().size());
+        assertNotNull(first.getNext());
+
+        // Courses analyzed after the first page don't show up in later pages
+        DataPlugin otherPlugin = mock(DataPlugin.class);
+        when(otherPlugin.getName()).thenReturn("Other");
+        when(otherPlugin.getCourses()).thenReturn(getTestCourses());
+        analyzer.startNewAnalysis(otherPlugin);
+        assertEquals(4, analyzer.getAnalyzedCourses().size());
+
+        ResultPage<Course> second = analyzer.pageCourses(filter, first.getNext().encode());
+        assertEquals(2, second.getTotal());
+        assertEquals(1, second.getItems().size());
+        assertEquals("Applied Deep Learning", second.getItems().get(0).name);
+        assertNull(second.getNext());
+    }
+
+    @Test(expected = ExpiredCursorException.class)
+    public void testExpiredCursor() {
+        CourseFilter filter = new CourseFilter("", "", "", "", "", -1, 1);
+        String cursor = analyzer.pageCourses(filter, null).getNext().encode();
+
+        // Page through many newer snapshots, so the first one is no longer retained
+        for (int i = 0; i < 20; i++) {
+            DataPlugin otherPlugin = mock(DataPlugin.class);
+            when(otherPlugin.getName()).thenReturn("Other " + i);
+            when(otherPlugin.getCourses()).thenReturn(getTestCourses());
+            analyzer.startNewAnalysis(otherPlugin);
+            analyzer.pageCourses(filter, null);
+        }
+        analyzer.pageCourses(filter, cursor);
+    }
+
+    @Test
+    public void testGroupsAreUpdatedIncrementally() {
+        DataPlugin otherPlugin = mock(DataPlugin.class);
+        when(otherPlugin.getName()).thenReturn("Other");
+        when(otherPlugin.getCourses()).thenReturn(getTestCourses());
+        analyzer.startNewAnalysis(otherPlugin);
+
+        List<GroupStats> levels = analyzer.getSnapshot().getGroups("level");
+        assertEquals(2, levels.size());
+        assertEquals("Undergraduate", levels.get(0).getKey());
+        assertEquals(2, levels.get(0).getCount());
+        MetricStats rate = levels.get(0).getMetric("rate");
+        assertEquals(2, rate.getCount());
+        assertEquals(8.5, rate.getSum(), 0.01);
+        assertEquals(4.25, rate.getMean(), 0.01);
+        assertEquals(4.25, rate.getMin(), 0.01);
+        assertEquals(4.25, rate.getMax(), 0.01);
+        assertEquals(4, levels.get(0).getRateDistribution().getCount());
+        assertEquals(4.0, levels.get(0).getRateDistribution().getMedian(), 0.05);
+        assertEquals(20.5, levels.get(0).getWorkloadDistribution().getP90(), 0.5);
+
+        // A course counts towards the group of each of its instructors
+        List<GroupStats> instructors = analyzer.getSnapshot().getGroups("instructor");
+        assertEquals(2, instructors.size());
+        assertEquals("Vincent Hellendoorn", instructors.get(1).getKey());
+        assertEquals(4, instructors.get(1).getCount());
+        MetricStats price = instructors.get(1).getMetric("price");
+        assertEquals(4167, price.getMin(), 0.01);
+        assertEquals(8333, price.getMax(), 0.01);
+        assertEquals((8333 + 4167) * 2, price.getSum(), 0.01);
+
+        // The incremental statistics agree with a scan of all analyzed courses
+        for (String groupBy : GroupStats.GROUP_BY_FIELDS) {
+            long count = 0;
+            for (GroupStats group : analyzer.getSnapshot().getGroups(groupBy))
+                count += group.getCount();
+            long expected = 0;
+            for (Course course : analyzer.getAnalyzedCourses())
+                expected += groupBy.equals("instructor") ? course.instructorNames.size() : 1;
+            assertEquals(expected, count);
+        }
+    }
+
+    @Test
+    public void testGroupsDontChangeOldSnapshots() {
+        List<GroupStats> before = analyzer.getSnapshot().getGroups("year");
+        DataPlugin otherPlugin = mock(DataPlugin.class);
+        when(otherPlugin.getName()).thenReturn("Other");
+        when(otherPlugin.getCourses()).thenReturn(getTestCourses());
+        analyzer.startNewAnalysis(otherPlugin);
+
+        assertEquals(1, before.size());
+        assertEquals("2022", before.get(0).getKey());
+        assertEquals(2, before.get(0).getCount());
+        assertEquals(4, analyzer.getSnapshot().getGroups("year").get(0).getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownGroupBy() {
+        analyzer.getSnapshot().getGroups("description");
+    }
+
+    @Test
+    public void testSubmittedAnalysisReportsProgress() throws InterruptedException {
+        DataPlugin otherPlugin = mock(DataPlugin.class);
+        when(otherPlugin.getName()).thenReturn("Other");
+        when(otherPlugin.getCourses()).thenReturn(getTestCourses());
+        AnalysisJob job = analyzer.submitAnalysis(otherPlugin);
+        job.awaitCompletion();
+
+        assertEquals(AnalysisJob.Status.DONE, job.getStatus());
+        assertEquals("Other", job.getPluginName());
+        assertEquals(2, job.getCoursesFetched());
+        assertEquals(2, job.getCoursesParsed());
+        assertEquals(2, job.getCoursesAnalyzed());
+        assertNull(job.getError());
+        assertEquals(job, analyzer.getJob(job.getId()));
+        assertEquals(4, analyzer.getAnalyzedCourses().size());
+    }
+
+    @Test
+    public void testReportedProgressIsShownDuringAnalysis() throws InterruptedException {
+        CountDownLatch reported = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        DataPlugin slowPlugin = new DataPlugin() {
+            private AppFramework framework;
+
+            @Override
+            public String getName() {
+                return "Slow";
+            }
+
+            @Override
+            public void onRegister(AppFramework framework) {
+                this.framework = framework;
+            }
+
+            @Override
+            public ArrayList<Course> getCourses() {
+                ArrayList<Course> courses = getTestCourses();
+                framework.reportFetched(this, courses.size());
+                framework.reportParsed(this, 1);
+                reported.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                framework.reportParsed(this, 1);
+                return courses;
+            }
+        };
+        analyzer.registerPlugin(slowPlugin);
+        AnalysisJob job = analyzer.submitAnalysis(slowPlugin);
+        reported.await();
+
+        // Progress is reported while the plugin is still fetching
+        assertEquals(AnalysisJob.Status.RUNNING, job.getStatus());
+        assertEquals(2, job.getCoursesFetched());
+        assertEquals(1, job.getCoursesParsed());
+        assertEquals(0, job.getCoursesAnalyzed());
+
+        resume.countDown();
+        job.awaitCompletion();
+        assertEquals(AnalysisJob.Status.DONE, job.getStatus());
+        assertEquals(2, job.getCoursesFetched());
+        assertEquals(2, job.getCoursesParsed());
+        assertEquals(2, job.getCoursesAnalyzed());
+        assertEquals(4, analyzer.getAnalyzedCourses().size());
+    }
+
+    @Test
+    public void testProgressOutsideOfAnalysisIsIgnored() {
+        analyzer.reportFetched(stubPlugin, 5);
+        analyzer.reportParsed(stubPlugin, 5);
+        AnalysisJob job = analyzer.getJobs().get(0);
+        assertEquals(2, job.getCoursesFetched());
+        assertEquals(2, job.getCoursesParsed());
+    }
+
+    @Test
+    public void testRepeatedAnalysisIsSkipped() {
+        AnalysisJob job = analyzer.submitAnalysis(stubPlugin);
+        assertEquals(AnalysisJob.Status.SKIPPED, job.getStatus());
+        assertEquals(2, analyzer.getJobs().size());
+        assertEquals(AnalysisJob.Status.DONE, analyzer.getJobs().get(0).getStatus());
+        assertEquals(2, analyzer.getAnalyzedCourses().size());
+    }
+
+    @Test
+    public void testFailedAnalysisCanBeRepeated() {
+        DataPlugin failingPlugin = mock(DataPlugin.class);
+        when(failingPlugin.getName()).thenReturn("Failing");
+        when(failingPlugin.getCourses()).thenThrow(new IllegalStateException("Unavailable")).thenReturn(getTestCourses());
+        analyzer.startNewAnalysis(failingPlugin);
+        assertEquals(AnalysisJob.Status.FAILED, analyzer.getJobs().get(1).getStatus());
+        assertEquals(2, analyzer.getAnalyzedCourses().size());
+
+        analyzer.startNewAnalysis(failingPlugin);
+        assertEquals(AnalysisJob.Status.DONE, analyzer.getJobs().get(2).getStatus());
+        assertEquals(4, analyzer.getAnalyzedCourses().size());
+    }
+
+    @Test
+    public void testFailedFirstAnalysisKeepsNoCourses() {
+        StreamingDataPlugin failingPlugin = mock(StreamingDataPlugin.class);
+        when(failingPlugin.getName()).thenReturn("Failing");
+        when(failingPlugin.streamCourses()).thenReturn(new Iterator<Course>() {
+            private int pulled = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Course next() {
+                // A first group of courses is analyzed before the plugin fails
+                pulled++;
+                if (pulled <= 2)
+                    return getTestCourses().get(pulled - 1);
+                if (pulled == 3)
+                    return null;
+                throw new IllegalStateException("Unavailable");
+            }
+        });
+        List<Instructor> instructors = analyzer.getAnalyzedInstructors();
+        analyzer.startNewAnalysis(failingPlugin);
+        AnalysisJob job = analyzer.getJobs().get(1);
+        assertEquals(AnalysisJob.Status.FAILED, job.getStatus());
+        assertEquals(2, job.getCoursesAnalyzed());
+        // The analyzed group is taken back along with what it added to the instructors
+        assertEquals(2, analyzer.getAnalyzedCourses().size());
+        List<Instructor> remaining = analyzer.getAnalyzedInstructors();
+        assertEquals(instructors.size(), remaining.size());
+        for (int i = 0; i < remaining.size(); i++) {
+            assertEquals(instructors.get(i).getName(), remaining.get(i).getName());
+            assertEquals(instructors.get(i).getCourseNum(), remaining.get(i).getCourseNum());
+            assertEquals(instructors.get(i).getTotalStudents(), remaining.get(i).getTotalStudents());
+        }
+    }
+
+    @Test
+    public void testAnalysisFailedByAnErrorIsFinished() throws InterruptedException {
+        DataPlugin failingPlugin = mock(DataPlugin.class);
+        when(failingPlugin.getName()).thenReturn("Failing");
+        when(failingPlugin.getCourses()).thenThrow(new NoClassDefFoundError("Missing")).thenReturn(getTestCourses());
+        try {
+            analyzer.startNewAnalysis(failingPlugin);
+            fail();
+        } catch (NoClassDefFoundError e) {
+            // The error is passed on, but the job still ends
+        }
+        AnalysisJob job = analyzer.getJobs().get(1);
+        job.awaitCompletion();
+        assertEquals(AnalysisJob.Status.FAILED, job.getStatus());
+        assertEquals("java.lang.NoClassDefFoundError: Missing", job.getError());
+
+        analyzer.startNewAnalysis(failingPlugin);
+        assertEquals(AnalysisJob.Status.DONE, analyzer.getJobs().get(2).getStatus());
+        assertEquals(4, analyzer.getAnalyzedCourses().size());
+    }
+
+    @Test
+    public void testStreamedCoursesAreAnalyzedInBatches() {
+        int numCourses = 25;
+        int batchSize = 4;
+        AppFrameworkImpl streamingAnalyzer = new AppFrameworkImpl(batchSize);
+        StreamingDataPlugin streamingPlugin = new StreamingDataPlugin() {
+            @Override
+            public String getName() {
+                return "Streaming";
+            }
+
+            @Override
+            public Iterator<Course> streamCourses() {
+                return new Iterator<Course>() {
+                    private int produced = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return produced < numCourses;
+                    }
+
+                    @Override
+                    public Course next() {
+                        // The framework only pulls a new batch after analyzing the one before
+                        int pending = produced - streamingAnalyzer.getAnalyzedCourses().size();
+                        assertTrue(pending < batchSize);
+                        assertEquals(produced % batchSize, pending);
+                        Course course = getTestCourses().get(0);
+                        course.id = 100 + produced;
+                        course.name = "Generated Course " + produced;
+                        produced++;
+                        return course;
+                    }
+                };
+            }
+        };
+        streamingAnalyzer.registerPlugin(streamingPlugin);
+        streamingAnalyzer.startNewAnalysis(streamingPlugin);
+
+        AnalysisJob job = streamingAnalyzer.getJobs().get(0);
+        assertEquals(AnalysisJob.Status.DONE, job.getStatus());
+        assertEquals(numCourses, job.getCoursesFetched());
+        assertEquals(numCourses, job.getCoursesParsed());
+        assertEquals(numCourses, job.getCoursesAnalyzed());
+        assertEquals(numCourses, streamingAnalyzer.getAnalyzedCourses().size());
+        // The batches end up in merged segments, which must still be searchable
+        assertEquals(numCourses, streamingAnalyzer.filterCourses(new CourseFilter("Generated", "", "", "", "", 0, 100)).size());
+        List<Course> matched = streamingAnalyzer.filterCourses(new CourseFilter("Course 17", "", "", "", "", 0, 10));
+        assertEquals(1, matched.size());
+        assertEquals(117, matched.get(0).id);
+        assertEquals(numCourses, streamingAnalyzer.getAnalyzedInstructors().get(0).getCourseNames().size());
+    }
+
+    @Test
+    public void testStreamedGroupsAreAnalyzedBeforeTheBatchIsFull() throws InterruptedException {
+        CountDownLatch waiting = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        StreamingDataPlugin groupedPlugin = new StreamingDataPlugin() {
+            @Override
+            public String getName() {
+                return "Grouped";
+            }
+
+            @Override
+            public Iterator<Course> streamCourses() {
+                return new Iterator<Course>() {
+                    private int produced = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return produced < 5;
+                    }
+
+                    @Override
+                    public Course next() {
+                        int index = produced++;
+                        if (index == 2)  // The end of the first group
+                            return null;
+                        if (index == 3) {  // The rest of the source is slow
+                            waiting.countDown();
+                            try {
+                                resume.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        Course course = getTestCourses().get(index % 2);
+                        course.id = 10 + index;
+                        return course;
+                    }
+                };
+            }
+        };
+        AnalysisJob job = analyzer.submitAnalysis(groupedPlugin);
+        waiting.await();
+
+        // The first group is analyzed and counted while the stream goes on, in a batch far from full
+        assertEquals(AnalysisJob.Status.RUNNING, job.getStatus());
+        assertEquals(2, job.getCoursesFetched());
+        assertEquals(2, job.getCoursesParsed());
+        assertEquals(2, job.getCoursesAnalyzed());
+        assertEquals(4, analyzer.getAnalyzedCourses().size());
+
+        resume.countDown();
+        job.awaitCompletion();
+        assertEquals(AnalysisJob.Status.DONE, job.getStatus());
+        assertEquals(4, job.getCoursesFetched());
+        assertEquals(4, job.getCoursesAnalyzed());
+        assertEquals(6, analyzer.getAnalyzedCourses().size());
+    }
+
+    @Test
+    public void testMergesOnlyCopyTheInstructorsOfTheirCourses() {
+        AnalysisSnapshot before = analyzer.getSnapshot();
+        Course course = getTestCourses().get(1);
+        course.id = 5;
+        course.instructorNames.add("Michael Hilton");
+        course.reviews.get(0).instructorRates = new double[] { 4.0, 3.0 };
+        DataPlugin otherPlugin = mock(DataPlugin.class);
+        when(otherPlugin.getName()).thenReturn("Other");
+        when(otherPlugin.getCourses()).thenReturn(new ArrayList<Course>(List.of(course)));
+        analyzer.startNewAnalysis(otherPlugin);
+
+        // Untouched instructors are shared with the previous snapshot, which never changes
+        AnalysisSnapshot after = analyzer.getSnapshot();
+        assertSame(before.getInstructor("Claire Le Goues"), after.getInstructor("Claire Le Goues"));
+        assertNotSame(before.getInstructor("Vincent Hellendoorn"), after.getInstructor("Vincent Hellendoorn"));
+        assertEquals(2, before.getInstructor("Vincent Hellendoorn").getCourseNames().size());
+        assertEquals(3, after.getInstructor("Vincent Hellendoorn").getCourseNames().size());
+        assertNull(before.getInstructor("Michael Hilton"));
+        assertEquals(2, before.getInstructors().size());
+        assertEquals(3, after.getInstructors().size());
+        assertEquals("Michael Hilton", after.getInstructors().get(2).getName());
+    }
+
+    @Test
+    public void testManyInstructorsAcrossBatches() {
+        int numCourses = 2000;
+        AppFrameworkImpl batched = new AppFrameworkImpl(100);
+        StreamingDataPlugin plugin = mock(StreamingDataPlugin.class);
+        when(plugin.getName()).thenReturn("Many");
+        when(plugin.streamCourses()).thenAnswer(invocation -> {
+            ArrayList<Course> courses = new ArrayList<Course>();
+            for (int i = 0; i < numCourses; i++) {
+                Course course = getTestCourses().get(1);
+                course.id = i;
+                course.instructorNames.set(0, "Instructor " + i);
+                courses.add(course);
+            }
+            return courses.iterator();
+        });
+        batched.startNewAnalysis(plugin);
+        assertEquals(numCourses, batched.getAnalyzedInstructors().size());
+
+        // Every other course gets a new instructor, so half of the instructors are dropped
+        ArrayList<Course> changed = new ArrayList<Course>();
+        for (int i = 0; i < numCourses; i++) {
+            Course course = getTestCourses().get(1);
+            course.id = i;
+            course.instructorNames.set(0, (i % 2 == 0 ? "Replacement " : "Instructor ") + i);
+            changed.add(course);
+        }
+        DataPlugin changing = mock(DataPlugin.class);
+        when(changing.getName()).thenReturn("Many");
+        when(changing.getCourses()).thenReturn(changed);
+        batched.refreshAnalysis(changing);
+
+        List<Instructor> instructors = batched.getAnalyzedInstructors();
+        assertEquals(numCourses, instructors.size());
+        assertEquals("Instructor 1", instructors.get(0).getName());
+        assertEquals("Replacement 0", instructors.get(numCourses / 2).getName());
+        assertNull(batched.getSnapshot().getInstructor("Instructor 0"));
+        assertEquals(1, batched.getSnapshot().getInstructor("Replacement 0").getCourseNum());
+
+        // Pages skip the dropped instructors and return every other one exactly once
+        InstructorFilter filter = new InstructorFilter("", "", "", 300);
+        ArrayList<String> paged = new ArrayList<String>();
+        String cursor = null;
+        do {
+            ResultPage<Instructor> page = batched.pageInstructors(filter, cursor);
+            for (Instructor instructor : page.getItems())
+                paged.add(instructor.getName());
+            cursor = page.getNext() == null ? null : page.getNext().encode();
+        } while (cursor != null);
+        ArrayList<String> expected = new ArrayList<String>();
+        for (Instructor instructor : instructors)
+            expected.add(instructor.getName());
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    public void testRefreshUpsertsChangedCourses() {
+        AppFrameworkImpl refreshed = new AppFrameworkImpl();
+        VersionedPlugin plugin = new VersionedPlugin(getTestCourses());
+        refreshed.registerPlugin(plugin);
+        refreshed.refreshAnalysis(plugin);  // Not analyzed yet, so everything is loaded
+        assertFalse(refreshed.getJobs().get(0).isRefresh());
+        assertEquals(1, plugin.numFullFetches);
+
+        // The first course loses an instructor and changes its students, level and price, and
+        // a course with the lost instructor is added
+        ArrayList<Course> changed = getRefreshedCourses();
+        plugin.change(changed.get(0));
+        plugin.change(changed.get(2));
+        refreshed.refreshAnalysis(plugin);
+        AnalysisJob job = refreshed.getJobs().get(1);
+        assertTrue(job.isRefresh());
+        assertEquals(AnalysisJob.Status.DONE, job.getStatus());
+        assertEquals(2, job.getCoursesAnalyzed());
+        assertEquals(1, plugin.numFullFetches);
+        assertEquals(1, plugin.numDeltaFetches);
+
+        List<Course> courses = refreshed.getAnalyzedCourses();
+        assertEquals(3, courses.size());
+        List<Course> matched = refreshed.filterCourses(new CourseFilter("Principles", "", "", "", "", 0, 10));
+        assertEquals(1, matched.size());
+        assertEquals(40, matched.get(0).totalStudents);
+        assertEquals(List.of("Vincent Hellendoorn"), matched.get(0).instructorNames);
+
+        // The adjusted instructors and groups are the same as those of a full analysis
+        AppFrameworkImpl expected = new AppFrameworkImpl();
+        DataPlugin fullPlugin = mock(DataPlugin.class);
+        when(fullPlugin.getName()).thenReturn("Full");
+        when(fullPlugin.getCourses()).thenReturn(getRefreshedCourses());
+        expected.startNewAnalysis(fullPlugin);
+        assertSameInstructors(expected.getAnalyzedInstructors(), refreshed.getAnalyzedInstructors());
+        for (String groupBy : GroupStats.GROUP_BY_FIELDS)
+            assertSameGroups(expected.getSnapshot().getGroups(groupBy), refreshed.getSnapshot().getGroups(groupBy));
+
+        // Without changes, a refresh doesn't publish anything
+        long version = refreshed.getSnapshot().getVersion();
+        refreshed.refreshAnalysis(plugin);
+        assertEquals(0, refreshed.getJobs().get(2).getCoursesAnalyzed());
+        assertEquals(version, refreshed.getSnapshot().getVersion());
+        assertEquals(1, plugin.numDeltaFetches);
+    }
+
+    @Test
+    public void testRefreshWithoutVersionsReplacesAllCourses() {
+        DataPlugin changedPlugin = mock(DataPlugin.class);
+        when(changedPlugin.getName()).thenReturn("Stub");
+        when(changedPlugin.getCourses()).thenReturn(getRefreshedCourses());
+        // A plugin of the same name as an analyzed one is refreshed
+        analyzer.refreshAnalysis(changedPlugin);
+
+        assertEquals(3, analyzer.getAnalyzedCourses().size());
+        assertEquals(3, analyzer.getSnapshot().getGroups("year").get(0).getCount());
+        Instructor claire = analyzer.getSnapshot().getInstructor("Claire Le Goues");
+        assertEquals(Collections.singletonList("Software Architecture"), claire.getCourseNames());
+        assertEquals(30, claire.getTotalStudents());
+    }
+
+    @Test
+    public void testRefreshOnlyReplacesCoursesOfItsPlugin() {
+        // All courses of another plugin share the id of the first stub course
+        DataPlugin otherPlugin = mock(DataPlugin.class);
+        when(otherPlugin.getName()).thenReturn("Other");
+        when(otherPlugin.getCourses()).thenReturn(withId(getRefreshedCourses(), 1)).thenReturn(withId(getTestCourses(), 1));
+        analyzer.startNewAnalysis(otherPlugin);
+        assertEquals(5, analyzer.getAnalyzedCourses().size());
+        assertEquals(130, analyzer.getSnapshot().getInstructor("Claire Le Goues").getTotalStudents());
+
+        // A refresh replaces all courses of the other plugin, and none of the stub plugin
+        analyzer.refreshAnalysis(otherPlugin);
+        assertEquals(4, analyzer.getAnalyzedCourses().size());
+        assertEquals(0, analyzer.filterCourses(new CourseFilter("Architecture", "", "", "", "", 0, 10)).size());
+        assertEquals(200, analyzer.getSnapshot().getInstructor("Claire Le Goues").getTotalStudents());
+
+        // Changed courses only replace the courses of their plugin with the same id, and changes
+        // with the same id are all kept
+        VersionedPlugin versioned = new VersionedPlugin(getTestCourses());
+        analyzer.startNewAnalysis(versioned);
+        versioned.change(getRefreshedCourses().get(2));
+        versioned.change(withId(getRefreshedCourses(), 2).get(2));
+        analyzer.refreshAnalysis(versioned);
+        assertEquals(7, analyzer.getAnalyzedCourses().size());
+        assertEquals(2, analyzer.filterCourses(new CourseFilter("Architecture", "", "", "", "", 0, 10)).size());
+        assertEquals(2, analyzer.filterCourses(new CourseFilter("Applied", "", "", "", "", 0, 10)).size());
+
+        ArrayList<Course> all = getTestCourses();
+        all.addAll(withId(getTestCourses(), 1));
+        all.add(getTestCourses().get(0));
+        all.add(withId(getRefreshedCourses(), 2).get(2));
+        all.add(withId(getRefreshedCourses(), 2).get(2));
+        AppFrameworkImpl expected = new AppFrameworkImpl();
+        DataPlugin fullPlugin = mock(DataPlugin.class);
+        when(fullPlugin.getName()).thenReturn("Full");
+        when(fullPlugin.getCourses()).thenReturn(all);
+        expected.startNewAnalysis(fullPlugin);
+        assertSameInstructors(expected.getAnalyzedInstructors(), analyzer.getAnalyzedInstructors());
+        for (String groupBy : GroupStats.GROUP_BY_FIELDS)
+            assertSameGroups(expected.getSnapshot().getGroups(groupBy), analyzer.getSnapshot().getGroups(groupBy));
+    }
+
+    private static ArrayList<Course> withId(ArrayList<Course> courses, int id) {
+        for (Course course : courses)
+            course.id = id;
+        return courses;
+    }
+
+    private static void assertSameInstructors(List<Instructor> expected, List<Instructor> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (Instructor instructor : expected) {
+            Instructor other = actual.stream().filter(i -> i.getName().equals(instructor.getName())).findFirst().get();
+            ArrayList<String> courseNames = new ArrayList<String>(instructor.getCourseNames());
+            ArrayList<String> otherCourseNames = new ArrayList<String>(other.getCourseNames());
+            Collections.sort(courseNames);
+            Collections.sort(otherCourseNames);
+            assertEquals(courseNames, otherCourseNames);
+            assertEquals(instructor.getOrganizationNames(), other.getOrganizationNames());
+            assertEquals(instructor.getTotalStudents(), other.getTotalStudents());
+            assertEquals(instructor.getRate(), other.getRate(), 1e-9);
+            assertEquals(instructor.getRateDistribution().getCount(), other.getRateDistribution().getCount());
+            assertEquals(instructor.getRateDistribution().getMedian(), other.getRateDistribution().getMedian(), 0.05);
+        }
+    }
+
+    private static void assertSameGroups(List<GroupStats> expected, List<GroupStats> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (GroupStats group : expected) {
+            GroupStats other = actual.stream().filter(g -> g.getKey().equals(group.getKey())).findFirst().get();
+            assertEquals(group.getCount(), other.getCount());
+            for (String metric : GroupStats.METRICS) {
+                MetricStats stats = group.getMetric(metric);
+                MetricStats otherStats = other.getMetric(metric);
+                assertEquals(stats.getCount(), otherStats.getCount());
+                assertEquals(stats.getSum(), otherStats.getSum(), 1e-9);
+                assertEquals(stats.getMin(), otherStats.getMin(), 1e-9);
+                assertEquals(stats.getMax(), otherStats.getMax(), 1e-9);
+            }
+            assertEquals(group.getRateDistribution().getCount(), other.getRateDistribution().getCount());
+            assertEquals(group.getRateDistribution().getMedian(), other.getRateDistribution().getMedian(), 0.05);
+            assertEquals(group.getWorkloadDistribution().getSum(), other.getWorkloadDistribution().getSum(), 1e-9);
+        }
+    }
+
+    /**
+     * A plugin whose courses change over time, which counts how it is asked for them.
+     */
+    private static class VersionedPlugin implements IncrementalDataPlugin {
+        private final ArrayList<Course> courses;
+        // The changed courses in order, whose number is the version
+        private final ArrayList<Course> changes = new ArrayList<Course>();
+        private int numFullFetches;
+        private int numDeltaFetches;
+
+        VersionedPlugin(ArrayList<Course> courses) {
+            this.courses = courses;
+        }
+
+        void change(Course course) {
+            changes.add(course);
+        }
+
+        @Override
+        public String getName() {
+            return "Versioned";
+        }
+
+        @Override
+        public String getDataVersion() {
+            return "v" + changes.size();
+        }
+
+        @Override
+        public ArrayList<Course> getCourses() {
+            numFullFetches++;
+            ArrayList<Course> all = new ArrayList<Course>(courses);
+            all.addAll(changes);
+            return all;
+        }
+
+        @Override
+        public ArrayList<Course> getCoursesChangedSince(String version) {
+            numDeltaFetches++;
+            int since = Integer.parseInt(version.substring(1));
+            return new ArrayList<Course>(changes.subList(since, changes.size()));
+        }
+    }
+
+    /**
+     * The test courses after the first course lost an instructor and changed, and a third
+     * course was added.
+     */
+    private static ArrayList<Course> getRefreshedCourses() {
+        ArrayList<Course> courses = getTestCourses();
+        Course course0 = courses.get(0);
+        course0.instructorNames.remove("Claire Le Goues");
+        course0.totalStudents = 40;
+        course0.level = "Graduate";
+        course0.price = 9000;
+        for (CourseReview review : course0.reviews)
+            review.instructorRates = new double[] { review.instructorRates[1] };
+        course0.reviews.get(0).courseRate = 2.5;
+
+        Course course2 = new Course();
+        course2.id = 3;
+        course2.year = 2022;
+        course2.name = "Software Architecture";
+        course2.description = "Architecture of software systems";
+        course2.instructorNames = new ArrayList<>();
+        course2.instructorNames.add("Claire Le Goues");
+        course2.organizationName = "CMU";
+        course2.category = "SCS";
+        course2.level = "Undergraduate";
+        course2.totalStudents = 30;
+        course2.totalHours = 2;
+        course2.totalWeeks = 14;
+        course2.estimatedWorkload = -1;
+        course2.rate = -1;
+        course2.price = 5000;
+        course2.reviews = new ArrayList<>();
+
+        CourseReview review = new CourseReview();
+        review.courseRate = 3.5;
+        review.instructorRates = new double[] { 3.0 };
+        review.workloadPerWeek = 9;
+        course2.reviews.add(review);
+
+        courses.add(course2);
+        return courses;
+    }
+
     private static ArrayList<Course> getTestCourses() {
         ArrayList<Course> courses = new ArrayList<Course>();
 
@@ -142,17 +919,13 @@ public class AppFrameworkImplTest {
 
         CourseReview review0 = new CourseReview();
         review0.courseRate = 4.5;
-        review0.instructorRates = new ArrayList<>();
-        review0.instructorRates.add(4.0);
-        review0.instructorRates.add(5.0);
+        review0.instructorRates = new double[] { 4.0, 5.0 };
         review0.workloadPerWeek = 15.5;
         course0.reviews.add(review0);
 
         CourseReview review1 = new CourseReview();
         review1.courseRate = 4.0;
-        review1.instructorRates = new ArrayList<>();
-        review1.instructorRates.add(3.5);
-        review1.instructorRates.add(4.5);
+        review1.instructorRates = new double[] { 3.5, 4.5 };
         review1.workloadPerWeek = 20.5;
         course0.reviews.add(review1);
 
@@ -178,8 +951,7 @@ public class AppFrameworkImplTest {
 
         CourseReview review2 = new CourseReview();
         review2.courseRate = 4.0;
-        review2.instructorRates = new ArrayList<>();
-        review2.instructorRates.add(4.0);
+        review2.instructorRates = new double[] { 4.0 };
         review2.workloadPerWeek = 12.5;
         course1.reviews.add(review2);
 
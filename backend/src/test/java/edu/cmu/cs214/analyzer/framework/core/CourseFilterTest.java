@@ -97,17 +97,13 @@ public class CourseFilterTest {
 
         CourseReview review0 = new CourseReview();
         review0.courseRate = 4.5;
-        review0.instructorRates = new ArrayList<>();
-        review0.instructorRates.add(4.0);
-        review0.instructorRates.add(5.0);
+        review0.instructorRates = new double[] { 4.0, 5.0 };
         review0.workloadPerWeek = 15.5;
         course.reviews.add(review0);
 
         CourseReview review1 = new CourseReview();
         review1.courseRate = 4.0;
-        review1.instructorRates = new ArrayList<>();
-        review1.instructorRates.add(3.5);
-        review1.instructorRates.add(4.5);
+        review1.instructorRates = new double[] { 3.5, 4.5 };
         review1.workloadPerWeek = 20.5;
         course.reviews.add(review1);
 
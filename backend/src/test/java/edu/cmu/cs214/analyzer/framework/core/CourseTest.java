@@ -6,8 +6,10 @@ import edu.cmu.cs.cs214.analyzer.framework.core.Instructor;
 
 import java.util.ArrayList;
 
+import org.json.JSONObject;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class CourseTest {
     @Test
@@ -69,6 +71,124 @@ public class CourseTest {
         assertEquals(0, instructor.getRate(), 0.01);
     }
 
+    @Test
+    public void testComputeInstructorRateDistribution() {
+        Course course = getTestCourse();
+        Instructor instructor = new Instructor("Claire Le Goues");
+        course.computeInstructorRate(instructor);
+        course.computeInstructorRate(instructor);
+        assertEquals(4, instructor.getRateDistribution().getCount());
+        assertEquals(3.5, instructor.getRateDistribution().getQuantile(0), 0.0);
+        assertEquals(4.0, instructor.getRateDistribution().getP90(), 0.0);
+    }
+
+    @Test
+    public void testComputeDistributions() {
+        Course course = getTestCourse();
+        course.computeDistributions();
+        assertEquals(2, course.getRateDistribution().getCount());
+        assertEquals(4.25, course.getRateDistribution().getMean(), 0.01);
+        assertEquals(4.0, course.getRateDistribution().getMedian(), 0.05);
+        assertEquals(20.5, course.getWorkloadDistribution().getP90(), 0.5);
+        JSONObject json = new JSONObject(course.toString());
+        assertEquals(2, json.getJSONObject("workloadDistribution").getInt("count"));
+    }
+
+    @Test
+    public void testDistributionsAreSummarizedWhenRead() {
+        Course course = getTestCourse();
+        assertEquals(2, course.getRateDistribution().getCount());
+        assertEquals(20.5, course.getWorkloadDistribution().getP90(), 0.5);
+        assertEquals(2, new JSONObject(course.toString()).getJSONObject("rateDistribution").getInt("count"));
+        Course withoutReviews = getTestCourseWithoutReivews();
+        withoutReviews.reviews = null;
+        assertTrue(new JSONObject(withoutReviews.toString()).isNull("rateDistribution"));
+    }
+
+    @Test
+    public void testAddReviewUpdatesRunningSums() {
+        Course course = getTestCourseWithoutReivews();
+        course.computeCourseRate();
+        course.computeWorkload();
+        for (CourseReview review : getTestCourse().reviews) {
+            course.addReview(review);
+            course.computeCourseRate();
+            course.computeWorkload();
+        }
+        assertEquals(2, course.reviews.size());
+        assertEquals(4.25, course.rate, 0.01);
+        assertEquals(252, course.estimatedWorkload, 0.01);
+        assertEquals(2, course.getRateDistribution().getCount());
+
+        Instructor instructor = new Instructor("Vincent Hellendoorn");
+        course.computeInstructorRate(instructor);
+        assertEquals(4.75, instructor.getRate(), 0.01);
+    }
+
+    @Test
+    public void testAppendedReviewsAreSummarized() {
+        Course course = getTestCourse();
+        course.computeCourseRate();
+        Instructor before = new Instructor("Claire Le Goues");
+        course.computeInstructorRate(before);
+        assertEquals(3.75, before.getRate(), 0.01);
+
+        // Reviews added to the list directly are picked up by the next computation
+        CourseReview review = new CourseReview();
+        review.courseRate = 1.5;
+        review.instructorRates = new double[] { 1.0, 2.0 };
+        review.workloadPerWeek = 10;
+        course.reviews.add(review);
+        course.computeCourseRate();
+        assertEquals(10.0 / 3, course.rate, 0.01);
+        assertEquals(3, course.getRateDistribution().getCount());
+
+        Instructor after = new Instructor("Claire Le Goues");
+        course.computeInstructorRate(after);
+        assertEquals(8.5 / 3, after.getRate(), 0.01);
+    }
+
+    @Test
+    public void testReplacedReviewsAreSummarizedAgain() {
+        Course course = getTestCourse();
+        course.computeCourseRate();
+        course.reviews = new ArrayList<>(course.reviews.subList(1, 2));
+        course.computeCourseRate();
+        assertEquals(4.0, course.rate, 0.01);
+        assertEquals(1, course.getRateDistribution().getCount());
+
+        course.reviews.clear();
+        course.computeCourseRate();
+        assertEquals(-1, course.rate, 0.01);
+    }
+
+    @Test
+    public void testToStringDoesNotModifyCourse() {
+        Course course = getTestCourse();
+        course.name = "Say \"Hello\"\n";
+        course.instructorNames.set(0, "C:\\Claire");
+        String first = course.toString();
+        String second = course.toString();
+
+        assertEquals(first, second);
+        assertEquals("Say \"Hello\"\n", course.name);
+        assertEquals("C:\\Claire", course.instructorNames.get(0));
+        assertEquals("Say \"Hello\"\n", new JSONObject(first).getString("name"));
+    }
+
+    @Test
+    public void testJsonShowsChangedFields() {
+        Course course = getTestCourse();
+        course.toJsonBytes();
+        course.computeCourseRate();
+        assertEquals(4.25, new JSONObject(course.toString()).getDouble("rate"), 0.01);
+        course.price = 10;
+        course.name = "Changed";
+        JSONObject json = new JSONObject(course.toString());
+        assertEquals(10, json.getDouble("price"), 0.01);
+        assertEquals("Changed", json.getString("name"));
+    }
+
     private static Course getTestCourse() {
         Course course = new Course();
         course.id = 1;
@@ -91,17 +211,13 @@ public class CourseTest {
 
         CourseReview review0 = new CourseReview();
         review0.courseRate = 4.5;
-        review0.instructorRates = new ArrayList<>();
-        review0.instructorRates.add(4.0);
-        review0.instructorRates.add(5.0);
+        review0.instructorRates = new double[] { 4.0, 5.0 };
         review0.workloadPerWeek = 15.5;
         course.reviews.add(review0);
 
         CourseReview review1 = new CourseReview();
         review1.courseRate = 4.0;
-        review1.instructorRates = new ArrayList<>();
-        review1.instructorRates.add(3.5);
-        review1.instructorRates.add(4.5);
+        review1.instructorRates = new double[] { 3.5, 4.5 };
         review1.workloadPerWeek = 20.5;
         course.reviews.add(review1);
 
@@ -0,0 +1,126 @@
+package edu.cmu.cs214.analyzer.framework.core;
+
+import edu.cmu.cs.cs214.analyzer.framework.JsonWriter;
+import edu.cmu.cs.cs214.analyzer.framework.core.DistributionSketch;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DistributionSketchTest {
+    private static final double RATE_BIN_WIDTH = 0.05;
+
+    @Test
+    public void testQuantilesWithinOneBin() {
+        Random random = new Random(214);
+        double[] values = new double[10000];
+        DistributionSketch sketch = DistributionSketch.forRates();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.round(random.nextGaussian() * 8 + 30) / 10.0;  // Ratings such as 3.4
+            values[i] = Math.max(0, Math.min(5, values[i]));
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, sketch.getCount());
+        assertEquals(Arrays.stream(values).average().getAsDouble(), sketch.getMean(), 1e-9);
+        assertEquals(values[values.length / 2], sketch.getMedian(), RATE_BIN_WIDTH);
+        assertEquals(values[values.length * 9 / 10], sketch.getP90(), RATE_BIN_WIDTH);
+        assertEquals(values[0], sketch.getQuantile(0), 0.0);
+        assertEquals(values[values.length - 1], sketch.getQuantile(1), 0.0);
+    }
+
+    @Test
+    public void testMergeEqualsAddingAll() {
+        DistributionSketch all = DistributionSketch.forRates();
+        DistributionSketch first = DistributionSketch.forRates();
+        DistributionSketch second = DistributionSketch.forRates();
+        for (int i = 0; i < 100; i++) {
+            double value = (i * 37 % 51) / 10.0;
+            all.add(value);
+            (i % 3 == 0 ? first : second).add(value);
+        }
+        first.merge(second);
+
+        assertEquals(all.getCount(), first.getCount());
+        assertEquals(all.getSum(), first.getSum(), 1e-9);
+        for (double q = 0; q <= 1; q += 0.1)
+            assertEquals(all.getQuantile(q), first.getQuantile(q), 1e-9);
+    }
+
+    @Test
+    public void testSubtractUndoesMerge() {
+        DistributionSketch all = DistributionSketch.forRates();
+        DistributionSketch removed = DistributionSketch.forRates();
+        DistributionSketch kept = DistributionSketch.forRates();
+        for (int i = 0; i < 100; i++) {
+            double value = (i * 37 % 51) / 10.0;
+            all.add(value);
+            (value < 1 || value > 4.5 ? removed : kept).add(value);
+        }
+        all.subtract(removed);
+
+        assertEquals(kept.getCount(), all.getCount());
+        assertEquals(kept.getSum(), all.getSum(), 1e-9);
+        // The minimum and maximum are only known up to the bins of the remaining values
+        for (double q = 0; q <= 1; q += 0.1)
+            assertEquals(kept.getQuantile(q), all.getQuantile(q), 0.05 + 1e-9);
+
+        all.subtract(kept);
+        assertEquals(0, all.getCount());
+        assertTrue(Double.isNaN(all.getMedian()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSubtractValuesNotAdded() {
+        DistributionSketch sketch = DistributionSketch.forRates();
+        sketch.add(1);
+        DistributionSketch other = DistributionSketch.forRates();
+        other.add(4);
+        sketch.subtract(other);
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        DistributionSketch sketch = DistributionSketch.forRates();
+        sketch.add(1);
+        DistributionSketch copy = new DistributionSketch(sketch);
+        copy.add(5);
+
+        assertEquals(1, sketch.getCount());
+        assertEquals(1, sketch.getP90(), 0.0);
+        assertEquals(2, copy.getCount());
+    }
+
+    @Test
+    public void testEmptyJson() {
+        JSONObject json = new JSONObject(toJson(DistributionSketch.forWorkloads()));
+        assertEquals(0, json.getInt("count"));
+        assertTrue(json.isNull("median"));
+        assertTrue(Double.isNaN(DistributionSketch.forWorkloads().getMedian()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentBins() {
+        DistributionSketch.forRates().merge(DistributionSketch.forWorkloads());
+    }
+
+    private static String toJson(DistributionSketch sketch) {
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(out);
+            sketch.writeJson(writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,127 @@
+package edu.cmu.cs214.analyzer.framework.core;
+
+import edu.cmu.cs.cs214.analyzer.framework.core.AppFrameworkImpl;
+import edu.cmu.cs.cs214.analyzer.framework.core.Course;
+import edu.cmu.cs.cs214.analyzer.framework.core.CourseReview;
+import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.StreamingDataPlugin;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * A manual benchmark measuring how long {@link AppFrameworkImpl#startNewAnalysis} takes to ingest
+ * synthetic courses. It is not picked up by surefire; run it with
+ *
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes \
+ *     edu.cmu.cs214.analyzer.framework.core.IngestBenchmark [numCourses] [numInstructors] [batchSize]
+ * </pre>
+ *
+ * With a batch size, the courses are generated lazily by a {@link StreamingDataPlugin} and
+ * analyzed in batches of that size instead of being handed over as one list.
+ */
+public class IngestBenchmark {
+    public static void main(String[] args) {
+        int numCourses = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int numInstructors = args.length > 1 ? Integer.parseInt(args[1]) : numCourses / 10;
+
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        ArrayList<Course> courses = new ArrayList<>();
+        DataPlugin plugin;
+        if (batchSize > 0) {
+            plugin = new StreamingDataPlugin() {
+                @Override
+                public String getName() {
+                    return "Benchmark";
+                }
+
+                @Override
+                public Iterator<Course> streamCourses() {
+                    Random rand = new Random(214);
+                    return new Iterator<Course>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < numCourses;
+                        }
+
+                        @Override
+                        public Course next() {
+                            return generateCourse(rand, next++, numInstructors);
+                        }
+                    };
+                }
+            };
+        } else {
+            plugin = new DataPlugin() {
+                @Override
+                public String getName() {
+                    return "Benchmark";
+                }
+
+                @Override
+                public ArrayList<Course> getCourses() {
+                    Random rand = new Random(214);
+                    for (int i = 0; i < numCourses; i++)
+                        courses.add(generateCourse(rand, i, numInstructors));
+                    return courses;
+                }
+            };
+        }
+
+        AppFrameworkImpl analyzer = batchSize > 0 ? new AppFrameworkImpl(batchSize) : new AppFrameworkImpl();
+        analyzer.registerPlugin(plugin);
+        long start = System.nanoTime();
+        analyzer.startNewAnalysis(plugin);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        System.out.println("Ingested " + numCourses + " courses with " + numInstructors
+                           + " instructors in " + elapsedMs + " ms");
+
+        // Drop everything but the analyzer before measuring what it retains
+        courses.clear();
+        courses.trimToSize();
+        System.out.println("Retained heap: " + usedHeapMb() + " MB for "
+                           + analyzer.getAnalyzedCourses().size() + " courses");
+    }
+
+    private static long usedHeapMb() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+    }
+
+    private static Course generateCourse(Random rand, int i, int numInstructors) {
+        Course course = new Course();
+        course.id = i;
+        course.year = 2018 + rand.nextInt(5);
+        course.name = "Course " + i;
+        course.description = "Synthetic course " + i;
+        course.instructorNames = new ArrayList<>();
+        course.instructorNames.add("Instructor " + rand.nextInt(numInstructors));
+        course.instructorNames.add("Instructor " + rand.nextInt(numInstructors));
+        course.organizationName = "Organization " + rand.nextInt(20);
+        course.category = "Category " + rand.nextInt(50);
+        course.level = rand.nextBoolean() ? "Undergraduate" : "Graduate";
+        course.totalStudents = rand.nextInt(300);
+        course.totalHours = rand.nextInt(200);
+        course.totalWeeks = 14;
+        course.estimatedWorkload = -1;
+        course.rate = -1;
+        course.price = rand.nextInt(10000);
+        course.reviews = new ArrayList<>();
+
+        CourseReview review = new CourseReview();
+        review.courseRate = rand.nextDouble() * 5;
+        review.instructorRates = new double[] { rand.nextDouble() * 5, rand.nextDouble() * 5 };
+        review.workloadPerWeek = rand.nextInt(20);
+        course.reviews.add(review);
+        return course;
+    }
+}
@@ -2,9 +2,12 @@ package edu.cmu.cs214.analyzer.framework.core;
 
 import edu.cmu.cs.cs214.analyzer.framework.core.Instructor;
 
+import org.json.JSONObject;
 import org.junit.Test;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 public class InstructorTest {
     @Test
@@ -29,6 +32,31 @@ public class InstructorTest {
         assertTrue(instructor.getOrganizationNames().get(1).equals("MIT"));
     }
 
+    @Test
+    public void testRemoveCourseKeepsOtherCoursesOfTheSameName() {
+        Instructor instructor = new Instructor("Vincent");
+        instructor.addCourse("Principles of Software Construction");
+        instructor.addCourse("Applied Deep Learning");
+        instructor.addCourse("Principles of Software Construction");
+        instructor.addOrganization("CMU");
+        instructor.addOrganization("CMU");
+        instructor.removeCourse("Principles of Software Construction");
+        instructor.removeCourse("Software Architecture");
+        instructor.removeOrganization("CMU");
+
+        assertEquals(2, instructor.getCourseNum());
+        assertEquals(2, instructor.getCourseNames().size());
+        assertEquals("Principles of Software Construction", instructor.getCourseNames().get(0));
+        assertEquals("Applied Deep Learning", instructor.getCourseNames().get(1));
+        assertEquals(1, instructor.getOrganizationNames().size());
+
+        instructor.removeCourse("Principles of Software Construction");
+        instructor.removeOrganization("CMU");
+        assertEquals(1, instructor.getCourseNames().size());
+        assertEquals("Applied Deep Learning", instructor.getCourseNames().get(0));
+        assertEquals(0, instructor.getOrganizationNames().size());
+    }
+
     @Test
     public void testAddStudents() {
         Instructor instructor = new Instructor("Vincent");
@@ -46,4 +74,27 @@ public class InstructorTest {
 
         assertEquals(4.6, instructor.getRate(), 0.01);
     }
+
+    @Test
+    public void testToStringDoesNotModifyInstructor() {
+        Instructor instructor = new Instructor("\"Vincent\"");
+        instructor.addCourse("Principles of Software Construction\t");
+        String first = instructor.toString();
+
+        assertEquals(first, instructor.toString());
+        assertEquals("\"Vincent\"", instructor.getName());
+        assertEquals("Principles of Software Construction\t", instructor.getCourseNames().get(0));
+        assertEquals("\"Vincent\"", new JSONObject(first).getString("name"));
+    }
+
+    @Test
+    public void testJsonBytesInvalidatedByUpdate() {
+        Instructor instructor = new Instructor("Vincent");
+        byte[] before = instructor.toJsonBytes();
+        assertSame(before, instructor.toJsonBytes());
+
+        instructor.addStudents(10);
+        assertNotSame(before, instructor.toJsonBytes());
+        assertEquals(10, new JSONObject(instructor.toString()).getInt("totalStudents"));
+    }
 }
@@ -0,0 +1,201 @@
+package edu.cmu.cs214.analyzer.framework.core;
+
+import edu.cmu.cs.cs214.analyzer.framework.core.AppFrameworkImpl;
+import edu.cmu.cs.cs214.analyzer.framework.core.Course;
+import edu.cmu.cs.cs214.analyzer.framework.core.CourseFilter;
+import edu.cmu.cs.cs214.analyzer.framework.core.CourseReview;
+import edu.cmu.cs.cs214.analyzer.framework.core.GroupStats;
+import edu.cmu.cs.cs214.analyzer.framework.core.IncrementalDataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.InstructorFilter;
+import edu.cmu.cs.cs214.analyzer.framework.core.StreamingDataPlugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class SegmentStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private ArrayList<Course> courses;
+    private ArrayList<Course> changedCourses;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("segments");
+        courses = getRandomCourses(new Random(214), 0, 1000);
+        // Every 7th course changes, so every segment gets deleted rows
+        changedCourses = getRandomCourses(new Random(15214), 0, 1000);
+        changedCourses.removeIf(course -> course.id % 7 != 0);
+    }
+
+    @Test
+    public void testMappedSegmentsMatchHeapSegments() throws IOException {
+        AppFrameworkImpl expected = analyze(new AppFrameworkImpl(64));
+        AppFrameworkImpl mapped = analyze(new AppFrameworkImpl(64, directory));
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.anyMatch(file -> file.toString().endsWith(".segment")));
+        }
+        assertSameData(expected, mapped);
+    }
+
+    @Test
+    public void testSnapshotOfMappedSegments() throws IOException {
+        AppFrameworkImpl mapped = analyze(new AppFrameworkImpl(64, directory));
+        Path file = folder.getRoot().toPath().resolve("analysis.snapshot");
+        mapped.saveSnapshot(file);
+
+        AppFrameworkImpl onHeap = new AppFrameworkImpl();
+        onHeap.loadSnapshot(file);
+        assertSameData(mapped, onHeap);
+
+        AppFrameworkImpl remapped = new AppFrameworkImpl(64, folder.getRoot().toPath().resolve("other"));
+        remapped.loadSnapshot(file);
+        assertSameData(mapped, remapped);
+    }
+
+    @Test
+    public void testFilesOfEarlierRunsAreDeleted() throws IOException {
+        Files.createDirectories(directory);
+        Path leftover = Files.write(directory.resolve("segment-0.segment"), "left behind".getBytes());
+        analyze(new AppFrameworkImpl(64, directory));
+        assertFalse(Files.exists(leftover));
+    }
+
+    /**
+     * Stream the courses in batches, which are merged into larger segments, then refresh them
+     * with the changed courses.
+     */
+    private AppFrameworkImpl analyze(AppFrameworkImpl analyzer) {
+        StreamingDataPlugin plugin = mock(StreamingDataPlugin.class, withSettings().extraInterfaces(IncrementalDataPlugin.class));
+        IncrementalDataPlugin changing = (IncrementalDataPlugin) plugin;
+        when(plugin.getName()).thenReturn("Streaming");
+        when(plugin.streamCourses()).thenAnswer(invocation -> copy(courses).iterator());
+        when(changing.getDataVersion()).thenReturn("1", "2");
+        when(changing.getCoursesChangedSince("1")).thenAnswer(invocation -> copy(changedCourses));
+        analyzer.startNewAnalysis(plugin);
+        analyzer.refreshAnalysis(plugin);
+        assertEquals(1000, analyzer.getAnalyzedCourses().size());
+        return analyzer;
+    }
+
+    private static void assertSameData(AppFrameworkImpl expected, AppFrameworkImpl actual) {
+        assertEquals(expected.getAnalyzedCourses().toString(), actual.getAnalyzedCourses().toString());
+        assertEquals(expected.getAnalyzedInstructors().toString(), actual.getAnalyzedInstructors().toString());
+        for (String groupBy : GroupStats.GROUP_BY_FIELDS)
+            assertEquals(expected.getSnapshot().getAggregateReport(groupBy).toString(),
+                         actual.getSnapshot().getAggregateReport(groupBy).toString());
+
+        // Keyword filters go through the posting lists of the mapped indexes
+        for (CourseFilter filter : List.of(
+                new CourseFilter("Course 1", "", "", "Instructor 3", "", 0, 1000, "rate", true),
+                new CourseFilter("", "Category 2", "Grad", "", "Caf\u00e9", 0, 10000, "price", false),
+                new CourseFilter("Course 99", "", "", "", "", 0, 1000, "rate", true))) {
+            List<Course> matched = actual.filterCourses(filter);
+            assertTrue(matched.size() > 0);
+            assertEquals(expected.filterCourses(filter).toString(), matched.toString());
+        }
+        InstructorFilter instructorFilter = new InstructorFilter("Instructor 1", "", "", 1000, "rate", false);
+        assertEquals(expected.filterInstructors(instructorFilter).toString(),
+                     actual.filterInstructors(instructorFilter).toString());
+    }
+
+    private static ArrayList<Course> copy(List<Course> courses) {
+        return courses.stream().map(SegmentStoreTest::copy).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Copy a course before the framework prepares it, so every analysis starts from the same
+     * values.
+     */
+    private static Course copy(Course course) {
+        Course copy = new Course();
+        copy.id = course.id;
+        copy.year = course.year;
+        copy.name = course.name;
+        copy.description = course.description;
+        copy.instructorNames = new ArrayList<String>(course.instructorNames);
+        copy.organizationName = course.organizationName;
+        copy.category = course.category;
+        copy.level = course.level;
+        copy.totalStudents = course.totalStudents;
+        copy.totalHours = course.totalHours;
+        copy.totalWeeks = course.totalWeeks;
+        copy.estimatedWorkload = course.estimatedWorkload;
+        copy.rate = course.rate;
+        copy.price = course.price;
+        copy.reviews = new ArrayList<CourseReview>();
+        for (CourseReview review : course.reviews) {
+            CourseReview reviewCopy = new CourseReview();
+            reviewCopy.courseRate = review.courseRate;
+            reviewCopy.workloadPerWeek = review.workloadPerWeek;
+            reviewCopy.instructorRates = review.instructorRates;
+            copy.reviews.add(reviewCopy);
+        }
+        return copy;
+    }
+
+    /**
+     * Generate courses with missing and non-ASCII strings, unknown rates, and reviews that
+     * share their instructor rates, as FCE reviews do.
+     */
+    private static ArrayList<Course> getRandomCourses(Random rand, int firstId, int numCourses) {
+        String[] organizations = { "CMU", "Caf\u00e9 U", "\u6570\u5b66" };
+        String[] levels = { "Graduate", "Undergraduate", null };
+        ArrayList<Course> courses = new ArrayList<Course>();
+        for (int i = 0; i < numCourses; i++) {
+            Course course = new Course();
+            course.id = firstId + i;
+            course.year = 2018 + rand.nextInt(5);
+            course.name = "Course " + course.id;
+            course.description = rand.nextInt(5) == 0 ? null : "About \u00e9t\u00e9 " + rand.nextInt(1000);
+            course.instructorNames = new ArrayList<String>();
+            for (int j = rand.nextInt(3); j >= 0; j--)
+                course.instructorNames.add("Instructor " + rand.nextInt(40));
+            course.organizationName = organizations[rand.nextInt(organizations.length)];
+            course.category = "Category " + rand.nextInt(8);
+            course.level = levels[rand.nextInt(levels.length)];
+            course.totalStudents = rand.nextInt(300);
+            course.totalHours = rand.nextInt(8) / 2.0;
+            course.totalWeeks = rand.nextInt(3) == 0 ? -1 : 14;
+            course.estimatedWorkload = -1;
+            course.rate = rand.nextInt(4) == 0 ? rand.nextDouble() * 5 : -1;
+            course.price = rand.nextInt(10000);
+            course.reviews = new ArrayList<CourseReview>();
+            double[] shared = null;
+            for (int j = rand.nextInt(4); j > 0; j--) {
+                CourseReview review = new CourseReview();
+                review.courseRate = rand.nextInt(10) == 0 ? -1 : rand.nextDouble() * 5;
+                review.workloadPerWeek = rand.nextDouble() * 20;
+                if (shared == null || rand.nextBoolean()) {
+                    shared = new double[course.instructorNames.size()];
+                    for (int k = 0; k < shared.length; k++)
+                        shared[k] = rand.nextInt(10) == 0 ? -1 : rand.nextDouble() * 5;
+                }
+                review.instructorRates = shared;
+                course.reviews.add(review);
+            }
+            courses.add(course);
+        }
+        return courses;
+    }
+}
@@ -0,0 +1,290 @@
+package edu.cmu.cs214.analyzer.framework.core;
+
+import edu.cmu.cs.cs214.analyzer.framework.core.AnalysisJob;
+import edu.cmu.cs.cs214.analyzer.framework.core.AppFrameworkImpl;
+import edu.cmu.cs.cs214.analyzer.framework.core.Course;
+import edu.cmu.cs.cs214.analyzer.framework.core.CourseFilter;
+import edu.cmu.cs.cs214.analyzer.framework.core.CourseReview;
+import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.GroupStats;
+import edu.cmu.cs.cs214.analyzer.framework.core.IncrementalDataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.core.InstructorFilter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SnapshotFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        AppFrameworkImpl analyzer = new AppFrameworkImpl();
+        ChangingPlugin plugin = new ChangingPlugin("Changing", getRandomCourses(new Random(214), 0, 300));
+        analyzer.startNewAnalysis(plugin);
+        DataPlugin other = mock(DataPlugin.class);
+        when(other.getName()).thenReturn("Other");
+        when(other.getCourses()).thenReturn(getRandomCourses(new Random(17214), 1000, 50));
+        analyzer.startNewAnalysis(other);
+        // Replace some courses, so the saved segments have deleted rows
+        plugin.changes.addAll(getRandomCourses(new Random(15214), 0, 20));
+        analyzer.refreshAnalysis(plugin);
+
+        Path file = folder.getRoot().toPath().resolve("analysis.snapshot");
+        assertEquals(analyzer.getSnapshot().getVersion(), analyzer.saveSnapshot(file));
+        AppFrameworkImpl restored = new AppFrameworkImpl();
+        assertEquals(0, restored.loadSnapshot(file).size());
+
+        assertEquals(analyzer.getSnapshot().getVersion(), restored.getSnapshot().getVersion());
+        assertEquals(350, restored.getAnalyzedCourses().size());
+        assertEquals(analyzer.getAnalyzedCourses().toString(), restored.getAnalyzedCourses().toString());
+        assertEquals(analyzer.getAnalyzedInstructors().toString(), restored.getAnalyzedInstructors().toString());
+        for (String groupBy : GroupStats.GROUP_BY_FIELDS)
+            assertEquals(analyzer.getSnapshot().getAggregateReport(groupBy).toString(),
+                         restored.getSnapshot().getAggregateReport(groupBy).toString());
+
+        // Keyword filters go through the restored trigram indexes
+        CourseFilter filter = new CourseFilter("Course 1", "", "", "Instructor 3", "", 0, 1000, "rate", true);
+        List<Course> matched = restored.filterCourses(filter);
+        assertTrue(matched.size() > 0);
+        assertEquals(analyzer.filterCourses(filter).toString(), matched.toString());
+        InstructorFilter instructorFilter = new InstructorFilter("Instructor 1", "", "", 1000, "rate", false);
+        assertEquals(analyzer.filterInstructors(instructorFilter).toString(),
+                     restored.filterInstructors(instructorFilter).toString());
+
+        // A restored plugin is not analyzed again
+        restored.startNewAnalysis(plugin);
+        assertEquals(AnalysisJob.Status.SKIPPED, restored.getJobs().get(0).getStatus());
+        assertEquals(350, restored.getAnalyzedCourses().size());
+    }
+
+    @Test
+    public void testRestoredPluginsAreRefreshedFromTheirVersion() throws IOException, InterruptedException {
+        AppFrameworkImpl analyzer = new AppFrameworkImpl();
+        ChangingPlugin plugin = new ChangingPlugin("Changing", getRandomCourses(new Random(214), 0, 100));
+        analyzer.startNewAnalysis(plugin);
+        Path file = folder.getRoot().toPath().resolve("analysis.snapshot");
+        analyzer.saveSnapshot(file);
+
+        // Unchanged data is served as it was saved, without fetching anything
+        ChangingPlugin unchanged = new ChangingPlugin("Changing", plugin.courses);
+        AppFrameworkImpl reloaded = new AppFrameworkImpl();
+        reloaded.registerPlugin(unchanged);
+        assertEquals(0, reloaded.loadSnapshot(file).size());
+        assertEquals(0, unchanged.numFullFetches);
+        assertEquals(List.of(), unchanged.versionsFetched);
+        assertEquals(100, reloaded.getAnalyzedCourses().size());
+
+        // The plugin's data changes while the server is down
+        ChangingPlugin restarted = new ChangingPlugin("Changing", plugin.courses);
+        restarted.changes.addAll(getRandomCourses(new Random(15214), 95, 10));
+        AppFrameworkImpl restored = new AppFrameworkImpl();
+        restored.registerPlugin(restarted);
+        List<AnalysisJob> refreshes = restored.loadSnapshot(file);
+        assertEquals(1, refreshes.size());
+        refreshes.get(0).awaitCompletion();
+
+        assertEquals(AnalysisJob.Status.DONE, refreshes.get(0).getStatus());
+        assertEquals(0, restarted.numFullFetches);
+        assertEquals(List.of("v0"), restarted.versionsFetched);
+        assertEquals(105, restored.getAnalyzedCourses().size());
+
+        AppFrameworkImpl expected = new AppFrameworkImpl();
+        ChangingPlugin fresh = new ChangingPlugin("Changing", plugin.courses);
+        fresh.changes.addAll(restarted.changes);
+        expected.startNewAnalysis(fresh);
+        assertEquals(105, expected.getAnalyzedCourses().size());
+        for (String groupBy : GroupStats.GROUP_BY_FIELDS) {
+            assertEquals(expected.getSnapshot().getGroups(groupBy).size(), restored.getSnapshot().getGroups(groupBy).size());
+            for (GroupStats group : expected.getSnapshot().getGroups(groupBy)) {
+                GroupStats other = restored.getSnapshot().getGroups(groupBy).stream()
+                    .filter(g -> g.getKey().equals(group.getKey())).findFirst().get();
+                assertEquals(group.getCount(), other.getCount());
+                assertEquals(group.getMetric("price").getSum(), other.getMetric("price").getSum(), 1e-6);
+                assertEquals(group.getMetric("price").getMax(), other.getMetric("price").getMax(), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testUnreadableFiles() throws IOException {
+        AppFrameworkImpl analyzer = new AppFrameworkImpl();
+        analyzer.startNewAnalysis(new ChangingPlugin("Changing", getRandomCourses(new Random(214), 0, 20)));
+        Path file = folder.getRoot().toPath().resolve("analysis.snapshot");
+        analyzer.saveSnapshot(file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        Path garbage = folder.newFile().toPath();
+        Files.write(garbage, "not a snapshot".getBytes());
+        assertUnreadable(garbage, "not a snapshot file");
+
+        // The format version follows the 8 byte magic number
+        byte[] newer = bytes.clone();
+        newer[8]++;
+        Files.write(file, newer);
+        assertUnreadable(file, "format version");
+
+        for (int length : new int[] { 8, 16, bytes.length / 2, bytes.length - 1 }) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertUnreadable(file, "");
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLoadAfterAnalysis() throws IOException {
+        AppFrameworkImpl analyzer = new AppFrameworkImpl();
+        analyzer.startNewAnalysis(new ChangingPlugin("Changing", getRandomCourses(new Random(214), 0, 20)));
+        Path file = folder.getRoot().toPath().resolve("analysis.snapshot");
+        analyzer.saveSnapshot(file);
+        analyzer.loadSnapshot(file);
+    }
+
+    private static void assertUnreadable(Path file, String message) {
+        try {
+            new AppFrameworkImpl().loadSnapshot(file);
+            fail("Loaded an unreadable snapshot");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    /**
+     * A plugin whose courses change over time, which records how it is asked for them.
+     */
+    private static class ChangingPlugin implements IncrementalDataPlugin {
+        private final String name;
+        private final ArrayList<Course> courses;
+        // The changed courses in order, whose number is the version
+        private final ArrayList<Course> changes = new ArrayList<Course>();
+        private final List<String> versionsFetched = new ArrayList<String>();
+        private int numFullFetches;
+
+        ChangingPlugin(String name, ArrayList<Course> courses) {
+            this.name = name;
+            this.courses = courses;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDataVersion() {
+            return "v" + changes.size();
+        }
+
+        @Override
+        public ArrayList<Course> getCourses() {
+            numFullFetches++;
+            // A changed course replaces the course with its id
+            LinkedHashMap<Integer, Course> latest = new LinkedHashMap<Integer, Course>();
+            for (Course course : courses)
+                latest.put(course.id, copy(course));
+            for (Course course : changes)
+                latest.put(course.id, copy(course));
+            return new ArrayList<Course>(latest.values());
+        }
+
+        @Override
+        public ArrayList<Course> getCoursesChangedSince(String version) {
+            versionsFetched.add(version);
+            ArrayList<Course> changed = new ArrayList<Course>();
+            for (Course course : changes.subList(Integer.parseInt(version.substring(1)), changes.size()))
+                changed.add(copy(course));
+            return changed;
+        }
+    }
+
+    /**
+     * Copy a course before the framework prepares it, so every analysis starts from the same
+     * values.
+     */
+    private static Course copy(Course course) {
+        Course copy = new Course();
+        copy.id = course.id;
+        copy.year = course.year;
+        copy.name = course.name;
+        copy.description = course.description;
+        copy.instructorNames = new ArrayList<String>(course.instructorNames);
+        copy.organizationName = course.organizationName;
+        copy.category = course.category;
+        copy.level = course.level;
+        copy.totalStudents = course.totalStudents;
+        copy.totalHours = course.totalHours;
+        copy.totalWeeks = course.totalWeeks;
+        copy.estimatedWorkload = course.estimatedWorkload;
+        copy.rate = course.rate;
+        copy.price = course.price;
+        copy.reviews = new ArrayList<CourseReview>();
+        for (CourseReview review : course.reviews) {
+            CourseReview reviewCopy = new CourseReview();
+            reviewCopy.courseRate = review.courseRate;
+            reviewCopy.workloadPerWeek = review.workloadPerWeek;
+            reviewCopy.instructorRates = review.instructorRates;
+            copy.reviews.add(reviewCopy);
+        }
+        return copy;
+    }
+
+    /**
+     * Generate courses with missing strings, unknown rates, and reviews that share their
+     * instructor rates, as FCE reviews do.
+     */
+    private static ArrayList<Course> getRandomCourses(Random rand, int firstId, int numCourses) {
+        String[] organizations = { "CMU", "Caf\u00e9 U", "\u6570\u5b66" };
+        String[] levels = { "Graduate", "Undergraduate", null };
+        ArrayList<Course> courses = new ArrayList<Course>();
+        for (int i = 0; i < numCourses; i++) {
+            Course course = new Course();
+            course.id = firstId + i;
+            course.year = 2018 + rand.nextInt(5);
+            course.name = "Course " + course.id;
+            course.description = rand.nextInt(5) == 0 ? null : "About " + rand.nextInt(1000);
+            course.instructorNames = new ArrayList<String>();
+            for (int j = rand.nextInt(3); j >= 0; j--)
+                course.instructorNames.add("Instructor " + rand.nextInt(40));
+            course.organizationName = organizations[rand.nextInt(organizations.length)];
+            course.category = "Category " + rand.nextInt(8);
+            course.level = levels[rand.nextInt(levels.length)];
+            course.totalStudents = rand.nextInt(300);
+            course.totalHours = rand.nextInt(8) / 2.0;
+            course.totalWeeks = rand.nextInt(3) == 0 ? -1 : 14;
+            course.estimatedWorkload = -1;
+            course.rate = rand.nextInt(4) == 0 ? rand.nextDouble() * 5 : -1;
+            course.price = rand.nextInt(10000);
+            course.reviews = new ArrayList<CourseReview>();
+            double[] shared = null;
+            for (int j = rand.nextInt(4); j > 0; j--) {
+                CourseReview review = new CourseReview();
+                review.courseRate = rand.nextInt(10) == 0 ? -1 : rand.nextDouble() * 5;
+                review.workloadPerWeek = rand.nextDouble() * 20;
+                if (shared == null || rand.nextBoolean()) {
+                    shared = new double[course.instructorNames.size()];
+                    for (int k = 0; k < shared.length; k++)
+                        shared[k] = rand.nextInt(10) == 0 ? -1 : rand.nextDouble() * 5;
+                }
+                review.instructorRates = shared;
+                course.reviews.add(review);
+            }
+            courses.add(course);
+        }
+        return courses;
+    }
+}
@@ -0,0 +1,57 @@
+package edu.cmu.cs214.analyzer.framework.core;
+
+import edu.cmu.cs.cs214.analyzer.framework.core.StringDictionary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StringDictionaryTest {
+    @Test
+    public void testInternReturnsCanonicalInstance() {
+        StringDictionary dictionary = StringDictionary.getShared();
+        String first = dictionary.intern(new String("Undergraduate"));
+        String second = dictionary.intern(new String("Undergraduate"));
+
+        assertEquals("Undergraduate", first);
+        assertSame(first, second);
+        assertNull(dictionary.intern(null));
+    }
+
+    @Test
+    public void testConcurrentIntern() throws Exception {
+        StringDictionary dictionary = StringDictionary.getShared();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Callable<String[]> task = () -> {
+                    String[] interned = new String[1000];
+                    for (int j = 0; j < interned.length; j++)
+                        interned[j] = dictionary.intern(new String("Concurrent Instructor " + j));
+                    return interned;
+                };
+                futures.add(executor.submit(task));
+            }
+
+            String[] expected = futures.get(0).get();
+            for (Future<String[]> future : futures) {
+                String[] interned = future.get();
+                for (int j = 0; j < interned.length; j++) {
+                    assertEquals("Concurrent Instructor " + j, interned[j]);
+                    assertSame(expected[j], interned[j]);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
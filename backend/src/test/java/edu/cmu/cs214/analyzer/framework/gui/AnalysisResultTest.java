@@ -0,0 +1,163 @@
+package edu.cmu.cs214.analyzer.framework.gui;
+
+import edu.cmu.cs.cs214.analyzer.framework.core.AppFrameworkImpl;
+import edu.cmu.cs.cs214.analyzer.framework.core.Course;
+import edu.cmu.cs.cs214.analyzer.framework.core.CourseFilter;
+import edu.cmu.cs.cs214.analyzer.framework.core.CourseReview;
+import edu.cmu.cs.cs214.analyzer.framework.core.DataPlugin;
+import edu.cmu.cs.cs214.analyzer.framework.gui.AnalysisResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AnalysisResultTest {
+    private static final int NUM_COURSES = 1000;
+
+    private AppFrameworkImpl analyzer;
+
+    @Before
+    public void initialize() {
+        DataPlugin stubPlugin = mock(DataPlugin.class);
+        when(stubPlugin.getName()).thenReturn("Stub");
+        ArrayList<Course> courses = getTestCourses();
+        when(stubPlugin.getCourses()).thenReturn(courses);
+
+        analyzer = new AppFrameworkImpl();
+        analyzer.registerPlugin(stubPlugin);
+        analyzer.startNewAnalysis(stubPlugin);
+    }
+
+    @Test
+    public void testJsonStreamMatchesToString() throws IOException {
+        AnalysisResult result = AnalysisResult.getAllResult(analyzer);
+        JSONObject streamed = new JSONObject(readAll(result.toJsonStream()));
+        JSONObject built = new JSONObject(result.toString());
+        assertTrue(streamed.similar(built));
+    }
+
+    @Test
+    public void testJsonStreamContent() throws IOException {
+        AnalysisResult result = AnalysisResult.getAllResult(analyzer);
+        JSONObject json = new JSONObject(readAll(result.toJsonStream()));
+
+        assertEquals("Stub", json.getString("name"));
+        assertEquals("Stub", json.getJSONArray("plugins").getJSONObject(0).getString("name"));
+
+        JSONArray courses = json.getJSONArray("courses");
+        assertEquals(NUM_COURSES, courses.length());
+        JSONObject course = courses.getJSONObject(1);
+        assertEquals("Course \"1\"\n\\", course.getString("name"));
+        assertEquals(2, course.getJSONArray("instructorNames").length());
+        assertEquals(4.5, course.getJSONArray("reviews").getJSONObject(0)
+                                .getJSONArray("instructorRates").getDouble(1), 0.01);
+
+        JSONArray instructors = json.getJSONArray("instructors");
+        assertEquals(2, instructors.length());
+        assertEquals(NUM_COURSES, instructors.getJSONObject(0).getInt("courseNum"));
+    }
+
+    @Test
+    public void testJsonStreamReadByteByByte() throws IOException {
+        AnalysisResult result = AnalysisResult.getAllResult(analyzer);
+        String bulk = readAll(result.toJsonStream());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InputStream in = result.toJsonStream();
+        int b;
+        while ((b = in.read()) != -1)
+            bytes.write(b);
+        assertEquals(bulk, bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPagedJson() throws IOException {
+        CourseFilter filter = new CourseFilter("", "", "", "", "", -1, 400);
+        AnalysisResult first = AnalysisResult.getCoursesPage(analyzer, analyzer.pageCourses(filter, null));
+        JSONObject json = new JSONObject(readAll(first.toJsonStream()));
+        assertTrue(json.similar(new JSONObject(first.toString())));
+        assertEquals(400, json.getJSONArray("courses").length());
+        assertEquals(NUM_COURSES, json.getLong("total"));
+
+        String cursor = json.getString("nextCursor");
+        json = new JSONObject(readAll(AnalysisResult.getCoursesPage(
+            analyzer, analyzer.pageCourses(filter, cursor)).toJsonStream()));
+        assertEquals(400, json.getJSONArray("courses").getJSONObject(0).getInt("id"));
+
+        cursor = json.getString("nextCursor");
+        json = new JSONObject(readAll(AnalysisResult.getCoursesPage(
+            analyzer, analyzer.pageCourses(filter, cursor)).toJsonStream()));
+        assertEquals(200, json.getJSONArray("courses").length());
+        assertTrue(json.isNull("nextCursor"));
+    }
+
+    @Test
+    public void testChangedCoursesAreSerializedWithTheirChanges() throws IOException {
+        List<Course> matched = analyzer.filterCourses(new CourseFilter("", "", "", "", "", -1, 2));
+        JSONObject json = new JSONObject(readAll(AnalysisResult.getCoursesResult(analyzer, matched).toJsonStream()));
+        assertEquals(8333, json.getJSONArray("courses").getJSONObject(0).getDouble("price"), 0.01);
+
+        // A returned course is a copy, which renders its own changes without affecting the analysis
+        Course changed = matched.get(0);
+        changed.price = 10;
+        changed.name = "Changed";
+        json = new JSONObject(readAll(AnalysisResult.getCoursesResult(analyzer, List.of(changed)).toJsonStream()));
+        assertEquals(10, json.getJSONArray("courses").getJSONObject(0).getDouble("price"), 0.01);
+        assertEquals("Changed", json.getJSONArray("courses").getJSONObject(0).getString("name"));
+        assertEquals(8333, analyzer.getAnalyzedCourses().get(0).price, 0.01);
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[100];
+        int n;
+        while ((n = in.read(buffer)) != -1)
+            bytes.write(buffer, 0, n);
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private static ArrayList<Course> getTestCourses() {
+        ArrayList<Course> courses = new ArrayList<Course>();
+        for (int i = 0; i < NUM_COURSES; i++) {
+            Course course = new Course();
+            course.id = i;
+            course.year = 2022;
+            course.name = "Course \"" + i + "\"\n\\";
+            course.description = "Objects, Design, and Concurrency";
+            course.instructorNames = new ArrayList<>();
+            course.instructorNames.add("Claire Le Goues");
+            course.instructorNames.add("Vincent Hellendoorn");
+            course.organizationName = "CMU";
+            course.category = "SCS";
+            course.level = "Undergraduate";
+            course.totalStudents = 100;
+            course.totalHours = 3.5;
+            course.totalWeeks = 14;
+            course.estimatedWorkload = -1;
+            course.rate = -1;
+            course.price = 8333;
+            course.reviews = new ArrayList<>();
+
+            CourseReview review = new CourseReview();
+            review.courseRate = 4.5;
+            review.instructorRates = new double[] { 4.0, 4.5 };
+            review.workloadPerWeek = 15.5;
+            course.reviews.add(review);
+            courses.add(course);
+        }
+        return courses;
+    }
+}
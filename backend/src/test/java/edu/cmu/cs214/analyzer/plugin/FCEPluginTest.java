@@ -0,0 +1,161 @@
+package edu.cmu.cs214.analyzer.plugin;
+
+import edu.cmu.cs.cs214.analyzer.framework.core.AnalysisJob;
+import edu.cmu.cs.cs214.analyzer.framework.core.AppFrameworkImpl;
+import edu.cmu.cs.cs214.analyzer.framework.core.Course;
+import edu.cmu.cs.cs214.analyzer.plugin.HttpFetcher;
+import edu.cmu.cs.cs214.analyzer.plugin.FCEPlugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import fi.iki.elonen.NanoHTTPD;
+
+public class FCEPluginTest {
+    private static final long RESPONSE_MILLIS = 300;
+
+    @Rule
+    public TemporaryFolder cacheDir = new TemporaryFolder();
+
+    private StubServer server;
+    private HttpFetcher fetcher;
+
+    @Before
+    public void startServer() throws IOException {
+        fetcher = new HttpFetcher(cacheDir.getRoot().toPath());
+        server = new StubServer();
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void testParsesAllYears() {
+        ArrayList<Course> courses = new FCEPlugin(server.getBaseURI(), "/fce", 2018, 2022, fetcher).getCourses();
+        assertEquals(15, courses.size());
+        for (int i = 0; i < courses.size(); i++)
+            assertEquals(2018 + i / 3, courses.get(i).year);
+
+        courses.sort(Comparator.comparingInt((Course course) -> course.year).thenComparing(course -> course.name));
+        Course course = courses.get(1);
+        assertEquals("Principles of Software Construction", course.name);
+        assertEquals("CMU", course.organizationName);
+        assertEquals("SCS", course.category);
+        assertEquals("Undergraduate", course.level);
+        assertEquals(2, course.instructorNames.size());
+        assertEquals("Claire Le Goues", course.instructorNames.get(0));
+        assertEquals(150, course.totalStudents);
+        assertEquals(14, course.totalWeeks);
+        assertEquals(2, course.reviews.size());
+        assertEquals(4.5, course.reviews.get(0).courseRate, 0.01);
+        assertEquals(12.5, course.reviews.get(1).workloadPerWeek, 0.01);
+        assertEquals(59864 * 12 / 72.0, course.price, 0.01);
+
+        // Mini courses last 7 weeks and summer courses are paid per unit
+        Course mini = courses.get(0);
+        assertEquals("Mini Course", mini.name);
+        assertEquals(7, mini.totalWeeks);
+        assertEquals(480 * 6, mini.price, 0.01);
+    }
+
+    @Test
+    public void testFetchesYearsInParallel() {
+        long start = System.nanoTime();
+        ArrayList<Course> courses = new FCEPlugin(server.getBaseURI(), "/fce", 2018, 2022, fetcher).getCourses();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertEquals(15, courses.size());
+        // Fetching the 5 years one at a time would take at least 1.5s
+        assertTrue(elapsedMillis < 3 * RESPONSE_MILLIS);
+    }
+
+    @Test
+    public void testReturnsAllCoursesWhenRegistered() {
+        FCEPlugin plugin = new FCEPlugin(server.getBaseURI(), "/fce", 2018, 2022, fetcher);
+        AppFrameworkImpl analyzer = new AppFrameworkImpl();
+        analyzer.registerPlugin(plugin);
+        // Called outside of an analysis, the plugin still returns all of its courses
+        assertEquals(15, plugin.getCourses().size());
+
+        analyzer.startNewAnalysis(plugin);
+        AnalysisJob job = analyzer.getJobs().get(0);
+        assertEquals(AnalysisJob.Status.DONE, job.getStatus());
+        assertEquals(15, job.getCoursesParsed());
+        assertEquals(15, job.getCoursesFetched());
+        assertEquals(15, analyzer.getAnalyzedCourses().size());
+    }
+
+    @Test
+    public void testSkipsMissingYears() {
+        ArrayList<Course> courses = new FCEPlugin(server.getBaseURI(), "/fce", 2016, 2019, fetcher).getCourses();
+        assertEquals(6, courses.size());
+        assertEquals(2018, courses.get(0).year);
+    }
+
+    /**
+     * A stand-in for the server of the FCE files, which streams the CSV of 2018 to 2022 after a
+     * fixed delay.
+     */
+    private static class StubServer extends NanoHTTPD {
+        StubServer() {
+            super("localhost", 0);
+        }
+
+        String getBaseURI() {
+            return "http://localhost:" + getListeningPort();
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            try {
+                Thread.sleep(RESPONSE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String uri = session.getUri();
+            int year = Integer.parseInt(uri.substring(uri.lastIndexOf('/') + 1, uri.length() - ".csv".length()));
+            if (year < 2018 || year > 2022)
+                return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Not found");
+            byte[] csv = getCsv(year).getBytes(StandardCharsets.UTF_8);
+            return newChunkedResponse(Response.Status.OK, "text/csv", new ByteArrayInputStream(csv));
+        }
+
+        private static String getCsv(int year) {
+            StringBuilder csv = new StringBuilder();
+            csv.append("Year,Sem,College,Dept,Num,Section,Instructor,Course Name,Course Level,Total # Students,")
+               .append("# Responses,Response Rate,Hrs Per Week,Interest in student learning,")
+               .append("Clearly explain course requirements,Clear learning objectives & goals,")
+               .append("Instructor provides feedback to students to improve,Demonstrate importance of subject matter,")
+               .append("Explains subject matter of course,Show respect for all students,Overall teaching rate,Overall course rate\n");
+            appendRecord(csv, year, "Spring", "17214", "A", "Claire Le Goues", "Principles of Software Construction", "Undergraduate", 100, 10.5, 4.0, 4.5);
+            appendRecord(csv, year, "Spring", "17214", "A", "Vincent Hellendoorn", "Principles of Software Construction", "Undergraduate", 50, 12.5, 3.5, 4.0);
+            appendRecord(csv, year, "Summer", "17313", "A1", "Jane Doe", "Mini Course", "Graduate", 20, 6.0, 4.2, 4.1);
+            appendRecord(csv, year, "Fall", "17445", "B", "John Doe", "Software Architecture", "Graduate", 40, 9.0, 3.9, 3.8);
+            // Records with a missing field are skipped
+            csv.append(year).append(",Fall,SCS,17,,B,,Invalid,Graduate,1,1,1,1,1,1,1,1,1,1,1,1,1\n");
+            return csv.toString();
+        }
+
+        private static void appendRecord(StringBuilder csv, int year, String semester, String number, String section,
+                                         String instructor, String name, String level, int students, double hours,
+                                         double teachingRate, double courseRate) {
+            csv.append(year).append(',').append(semester).append(",SCS,17,").append(number).append(',')
+               .append(section).append(',').append(instructor).append(',').append(name).append(',')
+               .append(level).append(',').append(students).append(",10,50%,").append(hours)
+               .append(",4,4,4,4,4,4,4,").append(teachingRate).append(',').append(courseRate).append('\n');
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package edu.cmu.cs214.analyzer.plugin;
+
+import edu.cmu.cs.cs214.analyzer.plugin.HttpFetcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import fi.iki.elonen.NanoHTTPD;
+
+public class HttpFetcherTest {
+    @Rule
+    public TemporaryFolder cacheDir = new TemporaryFolder();
+
+    private StubServer server;
+    private Path cachePath;
+
+    @Before
+    public void startServer() throws IOException {
+        cachePath = cacheDir.getRoot().toPath();
+        server = new StubServer();
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void testRestartIsServedFromDisk() throws Exception {
+        HttpFetcher.Response first = new HttpFetcher(cachePath).send(request("/etag"));
+        assertFalse(first.isFromCache());
+        assertEquals(server.body, first.getBodyAsString());
+
+        // A new fetcher on the same directory, as after a restart, only revalidates
+        HttpFetcher restarted = new HttpFetcher(cachePath);
+        HttpFetcher.Response second = restarted.send(request("/etag"));
+        assertEquals(200, second.getStatusCode());
+        assertTrue(second.isFromCache());
+        assertEquals(server.body, second.getBodyAsString());
+        assertEquals(0, restarted.getNumDownloads());
+        assertEquals(1, restarted.getNumNotModified());
+        assertEquals(1, server.numFullResponses.get());
+    }
+
+    @Test
+    public void testAsyncResponsesAreCached() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher(cachePath);
+        assertEquals(server.body, fetcher.sendAsync(request("/etag")).get().getBodyAsString());
+        HttpFetcher.Response second = fetcher.sendAsync(request("/etag")).get();
+        assertTrue(second.isFromCache());
+        assertEquals(server.body, second.getBodyAsString());
+        assertEquals(1, fetcher.getNumDownloads());
+        assertEquals(1, server.numFullResponses.get());
+    }
+
+    @Test
+    public void testLastModifiedIsRevalidated() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher(cachePath);
+        fetcher.send(request("/last-modified")).getBodyAsString();
+        HttpFetcher.Response second = fetcher.send(request("/last-modified"));
+        assertTrue(second.isFromCache());
+        assertEquals(server.body, second.getBodyAsString());
+    }
+
+    @Test
+    public void testChangedResponseIsDownloaded() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher(cachePath);
+        fetcher.send(request("/etag")).getBodyAsString();
+        server.body = "changed";
+        HttpFetcher.Response second = fetcher.send(request("/etag"));
+        assertFalse(second.isFromCache());
+        assertEquals("changed", second.getBodyAsString());
+        HttpFetcher.Response third = fetcher.send(request("/etag"));
+        assertTrue(third.isFromCache());
+        assertEquals("changed", third.getBodyAsString());
+    }
+
+    @Test
+    public void testPartiallyReadBodyIsNotCached() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher(cachePath);
+        try (InputStream body = fetcher.send(request("/etag")).getBody()) {
+            body.read();
+        }
+        assertFalse(fetcher.send(request("/etag")).isFromCache());
+    }
+
+    @Test
+    public void testResponseWithoutValidatorIsNotCached() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher(cachePath);
+        fetcher.send(request("/plain")).getBodyAsString();
+        assertFalse(fetcher.send(request("/plain")).isFromCache());
+        assertEquals(2, server.numFullResponses.get());
+    }
+
+    private HttpRequest request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + server.getListeningPort() + path)).GET().build();
+    }
+
+    /**
+     * A server that answers conditional requests for its one body.
+     */
+    private static class StubServer extends NanoHTTPD {
+        private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+        private final AtomicInteger numFullResponses = new AtomicInteger();
+        private volatile String body = "Year,Sem,College\n2022,Fall,SCS\n".repeat(1000);
+
+        StubServer() {
+            super("localhost", 0);
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+            String uri = session.getUri();
+            boolean notModified = uri.equals("/etag") && etag.equals(session.getHeaders().get("if-none-match"))
+                || uri.equals("/last-modified") && LAST_MODIFIED.equals(session.getHeaders().get("if-modified-since"));
+            if (notModified) {
+                Response response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, MIME_PLAINTEXT, "");
+                response.addHeader("ETag", etag);
+                return response;
+            }
+            numFullResponses.incrementAndGet();
+            Response response = newFixedLengthResponse(Response.Status.OK, "text/csv", body);
+            if (uri.equals("/etag"))
+                response.addHeader("ETag", etag);
+            else if (uri.equals("/last-modified"))
+                response.addHeader("Last-Modified", LAST_MODIFIED);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package edu.cmu.cs214.analyzer.plugin.csv;
+
+import edu.cmu.cs.cs214.analyzer.framework.core.Course;
+import edu.cmu.cs.cs214.analyzer.plugin.csv.CSVPlugin;
+import edu.cmu.cs.cs214.analyzer.plugin.csv.ParallelCsvParser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ParallelCsvParserTest {
+    private static final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @AfterClass
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testQuotedFields() throws IOException {
+        String csv = "\ufeffName,Description\r\n"
+                   + "\"Software, Design\",\"Says \"\"hello\"\"\r\nand goodbye\"\r\n"
+                   + "\r\n"
+                   + "Caf\u00e9,\n"
+                   + "\"\",last";
+        Path file = write(csv);
+        for (int chunkBytes : new int[] { 1, 2, 3, 5, 8, 1 << 20 }) {
+            List<String[]> records = new ParallelCsvParser(pool, chunkBytes).parse(file, record -> record);
+            assertEquals(3, records.size());
+            assertArrayEquals(new String[] { "Software, Design", "Says \"hello\"\r\nand goodbye" }, records.get(0));
+            assertArrayEquals(new String[] { "Caf\u00e9", "" }, records.get(1));
+            assertArrayEquals(new String[] { "", "last" }, records.get(2));
+        }
+    }
+
+    @Test
+    public void testCarriageReturnsEndRecords() throws IOException {
+        StringBuilder csv = new StringBuilder("A,B\r");
+        for (int i = 0; i < 100; i++)
+            csv.append(i).append(",\"x\ry\"\r");
+        Path file = write(csv.toString());
+        for (int chunkBytes : new int[] { 1, 7, 64, 1 << 20 }) {
+            List<String[]> records = new ParallelCsvParser(pool, chunkBytes).parse(file, record -> record);
+            assertEquals(100, records.size());
+            for (int i = 0; i < 100; i++)
+                assertArrayEquals(new String[] { String.valueOf(i), "x\ry" }, records.get(i));
+        }
+    }
+
+    @Test
+    public void testQuotesInUnquotedFields() throws IOException {
+        // Stray quotes throw off the quote count, with an even and an odd number of them
+        for (String height : new String[] { "5'10\"\"", "5'10\"" }) {
+            StringBuilder csv = new StringBuilder("Height,Note\n");
+            for (int i = 0; i < 50; i++)
+                csv.append(i == 0 ? height : "6'").append(",\"a\nb\"\n");
+            Path file = write(csv.toString());
+            for (int chunkBytes : new int[] { 1, 5, 16, 1 << 20 }) {
+                List<String[]> records = new ParallelCsvParser(pool, chunkBytes).parse(file, record -> record);
+                assertEquals(50, records.size());
+                assertArrayEquals(new String[] { height, "a\nb" }, records.get(0));
+                for (int i = 1; i < 50; i++)
+                    assertArrayEquals(new String[] { "6'", "a\nb" }, records.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testSameRecordsAsSequentialParser() throws IOException {
+        String csv = getRandomCsv(new Random(214), 6000);
+        Path file = write(csv);
+        List<String[]> expected = new ArrayList<String[]>();
+        try (CSVParser parser = CSVParser.parse(new StringReader(csv), CSVFormat.DEFAULT)) {
+            for (CSVRecord record : parser)
+                expected.add(record.toList().toArray(new String[0]));
+        }
+        expected.remove(0);
+
+        // Single bytes give more chunks than a process can have memory mappings
+        for (int chunkBytes : new int[] { 1, 100, 1000, 4096, 1 << 20 }) {
+            List<String[]> records = new ParallelCsvParser(pool, chunkBytes).parse(file, record -> record);
+            assertEquals(expected.size(), records.size());
+            for (int i = 0; i < expected.size(); i++)
+                assertArrayEquals(expected.get(i), records.get(i));
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        assertEquals(0, new ParallelCsvParser(pool, 4).parse(write(""), record -> record).size());
+        assertEquals(0, new ParallelCsvParser(pool, 4).parse(write("A,B\n"), record -> record).size());
+    }
+
+    @Test
+    public void testCSVPluginFiles() {
+        String base = "src/main/java/edu/cmu/cs/cs214/analyzer/plugin/csv/";
+        CSVPlugin plugin = new CSVPlugin(Paths.get(base, "courses.csv"), Paths.get(base, "ratings.csv"),
+                                         new ParallelCsvParser(pool, 64));
+        List<Course> courses = plugin.getCourses();
+        assertEquals(5, courses.size());
+        Course course = courses.get(1);
+        assertEquals(5678, course.id);
+        assertEquals("Principles of Software", course.name);
+        assertEquals(Arrays.asList("Vincent Hellendoorn", "Claire Le Goues"), course.instructorNames);
+        assertEquals(1, course.reviews.size());
+        assertEquals(5, course.rate, 0.01);
+        assertEquals(15 * 15, course.estimatedWorkload, 0.01);
+        assertEquals(6237, courses.get(4).id);
+    }
+
+    private Path write(String csv) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String getRandomCsv(Random rand, int numRecords) {
+        String[] words = { "course", "Caf\u00e9", "\u6570\u5b66", "a,b", "say \"hi\"", "line\nbreak", "crlf\r\nbreak", "" };
+        StringBuilder csv = new StringBuilder("A,B,C\n");
+        for (int i = 0; i < numRecords; i++) {
+            for (int j = 0; j < 3; j++) {
+                if (j > 0)
+                    csv.append(',');
+                String word = words[rand.nextInt(words.length)] + (rand.nextBoolean() ? i : "");
+                boolean mustQuote = word.contains(",") || word.contains("\"") || word.contains("\n");
+                if (mustQuote || rand.nextInt(4) == 0)
+                    csv.append('"').append(word.replace("\"", "\"\"")).append('"');
+                else
+                    csv.append(word);
+            }
+            csv.append(rand.nextBoolean() ? "\n" : "\r\n");
+        }
+        return csv.toString();
+    }
+}
@@ -0,0 +1,164 @@
+package edu.cmu.cs214.analyzer.plugin.udemy;
+
+import edu.cmu.cs.cs214.analyzer.framework.core.Course;
+import edu.cmu.cs.cs214.analyzer.plugin.HttpFetcher;
+import edu.cmu.cs.cs214.analyzer.plugin.udemy.UdemyPlugin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import fi.iki.elonen.NanoHTTPD;
+
+public class UdemyPluginTest {
+    private static final int NUM_COURSES = 16;
+    private static final long RESPONSE_MILLIS = 50;
+
+    @Rule
+    public TemporaryFolder cacheDir = new TemporaryFolder();
+
+    private StubServer server;
+    private HttpFetcher fetcher;
+
+    @Before
+    public void startServer() throws IOException {
+        fetcher = new HttpFetcher(cacheDir.getRoot().toPath());
+        server = new StubServer();
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void testFetchesAllCourses() {
+        ArrayList<Course> courses = new UdemyPlugin(server.getBaseURI(), 4, 1000, fetcher).getCourses();
+        assertEquals(NUM_COURSES, courses.size());
+        for (Course course : courses) {
+            assertEquals("Development", course.category);
+            assertEquals(1000, course.totalStudents);
+            assertEquals(2, course.totalHours, 0.01);
+            assertEquals(2, course.reviews.size());
+            assertEquals(4.5, course.reviews.get(0).courseRate, 0.01);
+        }
+        assertTrue(server.maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void testRetriesFailedRequests() {
+        // The first request for each course's details fails once
+        server.failuresPerPath = 1;
+        ArrayList<Course> courses = new UdemyPlugin(server.getBaseURI(), 8, 1000, fetcher).getCourses();
+        assertEquals(NUM_COURSES, courses.size());
+        for (Course course : courses)
+            assertEquals("Development", course.category);
+    }
+
+    @Test
+    public void testTimeScalesWithConcurrency() {
+        long start = System.nanoTime();
+        new UdemyPlugin(server.getBaseURI(), 1, 1000, fetcher).getCourses();
+        long sequentialMillis = (System.nanoTime() - start) / 1000000;
+
+        start = System.nanoTime();
+        new UdemyPlugin(server.getBaseURI(), 8, 1000, fetcher).getCourses();
+        long concurrentMillis = (System.nanoTime() - start) / 1000000;
+
+        // 32 requests of 50ms each take at least 1.6s one at a time
+        assertTrue(sequentialMillis >= 2 * NUM_COURSES * RESPONSE_MILLIS);
+        assertTrue(concurrentMillis * 3 < sequentialMillis);
+    }
+
+    @Test
+    public void testRateIsLimited() {
+        // 32 requests at 20 per second, of which the first 20 are a burst, take at least 0.6s
+        long start = System.nanoTime();
+        new UdemyPlugin(server.getBaseURI(), 32, 20, fetcher).getCourses();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue(elapsedMillis >= 550);
+    }
+
+    /**
+     * A stub of the Udemy course APIs that answers every request after a fixed delay.
+     */
+    private static class StubServer extends NanoHTTPD {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final Map<String, AtomicInteger> failures = new ConcurrentHashMap<String, AtomicInteger>();
+        private volatile int failuresPerPath = 0;
+
+        StubServer() {
+            super("localhost", 0);
+        }
+
+        String getBaseURI() {
+            return "http://localhost:" + getListeningPort();
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            String uri = session.getUri();
+            if (uri.equals("/api-2.0/courses/"))
+                return newFixedLengthResponse(Response.Status.OK, "application/json", listCourses());
+
+            int running = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(running, Math::max);
+            try {
+                Thread.sleep(RESPONSE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            if (!uri.endsWith("/reviews/")
+                && failures.computeIfAbsent(uri, key -> new AtomicInteger()).getAndIncrement() < failuresPerPath)
+                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "Try again");
+            String body = uri.endsWith("/reviews/") ? getReviews() : getDetails();
+            return newFixedLengthResponse(Response.Status.OK, "application/json", body);
+        }
+
+        private static String listCourses() {
+            JSONArray results = new JSONArray();
+            for (int i = 0; i < NUM_COURSES; i++) {
+                results.put(new JSONObject()
+                    .put("id", i + 1)
+                    .put("title", "Course " + (i + 1))
+                    .put("url", "/course/" + (i + 1))
+                    .put("price_detail", new JSONObject().put("amount", 19.99))
+                    .put("visible_instructors", new JSONArray().put(new JSONObject().put("title", "Instructor " + (i % 3)))));
+            }
+            return new JSONObject().put("results", results).put("next", JSONObject.NULL).toString();
+        }
+
+        private static String getDetails() {
+            return new JSONObject()
+                .put("primary_category", new JSONObject().put("title", "Development"))
+                .put("instructional_level", "All Levels")
+                .put("num_subscribers", 1000)
+                .put("estimated_content_length", 120)
+                .toString();
+        }
+
+        private static String getReviews() {
+            JSONArray results = new JSONArray()
+                .put(new JSONObject().put("rating", 4.5))
+                .put(new JSONObject().put("rating", 3.0));
+            return new JSONObject().put("results", results).toString();
+        }
+    }
+}